@@ -0,0 +1,23 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+/**
+ * Routes the {@link Logger} messages of the core module to the Android log.
+ */
+class AndroidLogSink implements Logger.Sink {
+
+    @Override
+    public boolean isLoggable(String tag, int priority) {
+        return Log.isLoggable(tag, priority);
+    }
+
+    @Override
+    public void log(int priority, String tag, String message, Throwable throwable) {
+        // Like Log.v() and friends, log regardless of isLoggable()
+        if (throwable != null) {
+            message = message + '\n' + Log.getStackTraceString(throwable);
+        }
+        Log.println(priority, tag, message);
+    }
+}
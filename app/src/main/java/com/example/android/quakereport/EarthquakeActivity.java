@@ -16,96 +16,413 @@
 package com.example.android.quakereport;
 
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.Loader;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
+import android.widget.TextView;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.List;
 
-public class EarthquakeActivity extends AppCompatActivity {
+public class EarthquakeActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<EarthquakeStore.MergeResult> {
 
     public static final String LOG_TAG = EarthquakeActivity.class.getName();
 
-    // Constant for USGS endpoint with desired earthquake data
-    private static final String USGS_URL = "https://earthquake.usgs.gov/fdsnws/event/1/query?format=geojson&eventtype=earthquake&orderby=time&minmag=6&limit=10";
+    // Smallest magnitude shown on screen
+    private static final double MIN_MAGNITUDE = 6.0;
 
-    // Create a global variable to hold list of earthquakes.
-    List<Earthquake> earthquakesList = null;
+    // USGS query for the desired earthquake data.
+    // The sync engine adds the time window, so only the fixed filters are given here.
+    // Shared with the background sync, which keeps the same data set fresh.
+    static final EarthquakeQuery USGS_QUERY = new EarthquakeQuery.Builder()
+            .minMagnitude(MIN_MAGNITUDE)
+            .build();
 
-    // Create a global variable to hold ListView
-    ListView earthquakeListView = null;
+    // How long stored results are considered fresh before the network is asked again
+    private static final long STORE_MAX_AGE_MILLIS = 15 * 60 * 1000;
+
+    // Id of the sync loader
+    private static final int SYNC_LOADER_ID = 1;
+
+    // Name of the file (under the app files directory) holding the snapshot of the displayed rows
+    private static final String SNAPSHOT_FILE = "earthquake_rows.snapshot";
+
+    // Number of rows saved in the snapshot; enough to fill the first screens
+    private static final int SNAPSHOT_MAX_ROWS = 2 * EarthquakePager.DEFAULT_PAGE_SIZE;
+
+    // Name of the file (under the app files directory) holding the pipeline metrics dump, in debug builds
+    private static final String METRICS_FILE = "pipeline_metrics.json";
+
+    // Preference holding whether live mode is on; off unless the user opts in
+    private static final String PREF_LIVE_UPDATES = "live_updates";
+
+    // Preference holding whether the list is sorted largest first rather than newest first
+    private static final String PREF_SORT_BY_MAGNITUDE = "sort_by_magnitude";
+
+    /**
+     * State kept across configuration changes, so a recreated Activity picks up where the old one left off.
+     */
+    private static class RetainedState {
+        // Paged source of earthquakes, with its resident pages
+        EarthquakePager pager;
+
+        // Reads the pages from the store's index, in the chosen order
+        IndexPageLoader pageLoader;
+
+        // Sync result already applied to the pager
+        EarthquakeStore.MergeResult appliedSyncResult;
+
+        // Polls for new events while the list is visible, in live mode
+        EarthquakeLiveUpdater liveUpdater;
+    }
+
+    /**
+     * Loads pages of the displayed earthquakes from the store's in-memory index, so changing
+     * the order is answered without a query. The index is queried once per order and index
+     * generation; pages are read from that result. Static, so the retained pager doesn't hold
+     * on to an Activity.
+     */
+    private static class IndexPageLoader implements EarthquakePager.PageLoader {
+        private final EarthquakeStore mStore;
+        private volatile EarthquakeQuery.OrderBy mOrderBy;
+
+        // Query result the pages are read from, and what it was computed for; guarded by this
+        private EarthquakeIndex.View mView = null;
+        private EarthquakeQuery.OrderBy mViewOrderBy = null;
+        private int mViewGeneration = 0;
+
+        IndexPageLoader(EarthquakeStore store, EarthquakeQuery.OrderBy orderBy) {
+            this.mStore = store;
+            this.mOrderBy = orderBy;
+        }
+
+        void setOrderBy(EarthquakeQuery.OrderBy orderBy) {
+            this.mOrderBy = orderBy;
+        }
+
+        @Override
+        public EarthquakeColumns loadPage(int offset, int limit) {
+            return getView().loadPage(offset, limit);
+        }
+
+        private synchronized EarthquakeIndex.View getView() {
+            EarthquakeIndex index = mStore.getIndex();
+            EarthquakeQuery.OrderBy orderBy = mOrderBy;
+            // Read before the query, so a merge during it makes the next page query again
+            int generation = index.getGeneration();
+            if (mView == null || orderBy != mViewOrderBy || generation != mViewGeneration) {
+                mView = index.query(MIN_MAGNITUDE, 0L, Long.MAX_VALUE, orderBy);
+                mViewOrderBy = orderBy;
+                mViewGeneration = generation;
+            }
+            return mView;
+        }
+    }
+
+    // Create a global variable to hold the state retained across configuration changes.
+    RetainedState retainedState = null;
+
+    // Create a global variable to hold the paged source of earthquakes.
+    EarthquakePager earthquakePager = null;
+
+    // Summary of the stored earthquakes, above the list
+    TextView summaryView = null;
+
+    // Create a global variable to hold RecyclerView
+    RecyclerView earthquakeListView = null;
 
     // Create a global variable to hold the EarthquakeAdapter
     EarthquakeAdapter adapter = null;
 
+    // Prefetches the details of the rows on screen while the list is at rest
+    EarthquakeDetailPrefetchListener detailPrefetchListener = null;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        long createStartMillis = SystemClock.elapsedRealtime();
         super.onCreate(savedInstanceState);
         setContentView(R.layout.earthquake_activity);
 
-        FetchEarthquakesTask fetchEarthquakesTask = new FetchEarthquakesTask();
-        fetchEarthquakesTask.execute(USGS_URL);
+        // Reuse the pager (and its loaded pages) from before a configuration change, if there was one
+        retainedState = (RetainedState) getLastCustomNonConfigurationInstance();
+        boolean restored = retainedState != null;
+        if (restored) {
+            earthquakePager = retainedState.pager;
+        } else {
+            // Page through the local store; only a bounded window of pages is held in memory
+            IndexPageLoader pageLoader = new IndexPageLoader(EarthquakeStore.getInstance(getApplicationContext()),
+                    getOrderBy());
+            earthquakePager = new EarthquakePager(this, pageLoader);
+            retainedState = new RetainedState();
+            retainedState.pager = earthquakePager;
+            retainedState.pageLoader = pageLoader;
+            retainedState.liveUpdater = new EarthquakeLiveUpdater(this, USGS_QUERY);
+        }
+
+        summaryView = (TextView) findViewById(R.id.summary);
+
+        // Find a reference to the {@link RecyclerView} in the layout
+        earthquakeListView = (RecyclerView) findViewById(R.id.list);
+        earthquakeListView.setLayoutManager(new LinearLayoutManager(this));
+        earthquakeListView.setHasFixedSize(true);
+
+        // Initialize a {@link EarthquakeAdapter} over the pager and assign it to our global variable
+        adapter = new EarthquakeAdapter(this, earthquakePager);
+
+        // Set the adapter on the {@link RecyclerView}
+        // so the list can be populated in the user interface
+        earthquakeListView.setAdapter(adapter);
+
+        // Prefetch details while the list is at rest, so a tap finds them cached
+        detailPrefetchListener = new EarthquakeDetailPrefetchListener(earthquakePager,
+                QuakeReportApplication.getDetailPrefetcher(this));
+        earthquakeListView.addOnScrollListener(detailPrefetchListener);
+
+        // Apply only the row updates the pager reports, keeping scroll position and recycled views
+        earthquakePager.setListener(new EarthquakePager.Listener() {
+            @Override
+            public void onRowsChanged(EarthquakeListDiff diff) {
+                diff.dispatchTo(adapter);
+                // Loading the rows loads the statistics too, and each merge updates both
+                showSummary();
+                // The rows on screen may have changed or arrived; prefetch them once laid out
+                earthquakeListView.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        detailPrefetchListener.prefetchVisibleRows(earthquakeListView);
+                    }
+                });
+            }
+        });
+
+        // Live mode pushes what each poll changed into the list, rebinding only the changed rows
+        retainedState.liveUpdater.setListener(new EarthquakeLiveUpdater.Listener() {
+            @Override
+            public void onLiveChanges(EarthquakeStore.MergeResult result) {
+                earthquakePager.refresh();
+            }
+        });
+
+        adapter.setOnItemClickListener(new EarthquakeAdapter.OnItemClickListener() {
+            @Override
+            public void onItemClick(EarthquakeRow row) {
+                // Show the details in the app; they are usually prefetched already
+                if (row.getId() != null) {
+                    startActivity(EarthquakeDetailActivity.newIntent(EarthquakeActivity.this, row.getId(), row.getUrl()));
+                    return;
+                }
+
+                // Without an event id there is no detail to load; fall back to the USGS page
+                String webpageUrl = row.getUrl();
+
+                // Create Intent
+                Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(webpageUrl));
+
+                // Check whether intent can be resolved. If so, start activity to view URL
+                if (intent.resolveActivity(getPackageManager()) != null) {
+                    startActivity(intent);
+                }
+            }
+        });
+
+        // Show the rows saved by the last session on the first frame, then reconcile them with the store;
+        // without a snapshot, load what's stored. Then sync with USGS in the background.
+        // initLoader reattaches to a sync that is already running (or finished) after a configuration change.
+        if (!restored) {
+            PipelineMetrics.markLaunch();
+            EarthquakeSnapshot snapshot = EarthquakeSnapshot.read(getSnapshotFile());
+            if (snapshot != null && earthquakePager.seed(snapshot.getRows(), snapshot.isComplete())) {
+                Log.v(LOG_TAG, "In onCreate; showing " + snapshot.getRows().size() + " snapshot rows after "
+                        + (SystemClock.elapsedRealtime() - createStartMillis) + " ms.");
+                earthquakePager.refresh();
+            } else {
+                earthquakePager.reset();
+            }
+        }
+        showSummary();
+        getSupportLoaderManager().initLoader(SYNC_LOADER_ID, null, this);
 
+        // Keep the store fresh while the app is closed, so the next launch doesn't wait for the network
+        EarthquakeSyncScheduler.ensureScheduled(this);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        if (isLiveUpdatesEnabled()) {
+            retainedState.liveUpdater.start();
+        }
     }
 
-    private class FetchEarthquakesTask extends AsyncTask<String, Void, List<Earthquake>> {
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // Never poll in the background
+        retainedState.liveUpdater.stop();
+        // Nor prefetch for a list nobody sees
+        QuakeReportApplication.getDetailPrefetcher(this).cancelAll();
 
-        @Override
-        protected List<Earthquake> doInBackground(String... strings) {
-            Log.v(LOG_TAG, "Entering the doInBackground method.");
-            // Fetch List of earthquake events from the USGS server
-            return QueryUtils.extractEarthquakes(USGS_URL);
+        if (PipelineMetrics.isEnabled()) {
+            // Debug builds: leave the stage timings where `adb shell run-as` can pick them up
+            final File metricsFile = new File(getFilesDir(), METRICS_FILE);
+            AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    PipelineMetrics.writeDump(metricsFile);
+                }
+            });
         }
 
-        @Override
-        protected void onPostExecute(List<Earthquake> earthquakes) {
-            Log.v(LOG_TAG, "Entering the onPostExecute method.");
-            if (earthquakes != null) {
-                if (earthquakes.size() > 0) {
-                    earthquakesList = earthquakes;
-                } else {
-                    Log.e(LOG_TAG, "AsyncTask is returning a list with no Earthquakes.");
+        // Save the rows on screen for the next cold start, off the main thread
+        final List<EarthquakeRow> rows = earthquakePager.getLeadingRows(SNAPSHOT_MAX_ROWS);
+        final boolean complete = earthquakePager.isEndReached() && rows.size() == earthquakePager.getCount();
+        if (rows.isEmpty() && !complete) {
+            return;
+        }
+        final File snapshotFile = getSnapshotFile();
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    EarthquakeSnapshot.write(snapshotFile, rows, complete, System.currentTimeMillis());
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem writing the snapshot.", e);
                 }
-            } else {
-                Log.e(LOG_TAG, "AsyncTask is returning a null object instead of a valid List of Earthquake events.");
             }
+        });
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.earthquake_activity, menu);
+        menu.findItem(R.id.action_live_updates).setChecked(isLiveUpdatesEnabled());
+        menu.findItem(R.id.action_sort_by_magnitude).setChecked(getOrderBy() == EarthquakeQuery.OrderBy.MAGNITUDE);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_watch_rules) {
+            startActivity(new Intent(this, WatchRulesActivity.class));
+            return true;
+        }
+        if (item.getItemId() == R.id.action_sort_by_magnitude) {
+            boolean byMagnitude = !item.isChecked();
+            item.setChecked(byMagnitude);
+            getListPreferences().edit().putBoolean(PREF_SORT_BY_MAGNITUDE, byMagnitude).apply();
+            // Re-sorted from the index, without the network or the database
+            retainedState.pageLoader.setOrderBy(getOrderBy());
+            earthquakePager.reset();
+            earthquakeListView.scrollToPosition(0);
+            return true;
+        }
+        if (item.getItemId() != R.id.action_live_updates) {
+            return super.onOptionsItemSelected(item);
+        }
+        boolean enabled = !item.isChecked();
+        item.setChecked(enabled);
+        getListPreferences().edit().putBoolean(PREF_LIVE_UPDATES, enabled).apply();
+        if (enabled) {
+            retainedState.liveUpdater.start();
+        } else {
+            retainedState.liveUpdater.stop();
+        }
+        return true;
+    }
 
-            Log.v(LOG_TAG, "Executing onPostExecute method after commenting out the if conditions...");
+    /**
+     * Show the count, largest event and count per magnitude of the stored earthquakes above the
+     * list, or nothing until the store has loaded them. Reads the last published statistics, so
+     * it's cheap enough to call on every list change.
+     */
+    private void showSummary() {
+        EarthquakeAggregator.Snapshot summary =
+                EarthquakeStore.getInstance(getApplicationContext()).getSummary();
+        if (summary == null || summary.getTotalCount() == 0) {
+            summaryView.setVisibility(View.GONE);
+            return;
+        }
 
-            // Find a reference to the {@link ListView} in the layout
-            earthquakeListView = (ListView) findViewById(R.id.list);
+        String count = getResources().getQuantityString(R.plurals.summary_count,
+                summary.getTotalCount(), summary.getTotalCount());
+        int largest = summary.findLargestRegion();
+        String region = summary.getRegion(largest);
+        StringBuilder text = new StringBuilder(region.isEmpty()
+                ? getString(R.string.summary_largest_unknown_region, count, summary.getMaxMagnitude(largest))
+                : getString(R.string.summary_largest, count, summary.getMaxMagnitude(largest), region));
 
-            Log.v(LOG_TAG, "In onPostExecute method; creating new EarthquakeAdapter object.");
-            // Initialize a {@link EarthquakeAdapter} of earthquakes and assign it to our global variable
-            adapter = new EarthquakeAdapter(getApplicationContext(), earthquakesList);
+        String separator = "\n";
+        for (int bucket = EarthquakeRowFormatter.magnitudeBucket(MIN_MAGNITUDE);
+                bucket < EarthquakeRowFormatter.MAGNITUDE_BUCKET_COUNT; bucket++) {
+            int bucketCount = summary.getMagnitudeBucketCount(bucket);
+            if (bucketCount == 0) {
+                continue;
+            }
+            text.append(separator).append(getString(bucket == EarthquakeRowFormatter.MAGNITUDE_BUCKET_COUNT - 1
+                    ? R.string.summary_magnitude_bucket_last : R.string.summary_magnitude_bucket, bucket, bucketCount));
+            separator = getString(R.string.summary_separator);
+        }
+        summaryView.setText(text);
+        summaryView.setVisibility(View.VISIBLE);
+    }
 
+    private boolean isLiveUpdatesEnabled() {
+        return getListPreferences().getBoolean(PREF_LIVE_UPDATES, false);
+    }
 
-            Log.v(LOG_TAG, "In onPostExecute method; setting new adapter on the ListView.");
-            // Set the adapter on the {@link ListView}
-            // so the list can be populated in the user interface
-            earthquakeListView.setAdapter(adapter);
+    private EarthquakeQuery.OrderBy getOrderBy() {
+        return getListPreferences().getBoolean(PREF_SORT_BY_MAGNITUDE, false)
+                ? EarthquakeQuery.OrderBy.MAGNITUDE : EarthquakeQuery.OrderBy.TIME;
+    }
 
-            Log.v(LOG_TAG, "In onPostExecute method; creating & setting new OnItemClickListener.");
-            earthquakeListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
-                @Override
-                public void onItemClick(AdapterView<?> adapterView, View view, int i, long l) {
-                    // Get the URL from the selected item and store in a variable
-                    String webpageUrl = earthquakesList.get(i).getUrl();
+    private SharedPreferences getListPreferences() {
+        return getPreferences(MODE_PRIVATE);
+    }
 
-                    // Create Intent
-                    Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(webpageUrl));
+    private File getSnapshotFile() {
+        return new File(getFilesDir(), SNAPSHOT_FILE);
+    }
 
-                    // Check whether intent can be resolved. If so, start activity to view URL
-                    if (intent.resolveActivity(getPackageManager()) != null) {
-                        startActivity(intent);
-                    }
-                }
-            });
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        // The pager only holds the application context; drop the listener pointing at this Activity's adapter
+        earthquakePager.setListener(null);
+        retainedState.liveUpdater.setListener(null);
+        return retainedState;
+    }
+
+    @Override
+    public Loader<EarthquakeStore.MergeResult> onCreateLoader(int id, Bundle args) {
+        return new EarthquakeSyncLoader(this, USGS_QUERY, STORE_MAX_AGE_MILLIS);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<EarthquakeStore.MergeResult> loader, EarthquakeStore.MergeResult result) {
+        Log.v(LOG_TAG, "Entering the onLoadFinished method.");
+        // Reload the visible pages if the sync changed anything; only changed rows are rebound.
+        // The same result is delivered again after a configuration change, so apply it only once.
+        if (result != null && result != retainedState.appliedSyncResult
+                && result.getChangeCount() + result.getPruned() > 0) {
+            retainedState.appliedSyncResult = result;
+            earthquakePager.refresh();
         }
     }
+
+    @Override
+    public void onLoaderReset(Loader<EarthquakeStore.MergeResult> loader) {
+        // Nothing to release; the pager keeps showing the stored data
+    }
 }
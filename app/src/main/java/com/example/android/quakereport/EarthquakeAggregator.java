@@ -0,0 +1,462 @@
+package com.example.android.quakereport;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Summary statistics over a set of earthquakes, kept up to date incrementally: counts per
+ * magnitude bucket (the buckets of the magnitude circle colors), counts per hour and per day
+ * (UTC), and the largest magnitude per region.
+ *
+ * {@link #merge(List)} applies new, revised and deleted events with the same rules as
+ * {@link EarthquakeStore#mergeEarthquakes(List, long)}, and {@link #prune(long)} drops the
+ * events before the sync window as the store does: each event's previous contribution is
+ * subtracted before its revision is added, so nothing is ever recounted from scratch.
+ *
+ * After each change an immutable {@link Snapshot} is published, so the UI reads it in O(1).
+ * Snapshots share the per-day and per-region bins with the aggregator; a bin is copied the
+ * first time a change touches it after it was published, so a merge copies only the bins it
+ * changes (plus the arrays of references to them), never the whole statistics.
+ */
+public class EarthquakeAggregator {
+
+    private static final long HOUR_MILLIS = 60L * 60 * 1000;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+    private static final int HOURS_PER_DAY = 24;
+
+    /** Separates the offset from the primary location, e.g. "87 km NNE of Tokyo, Japan" */
+    private static final String LOCATION_SEPARATOR = " of ";
+
+    /**
+     * What an event currently contributes to the statistics, so it can be taken back out.
+     */
+    private static final class Contribution {
+        final double magnitude;
+        final long timeInMilliseconds;
+        final long updatedInMilliseconds;
+        final String region;
+
+        Contribution(Earthquake earthquake) {
+            this.magnitude = earthquake.getMagnitude();
+            this.timeInMilliseconds = earthquake.getTimeInMilliseconds();
+            this.updatedInMilliseconds = earthquake.getUpdatedInMilliseconds();
+            this.region = regionOf(earthquake.getLocation());
+        }
+    }
+
+    /**
+     * Statistics of the events sharing a key. Once published in a snapshot a bin never changes;
+     * only a bin created or copied by the current change may be changed in place.
+     */
+    private abstract static class Bin<K extends Comparable<K>> {
+        final K key;
+
+        /** Number of events in the bin */
+        int count;
+
+        /** Change that created or copied the bin */
+        final int generation;
+
+        Bin(K key, int count, int generation) {
+            this.key = key;
+            this.count = count;
+            this.generation = generation;
+        }
+
+        /** Return a copy that the given change may modify */
+        abstract Bin<K> copy(int generation);
+    }
+
+    /** One UTC day, keyed by its start, with the counts of each of its hours */
+    private static final class DayBin extends Bin<Long> {
+        final int[] hourCounts;
+
+        DayBin(long dayStart, int generation) {
+            super(dayStart, 0, generation);
+            this.hourCounts = new int[HOURS_PER_DAY];
+        }
+
+        private DayBin(DayBin other, int generation) {
+            super(other.key, other.count, generation);
+            this.hourCounts = other.hourCounts.clone();
+        }
+
+        @Override
+        DayBin copy(int generation) {
+            return new DayBin(this, generation);
+        }
+    }
+
+    /** One region, with the number of events at each magnitude, so the maximum survives removals */
+    private static final class RegionBin extends Bin<String> {
+        final TreeMap<Double, Integer> magnitudes;
+
+        RegionBin(String region, int generation) {
+            super(region, 0, generation);
+            this.magnitudes = new TreeMap<>();
+        }
+
+        private RegionBin(RegionBin other, int generation) {
+            super(other.key, other.count, generation);
+            this.magnitudes = new TreeMap<>(other.magnitudes);
+        }
+
+        @Override
+        RegionBin copy(int generation) {
+            return new RegionBin(this, generation);
+        }
+    }
+
+    /**
+     * Non-empty bins sorted by key. The array is shared with the last snapshot once published,
+     * so it is replaced rather than changed after that.
+     */
+    private static final class Bins<K extends Comparable<K>> {
+        private Bin<K>[] mBins = newArray(0);
+        private boolean mShared = false;
+
+        int size() {
+            return mBins.length;
+        }
+
+        Bin<K> get(int index) {
+            return mBins[index];
+        }
+
+        /** Return the index of the bin with the key, or (-(insertion point) - 1) if there is none */
+        int indexOf(K key) {
+            int low = 0;
+            int high = mBins.length - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int order = mBins[middle].key.compareTo(key);
+                if (order < 0) {
+                    low = middle + 1;
+                } else if (order > 0) {
+                    high = middle - 1;
+                } else {
+                    return middle;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /** Return the bin at an index, copied first unless the current change made it */
+        Bin<K> modify(int index, int generation) {
+            Bin<K> bin = mBins[index];
+            if (bin.generation != generation) {
+                bin = bin.copy(generation);
+                unshare();
+                mBins[index] = bin;
+            }
+            return bin;
+        }
+
+        void insert(int index, Bin<K> bin) {
+            Bin<K>[] bins = newArray(mBins.length + 1);
+            System.arraycopy(mBins, 0, bins, 0, index);
+            bins[index] = bin;
+            System.arraycopy(mBins, index, bins, index + 1, mBins.length - index);
+            mBins = bins;
+            mShared = false;
+        }
+
+        void remove(int index) {
+            Bin<K>[] bins = newArray(mBins.length - 1);
+            System.arraycopy(mBins, 0, bins, 0, index);
+            System.arraycopy(mBins, index + 1, bins, index, bins.length - index);
+            mBins = bins;
+            mShared = false;
+        }
+
+        void clear() {
+            mBins = newArray(0);
+            mShared = false;
+        }
+
+        /** Return the bins for a snapshot; they aren't changed in place any more */
+        Bin<K>[] publish() {
+            mShared = true;
+            return mBins;
+        }
+
+        private void unshare() {
+            if (mShared) {
+                mBins = mBins.clone();
+                mShared = false;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <K extends Comparable<K>> Bin<K>[] newArray(int length) {
+            return (Bin<K>[]) new Bin[length];
+        }
+    }
+
+    /**
+     * Immutable statistics as of one change.
+     */
+    public static final class Snapshot {
+        private final int mTotalCount;
+        private final int[] mMagnitudeBucketCounts;
+        private final Bin<Long>[] mDays;
+        private final Bin<String>[] mRegions;
+
+        Snapshot(int totalCount, int[] magnitudeBucketCounts, Bin<Long>[] days, Bin<String>[] regions) {
+            this.mTotalCount = totalCount;
+            this.mMagnitudeBucketCounts = magnitudeBucketCounts;
+            this.mDays = days;
+            this.mRegions = regions;
+        }
+
+        public int getTotalCount() {
+            return mTotalCount;
+        }
+
+        /** Number of events whose magnitude falls in a bucket; see {@link EarthquakeRowFormatter#magnitudeBucket(double)} */
+        public int getMagnitudeBucketCount(int bucket) {
+            return mMagnitudeBucketCounts[bucket];
+        }
+
+        /** Number of UTC days with events */
+        public int getDayCount() {
+            return mDays.length;
+        }
+
+        /** Start of a day with events, in milliseconds from the Epoch; days are oldest first */
+        public long getDayStart(int day) {
+            return mDays[day].key;
+        }
+
+        public int getCountOnDay(int day) {
+            return mDays[day].count;
+        }
+
+        /** Number of events in an hour (0 to 23, UTC) of a day with events */
+        public int getCountInHour(int day, int hourOfDay) {
+            return ((DayBin) mDays[day]).hourCounts[hourOfDay];
+        }
+
+        /** Number of regions with events */
+        public int getRegionCount() {
+            return mRegions.length;
+        }
+
+        /** Name of a region with events, e.g. "Japan"; regions are in alphabetical order */
+        public String getRegion(int region) {
+            return mRegions[region].key;
+        }
+
+        public double getMaxMagnitude(int region) {
+            return ((RegionBin) mRegions[region]).magnitudes.lastKey();
+        }
+
+        /** Return the region with the largest magnitude, or -1 if there are no events */
+        public int findLargestRegion() {
+            int largest = -1;
+            for (int region = 0; region < mRegions.length; region++) {
+                if (largest < 0 || getMaxMagnitude(region) > getMaxMagnitude(largest)) {
+                    largest = region;
+                }
+            }
+            return largest;
+        }
+    }
+
+    /** Current contribution of each event, by event id */
+    private final Map<String, Contribution> mContributions = new HashMap<>();
+
+    /** Shared with the last snapshot once published, like the bins */
+    private int[] mMagnitudeBucketCounts = new int[EarthquakeRowFormatter.MAGNITUDE_BUCKET_COUNT];
+    private boolean mMagnitudeBucketCountsShared = false;
+
+    private final Bins<Long> mDays = new Bins<>();
+    private final Bins<String> mRegions = new Bins<>();
+
+    /** Number of the current change; bins it created or copied carry it */
+    private int mGeneration = 0;
+
+    private volatile Snapshot mSnapshot = publish();
+
+    /**
+     * Return the region of a USGS place: the last comma-separated part of the primary location
+     * ("87 km NNE of Tokyo, Japan" gives "Japan"), or the whole primary location ("Fiji region").
+     */
+    static String regionOf(String place) {
+        if (place == null) {
+            return "";
+        }
+        int separatorIndex = place.indexOf(LOCATION_SEPARATOR);
+        String primaryLocation = separatorIndex >= 0
+                ? place.substring(separatorIndex + LOCATION_SEPARATOR.length()) : place;
+        int commaIndex = primaryLocation.lastIndexOf(',');
+        return (commaIndex >= 0 ? primaryLocation.substring(commaIndex + 1) : primaryLocation).trim();
+    }
+
+    /**
+     * Return the statistics as of the last change. Never blocks.
+     */
+    public Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Apply new, revised and deleted events. A revision replaces an event's contribution only if
+     * it is newer than the one counted; a deletion takes it out unless it is older. Events
+     * without an id are skipped, as the store does.
+     */
+    public synchronized void merge(List<Earthquake> earthquakes) {
+        boolean changed = false;
+        for (Earthquake earthquake : earthquakes) {
+            String id = earthquake.getId();
+            if (id == null) {
+                continue;
+            }
+            Contribution existing = mContributions.get(id);
+            if (existing != null) {
+                if (!EarthquakeIndex.supersedes(earthquake, existing.updatedInMilliseconds)) {
+                    continue;
+                }
+                subtract(existing);
+                mContributions.remove(id);
+                changed = true;
+            }
+            if (!earthquake.isDeleted()) {
+                Contribution contribution = new Contribution(earthquake);
+                add(contribution);
+                mContributions.put(id, contribution);
+                changed = true;
+            }
+        }
+        if (changed) {
+            mSnapshot = publish();
+        }
+    }
+
+    /**
+     * Drop the events that happened before a time, as the store prunes the events before its
+     * sync window. The events are only scanned when the oldest hour with events starts before
+     * the time, which for an hour-aligned window means some of them are due.
+     *
+     * @param startTime is the earliest event time to keep, in milliseconds from the Epoch.
+     */
+    public synchronized void prune(long startTime) {
+        if (mDays.size() == 0 || oldestHourStart() >= startTime) {
+            return;
+        }
+        boolean changed = false;
+        Iterator<Contribution> contributions = mContributions.values().iterator();
+        while (contributions.hasNext()) {
+            Contribution contribution = contributions.next();
+            if (contribution.timeInMilliseconds < startTime) {
+                subtract(contribution);
+                contributions.remove();
+                changed = true;
+            }
+        }
+        if (changed) {
+            mSnapshot = publish();
+        }
+    }
+
+    /**
+     * Forget all events.
+     */
+    public synchronized void clear() {
+        mContributions.clear();
+        mMagnitudeBucketCounts = new int[EarthquakeRowFormatter.MAGNITUDE_BUCKET_COUNT];
+        mMagnitudeBucketCountsShared = false;
+        mDays.clear();
+        mRegions.clear();
+        mSnapshot = publish();
+    }
+
+    private void add(Contribution contribution) {
+        changeCounts(contribution, 1);
+
+        int regionIndex = mRegions.indexOf(contribution.region);
+        if (regionIndex < 0) {
+            regionIndex = -regionIndex - 1;
+            mRegions.insert(regionIndex, new RegionBin(contribution.region, mGeneration));
+        }
+        RegionBin region = (RegionBin) mRegions.modify(regionIndex, mGeneration);
+        region.count++;
+        increment(region.magnitudes, contribution.magnitude, 1);
+    }
+
+    private void subtract(Contribution contribution) {
+        changeCounts(contribution, -1);
+
+        int regionIndex = mRegions.indexOf(contribution.region);
+        if (mRegions.get(regionIndex).count == 1) {
+            mRegions.remove(regionIndex);
+            return;
+        }
+        RegionBin region = (RegionBin) mRegions.modify(regionIndex, mGeneration);
+        region.count--;
+        increment(region.magnitudes, contribution.magnitude, -1);
+    }
+
+    /** Add {@code delta} to the magnitude bucket, day and hour counts of an event */
+    private void changeCounts(Contribution contribution, int delta) {
+        if (mMagnitudeBucketCountsShared) {
+            mMagnitudeBucketCounts = mMagnitudeBucketCounts.clone();
+            mMagnitudeBucketCountsShared = false;
+        }
+        mMagnitudeBucketCounts[EarthquakeRowFormatter.magnitudeBucket(contribution.magnitude)] += delta;
+
+        long dayStart = floor(contribution.timeInMilliseconds, DAY_MILLIS);
+        int dayIndex = mDays.indexOf(dayStart);
+        if (dayIndex < 0) {
+            dayIndex = -dayIndex - 1;
+            mDays.insert(dayIndex, new DayBin(dayStart, mGeneration));
+        } else if (mDays.get(dayIndex).count + delta == 0) {
+            mDays.remove(dayIndex);
+            return;
+        }
+        DayBin day = (DayBin) mDays.modify(dayIndex, mGeneration);
+        day.count += delta;
+        day.hourCounts[(int) ((contribution.timeInMilliseconds - dayStart) / HOUR_MILLIS)] += delta;
+    }
+
+    /** Start of the oldest hour with events; there must be some */
+    private long oldestHourStart() {
+        DayBin day = (DayBin) mDays.get(0);
+        int hour = 0;
+        while (day.hourCounts[hour] == 0) {
+            hour++;
+        }
+        return day.key + hour * HOUR_MILLIS;
+    }
+
+    /**
+     * Add {@code delta} to a count, dropping the entry when it reaches zero.
+     */
+    private static <K> void increment(Map<K, Integer> counts, K key, int delta) {
+        Integer count = counts.get(key);
+        int newCount = (count != null ? count : 0) + delta;
+        if (newCount == 0) {
+            counts.remove(key);
+        } else {
+            counts.put(key, newCount);
+        }
+    }
+
+    /** Round a time down to a multiple of the interval, also for times before the Epoch */
+    private static long floor(long timeInMilliseconds, long intervalMillis) {
+        long remainder = timeInMilliseconds % intervalMillis;
+        return timeInMilliseconds - (remainder < 0 ? remainder + intervalMillis : remainder);
+    }
+
+    /** Return a snapshot of the current statistics and start the next change */
+    private Snapshot publish() {
+        mMagnitudeBucketCountsShared = true;
+        Snapshot snapshot = new Snapshot(mContributions.size(), mMagnitudeBucketCounts,
+                mDays.publish(), mRegions.publish());
+        mGeneration++;
+        return snapshot;
+    }
+}
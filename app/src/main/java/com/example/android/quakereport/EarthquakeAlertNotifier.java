@@ -0,0 +1,44 @@
+package com.example.android.quakereport;
+
+import android.app.PendingIntent;
+import android.content.Context;
+import android.support.v4.app.NotificationCompat;
+import android.support.v4.app.NotificationManagerCompat;
+
+import java.util.List;
+
+/**
+ * Posts a notification for each alert from the {@link EarthquakeAlertEngine}; tapping it opens
+ * the event's details. Notifications are tagged with the event id, so a revision of an event
+ * that matches another rule replaces its notification rather than adding one.
+ */
+public class EarthquakeAlertNotifier implements EarthquakeAlertEngine.Listener {
+
+    // Notification id shared by all alerts; the tag tells them apart
+    private static final int NOTIFICATION_ID = 1;
+
+    private final Context mContext;
+
+    public EarthquakeAlertNotifier(Context context) {
+        this.mContext = context.getApplicationContext();
+    }
+
+    @Override
+    public void onAlerts(List<EarthquakeAlertEngine.Alert> alerts) {
+        NotificationManagerCompat manager = NotificationManagerCompat.from(mContext);
+        for (EarthquakeAlertEngine.Alert alert : alerts) {
+            Earthquake earthquake = alert.getEarthquake();
+            PendingIntent contentIntent = PendingIntent.getActivity(mContext, alert.getEventId().hashCode(),
+                    EarthquakeDetailActivity.newIntent(mContext, alert.getEventId(), earthquake.getUrl()),
+                    PendingIntent.FLAG_UPDATE_CURRENT);
+            NotificationCompat.Builder builder = new NotificationCompat.Builder(mContext)
+                    .setSmallIcon(R.mipmap.ic_launcher)
+                    .setContentTitle(mContext.getString(R.string.alert_title, earthquake.getMagnitude()))
+                    .setContentText(earthquake.getLocation())
+                    .setWhen(earthquake.getTimeInMilliseconds())
+                    .setContentIntent(contentIntent)
+                    .setAutoCancel(true);
+            manager.notify(alert.getEventId(), NOTIFICATION_ID, builder.build());
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+/**
+ * Creates and upgrades the local earthquake database.
+ */
+public class EarthquakeDbHelper extends SQLiteOpenHelper {
+
+    /** Name of the database file */
+    private static final String DATABASE_NAME = "earthquakes.db";
+
+    /** Database version. Increment when the schema changes. */
+    private static final int DATABASE_VERSION = 3;
+
+    /** Table of earthquake events, keyed by USGS event id */
+    public static final String TABLE_EARTHQUAKES = "earthquakes";
+    public static final String COLUMN_EVENT_ID = "event_id";
+    public static final String COLUMN_MAGNITUDE = "magnitude";
+    public static final String COLUMN_PLACE = "place";
+    public static final String COLUMN_TIME = "time";
+    public static final String COLUMN_UPDATED = "updated";
+    public static final String COLUMN_URL = "url";
+    public static final String COLUMN_LATITUDE = "latitude";
+    public static final String COLUMN_LONGITUDE = "longitude";
+    public static final String COLUMN_DEPTH = "depth";
+
+    /** Key/value table for bookkeeping such as the time of the last refresh */
+    public static final String TABLE_SYNC_STATE = "sync_state";
+    public static final String COLUMN_KEY = "key";
+    public static final String COLUMN_VALUE = "value";
+
+    public EarthquakeDbHelper(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_EARTHQUAKES + " ("
+                + COLUMN_EVENT_ID + " TEXT PRIMARY KEY NOT NULL, "
+                + COLUMN_MAGNITUDE + " REAL NOT NULL, "
+                + COLUMN_PLACE + " TEXT, "
+                + COLUMN_TIME + " INTEGER NOT NULL, "
+                + COLUMN_UPDATED + " INTEGER NOT NULL, "
+                + COLUMN_URL + " TEXT, "
+                + COLUMN_LATITUDE + " REAL, "
+                + COLUMN_LONGITUDE + " REAL, "
+                + COLUMN_DEPTH + " REAL)");
+
+        // Indexes for the screen's filters: newest first, and magnitude thresholds
+        db.execSQL("CREATE INDEX idx_earthquakes_time ON " + TABLE_EARTHQUAKES + " (" + COLUMN_TIME + ")");
+        db.execSQL("CREATE INDEX idx_earthquakes_magnitude ON " + TABLE_EARTHQUAKES + " (" + COLUMN_MAGNITUDE + ")");
+
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                + COLUMN_KEY + " TEXT PRIMARY KEY NOT NULL, "
+                + COLUMN_VALUE + " TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // The store only holds data that can be fetched again from USGS, so start over.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_EARTHQUAKES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        onCreate(db);
+    }
+}
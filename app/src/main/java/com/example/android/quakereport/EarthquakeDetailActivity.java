@@ -0,0 +1,202 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.Intent;
+import android.graphics.drawable.GradientDrawable;
+import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.View;
+import android.widget.TextView;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+
+/**
+ * Shows the details of one event, from the USGS per-event detail GeoJSON.
+ *
+ * The list prefetches the details of the rows on screen, so most opens find the detail in
+ * memory and bind it before the first frame; otherwise it is loaded from the disk cache or
+ * the network in the background. The USGS event page is one tap away either way.
+ */
+public class EarthquakeDetailActivity extends AppCompatActivity {
+
+    public static final String LOG_TAG = EarthquakeDetailActivity.class.getSimpleName();
+
+    // USGS event id of the event to show
+    public static final String EXTRA_EVENT_ID = "com.example.android.quakereport.EXTRA_EVENT_ID";
+
+    // USGS event page, opened by the button; known before the detail is loaded
+    public static final String EXTRA_EVENT_URL = "com.example.android.quakereport.EXTRA_EVENT_URL";
+
+    /**
+     * Return the intent that opens the detail screen of an event.
+     */
+    public static Intent newIntent(Context context, String eventId, String eventUrl) {
+        Intent intent = new Intent(context, EarthquakeDetailActivity.class);
+        intent.putExtra(EXTRA_EVENT_ID, eventId);
+        intent.putExtra(EXTRA_EVENT_URL, eventUrl);
+        return intent;
+    }
+
+    /**
+     * Loads the detail in the background. Static with a weak reference, so a slow load doesn't
+     * hold on to a finished Activity.
+     */
+    private static class DetailLoadTask extends AsyncTask<String, Void, EarthquakeDetail> {
+        private final EarthquakeDetailPrefetcher mPrefetcher;
+        private final WeakReference<EarthquakeDetailActivity> mActivity;
+
+        DetailLoadTask(EarthquakeDetailActivity activity, EarthquakeDetailPrefetcher prefetcher) {
+            this.mActivity = new WeakReference<>(activity);
+            this.mPrefetcher = prefetcher;
+        }
+
+        @Override
+        protected EarthquakeDetail doInBackground(String... eventIds) {
+            try {
+                return mPrefetcher.load(eventIds[0]);
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Problem loading the event details.", e);
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(EarthquakeDetail detail) {
+            EarthquakeDetailActivity activity = mActivity.get();
+            if (activity != null && !activity.isFinishing()) {
+                activity.onDetailLoaded(detail);
+            }
+        }
+    }
+
+    // Detail on screen; null until loaded
+    private EarthquakeDetail mDetail = null;
+
+    // Load running for this Activity, if any
+    private DetailLoadTask mLoadTask = null;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.earthquake_detail_activity);
+        setTitle(getString(R.string.detail_title));
+
+        Intent intent = getIntent();
+        final String eventId = intent.getStringExtra(EXTRA_EVENT_ID);
+        final String eventUrl = intent.getStringExtra(EXTRA_EVENT_URL);
+
+        findViewById(R.id.open_event_page).setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                String url = mDetail != null && mDetail.getUrl() != null ? mDetail.getUrl() : eventUrl;
+                openEventPage(url);
+            }
+        });
+
+        // After a configuration change, show the detail the previous instance had loaded
+        EarthquakeDetail detail = (EarthquakeDetail) getLastCustomNonConfigurationInstance();
+        EarthquakeDetailPrefetcher prefetcher = QuakeReportApplication.getDetailPrefetcher(this);
+        if (detail == null) {
+            detail = prefetcher.loadFromMemory(eventId);
+        }
+        if (detail != null) {
+            bindDetail(detail);
+            return;
+        }
+
+        findViewById(R.id.loading_indicator).setVisibility(View.VISIBLE);
+        mLoadTask = new DetailLoadTask(this, prefetcher);
+        mLoadTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR, eventId);
+    }
+
+    @Override
+    public Object onRetainCustomNonConfigurationInstance() {
+        return mDetail;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (mLoadTask != null) {
+            // The result is cached anyway; only the delivery to this Activity is dropped
+            mLoadTask.cancel(false);
+        }
+    }
+
+    private void onDetailLoaded(EarthquakeDetail detail) {
+        mLoadTask = null;
+        findViewById(R.id.loading_indicator).setVisibility(View.GONE);
+        if (detail == null) {
+            TextView messageView = (TextView) findViewById(R.id.message);
+            messageView.setText(getString(R.string.detail_load_failed));
+            messageView.setVisibility(View.VISIBLE);
+            return;
+        }
+        bindDetail(detail);
+    }
+
+    private void bindDetail(EarthquakeDetail detail) {
+        mDetail = detail;
+        EarthquakeFormatter formatter = new EarthquakeFormatter(getString(R.string.near_the));
+        EarthquakeRowFormatter rowFormatter = new EarthquakeRowFormatter(this);
+
+        TextView magnitudeView = (TextView) findViewById(R.id.magnitude);
+        GradientDrawable magnitudeCircle = (GradientDrawable) magnitudeView.getBackground();
+        magnitudeCircle.setColor(rowFormatter.getMagnitudeColor(detail.getMagnitude()));
+        magnitudeView.setText(formatter.formatMagnitude(detail.getMagnitude()));
+
+        ((TextView) findViewById(R.id.place)).setText(detail.getPlace());
+        ((TextView) findViewById(R.id.date_time)).setText(formatter.formatDate(detail.getTimeInMilliseconds())
+                + " " + formatter.formatTime(detail.getTimeInMilliseconds()));
+
+        bindRow(R.id.magnitude_type, detail.getMagnitudeType() != null
+                ? getString(R.string.detail_magnitude_type, detail.getMagnitudeType()) : null);
+        bindRow(R.id.hypocenter, !Double.isNaN(detail.getLatitude()) && !Double.isNaN(detail.getLongitude())
+                && !Double.isNaN(detail.getDepthKm())
+                ? getString(R.string.detail_hypocenter, detail.getLatitude(), detail.getLongitude(), detail.getDepthKm())
+                : null);
+        bindRow(R.id.felt_reports, detail.getFeltReports() > 0
+                ? getString(R.string.detail_felt_reports, detail.getFeltReports()) : null);
+        bindRow(R.id.instrumental_intensity, !Double.isNaN(detail.getInstrumentalIntensity())
+                ? getString(R.string.detail_instrumental_intensity, detail.getInstrumentalIntensity()) : null);
+        bindRow(R.id.community_intensity, !Double.isNaN(detail.getCommunityIntensity())
+                ? getString(R.string.detail_community_intensity, detail.getCommunityIntensity()) : null);
+        bindRow(R.id.alert_level, detail.getAlertLevel() != null
+                ? getString(R.string.detail_alert_level, detail.getAlertLevel()) : null);
+        bindRow(R.id.tsunami, detail.isTsunami() ? getString(R.string.detail_tsunami) : null);
+        bindRow(R.id.status, detail.getStatus() != null
+                ? getString(R.string.detail_status, detail.getStatus()) : null);
+        bindRow(R.id.products, !detail.getProductTypes().isEmpty()
+                ? getString(R.string.detail_products, TextUtils.join(", ", detail.getProductTypes())) : null);
+    }
+
+    /**
+     * Show a row with the text, or hide it when there is nothing to show.
+     */
+    private void bindRow(int viewId, String text) {
+        TextView view = (TextView) findViewById(viewId);
+        if (text == null) {
+            view.setVisibility(View.GONE);
+        } else {
+            view.setText(text);
+            view.setVisibility(View.VISIBLE);
+        }
+    }
+
+    private void openEventPage(String url) {
+        if (url == null) {
+            return;
+        }
+        Intent intent = new Intent(Intent.ACTION_VIEW, Uri.parse(url));
+
+        // Check whether intent can be resolved. If so, start activity to view URL
+        if (intent.resolveActivity(getPackageManager()) != null) {
+            startActivity(intent);
+        }
+    }
+}
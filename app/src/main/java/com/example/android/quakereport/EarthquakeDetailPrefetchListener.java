@@ -0,0 +1,58 @@
+package com.example.android.quakereport;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prefetches the details of the rows on screen while the list is at rest, so a tap finds them
+ * cached. Scrolling cancels the prefetches that haven't started; when the list settles, only
+ * the rows then on screen are prefetched, so rows that scrolled by are never fetched.
+ */
+public class EarthquakeDetailPrefetchListener extends RecyclerView.OnScrollListener {
+
+    private final EarthquakePager mPager;
+    private final EarthquakeDetailPrefetcher mPrefetcher;
+
+    public EarthquakeDetailPrefetchListener(EarthquakePager pager, EarthquakeDetailPrefetcher prefetcher) {
+        this.mPager = pager;
+        this.mPrefetcher = prefetcher;
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            prefetchVisibleRows(recyclerView);
+        } else {
+            // Leave the network to the page loads while the list moves
+            mPrefetcher.cancelAll();
+        }
+    }
+
+    /**
+     * Prefetch the rows on screen, top first, if the list is at rest; e.g. when it first shows
+     * rows, or after its rows changed.
+     */
+    public void prefetchVisibleRows(RecyclerView recyclerView) {
+        if (recyclerView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+        List<String> eventIds = new ArrayList<>(last - first + 1);
+        for (int position = first; position <= last; position++) {
+            // Null while the page holding the row is loading; prefetched when its rows arrive
+            EarthquakeRow row = mPager.peekItem(position);
+            if (row != null && row.getId() != null) {
+                eventIds.add(row.getId());
+            }
+        }
+        mPrefetcher.prefetch(eventIds);
+    }
+}
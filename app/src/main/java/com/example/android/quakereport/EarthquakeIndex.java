@@ -0,0 +1,468 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory query engine over a loaded set of earthquakes, so changing the sort order or the
+ * magnitude/time filter is answered locally instead of editing the USGS query and refetching.
+ *
+ * Events live in an {@link EarthquakeColumns} set; two arrays of row numbers keep them sorted
+ * newest first and largest first. A range filter finds its bounds in the index matching the
+ * requested order by binary search and walks only that range, checking the other condition per
+ * row, so results come out already sorted. Merging new or revised events sorts just the batch
+ * and merges it into the indexes in one linear pass.
+ *
+ * All methods are synchronized; {@link View}s lock the index while reading, so they are safe to
+ * read from any thread.
+ */
+public class EarthquakeIndex {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeIndex.class.getSimpleName();
+
+    /** Compact the rows once more than this fraction of them are replaced or deleted */
+    private static final float MAX_DEAD_FRACTION = 0.5f;
+
+    /**
+     * Order of two rows in an index; negative if the first row comes first.
+     */
+    private interface RowOrder {
+        int compare(int firstRow, int secondRow);
+    }
+
+    private EarthquakeColumns mColumns = new EarthquakeColumns();
+
+    /** Row numbers, newest first */
+    private int[] mByTime = new int[0];
+
+    /** Row numbers, largest magnitude first */
+    private int[] mByMagnitude = new int[0];
+
+    /** Rows that were replaced by a later revision or deleted */
+    private BitSet mDeadRows = new BitSet();
+    private int mDeadCount = 0;
+
+    /** Live row of each event id */
+    private final Map<String, Integer> mRowsById = new HashMap<>();
+
+    /** Counts the merges and prunes, so a caller can tell whether a {@link View} is current */
+    private int mGeneration = 0;
+
+    private final RowOrder mNewestFirst = new RowOrder() {
+        @Override
+        public int compare(int firstRow, int secondRow) {
+            long firstTime = mColumns.getTimeInMilliseconds(firstRow);
+            long secondTime = mColumns.getTimeInMilliseconds(secondRow);
+            return firstTime > secondTime ? -1 : (firstTime == secondTime ? 0 : 1);
+        }
+    };
+
+    private final RowOrder mLargestFirst = new RowOrder() {
+        @Override
+        public int compare(int firstRow, int secondRow) {
+            int magnitudeOrder = Double.compare(mColumns.getMagnitude(secondRow), mColumns.getMagnitude(firstRow));
+            return magnitudeOrder != 0 ? magnitudeOrder : mNewestFirst.compare(firstRow, secondRow);
+        }
+    };
+
+    /**
+     * The rows matching a query, in the requested order. Immutable; it keeps showing the data
+     * as of the query even if the index changes afterwards.
+     *
+     * It is also a {@link EarthquakePager.PageLoader}, so the list can page through the result.
+     */
+    public static class View implements EarthquakePager.PageLoader {
+        /** The index; its column set keeps growing as events are merged */
+        private final Object mLock;
+        private final EarthquakeColumns mColumns;
+        private final int[] mRows;
+
+        View(Object lock, EarthquakeColumns columns, int[] rows) {
+            this.mLock = lock;
+            this.mColumns = columns;
+            this.mRows = rows;
+        }
+
+        public int size() {
+            return mRows.length;
+        }
+
+        public String getId(int position) {
+            synchronized (mLock) {
+                return mColumns.getId(mRows[position]);
+            }
+        }
+
+        public double getMagnitude(int position) {
+            synchronized (mLock) {
+                return mColumns.getMagnitude(mRows[position]);
+            }
+        }
+
+        public long getTimeInMilliseconds(int position) {
+            synchronized (mLock) {
+                return mColumns.getTimeInMilliseconds(mRows[position]);
+            }
+        }
+
+        public String getLocation(int position) {
+            synchronized (mLock) {
+                return mColumns.getLocation(mRows[position]);
+            }
+        }
+
+        public String getUrl(int position) {
+            synchronized (mLock) {
+                return mColumns.getUrl(mRows[position]);
+            }
+        }
+
+        @Override
+        public EarthquakeColumns loadPage(int offset, int limit) {
+            int end = Math.min(offset + limit, mRows.length);
+            EarthquakeColumns page = new EarthquakeColumns(Math.max(end - offset, 0));
+            synchronized (mLock) {
+                for (int position = offset; position < end; position++) {
+                    int row = mRows[position];
+                    page.add(mColumns.getId(row), mColumns.getMagnitude(row), mColumns.getLocation(row),
+                            mColumns.getTimeInMilliseconds(row), mColumns.getUpdatedInMilliseconds(row),
+                            mColumns.getUrl(row), false,
+                            mColumns.getLatitude(row), mColumns.getLongitude(row), mColumns.getDepthKm(row));
+                }
+            }
+            return page;
+        }
+    }
+
+    /**
+     * Return a number that changes whenever the events in the index change, so a {@link View}
+     * can be reused until the next one.
+     */
+    public synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Return the number of events in the index.
+     */
+    public synchronized int size() {
+        return mByTime.length;
+    }
+
+    /**
+     * Merge new, revised and deleted events into the index, with the rules of
+     * {@link EarthquakeStore#mergeEarthquakes(List, long)}: a revision replaces the stored event
+     * only if it is newer; a deletion removes it unless it is older; events without an id are
+     * skipped.
+     */
+    public synchronized void merge(List<Earthquake> earthquakes) {
+        if (earthquakes.isEmpty()) {
+            return;
+        }
+        mGeneration++;
+        int firstNewRow = mColumns.size();
+        for (Earthquake earthquake : earthquakes) {
+            String id = earthquake.getId();
+            if (id == null) {
+                continue;
+            }
+            Integer existingRow = mRowsById.get(id);
+            if (existingRow != null) {
+                if (!supersedes(earthquake, mColumns.getUpdatedInMilliseconds(existingRow))) {
+                    continue;
+                }
+                markDead(existingRow);
+                mRowsById.remove(id);
+            }
+            if (earthquake.isDeleted()) {
+                continue;
+            }
+            mRowsById.put(id, mColumns.size());
+            mColumns.add(earthquake);
+        }
+
+        // A batch can revise its own events; only the last revision is live
+        int[] newRows = new int[mColumns.size() - firstNewRow];
+        int newCount = 0;
+        for (int row = firstNewRow; row < mColumns.size(); row++) {
+            if (!mDeadRows.get(row)) {
+                newRows[newCount++] = row;
+            }
+        }
+        if (newCount < newRows.length) {
+            int[] liveRows = new int[newCount];
+            System.arraycopy(newRows, 0, liveRows, 0, newCount);
+            newRows = liveRows;
+        }
+        mByTime = mergeSorted(mByTime, newRows, mNewestFirst);
+        mByMagnitude = mergeSorted(mByMagnitude, newRows, mLargestFirst);
+
+        if (mDeadCount > MAX_DEAD_FRACTION * mColumns.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Return whether an event replaces (or deletes) the stored copy last updated at
+     * {@code storedUpdated}: a revision must be newer, a deletion only not older. These are the
+     * conditions of the store's UPDATE and DELETE.
+     */
+    static boolean supersedes(Earthquake earthquake, long storedUpdated) {
+        long updated = earthquake.getUpdatedInMilliseconds();
+        return earthquake.isDeleted() ? updated >= storedUpdated : updated > storedUpdated;
+    }
+
+    /**
+     * Remove the events that happened before {@code startTime}, as the store does with events
+     * that fell out of the sync window.
+     */
+    public synchronized void prune(long startTime) {
+        // Newest first, so the pruned events are the tail of the time index
+        int keepCount = firstTimeBefore(startTime);
+        if (keepCount == mByTime.length) {
+            return;
+        }
+        mGeneration++;
+        for (int i = keepCount; i < mByTime.length; i++) {
+            int row = mByTime[i];
+            markDead(row);
+            String id = mColumns.getId(row);
+            if (id != null) {
+                mRowsById.remove(id);
+            }
+        }
+        int[] byTime = new int[keepCount];
+        System.arraycopy(mByTime, 0, byTime, 0, keepCount);
+        mByTime = byTime;
+        mByMagnitude = mergeSorted(mByMagnitude, new int[0], mLargestFirst);
+
+        if (mDeadCount > MAX_DEAD_FRACTION * mColumns.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Return the events with a magnitude of at least {@code minMagnitude} and a time in
+     * [{@code startTime}, {@code endTime}], in the given order.
+     */
+    public View query(double minMagnitude, long startTime, long endTime, EarthquakeQuery.OrderBy orderBy) {
+        return query(minMagnitude, Double.POSITIVE_INFINITY, startTime, endTime, orderBy);
+    }
+
+    /**
+     * Return the events with a magnitude in [{@code minMagnitude}, {@code maxMagnitude}] and a
+     * time in [{@code startTime}, {@code endTime}], in the given order.
+     */
+    public synchronized View query(double minMagnitude, double maxMagnitude, long startTime, long endTime,
+                                   EarthquakeQuery.OrderBy orderBy) {
+        long startNanos = System.nanoTime();
+        boolean byTime = orderBy == null
+                || orderBy == EarthquakeQuery.OrderBy.TIME || orderBy == EarthquakeQuery.OrderBy.TIME_ASC;
+        boolean ascending = orderBy == EarthquakeQuery.OrderBy.TIME_ASC
+                || orderBy == EarthquakeQuery.OrderBy.MAGNITUDE_ASC;
+
+        // Bounds of the range in the index of the requested order; the other condition is checked per row
+        int[] index = byTime ? mByTime : mByMagnitude;
+        int from;
+        int to;
+        if (byTime) {
+            from = firstTimeAtOrBefore(endTime);
+            to = firstTimeBefore(startTime);
+        } else {
+            from = firstMagnitudeAtOrBelow(maxMagnitude);
+            to = firstMagnitudeBelow(minMagnitude);
+        }
+
+        int[] matches = new int[Math.max(to - from, 0)];
+        int count = 0;
+        for (int i = from; i < to; i++) {
+            int row = index[ascending ? to - 1 - (i - from) : i];
+            if (byTime) {
+                double magnitude = mColumns.getMagnitude(row);
+                if (magnitude < minMagnitude || magnitude > maxMagnitude) {
+                    continue;
+                }
+            } else {
+                long time = mColumns.getTimeInMilliseconds(row);
+                if (time < startTime || time > endTime) {
+                    continue;
+                }
+            }
+            matches[count++] = row;
+        }
+        if (count < matches.length) {
+            int[] trimmed = new int[count];
+            System.arraycopy(matches, 0, trimmed, 0, count);
+            matches = trimmed;
+        }
+
+        Log.v(LOG_TAG, "Query matched " + count + " of " + mByTime.length + " events in "
+                + (System.nanoTime() - startNanos) / 1000L + " us.");
+        return new View(this, mColumns, matches);
+    }
+
+    /** First position in {@link #mByTime} with a time at or before {@code time} */
+    private int firstTimeAtOrBefore(long time) {
+        int low = 0;
+        int high = mByTime.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mColumns.getTimeInMilliseconds(mByTime[middle]) > time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** First position in {@link #mByTime} with a time before {@code time} */
+    private int firstTimeBefore(long time) {
+        int low = 0;
+        int high = mByTime.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mColumns.getTimeInMilliseconds(mByTime[middle]) >= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** First position in {@link #mByMagnitude} with a magnitude at or below {@code magnitude} */
+    private int firstMagnitudeAtOrBelow(double magnitude) {
+        int low = 0;
+        int high = mByMagnitude.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mColumns.getMagnitude(mByMagnitude[middle]) > magnitude) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /** First position in {@link #mByMagnitude} with a magnitude below {@code magnitude} */
+    private int firstMagnitudeBelow(double magnitude) {
+        int low = 0;
+        int high = mByMagnitude.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mColumns.getMagnitude(mByMagnitude[middle]) >= magnitude) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void markDead(int row) {
+        if (!mDeadRows.get(row)) {
+            mDeadRows.set(row);
+            mDeadCount++;
+        }
+    }
+
+    /**
+     * Return the live rows of a sorted index merged with a batch of new rows, in index order.
+     */
+    private int[] mergeSorted(int[] sorted, int[] newRows, RowOrder order) {
+        sortRows(newRows, order);
+
+        int liveCount = 0;
+        for (int row : sorted) {
+            if (!mDeadRows.get(row)) {
+                liveCount++;
+            }
+        }
+
+        int[] merged = new int[liveCount + newRows.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < sorted.length || j < newRows.length) {
+            if (i < sorted.length && mDeadRows.get(sorted[i])) {
+                i++;
+            } else if (j >= newRows.length
+                    || (i < sorted.length && order.compare(sorted[i], newRows[j]) <= 0)) {
+                merged[k++] = sorted[i++];
+            } else {
+                merged[k++] = newRows[j++];
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Sort row numbers with a stable merge sort, without boxing them.
+     */
+    private static void sortRows(int[] rows, RowOrder order) {
+        if (rows.length < 2) {
+            return;
+        }
+        int[] buffer = new int[rows.length];
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int start = 0; start < rows.length; start += 2 * width) {
+                int middle = Math.min(start + width, rows.length);
+                int end = Math.min(start + 2 * width, rows.length);
+                int i = start;
+                int j = middle;
+                int k = start;
+                while (i < middle || j < end) {
+                    if (j >= end || (i < middle && order.compare(rows[i], rows[j]) <= 0)) {
+                        buffer[k++] = rows[i++];
+                    } else {
+                        buffer[k++] = rows[j++];
+                    }
+                }
+            }
+            System.arraycopy(buffer, 0, rows, 0, rows.length);
+        }
+    }
+
+    /**
+     * Copy the live rows into a new column set and renumber the indexes. Existing {@link View}s
+     * keep the old column set.
+     */
+    private void compact() {
+        EarthquakeColumns oldColumns = mColumns;
+        int[] newRowNumbers = new int[oldColumns.size()];
+        EarthquakeColumns columns = new EarthquakeColumns(oldColumns.size() - mDeadCount);
+        for (int row = 0; row < oldColumns.size(); row++) {
+            if (mDeadRows.get(row)) {
+                newRowNumbers[row] = -1;
+                continue;
+            }
+            newRowNumbers[row] = columns.size();
+            columns.add(oldColumns.getId(row), oldColumns.getMagnitude(row), oldColumns.getLocation(row),
+                    oldColumns.getTimeInMilliseconds(row), oldColumns.getUpdatedInMilliseconds(row),
+                    oldColumns.getUrl(row), false,
+                    oldColumns.getLatitude(row), oldColumns.getLongitude(row), oldColumns.getDepthKm(row));
+        }
+
+        // Dead rows are already gone from both indexes, so only renumbering is left; the order is unchanged
+        for (int i = 0; i < mByTime.length; i++) {
+            mByTime[i] = newRowNumbers[mByTime[i]];
+        }
+        for (int i = 0; i < mByMagnitude.length; i++) {
+            mByMagnitude[i] = newRowNumbers[mByMagnitude[i]];
+        }
+        for (Map.Entry<String, Integer> entry : mRowsById.entrySet()) {
+            entry.setValue(newRowNumbers[entry.getValue()]);
+        }
+
+        mColumns = columns;
+        mDeadRows = new BitSet();
+        mDeadCount = 0;
+    }
+}
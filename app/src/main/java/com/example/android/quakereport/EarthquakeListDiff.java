@@ -0,0 +1,204 @@
+package com.example.android.quakereport;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A sequence of list updates (inserts, removals, moves and changes) in adapter positions,
+ * to be dispatched to a {@link RecyclerView.Adapter} in order.
+ *
+ * {@link #calculate(List, List, int)} compares two lists of rows by USGS event id, so a refresh
+ * only touches the rows that actually changed instead of rebinding the whole list. It is meant
+ * to run on a background thread; only {@link #dispatchTo(RecyclerView.Adapter)} needs the main thread.
+ */
+public class EarthquakeListDiff {
+
+    private static final int INSERT = 0;
+    private static final int REMOVE = 1;
+    private static final int MOVE = 2;
+    private static final int CHANGE = 3;
+
+    /** Recorded operations as {type, position (or from), count (or to)} */
+    private final List<int[]> mOperations = new ArrayList<>();
+
+    /**
+     * Return the updates turning {@code oldRows} into {@code newRows}, matching rows by event id.
+     * Rows without an id never match and are replaced.
+     *
+     * @param offset is the adapter position of the first row of both lists.
+     */
+    public static EarthquakeListDiff calculate(List<EarthquakeRow> oldRows, List<EarthquakeRow> newRows,
+                                               int offset) {
+        EarthquakeListDiff diff = new EarthquakeListDiff();
+
+        Set<String> newIds = new HashSet<>();
+        for (EarthquakeRow row : newRows) {
+            String id = idOf(row);
+            if (id != null) {
+                newIds.add(id);
+            }
+        }
+
+        // Working copy of the list as the recorded operations are applied to it
+        List<EarthquakeRow> current = new ArrayList<>(oldRows.size());
+        Set<String> currentIds = new HashSet<>();
+
+        // 1. Removals, from the end so earlier positions stay valid
+        for (int i = oldRows.size() - 1; i >= 0; i--) {
+            String id = idOf(oldRows.get(i));
+            if (id == null || !newIds.contains(id)) {
+                diff.remove(offset + i, 1);
+            }
+        }
+        for (EarthquakeRow row : oldRows) {
+            String id = idOf(row);
+            if (id != null && newIds.contains(id)) {
+                current.add(row);
+                currentIds.add(id);
+            }
+        }
+
+        // 2. Walk the target order, moving surviving rows into place and inserting new ones
+        for (int i = 0; i < newRows.size(); i++) {
+            EarthquakeRow target = newRows.get(i);
+            String id = idOf(target);
+
+            if (i < current.size() && id != null && id.equals(idOf(current.get(i)))) {
+                // Already in place
+                if (!target.hasSameContents(current.get(i))) {
+                    diff.change(offset + i);
+                }
+                current.set(i, target);
+                continue;
+            }
+
+            int from = id != null && currentIds.contains(id) ? indexOfId(current, id, i + 1) : -1;
+            if (from >= 0) {
+                // Further down; move it up to its new position
+                EarthquakeRow moved = current.remove(from);
+                current.add(i, target);
+                diff.move(offset + from, offset + i);
+                if (!target.hasSameContents(moved)) {
+                    diff.change(offset + i);
+                }
+            } else {
+                current.add(i, target);
+                diff.insert(offset + i, 1);
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Record that {@code count} rows were inserted at {@code position}.
+     */
+    public EarthquakeListDiff insert(int position, int count) {
+        if (count > 0) {
+            // Merge with a directly preceding insert into a single range
+            int[] last = lastOperation();
+            if (last != null && last[0] == INSERT && last[1] + last[2] == position) {
+                last[2] += count;
+            } else {
+                mOperations.add(new int[]{INSERT, position, count});
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Record that {@code count} rows were removed at {@code position}.
+     */
+    public EarthquakeListDiff remove(int position, int count) {
+        if (count > 0) {
+            // Removals recorded back to front merge into a single range
+            int[] last = lastOperation();
+            if (last != null && last[0] == REMOVE && position + count == last[1]) {
+                last[1] = position;
+                last[2] += count;
+            } else {
+                mOperations.add(new int[]{REMOVE, position, count});
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Record that {@code count} rows starting at {@code position} changed contents.
+     */
+    public EarthquakeListDiff change(int position, int count) {
+        if (count > 0) {
+            int[] last = lastOperation();
+            if (last != null && last[0] == CHANGE && last[1] + last[2] == position) {
+                last[2] += count;
+            } else {
+                mOperations.add(new int[]{CHANGE, position, count});
+            }
+        }
+        return this;
+    }
+
+    private EarthquakeListDiff change(int position) {
+        return change(position, 1);
+    }
+
+    private EarthquakeListDiff move(int from, int to) {
+        if (from != to) {
+            mOperations.add(new int[]{MOVE, from, to});
+        }
+        return this;
+    }
+
+    /**
+     * Return true if there are no updates.
+     */
+    public boolean isEmpty() {
+        return mOperations.isEmpty();
+    }
+
+    /**
+     * Apply the recorded updates to the adapter, in order. Must be called on the main thread,
+     * right after the adapter's data has been replaced.
+     */
+    public void dispatchTo(RecyclerView.Adapter<?> adapter) {
+        for (int[] operation : mOperations) {
+            switch (operation[0]) {
+                case INSERT:
+                    adapter.notifyItemRangeInserted(operation[1], operation[2]);
+                    break;
+                case REMOVE:
+                    adapter.notifyItemRangeRemoved(operation[1], operation[2]);
+                    break;
+                case MOVE:
+                    adapter.notifyItemMoved(operation[1], operation[2]);
+                    break;
+                case CHANGE:
+                    adapter.notifyItemRangeChanged(operation[1], operation[2]);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private int[] lastOperation() {
+        return mOperations.isEmpty() ? null : mOperations.get(mOperations.size() - 1);
+    }
+
+    private static int indexOfId(List<EarthquakeRow> rows, String id, int fromIndex) {
+        for (int i = fromIndex; i < rows.size(); i++) {
+            if (id.equals(idOf(rows.get(i)))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String idOf(EarthquakeRow row) {
+        return row.getId();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Live mode: while the list is visible, polls a small feed of the last hour's events and
+ * merges what changed into the {@link EarthquakeStore}, so the list follows an aftershock
+ * sequence without being reopened.
+ *
+ * Polls are conditional requests through the response cache, so an unchanged feed costs a
+ * 304 and no parsing; of a changed feed only new or revised events reach the store. Timing
+ * is left to a {@link LivePollPolicy}. Only holds the application context, so it can be
+ * retained across configuration changes.
+ */
+public class EarthquakeLiveUpdater {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeLiveUpdater.class.getSimpleName();
+
+    /** How far back the polled feed reaches; the planner serves this from a past-hour summary feed */
+    private static final long WINDOW_MILLIS = 60L * 60 * 1000;
+
+    /**
+     * Receives the changes merged by a poll, on the main thread.
+     */
+    public interface Listener {
+        void onLiveChanges(EarthquakeStore.MergeResult result);
+    }
+
+    private final Context mContext;
+    private final EarthquakeQuery mBaseQuery;
+    private final LivePollPolicy mPolicy = new LivePollPolicy(Clock.SYSTEM);
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private Listener mListener;
+
+    private final Runnable mPollRunnable = new Runnable() {
+        @Override
+        public void run() {
+            poll();
+        }
+    };
+
+    /**
+     * Constructor for the {@link EarthquakeLiveUpdater} class.
+     *
+     * @param baseQuery is the query of the displayed list (magnitude, region, ...); the time
+     *  window is replaced by the last hour.
+     */
+    public EarthquakeLiveUpdater(Context context, EarthquakeQuery baseQuery) {
+        this.mContext = context.getApplicationContext();
+        this.mBaseQuery = baseQuery;
+    }
+
+    public void setListener(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Start polling, e.g. when the list becomes visible. Polls at once if the last poll is old.
+     */
+    public void start() {
+        mPolicy.setVisible(true);
+        scheduleNextPoll();
+    }
+
+    /**
+     * Stop polling, e.g. when the list is hidden. A poll already running still finishes.
+     */
+    public void stop() {
+        mPolicy.setVisible(false);
+        mHandler.removeCallbacks(mPollRunnable);
+    }
+
+    private void scheduleNextPoll() {
+        mHandler.removeCallbacks(mPollRunnable);
+        long delay = mPolicy.getDelayUntilNextPoll();
+        if (delay >= 0L) {
+            mHandler.postDelayed(mPollRunnable, delay);
+        }
+    }
+
+    private void poll() {
+        if (!mPolicy.tryStartPoll()) {
+            scheduleNextPoll();
+            return;
+        }
+        new AsyncTask<Void, Void, EarthquakeStore.MergeResult>() {
+            @Override
+            protected EarthquakeStore.MergeResult doInBackground(Void... params) {
+                long now = System.currentTimeMillis();
+                EarthquakeQuery query = mBaseQuery.buildUpon()
+                        .startTime(now - WINDOW_MILLIS)
+                        .build();
+                try {
+                    List<Earthquake> changes = mPolicy.retainChanged(QueryUtils.fetchEarthquakes(query, now));
+                    if (changes.isEmpty()) {
+                        return null;
+                    }
+                    return EarthquakeStore.getInstance(mContext).mergeEarthquakes(changes,
+                            EarthquakeSyncEngine.getWindowStart(now));
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Live poll failed; trying again next time.", e);
+                    return null;
+                }
+            }
+
+            @Override
+            protected void onPostExecute(EarthquakeStore.MergeResult result) {
+                mPolicy.onPollFinished();
+                if (result != null && result.getChangeCount() > 0 && mListener != null) {
+                    mListener.onLiveChanges(result);
+                }
+                scheduleNextPoll();
+            }
+        }.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+}
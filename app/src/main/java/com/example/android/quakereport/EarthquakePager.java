@@ -0,0 +1,446 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Loads a large result set in fixed-size pages, on demand, keeping only a bounded window of
+ * pages in memory. The list asks for positions through {@link #getItem(int)}; the next page is
+ * requested as the user nears the end of what's loaded, and pages far from the visible
+ * position are evicted (and reloaded if the user scrolls back to them).
+ *
+ * Each page is turned into {@link EarthquakeRow} view-models as part of its background load,
+ * so the list only has to assign prepared values when it binds a row.
+ *
+ * All methods must be called on the main thread; pages are loaded on a background executor.
+ */
+public class EarthquakePager {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakePager.class.getSimpleName();
+
+    /** Default number of earthquakes per page */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+
+    /** Default number of pages kept in memory at once */
+    public static final int DEFAULT_MAX_RESIDENT_PAGES = 5;
+
+    /** How close (in rows) to the end of the loaded rows the next page is requested */
+    private static final int PREFETCH_DISTANCE = 15;
+
+    /**
+     * Source of pages. Called on a background thread.
+     */
+    public interface PageLoader {
+        /**
+         * Return up to {@code limit} earthquakes starting at the 0-based {@code offset}.
+         * Fewer than {@code limit} earthquakes means the end of the result set.
+         */
+        EarthquakeColumns loadPage(int offset, int limit) throws IOException;
+    }
+
+    /**
+     * Notified on the main thread when the loaded rows change.
+     */
+    public interface Listener {
+        /**
+         * Called after the rows have changed, with the updates to apply to the displayed list.
+         */
+        void onRowsChanged(EarthquakeListDiff diff);
+    }
+
+    private final Context mContext;
+    private final PageLoader mPageLoader;
+    private final int mPageSize;
+    private final int mMaxResidentPages;
+    private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /** Resident pages, by page index */
+    private final SparseArray<List<EarthquakeRow>> mPages = new SparseArray<>();
+
+    /** Pages with a load in flight */
+    private final Set<Integer> mLoadingPages = new HashSet<>();
+
+    /** Incremented on {@link #reset()}, so results of loads started before it are dropped */
+    private int mGeneration = 0;
+
+    /** Number of rows known to exist (loaded at some point) */
+    private int mKnownCount = 0;
+
+    /** Whether a short page has been seen, i.e. there are no rows after {@link #mKnownCount} */
+    private boolean mEndReached = false;
+
+    /** Page of the most recently requested position; eviction keeps pages around it */
+    private int mCurrentPage = 0;
+
+    private Listener mListener = null;
+
+    /**
+     * Constructor for the {@link EarthquakePager} class, with default page size and window.
+     */
+    public EarthquakePager(Context context, PageLoader pageLoader) {
+        this(context, pageLoader, DEFAULT_PAGE_SIZE, DEFAULT_MAX_RESIDENT_PAGES, AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    /**
+     * Constructor for the {@link EarthquakePager} class.
+     *
+     * @param context is used to resolve the strings and colors of the rows.
+     * @param pageLoader is the source of pages.
+     * @param pageSize is the number of earthquakes per page.
+     * @param maxResidentPages is the number of pages kept in memory at once; at least 2.
+     * @param executor runs the page loads.
+     */
+    public EarthquakePager(Context context, PageLoader pageLoader, int pageSize, int maxResidentPages,
+                           Executor executor) {
+        if (pageSize <= 0 || maxResidentPages < 2) {
+            throw new IllegalArgumentException("pageSize must be positive and maxResidentPages at least 2");
+        }
+        this.mContext = context.getApplicationContext();
+        this.mPageLoader = pageLoader;
+        this.mPageSize = pageSize;
+        this.mMaxResidentPages = maxResidentPages;
+        this.mExecutor = executor;
+    }
+
+    public void setListener(Listener listener) {
+        this.mListener = listener;
+    }
+
+    /**
+     * Drop all pages and start again from the first page.
+     */
+    public void reset() {
+        int oldCount = mKnownCount;
+        mGeneration++;
+        mPages.clear();
+        mLoadingPages.clear();
+        mKnownCount = 0;
+        mEndReached = false;
+        mCurrentPage = 0;
+        notifyRowsChanged(new EarthquakeListDiff().remove(0, oldCount));
+        requestPage(0);
+    }
+
+    /**
+     * Reload the resident pages after the underlying data changed, keeping the current rows on
+     * screen until the new ones are ready. The new rows are compared with the old ones by event id
+     * on the background executor, so only rows that were inserted, removed, moved or changed are
+     * updated in the list. Pages that were still loading are requested again once it's done.
+     */
+    public void refresh() {
+        // Find the run of resident pages around the current page
+        int firstPage = mCurrentPage;
+        int lastPage = mCurrentPage;
+        if (mPages.get(mCurrentPage) == null) {
+            reset();
+            return;
+        }
+        while (mPages.get(firstPage - 1) != null) {
+            firstPage--;
+        }
+        while (mPages.get(lastPage + 1) != null) {
+            lastPage++;
+        }
+
+        final List<EarthquakeRow> oldRows = new ArrayList<>();
+        for (int page = firstPage; page <= lastPage; page++) {
+            oldRows.addAll(mPages.get(page));
+        }
+
+        // Loads started before now reflect stale data; they are requested again after the refresh
+        final List<Integer> pendingPages = new ArrayList<>(mLoadingPages);
+        mGeneration++;
+        mLoadingPages.clear();
+
+        final int generation = mGeneration;
+        final int windowFirstPage = firstPage;
+        final int windowOffset = firstPage * mPageSize;
+        final int windowLimit = (lastPage - firstPage + 1) * mPageSize;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<EarthquakeRow> newRows = null;
+                EarthquakeListDiff diff = null;
+                try {
+                    EarthquakeColumns earthquakes = mPageLoader.loadPage(windowOffset, windowLimit);
+                    newRows = new EarthquakeRowFormatter(mContext).formatAll(earthquakes);
+                    diff = EarthquakeListDiff.calculate(oldRows, newRows, windowOffset);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem refreshing pages", e);
+                }
+                final List<EarthquakeRow> refreshedRows = newRows;
+                final EarthquakeListDiff refreshDiff = diff;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRefreshResult(generation, windowFirstPage, windowLimit, oldRows.size(),
+                                refreshedRows, refreshDiff, pendingPages);
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Show previously saved rows (e.g. from an {@link EarthquakeSnapshot}) right away, before any
+     * page has loaded. Unless the rows are the complete result set, only whole pages are used, so
+     * the next page loads from the right offset. Call {@link #refresh()} afterwards to reconcile
+     * them with the current data.
+     *
+     * @param rows are the saved rows from the top of the list.
+     * @param complete is true if the rows are the complete result set.
+     * @return true if rows were shown; false if the pager already has rows or loads in flight.
+     */
+    public boolean seed(List<EarthquakeRow> rows, boolean complete) {
+        if (mKnownCount > 0 || mPages.size() > 0 || !mLoadingPages.isEmpty()) {
+            return false;
+        }
+        int usableRows = complete ? rows.size() : rows.size() - rows.size() % mPageSize;
+        int pageCount = Math.min((usableRows + mPageSize - 1) / mPageSize, mMaxResidentPages);
+        usableRows = Math.min(usableRows, pageCount * mPageSize);
+        if (usableRows == 0 && !complete) {
+            return false;
+        }
+
+        for (int start = 0; start < usableRows; start += mPageSize) {
+            int end = Math.min(start + mPageSize, usableRows);
+            mPages.put(start / mPageSize, new ArrayList<>(rows.subList(start, end)));
+        }
+        if (usableRows == 0) {
+            mPages.put(0, new ArrayList<EarthquakeRow>());
+        }
+        mKnownCount = usableRows;
+        mEndReached = complete && usableRows == rows.size();
+        mCurrentPage = 0;
+        notifyRowsChanged(new EarthquakeListDiff().insert(0, usableRows));
+        return true;
+    }
+
+    /**
+     * Return the loaded rows from the top of the list, up to {@code maxRows}, stopping at the
+     * first page that isn't resident.
+     */
+    public List<EarthquakeRow> getLeadingRows(int maxRows) {
+        List<EarthquakeRow> rows = new ArrayList<>();
+        for (int pageIndex = 0; rows.size() < maxRows; pageIndex++) {
+            List<EarthquakeRow> page = mPages.get(pageIndex);
+            if (page == null) {
+                break;
+            }
+            rows.addAll(page.subList(0, Math.min(page.size(), maxRows - rows.size())));
+            if (page.size() < mPageSize) {
+                break;
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Return true if the last row of the result set has been loaded, i.e. {@link #getCount()} is final.
+     */
+    public boolean isEndReached() {
+        return mEndReached;
+    }
+
+    /**
+     * Return the number of rows known so far. Grows as pages load.
+     */
+    public int getCount() {
+        return mKnownCount;
+    }
+
+    /**
+     * Return the row at a position, or null if its page isn't resident yet (it is then
+     * requested). Also triggers loading of the next page when the position is near the end.
+     */
+    public EarthquakeRow getItem(int position) {
+        int pageIndex = position / mPageSize;
+        mCurrentPage = pageIndex;
+
+        // Load ahead when we're near the end of the loaded rows
+        if (!mEndReached && position >= mKnownCount - PREFETCH_DISTANCE) {
+            requestPage((mKnownCount + mPageSize - 1) / mPageSize);
+        }
+
+        List<EarthquakeRow> page = mPages.get(pageIndex);
+        if (page == null) {
+            // Evicted earlier; bring it back
+            requestPage(pageIndex);
+            return null;
+        }
+        int indexInPage = position % mPageSize;
+        return indexInPage < page.size() ? page.get(indexInPage) : null;
+    }
+
+    /**
+     * Return the row at a position if its page is resident, or null. Unlike
+     * {@link #getItem(int)}, never loads anything.
+     */
+    public EarthquakeRow peekItem(int position) {
+        List<EarthquakeRow> page = mPages.get(position / mPageSize);
+        int indexInPage = position % mPageSize;
+        return page != null && indexInPage < page.size() ? page.get(indexInPage) : null;
+    }
+
+    private void requestPage(final int pageIndex) {
+        if (mPages.get(pageIndex) != null || mLoadingPages.contains(pageIndex)) {
+            return;
+        }
+        mLoadingPages.add(pageIndex);
+
+        final int generation = mGeneration;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                List<EarthquakeRow> page = null;
+                try {
+                    EarthquakeColumns earthquakes = mPageLoader.loadPage(pageIndex * mPageSize, mPageSize);
+                    // Format the whole page here, off the UI thread
+                    page = new EarthquakeRowFormatter(mContext).formatAll(earthquakes);
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Problem loading page " + pageIndex, e);
+                }
+                final List<EarthquakeRow> loadedPage = page;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPageResult(generation, pageIndex, loadedPage);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPageResult(int generation, int pageIndex, List<EarthquakeRow> page) {
+        if (generation != mGeneration) {
+            // Started before a reset or refresh; the data it reflects is stale
+            return;
+        }
+        mLoadingPages.remove(pageIndex);
+        if (page == null) {
+            return;
+        }
+
+        int oldCount = mKnownCount;
+        int pageStart = pageIndex * mPageSize;
+        mPages.put(pageIndex, page);
+        if (page.size() < mPageSize) {
+            mEndReached = true;
+            mKnownCount = pageStart + page.size();
+        } else {
+            mKnownCount = Math.max(mKnownCount, pageStart + mPageSize);
+        }
+        evictDistantPages();
+
+        // Rows that were already counted (shown as placeholders) changed; the rest were added or dropped
+        EarthquakeListDiff diff = new EarthquakeListDiff()
+                .change(pageStart, Math.min(pageStart + page.size(), Math.min(oldCount, mKnownCount)) - pageStart);
+        if (mKnownCount > oldCount) {
+            diff.insert(oldCount, mKnownCount - oldCount);
+        } else {
+            diff.remove(mKnownCount, oldCount - mKnownCount);
+        }
+        notifyRowsChanged(diff);
+    }
+
+    private void onRefreshResult(int generation, int firstPage, int limit, int oldWindowSize,
+                                 List<EarthquakeRow> newRows, EarthquakeListDiff diff, List<Integer> pendingPages) {
+        if (generation != mGeneration) {
+            return;
+        }
+        if (newRows == null) {
+            requestPendingPages(pendingPages);
+            return;
+        }
+
+        // Split the refreshed rows back into pages, replacing the old window
+        int windowOffset = firstPage * mPageSize;
+        int oldWindowPages = (oldWindowSize + mPageSize - 1) / mPageSize;
+        for (int page = firstPage; page < firstPage + Math.max(oldWindowPages, 1); page++) {
+            mPages.remove(page);
+        }
+        for (int start = 0; start < newRows.size(); start += mPageSize) {
+            int end = Math.min(start + mPageSize, newRows.size());
+            mPages.put(firstPage + start / mPageSize, new ArrayList<>(newRows.subList(start, end)));
+        }
+        if (newRows.isEmpty()) {
+            mPages.put(firstPage, new ArrayList<EarthquakeRow>());
+        }
+
+        // Rows beyond the window shifted by the size change; pages there are stale
+        int oldCount = mKnownCount;
+        int countAfterDiff = oldCount + newRows.size() - oldWindowSize;
+        for (int i = mPages.size() - 1; i >= 0; i--) {
+            if (mPages.keyAt(i) * mPageSize >= windowOffset + limit) {
+                mPages.removeAt(i);
+            }
+        }
+        if (newRows.size() < limit) {
+            mEndReached = true;
+            mKnownCount = windowOffset + newRows.size();
+        } else {
+            mEndReached = false;
+            mKnownCount = countAfterDiff;
+        }
+
+        // Reconcile the tail so the adapter's count matches ours
+        if (mKnownCount < countAfterDiff) {
+            diff.remove(mKnownCount, countAfterDiff - mKnownCount);
+        } else {
+            diff.insert(countAfterDiff, mKnownCount - countAfterDiff);
+        }
+        notifyRowsChanged(diff);
+        requestPendingPages(pendingPages);
+    }
+
+    /**
+     * Request the pages whose loads a refresh dropped, so their placeholder rows get filled.
+     * Pages that no longer hold known rows are left out, except the next page when the end of
+     * the list hasn't been seen.
+     */
+    private void requestPendingPages(List<Integer> pendingPages) {
+        int nextPage = (mKnownCount + mPageSize - 1) / mPageSize;
+        for (int pageIndex : pendingPages) {
+            if (pageIndex * mPageSize < mKnownCount || (!mEndReached && pageIndex == nextPage)) {
+                requestPage(pageIndex);
+            }
+        }
+    }
+
+    private void notifyRowsChanged(EarthquakeListDiff diff) {
+        if (mListener != null && !diff.isEmpty()) {
+            mListener.onRowsChanged(diff);
+        }
+    }
+
+    /**
+     * Drop the pages furthest from the current page until the window fits.
+     */
+    private void evictDistantPages() {
+        while (mPages.size() > mMaxResidentPages) {
+            int furthestIndex = 0;
+            int furthestDistance = -1;
+            for (int i = 0; i < mPages.size(); i++) {
+                int distance = Math.abs(mPages.keyAt(i) - mCurrentPage);
+                if (distance > furthestDistance) {
+                    furthestDistance = distance;
+                    furthestIndex = i;
+                }
+            }
+            mPages.removeAt(furthestIndex);
+        }
+    }
+}
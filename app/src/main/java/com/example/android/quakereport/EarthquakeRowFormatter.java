@@ -0,0 +1,124 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.support.v4.content.ContextCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Turns {@link Earthquake} objects into {@link EarthquakeRow} view-models.
+ *
+ * The text comes from an {@link EarthquakeFormatter}; the "Near the" string and the magnitude
+ * colors are resolved once per formatter and reused for every row. The formats aren't
+ * thread-safe, so each background load should use its own formatter.
+ */
+public class EarthquakeRowFormatter {
+
+    /** Number of magnitude buckets: 0 (below 1) up to 10 (10 and above) */
+    public static final int MAGNITUDE_BUCKET_COUNT = 11;
+
+    /**
+     * Magnitude circle color resources, indexed by {@link #magnitudeBucket(double)}
+     * (10 and above share the last)
+     */
+    private static final int[] MAGNITUDE_COLOR_RESOURCE_IDS = {
+            R.color.magnitude1,
+            R.color.magnitude1,
+            R.color.magnitude2,
+            R.color.magnitude3,
+            R.color.magnitude4,
+            R.color.magnitude5,
+            R.color.magnitude6,
+            R.color.magnitude7,
+            R.color.magnitude8,
+            R.color.magnitude9,
+            R.color.magnitude10plus
+    };
+
+    /** Formats the magnitude, date, time and location text */
+    private final EarthquakeFormatter mFormatter;
+
+    /** Resolved magnitude circle colors, indexed like {@link #MAGNITUDE_COLOR_RESOURCE_IDS} */
+    private final int[] mMagnitudeColors = new int[MAGNITUDE_COLOR_RESOURCE_IDS.length];
+
+    public EarthquakeRowFormatter(Context context) {
+        for (int i = 0; i < MAGNITUDE_COLOR_RESOURCE_IDS.length; i++) {
+            mMagnitudeColors[i] = ContextCompat.getColor(context, MAGNITUDE_COLOR_RESOURCE_IDS[i]);
+        }
+        mFormatter = new EarthquakeFormatter(context.getString(R.string.near_the));
+    }
+
+    /**
+     * Return the integer magnitude bucket of a magnitude, clamped to [0, {@link #MAGNITUDE_BUCKET_COUNT}).
+     * Each bucket has its own circle color; the summary statistics count events per bucket too.
+     */
+    public static int magnitudeBucket(double magnitude) {
+        int bucket = (int) magnitude;
+        if (bucket < 0) {
+            return 0;
+        }
+        return Math.min(bucket, MAGNITUDE_BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Return the view-model for an earthquake.
+     */
+    public EarthquakeRow format(Earthquake earthquake) {
+        return format(earthquake.getId(), earthquake.getUrl(), earthquake.getMagnitude(),
+                earthquake.getLocation(), earthquake.getTimeInMilliseconds());
+    }
+
+    /**
+     * Return the view-model for one row of a column set, without creating an {@link Earthquake}.
+     */
+    public EarthquakeRow format(EarthquakeColumns columns, int index) {
+        return format(columns.getId(index), columns.getUrl(index), columns.getMagnitude(index),
+                columns.getLocation(index), columns.getTimeInMilliseconds(index));
+    }
+
+    /**
+     * Return the view-models for a list of earthquakes, in the same order.
+     */
+    public List<EarthquakeRow> formatAll(List<Earthquake> earthquakes) {
+        List<EarthquakeRow> rows = new ArrayList<>(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            rows.add(format(earthquake));
+        }
+        return rows;
+    }
+
+    /**
+     * Return the view-models for all rows of a column set, in the same order.
+     */
+    public List<EarthquakeRow> formatAll(EarthquakeColumns columns) {
+        int size = columns.size();
+        List<EarthquakeRow> rows = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            rows.add(format(columns, i));
+        }
+        return rows;
+    }
+
+    private EarthquakeRow format(String id, String url, double magnitude, String rawLocation,
+                                 long timeInMilliseconds) {
+        String location = rawLocation != null ? rawLocation : "";
+        // Find the offset language (for example, "87 km NNE of") once, and split on it.
+        int separatorIndex = EarthquakeFormatter.findLocationSeparator(location);
+
+        return new EarthquakeRow(id, url,
+                mFormatter.formatMagnitude(magnitude),
+                mFormatter.formatLocationOffset(location, separatorIndex),
+                EarthquakeFormatter.formatPrimaryLocation(location, separatorIndex),
+                mFormatter.formatDate(timeInMilliseconds),
+                mFormatter.formatTime(timeInMilliseconds),
+                getMagnitudeColor(magnitude));
+    }
+
+    /**
+     * Return the resolved magnitude circle color for a magnitude.
+     */
+    public int getMagnitudeColor(double magnitude) {
+        return mMagnitudeColors[magnitudeBucket(magnitude)];
+    }
+}
@@ -0,0 +1,367 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_DEPTH;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_EVENT_ID;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_KEY;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_LATITUDE;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_LONGITUDE;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_MAGNITUDE;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_PLACE;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_TIME;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_UPDATED;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_URL;
+import static com.example.android.quakereport.EarthquakeDbHelper.COLUMN_VALUE;
+import static com.example.android.quakereport.EarthquakeDbHelper.TABLE_EARTHQUAKES;
+import static com.example.android.quakereport.EarthquakeDbHelper.TABLE_SYNC_STATE;
+
+/**
+ * Local store of earthquake events, keyed by USGS event id.
+ * Results from {@link QueryUtils} are merged here, and the screen reads from here: through an
+ * in-memory {@link EarthquakeIndex} that every merge keeps in step with the table, so the list
+ * can be re-sorted and re-filtered without a query.
+ */
+public class EarthquakeStore {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeStore.class.getSimpleName();
+
+    /** Single instance shared by the app, so all access goes through one SQLiteOpenHelper */
+    private static EarthquakeStore sInstance = null;
+
+    /** Counts of the rows changed by {@link #mergeEarthquakes(List, long)}; set by the store only */
+    public static class MergeResult {
+        private int mInserted = 0;
+        private int mUpdated = 0;
+        private int mDeleted = 0;
+        private int mPruned = 0;
+        private double mLargestMagnitude = Double.NaN;
+        private long mLargestMagnitudeTime = 0L;
+
+        public int getInserted() {
+            return mInserted;
+        }
+
+        public int getUpdated() {
+            return mUpdated;
+        }
+
+        public int getDeleted() {
+            return mDeleted;
+        }
+
+        /**
+         * Return the number of events dropped for falling out of the sync window; not a change
+         * made by USGS.
+         */
+        public int getPruned() {
+            return mPruned;
+        }
+
+        /**
+         * Return the largest magnitude among the inserted and updated events, or NaN if there
+         * were none.
+         */
+        public double getLargestMagnitude() {
+            return mLargestMagnitude;
+        }
+
+        /** Return when the event with the largest magnitude happened, in milliseconds from the Epoch */
+        public long getLargestMagnitudeTime() {
+            return mLargestMagnitudeTime;
+        }
+
+        /** Return the number of events inserted, updated or deleted */
+        public int getChangeCount() {
+            return mInserted + mUpdated + mDeleted;
+        }
+
+        void recordMagnitude(Earthquake earthquake) {
+            if (Double.isNaN(mLargestMagnitude) || earthquake.getMagnitude() > mLargestMagnitude) {
+                mLargestMagnitude = earthquake.getMagnitude();
+                mLargestMagnitudeTime = earthquake.getTimeInMilliseconds();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return mInserted + " inserted, " + mUpdated + " updated, " + mDeleted + " deleted, " + mPruned + " pruned";
+        }
+    }
+
+    private final EarthquakeDbHelper mDbHelper;
+
+    /** Built from the table on first use, then updated by every merge; guarded by this */
+    private EarthquakeIndex mIndex = null;
+
+    /** Built with the index and updated with it; volatile so the summary is read without the lock */
+    private volatile EarthquakeAggregator mAggregator = null;
+
+    /** Use {@link #getInstance(Context)}; tests create their own */
+    EarthquakeStore(Context context) {
+        mDbHelper = new EarthquakeDbHelper(context.getApplicationContext());
+    }
+
+    /**
+     * Return the shared {@link EarthquakeStore}, creating it if needed.
+     */
+    public static synchronized EarthquakeStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new EarthquakeStore(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Merge a batch of new or revised earthquakes into the store, in a single transaction.
+     * A stored event is only replaced by a strictly newer revision, so an older copy arriving
+     * late can't undo a magnitude update, and the same revision delivered again isn't counted
+     * as an update. Events USGS reports as deleted are removed, unless the stored copy is newer
+     * than the deletion, and so are events that happened before the sync window, which no sync
+     * would revise any more. Events without an id are skipped.
+     *
+     * @param windowStartMillis is the start of the sync window, in milliseconds from the Epoch.
+     * @return counts of the rows inserted, updated, deleted and pruned.
+     */
+    public MergeResult mergeEarthquakes(List<Earthquake> earthquakes, long windowStartMillis) {
+        MergeResult result = new MergeResult();
+        if (earthquakes == null) {
+            // Nothing new, but the window may still have moved
+            earthquakes = Collections.emptyList();
+        }
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        SQLiteStatement insert = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_EARTHQUAKES + " ("
+                + COLUMN_EVENT_ID + ", " + COLUMN_MAGNITUDE + ", " + COLUMN_PLACE + ", "
+                + COLUMN_TIME + ", " + COLUMN_UPDATED + ", " + COLUMN_URL + ", "
+                + COLUMN_LATITUDE + ", " + COLUMN_LONGITUDE + ", " + COLUMN_DEPTH
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement update = db.compileStatement("UPDATE " + TABLE_EARTHQUAKES + " SET "
+                + COLUMN_MAGNITUDE + " = ?, " + COLUMN_PLACE + " = ?, " + COLUMN_TIME + " = ?, "
+                + COLUMN_UPDATED + " = ?, " + COLUMN_URL + " = ?, " + COLUMN_LATITUDE + " = ?, "
+                + COLUMN_LONGITUDE + " = ?, " + COLUMN_DEPTH + " = ? WHERE "
+                + COLUMN_EVENT_ID + " = ? AND " + COLUMN_UPDATED + " < ?");
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_EARTHQUAKES + " WHERE "
+                + COLUMN_EVENT_ID + " = ? AND " + COLUMN_UPDATED + " <= ?");
+        SQLiteStatement prune = db.compileStatement("DELETE FROM " + TABLE_EARTHQUAKES + " WHERE "
+                + COLUMN_TIME + " < ?");
+        // The changes the table took, in order, for the index and aggregator to apply
+        List<Earthquake> applied = new ArrayList<>();
+        db.beginTransaction();
+        try {
+            for (Earthquake earthquake : earthquakes) {
+                if (earthquake.getId() == null) {
+                    continue;
+                }
+
+                if (earthquake.isDeleted()) {
+                    // Unless the stored event was revised after the deletion
+                    delete.clearBindings();
+                    delete.bindString(1, earthquake.getId());
+                    delete.bindLong(2, earthquake.getUpdatedInMilliseconds());
+                    if (delete.executeUpdateDelete() > 0) {
+                        result.mDeleted++;
+                        applied.add(earthquake);
+                    }
+                    continue;
+                }
+
+                bindEarthquake(insert, earthquake);
+                if (insert.executeInsert() != -1) {
+                    result.mInserted++;
+                    result.recordMagnitude(earthquake);
+                    applied.add(earthquake);
+                    continue;
+                }
+
+                // Already stored; apply the revision if it's newer than what we have
+                update.clearBindings();
+                update.bindDouble(1, earthquake.getMagnitude());
+                bindStringOrNull(update, 2, earthquake.getLocation());
+                update.bindLong(3, earthquake.getTimeInMilliseconds());
+                update.bindLong(4, earthquake.getUpdatedInMilliseconds());
+                bindStringOrNull(update, 5, earthquake.getUrl());
+                bindDoubleOrNull(update, 6, earthquake.getLatitude());
+                bindDoubleOrNull(update, 7, earthquake.getLongitude());
+                bindDoubleOrNull(update, 8, earthquake.getDepthKm());
+                update.bindString(9, earthquake.getId());
+                update.bindLong(10, earthquake.getUpdatedInMilliseconds());
+                if (update.executeUpdateDelete() > 0) {
+                    result.mUpdated++;
+                    result.recordMagnitude(earthquake);
+                    applied.add(earthquake);
+                }
+            }
+
+            prune.bindLong(1, windowStartMillis);
+            result.mPruned = prune.executeUpdateDelete();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+            update.close();
+            delete.close();
+            prune.close();
+        }
+
+        // Once the rows are committed, so an index built concurrently can't miss them. Only the
+        // changes the table took, so the index and aggregator can't drift from it.
+        synchronized (this) {
+            if (mIndex != null) {
+                mIndex.merge(applied);
+                mIndex.prune(windowStartMillis);
+                mAggregator.merge(applied);
+                mAggregator.prune(windowStartMillis);
+            }
+        }
+
+        Log.v(LOG_TAG, "Merged earthquakes: " + result);
+        return result;
+    }
+
+    /**
+     * Return the index over all stored earthquakes, loading it from the table the first time.
+     * Call it on a background thread.
+     */
+    public synchronized EarthquakeIndex getIndex() {
+        if (mIndex == null) {
+            // Every row: no magnitude is that low
+            List<Earthquake> earthquakes = queryEarthquakeColumns(-10.0, 0L, 0, 0).toList();
+            EarthquakeIndex index = new EarthquakeIndex();
+            index.merge(earthquakes);
+            EarthquakeAggregator aggregator = new EarthquakeAggregator();
+            aggregator.merge(earthquakes);
+            mIndex = index;
+            mAggregator = aggregator;
+        }
+        return mIndex;
+    }
+
+    /**
+     * Return the summary statistics of all stored earthquakes, or null until {@link #getIndex()}
+     * has loaded them. Never blocks, so it can be called on the main thread.
+     */
+    public EarthquakeAggregator.Snapshot getSummary() {
+        EarthquakeAggregator aggregator = mAggregator;
+        return aggregator != null ? aggregator.getSnapshot() : null;
+    }
+
+    /**
+     * Return one page of stored earthquakes, newest first, read straight into a compact
+     * {@link EarthquakeColumns} set without creating an {@link Earthquake} per row.
+     *
+     * @param minMagnitude is the smallest magnitude to include.
+     * @param startTimeMillis is the earliest event time to include, in milliseconds from the Epoch.
+     * @param limit is the maximum number of earthquakes to return; 0 for no limit.
+     * @param offset is the number of matching earthquakes to skip; only applied with a limit.
+     */
+    public EarthquakeColumns queryEarthquakeColumns(double minMagnitude, long startTimeMillis, int limit, int offset) {
+        Cursor cursor = queryEarthquakeCursor(minMagnitude, startTimeMillis, limit, offset);
+        try {
+            EarthquakeColumns columns = new EarthquakeColumns(cursor.getCount());
+            while (cursor.moveToNext()) {
+                columns.add(
+                        cursor.getString(0),
+                        cursor.getDouble(1),
+                        cursor.getString(2),
+                        cursor.getLong(3),
+                        cursor.getLong(4),
+                        cursor.getString(5),
+                        false,
+                        getDoubleOrNaN(cursor, 6),
+                        getDoubleOrNaN(cursor, 7),
+                        getDoubleOrNaN(cursor, 8));
+            }
+            return columns;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private Cursor queryEarthquakeCursor(double minMagnitude, long startTimeMillis, int limit, int offset) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        return db.query(TABLE_EARTHQUAKES,
+                new String[]{COLUMN_EVENT_ID, COLUMN_MAGNITUDE, COLUMN_PLACE, COLUMN_TIME, COLUMN_UPDATED, COLUMN_URL,
+                        COLUMN_LATITUDE, COLUMN_LONGITUDE, COLUMN_DEPTH},
+                COLUMN_MAGNITUDE + " >= ? AND " + COLUMN_TIME + " >= ?",
+                new String[]{String.valueOf(minMagnitude), String.valueOf(startTimeMillis)},
+                null, null,
+                COLUMN_TIME + " DESC",
+                limit > 0 ? offset + "," + limit : null);
+    }
+
+    /**
+     * Return a bookkeeping value previously saved with {@link #putLong(String, long)}.
+     */
+    public long getLong(String key, long defaultValue) {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        Cursor cursor = db.query(TABLE_SYNC_STATE, new String[]{COLUMN_VALUE},
+                COLUMN_KEY + " = ?", new String[]{key}, null, null, null);
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                return Long.parseLong(cursor.getString(0));
+            }
+        } catch (NumberFormatException e) {
+            Log.e(LOG_TAG, "Stored value for " + key + " is not a number.", e);
+        } finally {
+            cursor.close();
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Save a bookkeeping value, such as the time of the last refresh.
+     */
+    public void putLong(String key, long value) {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.execSQL("INSERT OR REPLACE INTO " + TABLE_SYNC_STATE + " (" + COLUMN_KEY + ", " + COLUMN_VALUE
+                + ") VALUES (?, ?)", new Object[]{key, String.valueOf(value)});
+    }
+
+    /**
+     * Bind an earthquake to an insert statement whose columns are
+     * (event id, magnitude, place, time, updated, url, latitude, longitude, depth).
+     */
+    private static void bindEarthquake(SQLiteStatement statement, Earthquake earthquake) {
+        statement.clearBindings();
+        statement.bindString(1, earthquake.getId());
+        statement.bindDouble(2, earthquake.getMagnitude());
+        bindStringOrNull(statement, 3, earthquake.getLocation());
+        statement.bindLong(4, earthquake.getTimeInMilliseconds());
+        statement.bindLong(5, earthquake.getUpdatedInMilliseconds());
+        bindStringOrNull(statement, 6, earthquake.getUrl());
+        bindDoubleOrNull(statement, 7, earthquake.getLatitude());
+        bindDoubleOrNull(statement, 8, earthquake.getLongitude());
+        bindDoubleOrNull(statement, 9, earthquake.getDepthKm());
+    }
+
+    /** Unknown coordinates (NaN) are stored as NULL */
+    private static void bindDoubleOrNull(SQLiteStatement statement, int index, double value) {
+        if (Double.isNaN(value)) {
+            statement.bindNull(index);
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+
+    private static double getDoubleOrNaN(Cursor cursor, int index) {
+        return cursor.isNull(index) ? Double.NaN : cursor.getDouble(index);
+    }
+
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.android.quakereport;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the {@link EarthquakeStore} up to date with USGS by fetching only the events created,
+ * revised or deleted since the last successful sync (the "high-water mark"), rather than
+ * downloading the whole result window every time.
+ */
+public class EarthquakeSyncEngine {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeSyncEngine.class.getSimpleName();
+
+    /** Key in the store for the latest "updated" time seen from USGS */
+    static final String KEY_HIGH_WATER_MARK = "sync_high_water_mark";
+
+    /** Key in the store for the wall-clock time of the last successful sync */
+    static final String KEY_LAST_SYNC = "sync_last_success";
+
+    /**
+     * How far back the first sync reaches. USGS revisions trickle in for a while after an event,
+     * so later syncs also ask for revisions to anything in this window.
+     */
+    private static final long INITIAL_WINDOW_MILLIS = 30L * 24 * 60 * 60 * 1000;
+
+    /** The window start is rounded down to this, so repeated syncs build identical queries */
+    private static final long WINDOW_GRANULARITY_MILLIS = 24L * 60 * 60 * 1000;
+
+    /** Held for the whole of a sync, so the foreground loader and the background service never overlap */
+    private static final ReentrantLock sSyncLock = new ReentrantLock();
+
+    /** Base FDSN query; the time parameters are added per sync */
+    private final EarthquakeQuery mBaseQuery;
+
+    private final EarthquakeStore mStore;
+
+    /**
+     * Constructor for the {@link EarthquakeSyncEngine} class.
+     *
+     * @param store is the local store to merge results into.
+     * @param baseQuery is the FDSN query (format, event type, magnitude filters); its time
+     *  window and ordering are replaced on every sync.
+     */
+    public EarthquakeSyncEngine(EarthquakeStore store, EarthquakeQuery baseQuery) {
+        this.mStore = store;
+        this.mBaseQuery = baseQuery;
+    }
+
+    /**
+     * Fetch and merge everything that changed since the last successful sync.
+     *
+     * @param now is the current time in milliseconds from the Epoch.
+     * @return the merge counts, or null if the fetch failed (the high-water mark is left alone).
+     */
+    public EarthquakeStore.MergeResult sync(long now) {
+        sSyncLock.lock();
+        try {
+            return syncLocked(now);
+        } finally {
+            sSyncLock.unlock();
+        }
+    }
+
+    /**
+     * Sync unless the last successful sync is less than {@code maxAgeMillis} old. A caller that
+     * arrives while another sync runs waits for it, and then usually finds the data fresh.
+     *
+     * @return the merge counts, or null if the data was fresh or the fetch failed.
+     */
+    public EarthquakeStore.MergeResult syncIfStale(Clock clock, long maxAgeMillis) {
+        sSyncLock.lock();
+        try {
+            // Read the time once the lock is held, so a sync that just finished counts
+            long now = clock.currentTimeMillis();
+            long age = now - getLastSyncTime();
+            if (age >= 0 && age <= maxAgeMillis) {
+                Log.v(LOG_TAG, "Stored earthquakes are fresh (" + age + " ms old), skipping the network.");
+                return null;
+            }
+            return syncLocked(now);
+        } finally {
+            sSyncLock.unlock();
+        }
+    }
+
+    private EarthquakeStore.MergeResult syncLocked(long now) {
+        long highWaterMark = mStore.getLong(KEY_HIGH_WATER_MARK, 0L);
+
+        List<Earthquake> changes;
+        try {
+            changes = fetchChanges(highWaterMark, now);
+            if (changes == null) {
+                return null;
+            }
+        } catch (IOException e) {
+            // Including a StaleResultException: a cached copy served while USGS is down is
+            // neither merged nor recorded as a sync
+            Log.e(LOG_TAG, "Sync failed; will retry from the same high-water mark.", e);
+            return null;
+        }
+
+        EarthquakeStore.MergeResult result = mStore.mergeEarthquakes(changes, getWindowStart(now));
+
+        // Only advance past revisions we've actually merged
+        long newHighWaterMark = highWaterMark;
+        for (Earthquake earthquake : changes) {
+            newHighWaterMark = Math.max(newHighWaterMark, earthquake.getUpdatedInMilliseconds());
+        }
+        if (newHighWaterMark == 0L) {
+            // An empty window: nothing to take the mark from, but the next sync still only
+            // needs what changes from now on rather than the whole window again
+            newHighWaterMark = now;
+        }
+        mStore.putLong(KEY_HIGH_WATER_MARK, newHighWaterMark);
+        mStore.putLong(KEY_LAST_SYNC, now);
+
+        Log.v(LOG_TAG, "Sync complete (" + changes.size() + " changes): " + result);
+        return result;
+    }
+
+    /**
+     * Fetch the events that changed since the high-water mark, or the whole window on the first
+     * sync. Overridden by tests to swap the request.
+     *
+     * @return the changes, or null if the query can't be built.
+     */
+    List<Earthquake> fetchChanges(long highWaterMark, long now) throws IOException {
+        if (highWaterMark > 0L) {
+            URL url = QueryUtils.formatURL(buildSyncQuery(highWaterMark, now).toUrl());
+            if (url == null) {
+                return null;
+            }
+            return applyMagnitudeFloor(QueryUtils.fetchEarthquakes(url));
+        }
+        // The first sync downloads the whole window; fetch it as parallel time shards
+        return new ShardedEarthquakeFetcher(mBaseQuery).fetch(getWindowStart(now), now);
+    }
+
+    /**
+     * Return the wall-clock time of the last successful sync, or 0 if there hasn't been one.
+     */
+    public long getLastSyncTime() {
+        return mStore.getLong(KEY_LAST_SYNC, 0L);
+    }
+
+    /**
+     * Build the query for a sync. The first sync fetches the initial window; after that only
+     * events updated after the high-water mark are requested, including deleted ones so they
+     * can be removed locally. The later syncs drop the magnitude floor: an event revised below
+     * it would otherwise no longer be sent, and would stay stored with its old magnitude.
+     * {@link #applyMagnitudeFloor(List)} applies the floor locally instead.
+     */
+    EarthquakeQuery buildSyncQuery(long highWaterMark, long now) {
+        EarthquakeQuery.Builder builder = mBaseQuery.buildUpon()
+                .startTime(getWindowStart(now))
+                .orderBy(EarthquakeQuery.OrderBy.TIME);
+        if (highWaterMark > 0L) {
+            // "updatedafter" is exclusive, so an event updated exactly at the mark isn't sent twice
+            builder.updatedAfter(highWaterMark)
+                    .includeDeleted(true)
+                    .anyMinMagnitude();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Return the changes with every event below the base query's magnitude floor turned into
+     * a deletion, so a stored event revised below the floor is removed, and one that was never
+     * stored is ignored.
+     */
+    List<Earthquake> applyMagnitudeFloor(List<Earthquake> changes) {
+        double minMagnitude = mBaseQuery.getNumberParameter("minmagnitude", Double.NEGATIVE_INFINITY);
+        List<Earthquake> floored = new ArrayList<>(changes.size());
+        for (Earthquake earthquake : changes) {
+            if (!earthquake.isDeleted() && !(earthquake.getMagnitude() >= minMagnitude)) {
+                earthquake = new Earthquake(earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocation(),
+                        earthquake.getTimeInMilliseconds(), earthquake.getUpdatedInMilliseconds(),
+                        earthquake.getUrl(), true, earthquake.getLatitude(), earthquake.getLongitude(),
+                        earthquake.getDepthKm());
+            }
+            floored.add(earthquake);
+        }
+        return floored;
+    }
+
+    /**
+     * Return the start of the sync window, rounded down so repeated syncs build identical queries.
+     */
+    static long getWindowStart(long now) {
+        long windowStart = now - INITIAL_WINDOW_MILLIS;
+        return windowStart - windowStart % WINDOW_GRANULARITY_MILLIS;
+    }
+}
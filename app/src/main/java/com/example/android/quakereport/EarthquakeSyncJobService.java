@@ -0,0 +1,36 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.job.JobParameters;
+import android.app.job.JobService;
+import android.os.AsyncTask;
+import android.os.Build;
+
+/**
+ * Runs the scheduled background sync on Lollipop and later, as a job scheduled by
+ * {@link EarthquakeSyncScheduler}.
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class EarthquakeSyncJobService extends JobService {
+
+    @Override
+    public boolean onStartJob(final JobParameters params) {
+        // Jobs start on the main thread; sync on a background one
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                EarthquakeSyncScheduler.runScheduledSync(getApplicationContext());
+                // The next run is already scheduled; replacing the job id has also stopped this run,
+                // which was done anyway, so this is just for the record
+                jobFinished(params, false);
+            }
+        });
+        return true;
+    }
+
+    @Override
+    public boolean onStopJob(JobParameters params) {
+        // The sync holds no resources worth abandoning it for; it completes and schedules the next run
+        return false;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.support.v4.content.AsyncTaskLoader;
+import android.util.Log;
+
+/**
+ * Runs the USGS sync for {@link EarthquakeActivity} in the background.
+ *
+ * The loader is owned by the LoaderManager, so it survives configuration changes: a recreated
+ * Activity reattaches to the sync that is still running, or receives its result, instead of
+ * starting a new one. It only holds the application context, so it never leaks an Activity.
+ */
+public class EarthquakeSyncLoader extends AsyncTaskLoader<EarthquakeStore.MergeResult> {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeSyncLoader.class.getSimpleName();
+
+    private final EarthquakeQuery mQuery;
+    private final long mMaxAgeMillis;
+
+    /** Whether a sync has finished; its result (possibly null) is then delivered again on restart */
+    private boolean mHasResult = false;
+    private EarthquakeStore.MergeResult mResult = null;
+
+    /** Whether a sync has been started and hasn't delivered or been canceled yet */
+    private boolean mLoadPending = false;
+
+    /**
+     * Constructor for the {@link EarthquakeSyncLoader} class.
+     *
+     * @param query is the base USGS query to sync.
+     * @param maxAgeMillis is how long the stored data counts as fresh; no request is made before then.
+     */
+    public EarthquakeSyncLoader(Context context, EarthquakeQuery query, long maxAgeMillis) {
+        super(context.getApplicationContext());
+        this.mQuery = query;
+        this.mMaxAgeMillis = maxAgeMillis;
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (mHasResult) {
+            // Already synced; hand the result to the (possibly new) Activity
+            deliverResult(mResult);
+        } else if (!mLoadPending) {
+            mLoadPending = true;
+            forceLoad();
+        }
+        // Otherwise a sync is running; forceLoad would cancel it and start another, so a
+        // restarted Activity just waits for its result
+    }
+
+    @Override
+    public EarthquakeStore.MergeResult loadInBackground() {
+        Log.v(LOG_TAG, "Entering the loadInBackground method.");
+        EarthquakeStore store = EarthquakeStore.getInstance(getContext());
+        EarthquakeSyncEngine syncEngine = new EarthquakeSyncEngine(store, mQuery);
+
+        // Only go to the network when the stored results are stale; the background sync usually
+        // keeps them fresh. If it is running right now, this waits for it instead of fetching again.
+        // Otherwise fetch only the earthquake events that changed since the last sync, and merge them into the store
+        return syncEngine.syncIfStale(Clock.SYSTEM, mMaxAgeMillis);
+    }
+
+    @Override
+    public void deliverResult(EarthquakeStore.MergeResult result) {
+        mLoadPending = false;
+        mHasResult = true;
+        mResult = result;
+        if (isStarted()) {
+            super.deliverResult(result);
+        }
+    }
+
+    @Override
+    public void onCanceled(EarthquakeStore.MergeResult result) {
+        mLoadPending = false;
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        cancelLoad();
+        mLoadPending = false;
+        mHasResult = false;
+        mResult = null;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.android.quakereport;
+
+import android.annotation.TargetApi;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.app.job.JobInfo;
+import android.app.job.JobScheduler;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Schedules the background sync that keeps the {@link EarthquakeStore} fresh while the app is
+ * closed, so opening it is served from local data.
+ *
+ * Each run schedules the next one after the interval chosen by a {@link SyncSchedulePolicy}.
+ * Runs are deferrable, so the system batches them with other work: a {@link JobScheduler} job
+ * on Lollipop and later, a non-wakeup {@link AlarmManager} alarm (delivered when the device is
+ * next awake) starting {@link EarthquakeSyncService} before that. Syncs never overlap with
+ * each other or with the foreground sync; see {@link EarthquakeSyncEngine#syncIfStale(Clock, long)}.
+ */
+public final class EarthquakeSyncScheduler {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeSyncScheduler.class.getSimpleName();
+
+    /** Key in the store for the current interval between background syncs */
+    static final String KEY_SYNC_INTERVAL = "sync_interval";
+
+    /** Key in the store for the configured base interval */
+    static final String KEY_BASE_INTERVAL = "sync_base_interval";
+
+    private static final int JOB_ID = 1;
+
+    private EarthquakeSyncScheduler() {
+    }
+
+    /**
+     * Schedule the background sync unless it is already scheduled. Cheap enough for the main thread.
+     */
+    public static void ensureScheduled(Context context) {
+        if (isScheduled(context)) {
+            return;
+        }
+        // The run checks whether a sync is actually due, and reschedules itself if not
+        schedule(context, SyncSchedulePolicy.DEFAULT_MIN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Set the usual time between background syncs, and start over from it. Call this off the main thread.
+     */
+    public static void setBaseInterval(Context context, long baseIntervalMillis) {
+        EarthquakeStore store = EarthquakeStore.getInstance(context);
+        store.putLong(KEY_BASE_INTERVAL, baseIntervalMillis);
+        store.putLong(KEY_SYNC_INTERVAL, baseIntervalMillis);
+        schedule(context, baseIntervalMillis);
+    }
+
+    /**
+     * Sync if due, then schedule the next run. Called by the scheduled services on a background thread.
+     */
+    static void runScheduledSync(Context context) {
+        EarthquakeStore store = EarthquakeStore.getInstance(context);
+        SyncSchedulePolicy policy = getPolicy(store);
+        long interval = store.getLong(KEY_SYNC_INTERVAL, policy.getBaseIntervalMillis());
+        EarthquakeSyncEngine syncEngine = new EarthquakeSyncEngine(store, EarthquakeActivity.USGS_QUERY);
+
+        // The foreground sync may have run since this was scheduled
+        long delay = policy.getDelayUntilDue(syncEngine.getLastSyncTime(), interval);
+        if (delay > 0L) {
+            Log.v(LOG_TAG, "In runScheduledSync method; synced recently, next run in " + delay + " ms.");
+            schedule(context, delay);
+            return;
+        }
+
+        // Skips the network only if another sync finished while this one waited for it
+        EarthquakeStore.MergeResult result = syncEngine.syncIfStale(Clock.SYSTEM,
+                Math.min(policy.getMinIntervalMillis(), interval) / 2);
+        if (result != null) {
+            interval = policy.nextIntervalAfterSync(interval, result.getChangeCount(),
+                    result.getLargestMagnitude(), result.getLargestMagnitudeTime());
+        } else if (policy.isSyncDue(syncEngine.getLastSyncTime(), interval)) {
+            // Nobody synced: the fetch failed
+            interval = policy.nextIntervalAfterFailure(interval);
+        }
+        store.putLong(KEY_SYNC_INTERVAL, interval);
+
+        Log.v(LOG_TAG, "In runScheduledSync method; next run in " + interval + " ms.");
+        schedule(context, interval);
+    }
+
+    private static SyncSchedulePolicy getPolicy(EarthquakeStore store) {
+        long baseInterval = store.getLong(KEY_BASE_INTERVAL, SyncSchedulePolicy.DEFAULT_BASE_INTERVAL_MILLIS);
+        return new SyncSchedulePolicy(Clock.SYSTEM, baseInterval,
+                Math.min(SyncSchedulePolicy.DEFAULT_MIN_INTERVAL_MILLIS, baseInterval),
+                Math.max(SyncSchedulePolicy.DEFAULT_MAX_INTERVAL_MILLIS, baseInterval),
+                SyncSchedulePolicy.DEFAULT_LARGE_MAGNITUDE);
+    }
+
+    private static boolean isScheduled(Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            return isJobScheduled(context);
+        }
+        return getAlarmIntent(context, PendingIntent.FLAG_NO_CREATE) != null;
+    }
+
+    private static void schedule(Context context, long delayMillis) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            scheduleJob(context, delayMillis);
+            return;
+        }
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        // Non-wakeup: a sleeping device isn't woken for this; the sync runs when it next wakes up
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME, SystemClock.elapsedRealtime() + delayMillis,
+                getAlarmIntent(context, PendingIntent.FLAG_UPDATE_CURRENT));
+    }
+
+    private static PendingIntent getAlarmIntent(Context context, int flags) {
+        Intent intent = new Intent(context, EarthquakeSyncService.class);
+        return PendingIntent.getService(context.getApplicationContext(), 0, intent, flags);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean isJobScheduled(Context context) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        for (JobInfo job : jobScheduler.getAllPendingJobs()) {
+            if (job.getId() == JOB_ID) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static void scheduleJob(Context context, long delayMillis) {
+        JobScheduler jobScheduler = (JobScheduler) context.getSystemService(Context.JOB_SCHEDULER_SERVICE);
+        // No deadline, so the system is free to batch the run with other jobs
+        JobInfo job = new JobInfo.Builder(JOB_ID, new ComponentName(context, EarthquakeSyncJobService.class))
+                .setMinimumLatency(delayMillis)
+                .setRequiredNetworkType(JobInfo.NETWORK_TYPE_ANY)
+                .setPersisted(true)
+                .build();
+        // Replaces the pending run, if any
+        jobScheduler.schedule(job);
+    }
+}
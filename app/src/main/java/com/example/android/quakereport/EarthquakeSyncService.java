@@ -0,0 +1,20 @@
+package com.example.android.quakereport;
+
+import android.app.IntentService;
+import android.content.Intent;
+
+/**
+ * Runs the scheduled background sync before Lollipop, started by an alarm set by
+ * {@link EarthquakeSyncScheduler}.
+ */
+public class EarthquakeSyncService extends IntentService {
+
+    public EarthquakeSyncService() {
+        super(EarthquakeSyncService.class.getSimpleName());
+    }
+
+    @Override
+    protected void onHandleIntent(Intent intent) {
+        EarthquakeSyncScheduler.runScheduledSync(this);
+    }
+}
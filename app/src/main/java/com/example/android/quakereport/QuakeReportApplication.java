@@ -0,0 +1,73 @@
+package com.example.android.quakereport;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Process;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Wires the platform-independent core module to Android before any component starts.
+ */
+public class QuakeReportApplication extends Application {
+
+    // Name of the directory (under the app cache directory) holding cached USGS responses
+    private static final String RESPONSE_CACHE_DIRECTORY = "usgs-responses";
+
+    // Name of the directory (under the app cache directory) holding cached event details
+    private static final String DETAIL_CACHE_DIRECTORY = "usgs-details";
+
+    // Details kept in memory; a few screens of rows
+    private static final int DETAIL_MEMORY_ENTRIES = 64;
+
+    // Upper bound for the details on disk; a detail is about a kilobyte
+    private static final long DETAIL_DISK_BYTES = 1024 * 1024;
+
+    // Loads and prefetches event details; created on first use
+    private static EarthquakeDetailPrefetcher sDetailPrefetcher = null;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        Logger.setSink(new AndroidLogSink());
+        // Stage timings and payload logging in debug builds only
+        PipelineMetrics.setEnabled(BuildConfig.DEBUG);
+        // Cache USGS responses on disk so unchanged results are revalidated instead of re-downloaded,
+        // also for the syncs and polls that run without an Activity
+        QueryUtils.installResponseCache(new File(getCacheDir(), RESPONSE_CACHE_DIRECTORY));
+        // Before any sync or live poll, so every fetch is matched against the saved rules
+        WatchRuleStore.getInstance(this).install(new EarthquakeAlertNotifier(this));
+    }
+
+    /**
+     * Return the shared {@link EarthquakeDetailPrefetcher}, creating it if needed. Prefetches
+     * run one at a time on a thread of the lowest priority, so they never compete with the UI
+     * or with the loads the user is waiting for.
+     */
+    public static synchronized EarthquakeDetailPrefetcher getDetailPrefetcher(Context context) {
+        if (sDetailPrefetcher == null) {
+            Context appContext = context.getApplicationContext();
+            EarthquakeDetailCache cache = new EarthquakeDetailCache(
+                    new File(appContext.getCacheDir(), DETAIL_CACHE_DIRECTORY), DETAIL_MEMORY_ENTRIES, DETAIL_DISK_BYTES);
+            ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                            runnable.run();
+                        }
+                    }, "DetailPrefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            sDetailPrefetcher = new EarthquakeDetailPrefetcher(cache, executor);
+        }
+        return sDetailPrefetcher;
+    }
+}
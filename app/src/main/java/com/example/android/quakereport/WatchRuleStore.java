@@ -0,0 +1,210 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The user's saved {@link WatchRule}s, kept in their own preferences file rather than the
+ * database, whose upgrades drop the synced data. Once {@link #install} has run, every change
+ * to the rules re-installs the {@link EarthquakeAlertEngine} in {@link QueryUtils}, so the next
+ * fetch is matched against them.
+ */
+public class WatchRuleStore {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = WatchRuleStore.class.getSimpleName();
+
+    private static final String PREFERENCES_NAME = "watch_rules";
+    private static final String PREF_RULES = "rules";
+
+    private static final String KEY_ID = "id";
+    private static final String KEY_MIN_MAGNITUDE = "minMagnitude";
+    private static final String KEY_AREA = "area";
+    private static final String KEY_LATITUDE = "latitude";
+    private static final String KEY_LONGITUDE = "longitude";
+    private static final String KEY_RADIUS_KM = "radiusKm";
+    private static final String KEY_MIN_LATITUDE = "minLatitude";
+    private static final String KEY_MAX_LATITUDE = "maxLatitude";
+    private static final String KEY_MIN_LONGITUDE = "minLongitude";
+    private static final String KEY_MAX_LONGITUDE = "maxLongitude";
+    private static final String KEY_VALID_FROM = "validFrom";
+    private static final String KEY_VALID_UNTIL = "validUntil";
+
+    /** Single instance shared by the app, so the installed engine follows every change */
+    private static WatchRuleStore sInstance = null;
+
+    private final SharedPreferences mPreferences;
+
+    /** Saved rules, in the order they were added; guarded by this */
+    private final List<WatchRule> mRules;
+
+    /** Engine installed in {@link QueryUtils}, or null before {@link #install}; guarded by this */
+    private EarthquakeAlertEngine mEngine = null;
+    private EarthquakeAlertEngine.Listener mListener = null;
+
+    /** Use {@link #getInstance(Context)}; tests create their own */
+    WatchRuleStore(Context context) {
+        mPreferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        mRules = fromJson(mPreferences.getString(PREF_RULES, null));
+    }
+
+    /**
+     * Return the shared {@link WatchRuleStore}, creating it if needed.
+     */
+    public static synchronized WatchRuleStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WatchRuleStore(context);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Install an alert engine over the saved rules, reporting new matches to the listener.
+     */
+    public synchronized void install(EarthquakeAlertEngine.Listener listener) {
+        mListener = listener;
+        mEngine = new EarthquakeAlertEngine(mRules);
+        QueryUtils.installAlertEngine(mEngine, listener);
+    }
+
+    /** Return a copy of the saved rules, in the order they were added */
+    public synchronized List<WatchRule> getRules() {
+        return new ArrayList<>(mRules);
+    }
+
+    /**
+     * Save a rule, replacing any saved rule with the same id.
+     */
+    public synchronized void add(WatchRule rule) {
+        int index = indexOf(rule.getId());
+        if (index >= 0) {
+            mRules.set(index, rule);
+        } else {
+            mRules.add(rule);
+        }
+        onRulesChanged();
+    }
+
+    /**
+     * Delete the rule with the given id, if there is one.
+     */
+    public synchronized void remove(String id) {
+        int index = indexOf(id);
+        if (index >= 0) {
+            mRules.remove(index);
+            onRulesChanged();
+        }
+    }
+
+    private int indexOf(String id) {
+        for (int i = 0; i < mRules.size(); i++) {
+            if (mRules.get(i).getId().equals(id)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void onRulesChanged() {
+        mPreferences.edit().putString(PREF_RULES, toJson(mRules)).apply();
+        if (mEngine != null) {
+            // Keeps the record of alerts sent, so an edited rule doesn't repeat them
+            mEngine = mEngine.withRules(mRules);
+            QueryUtils.installAlertEngine(mEngine, mListener);
+        }
+    }
+
+    /**
+     * Return the rules as a JSON array. Unbounded magnitudes and validity windows are left out,
+     * since JSON has no infinities.
+     */
+    static String toJson(List<WatchRule> rules) {
+        JSONArray array = new JSONArray();
+        try {
+            for (WatchRule rule : rules) {
+                JSONObject object = new JSONObject();
+                object.put(KEY_ID, rule.getId());
+                if (!Double.isInfinite(rule.getMinMagnitude())) {
+                    object.put(KEY_MIN_MAGNITUDE, rule.getMinMagnitude());
+                }
+                object.put(KEY_AREA, rule.getArea().name());
+                if (rule.getArea() == WatchRule.Area.CIRCLE) {
+                    object.put(KEY_LATITUDE, rule.getLatitude());
+                    object.put(KEY_LONGITUDE, rule.getLongitude());
+                    object.put(KEY_RADIUS_KM, rule.getRadiusKm());
+                } else if (rule.getArea() == WatchRule.Area.BOX) {
+                    object.put(KEY_MIN_LATITUDE, rule.getMinLatitude());
+                    object.put(KEY_MAX_LATITUDE, rule.getMaxLatitude());
+                    object.put(KEY_MIN_LONGITUDE, rule.getMinLongitude());
+                    object.put(KEY_MAX_LONGITUDE, rule.getMaxLongitude());
+                }
+                if (rule.getValidFrom() != Long.MIN_VALUE) {
+                    object.put(KEY_VALID_FROM, rule.getValidFrom());
+                }
+                if (rule.getValidUntil() != Long.MAX_VALUE) {
+                    object.put(KEY_VALID_UNTIL, rule.getValidUntil());
+                }
+                array.put(object);
+            }
+        } catch (JSONException e) {
+            // Only thrown for non-finite numbers, which are left out above
+            throw new IllegalStateException(e);
+        }
+        return array.toString();
+    }
+
+    /**
+     * Return the rules saved by {@link #toJson}. A rule that can't be read is skipped rather
+     * than losing the others.
+     */
+    static List<WatchRule> fromJson(String json) {
+        List<WatchRule> rules = new ArrayList<>();
+        if (json == null) {
+            return rules;
+        }
+        JSONArray array;
+        try {
+            array = new JSONArray(json);
+        } catch (JSONException e) {
+            Log.e(LOG_TAG, "Problem reading the saved watch rules.", e);
+            return rules;
+        }
+        for (int i = 0; i < array.length(); i++) {
+            try {
+                JSONObject object = array.getJSONObject(i);
+                WatchRule.Builder builder = new WatchRule.Builder(object.getString(KEY_ID));
+                if (object.has(KEY_MIN_MAGNITUDE)) {
+                    builder.minMagnitude(object.getDouble(KEY_MIN_MAGNITUDE));
+                }
+                WatchRule.Area area = WatchRule.Area.valueOf(object.getString(KEY_AREA));
+                if (area == WatchRule.Area.CIRCLE) {
+                    builder.within(object.getDouble(KEY_LATITUDE), object.getDouble(KEY_LONGITUDE),
+                            object.getDouble(KEY_RADIUS_KM));
+                } else if (area == WatchRule.Area.BOX) {
+                    builder.boundingBox(object.getDouble(KEY_MIN_LATITUDE), object.getDouble(KEY_MAX_LATITUDE),
+                            object.getDouble(KEY_MIN_LONGITUDE), object.getDouble(KEY_MAX_LONGITUDE));
+                }
+                builder.validBetween(object.optLong(KEY_VALID_FROM, Long.MIN_VALUE),
+                        object.optLong(KEY_VALID_UNTIL, Long.MAX_VALUE));
+                rules.add(builder.build());
+            } catch (JSONException | IllegalArgumentException e) {
+                Log.e(LOG_TAG, "Skipping a saved watch rule that can't be read.", e);
+            }
+        }
+        return rules;
+    }
+
+    /** Return the rules of the installed engine, or none before {@link #install}; for tests */
+    synchronized List<WatchRule> getInstalledRules() {
+        return mEngine != null ? mEngine.getRules() : Collections.<WatchRule>emptyList();
+    }
+}
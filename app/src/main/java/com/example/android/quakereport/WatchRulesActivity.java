@@ -0,0 +1,166 @@
+package com.example.android.quakereport;
+
+import android.content.Context;
+import android.content.DialogInterface;
+import android.os.Bundle;
+import android.support.v7.app.AlertDialog;
+import android.support.v7.app.AppCompatActivity;
+import android.text.TextUtils;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.AdapterView;
+import android.widget.ArrayAdapter;
+import android.widget.EditText;
+import android.widget.ListView;
+import android.widget.Toast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Lists the saved alert rules, adds a rule for a magnitude anywhere or near a point, and
+ * deletes a rule when it's tapped. Changes go through {@link WatchRuleStore}, which applies
+ * them to the installed alert engine at once.
+ */
+public class WatchRulesActivity extends AppCompatActivity {
+
+    private WatchRuleStore mStore;
+
+    // Rules on screen, in the order of the adapter's rows
+    private List<WatchRule> mRules = new ArrayList<>();
+
+    private ArrayAdapter<String> mAdapter;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.watch_rules_activity);
+        mStore = WatchRuleStore.getInstance(this);
+
+        ListView ruleListView = (ListView) findViewById(R.id.rule_list);
+        ruleListView.setEmptyView(findViewById(R.id.empty_view));
+        mAdapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1, new ArrayList<String>());
+        ruleListView.setAdapter(mAdapter);
+        ruleListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
+                confirmDelete(mRules.get(position));
+            }
+        });
+        showRules();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.watch_rules_activity, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() != R.id.action_add_rule) {
+            return super.onOptionsItemSelected(item);
+        }
+        showAddDialog();
+        return true;
+    }
+
+    private void showRules() {
+        mRules = mStore.getRules();
+        mAdapter.clear();
+        for (WatchRule rule : mRules) {
+            mAdapter.add(describe(this, rule));
+        }
+    }
+
+    private void confirmDelete(final WatchRule rule) {
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.watch_rule_delete)
+                .setMessage(describe(this, rule))
+                .setPositiveButton(R.string.watch_rule_delete_confirm, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        mStore.remove(rule.getId());
+                        showRules();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    private void showAddDialog() {
+        final View fields = getLayoutInflater().inflate(R.layout.watch_rule_dialog, null);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.watch_rule_add)
+                .setView(fields)
+                .setPositiveButton(R.string.watch_rule_add, new DialogInterface.OnClickListener() {
+                    @Override
+                    public void onClick(DialogInterface dialog, int which) {
+                        WatchRule rule = readRule(fields);
+                        if (rule == null) {
+                            Toast.makeText(WatchRulesActivity.this, R.string.watch_rule_invalid, Toast.LENGTH_LONG).show();
+                            return;
+                        }
+                        mStore.add(rule);
+                        showRules();
+                    }
+                })
+                .setNegativeButton(android.R.string.cancel, null)
+                .show();
+    }
+
+    /**
+     * Return the rule entered in the dialog, or null if the fields don't make one. The rule is
+     * valid from now on, so events that happened before it was added don't raise alerts.
+     */
+    private static WatchRule readRule(View fields) {
+        Double minMagnitude = readNumber(fields, R.id.min_magnitude);
+        Double latitude = readNumber(fields, R.id.latitude);
+        Double longitude = readNumber(fields, R.id.longitude);
+        Double radiusKm = readNumber(fields, R.id.radius);
+        if (minMagnitude == null) {
+            return null;
+        }
+        WatchRule.Builder builder = new WatchRule.Builder(UUID.randomUUID().toString())
+                .minMagnitude(minMagnitude)
+                .validBetween(System.currentTimeMillis(), Long.MAX_VALUE);
+        if (latitude != null && longitude != null && radiusKm != null) {
+            if (Math.abs(latitude) > 90.0 || Math.abs(longitude) > 180.0 || radiusKm < 0) {
+                return null;
+            }
+            builder.within(latitude, longitude, radiusKm);
+        } else if (latitude != null || longitude != null || radiusKm != null) {
+            return null;
+        }
+        return builder.build();
+    }
+
+    /** Return the number in a field, or null if it's empty or not a number */
+    private static Double readNumber(View fields, int id) {
+        String text = ((EditText) fields.findViewById(id)).getText().toString().trim();
+        if (TextUtils.isEmpty(text)) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(text);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /** Return a one-line description of a rule */
+    static String describe(Context context, WatchRule rule) {
+        switch (rule.getArea()) {
+            case CIRCLE:
+                return context.getString(R.string.watch_rule_circle, rule.getMinMagnitude(), rule.getRadiusKm(),
+                        rule.getLatitude(), rule.getLongitude());
+            case BOX:
+                return context.getString(R.string.watch_rule_box, rule.getMinMagnitude(), rule.getMinLatitude(),
+                        rule.getMaxLatitude(), rule.getMinLongitude(), rule.getMaxLongitude());
+            default:
+                return context.getString(R.string.watch_rule_everywhere, rule.getMinMagnitude());
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.android.quakereport;
+
+import android.widget.FrameLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Binding a list row only assigns values the {@link EarthquakeRowFormatter} prepared when its
+ * page loaded, so the adapter's bind allocates far less than the formatting it replaced.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class EarthquakeAdapterTest {
+
+    private static final int ROW_COUNT = 1000;
+
+    /** Passes over all rows; enough binds that a small allocation each would show */
+    private static final int PASSES = 20;
+
+    private List<Earthquake> mEarthquakes;
+    private EarthquakeAdapter mAdapter;
+    private EarthquakeAdapter.ViewHolder mViewHolder;
+
+    /** Formatted rows, kept so the formatting isn't optimized away */
+    private final EarthquakeRow[] mFormatted = new EarthquakeRow[1];
+
+    @Before
+    public void setUp() throws IOException {
+        assumeTrue(MemoryMeter.canCountAllocations());
+        mEarthquakes = QueryUtils.readEarthquakesFromStream(new ByteArrayInputStream(Fixtures.load(ROW_COUNT)));
+        EarthquakeRowFormatter formatter = new EarthquakeRowFormatter(RuntimeEnvironment.application);
+        List<EarthquakeRow> rows = new ArrayList<>(mEarthquakes.size());
+        for (Earthquake earthquake : mEarthquakes) {
+            rows.add(formatter.format(earthquake));
+        }
+
+        // One page holding every row, so binding never loads one
+        EarthquakePager pager = new EarthquakePager(RuntimeEnvironment.application, new EarthquakePager.PageLoader() {
+            @Override
+            public EarthquakeColumns loadPage(int offset, int limit) {
+                throw new AssertionError("Bound a row that wasn't seeded");
+            }
+        }, ROW_COUNT, 2, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new AssertionError("Bound a row that wasn't seeded");
+            }
+        });
+        assertTrue(pager.seed(rows, true));
+        mAdapter = new EarthquakeAdapter(RuntimeEnvironment.application, pager);
+        mViewHolder = mAdapter.onCreateViewHolder(new FrameLayout(RuntimeEnvironment.application), 0);
+    }
+
+    @Test
+    public void bindingAllocatesFarLessThanFormatting() {
+        // Load the classes and settle the compiler before counting
+        bindAll();
+        formatAll(new EarthquakeRowFormatter(RuntimeEnvironment.application));
+
+        long startBytes = MemoryMeter.allocatedBytes();
+        bindAll();
+        long bindBytes = (MemoryMeter.allocatedBytes() - startBytes) / PASSES;
+
+        EarthquakeRowFormatter formatter = new EarthquakeRowFormatter(RuntimeEnvironment.application);
+        startBytes = MemoryMeter.allocatedBytes();
+        formatAll(formatter);
+        long formatBytes = MemoryMeter.allocatedBytes() - startBytes;
+
+        // What is left of a bind is the TextViews' own work, not the row's
+        assertTrue("Formatting allocated " + formatBytes + " bytes", formatBytes > 100L * ROW_COUNT);
+        assertTrue("Binding allocated " + bindBytes + " bytes per pass, formatting " + formatBytes,
+                bindBytes * 4 < formatBytes);
+    }
+
+    /** Bind every row into the same holder, as scrolling through the list does */
+    private void bindAll() {
+        for (int pass = 0; pass < PASSES; pass++) {
+            for (int position = 0; position < ROW_COUNT; position++) {
+                mAdapter.onBindViewHolder(mViewHolder, position);
+            }
+        }
+    }
+
+    /** Format every row, as the adapter did at bind time before rows were prepared */
+    private void formatAll(EarthquakeRowFormatter formatter) {
+        for (Earthquake earthquake : mEarthquakes) {
+            mFormatted[0] = formatter.format(earthquake);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Incremental statistics against a full recompute from the live events, over randomized merges,
+ * revisions, deletions and pruning; earlier snapshots must keep their values as later changes
+ * copy the bins they share.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class EarthquakeAggregatorTest {
+
+    private static final long MINUTE_MILLIS = 60L * 1000;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    private static final String[] PLACES = {
+            "87 km NNE of Tokyo, Japan",
+            "10 km S of Hachijo-jima, Japan",
+            "Fiji region",
+            "45 km W of Lima, Peru",
+            "South of the Fiji Islands",
+            null
+    };
+
+    @Test
+    public void statisticsMatchRecompute() {
+        Random random = new Random(16);
+        EarthquakeAggregator aggregator = new EarthquakeAggregator();
+        Map<String, Earthquake> live = new HashMap<>();
+        List<EarthquakeAggregator.Snapshot> snapshots = new ArrayList<>();
+        List<String> expectedSnapshots = new ArrayList<>();
+        // Before the Epoch too, where rounding down to the hour and day is easy to get wrong
+        long windowStart = -5 * DAY_MILLIS;
+
+        for (int round = 0; round < 60; round++) {
+            List<Earthquake> batch = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                String id = "ev" + random.nextInt(400);
+                Earthquake existing = live.get(id);
+                long updated = (existing != null ? existing.getUpdatedInMilliseconds() : 0L) + random.nextInt(3) - 1;
+                boolean deleted = existing != null && random.nextInt(8) == 0;
+                long time = windowStart + random.nextInt(20 * 24 * 60) * MINUTE_MILLIS;
+                double magnitude = random.nextInt(110) / 10.0 - 0.5;
+                Earthquake earthquake = new Earthquake(id, magnitude, PLACES[random.nextInt(PLACES.length)],
+                        time, updated, null, deleted);
+                batch.add(earthquake);
+                // As the store's UPDATE and DELETE: a revision must be newer, a deletion not older
+                if (existing == null || (deleted ? updated >= existing.getUpdatedInMilliseconds()
+                        : updated > existing.getUpdatedInMilliseconds())) {
+                    if (deleted) {
+                        live.remove(id);
+                    } else {
+                        live.put(id, earthquake);
+                    }
+                }
+            }
+            aggregator.merge(batch);
+
+            if (round % 6 == 5) {
+                // Hour-aligned, as the sync window is
+                windowStart += random.nextInt(48) * HOUR_MILLIS;
+                aggregator.prune(windowStart);
+                for (Earthquake earthquake : new ArrayList<>(live.values())) {
+                    if (earthquake.getTimeInMilliseconds() < windowStart) {
+                        live.remove(earthquake.getId());
+                    }
+                }
+            }
+
+            String expected = recompute(live.values());
+            assertEquals("Round " + round, expected, describe(aggregator.getSnapshot()));
+            snapshots.add(aggregator.getSnapshot());
+            expectedSnapshots.add(expected);
+        }
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            assertEquals("Snapshot " + i, expectedSnapshots.get(i), describe(snapshots.get(i)));
+        }
+    }
+
+    @Test
+    public void pruningBetweenHoursIsExact() {
+        EarthquakeAggregator aggregator = new EarthquakeAggregator();
+        aggregator.merge(Collections.singletonList(new Earthquake("a", 6.0, "Fiji region", 1000L, 0L, null, false)));
+        aggregator.merge(Collections.singletonList(new Earthquake("b", 7.0, "Fiji region", 2000L, 0L, null, false)));
+
+        aggregator.prune(1500L);
+
+        EarthquakeAggregator.Snapshot snapshot = aggregator.getSnapshot();
+        assertEquals(1, snapshot.getTotalCount());
+        assertEquals(0, snapshot.getMagnitudeBucketCount(6));
+        assertEquals(1, snapshot.getCountInHour(0, 0));
+        assertEquals(7.0, snapshot.getMaxMagnitude(0), 0.0);
+    }
+
+    @Test
+    public void regionIsTheLastPartOfThePrimaryLocation() {
+        assertEquals("Japan", EarthquakeAggregator.regionOf("87 km NNE of Tokyo, Japan"));
+        assertEquals("Fiji region", EarthquakeAggregator.regionOf("Fiji region"));
+        assertEquals("", EarthquakeAggregator.regionOf(null));
+    }
+
+    /** The statistics of a set of events, computed from scratch, in the form of {@link #describe} */
+    private static String recompute(Iterable<Earthquake> earthquakes) {
+        int total = 0;
+        int[] buckets = new int[EarthquakeRowFormatter.MAGNITUDE_BUCKET_COUNT];
+        TreeMap<Long, int[]> days = new TreeMap<>();
+        TreeMap<String, Double> regions = new TreeMap<>();
+        for (Earthquake earthquake : earthquakes) {
+            total++;
+            buckets[EarthquakeRowFormatter.magnitudeBucket(earthquake.getMagnitude())]++;
+            long time = earthquake.getTimeInMilliseconds();
+            long dayStart = time >= 0 ? time - time % DAY_MILLIS : -((-time + DAY_MILLIS - 1) / DAY_MILLIS) * DAY_MILLIS;
+            int[] hours = days.get(dayStart);
+            if (hours == null) {
+                hours = new int[24];
+                days.put(dayStart, hours);
+            }
+            hours[(int) ((time - dayStart) / HOUR_MILLIS)]++;
+            String region = EarthquakeAggregator.regionOf(earthquake.getLocation());
+            Double max = regions.get(region);
+            if (max == null || earthquake.getMagnitude() > max) {
+                regions.put(region, earthquake.getMagnitude());
+            }
+        }
+
+        StringBuilder description = new StringBuilder("total=" + total + " buckets=");
+        for (int count : buckets) {
+            description.append(count).append(',');
+        }
+        for (Map.Entry<Long, int[]> day : days.entrySet()) {
+            int count = 0;
+            for (int hourCount : day.getValue()) {
+                count += hourCount;
+            }
+            appendDay(description, day.getKey(), count, day.getValue());
+        }
+        for (Map.Entry<String, Double> region : regions.entrySet()) {
+            description.append(" region ").append(region.getKey()).append('=').append(region.getValue());
+        }
+        return description.toString();
+    }
+
+    /** Everything a snapshot holds, as text, so a mismatch shows where it is */
+    private static String describe(EarthquakeAggregator.Snapshot snapshot) {
+        StringBuilder description = new StringBuilder("total=" + snapshot.getTotalCount() + " buckets=");
+        for (int bucket = 0; bucket < EarthquakeRowFormatter.MAGNITUDE_BUCKET_COUNT; bucket++) {
+            description.append(snapshot.getMagnitudeBucketCount(bucket)).append(',');
+        }
+        for (int day = 0; day < snapshot.getDayCount(); day++) {
+            int[] hours = new int[24];
+            for (int hour = 0; hour < hours.length; hour++) {
+                hours[hour] = snapshot.getCountInHour(day, hour);
+            }
+            appendDay(description, snapshot.getDayStart(day), snapshot.getCountOnDay(day), hours);
+        }
+        for (int region = 0; region < snapshot.getRegionCount(); region++) {
+            description.append(" region ").append(snapshot.getRegion(region)).append('=')
+                    .append(snapshot.getMaxMagnitude(region));
+        }
+        return description.toString();
+    }
+
+    private static void appendDay(StringBuilder description, long dayStart, int count, int[] hours) {
+        description.append(" day ").append(dayStart).append('=').append(count).append(" [");
+        for (int hour = 0; hour < hours.length; hour++) {
+            if (hours[hour] != 0) {
+                description.append(hour).append(':').append(hours[hour]).append(' ');
+            }
+        }
+        description.append(']');
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Index queries against brute-force filtering and sorting, over randomized merges, revisions,
+ * deletions and pruning.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class EarthquakeIndexTest {
+
+    private static final long HOUR_MILLIS = 60L * 60 * 1000;
+
+    private static final Comparator<Earthquake> NEWEST_FIRST = new Comparator<Earthquake>() {
+        @Override
+        public int compare(Earthquake first, Earthquake second) {
+            long firstTime = first.getTimeInMilliseconds();
+            long secondTime = second.getTimeInMilliseconds();
+            return firstTime > secondTime ? -1 : (firstTime == secondTime ? 0 : 1);
+        }
+    };
+
+    private static final Comparator<Earthquake> LARGEST_FIRST = new Comparator<Earthquake>() {
+        @Override
+        public int compare(Earthquake first, Earthquake second) {
+            int magnitudeOrder = Double.compare(second.getMagnitude(), first.getMagnitude());
+            return magnitudeOrder != 0 ? magnitudeOrder : NEWEST_FIRST.compare(first, second);
+        }
+    };
+
+    @Test
+    public void queriesMatchBruteForce() {
+        Random random = new Random(42);
+        EarthquakeIndex index = new EarthquakeIndex();
+        Map<String, Earthquake> live = new HashMap<>();
+        long windowStart = 0L;
+
+        for (int round = 0; round < 50; round++) {
+            List<Earthquake> batch = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                String id = "ev" + random.nextInt(3000);
+                Earthquake existing = live.get(id);
+                long updated = (existing != null ? existing.getUpdatedInMilliseconds() : 0L) + random.nextInt(3) - 1;
+                boolean deleted = existing != null && random.nextInt(10) == 0;
+                // Times on whole hours, so ties in both orders are common
+                long time = windowStart + random.nextInt(500) * HOUR_MILLIS;
+                double magnitude = random.nextInt(60) / 10.0 + 3.0;
+                Earthquake earthquake = new Earthquake(id, magnitude, "Somewhere", time, updated,
+                        "https://example.com/" + id, deleted);
+                batch.add(earthquake);
+                // As the store's UPDATE and DELETE: a revision must be newer, a deletion not older
+                if (existing == null || (deleted ? updated >= existing.getUpdatedInMilliseconds()
+                        : updated > existing.getUpdatedInMilliseconds())) {
+                    if (deleted) {
+                        live.remove(id);
+                    } else {
+                        live.put(id, earthquake);
+                    }
+                }
+            }
+            index.merge(batch);
+
+            if (round % 10 == 9) {
+                windowStart += 50 * HOUR_MILLIS;
+                index.prune(windowStart);
+                for (Earthquake earthquake : new ArrayList<>(live.values())) {
+                    if (earthquake.getTimeInMilliseconds() < windowStart) {
+                        live.remove(earthquake.getId());
+                    }
+                }
+            }
+
+            assertEquals(live.size(), index.size());
+            double minMagnitude = 3.0 + random.nextInt(40) / 10.0;
+            long startTime = windowStart + random.nextInt(300) * HOUR_MILLIS;
+            long endTime = startTime + random.nextInt(300) * HOUR_MILLIS;
+            for (EarthquakeQuery.OrderBy orderBy : EarthquakeQuery.OrderBy.values()) {
+                List<Earthquake> expected = expected(live.values(), minMagnitude, startTime, endTime, orderBy);
+                List<Earthquake> actual = rows(index.query(minMagnitude, startTime, endTime, orderBy));
+                assertEquals(orderBy + " in round " + round, sortedIds(expected), sortedIds(actual));
+                assertEquals(orderBy + " in round " + round, sortKeys(expected, orderBy), sortKeys(actual, orderBy));
+            }
+        }
+    }
+
+    @Test
+    public void olderRevisionIsIgnored() {
+        EarthquakeIndex index = new EarthquakeIndex();
+        index.merge(Collections.singletonList(new Earthquake("a", 5.0, "Somewhere", 1000L, 20L, null, false)));
+
+        index.merge(Collections.singletonList(new Earthquake("a", 9.0, "Somewhere", 1000L, 10L, null, false)));
+
+        EarthquakeIndex.View view = index.query(0.0, 0L, Long.MAX_VALUE, EarthquakeQuery.OrderBy.TIME);
+        assertEquals(1, view.size());
+        assertEquals(5.0, view.getMagnitude(0), 0.0);
+    }
+
+    @Test
+    public void generationChangesOnlyWithTheEvents() {
+        EarthquakeIndex index = new EarthquakeIndex();
+        index.merge(Collections.singletonList(new Earthquake("a", 5.0, "Somewhere", 1000L, 20L, null, false)));
+        int generation = index.getGeneration();
+
+        index.merge(Collections.<Earthquake>emptyList());
+        index.prune(500L);
+        assertEquals(generation, index.getGeneration());
+
+        index.prune(2000L);
+        assertNotEquals(generation, index.getGeneration());
+    }
+
+    /** Brute-force result: the events in range, sorted as the index sorts them */
+    private static List<Earthquake> expected(Iterable<Earthquake> earthquakes, double minMagnitude,
+                                             long startTime, long endTime, EarthquakeQuery.OrderBy orderBy) {
+        List<Earthquake> matches = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            if (earthquake.getMagnitude() >= minMagnitude && earthquake.getTimeInMilliseconds() >= startTime
+                    && earthquake.getTimeInMilliseconds() <= endTime) {
+                matches.add(earthquake);
+            }
+        }
+        Collections.sort(matches, isByTime(orderBy) ? NEWEST_FIRST : LARGEST_FIRST);
+        if (orderBy == EarthquakeQuery.OrderBy.TIME_ASC || orderBy == EarthquakeQuery.OrderBy.MAGNITUDE_ASC) {
+            Collections.reverse(matches);
+        }
+        return matches;
+    }
+
+    private static List<Earthquake> rows(EarthquakeIndex.View view) {
+        List<Earthquake> rows = new ArrayList<>();
+        for (int i = 0; i < view.size(); i++) {
+            rows.add(new Earthquake(view.getId(i), view.getMagnitude(i), view.getLocation(i),
+                    view.getTimeInMilliseconds(i), 0L, view.getUrl(i), false));
+        }
+        return rows;
+    }
+
+    private static List<String> sortedIds(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    /**
+     * The sort key of each row, in order. Rows with equal keys may come in any order, so the
+     * order is checked on the keys and the contents on the ids.
+     */
+    private static List<String> sortKeys(List<Earthquake> earthquakes, EarthquakeQuery.OrderBy orderBy) {
+        List<String> keys = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            keys.add(isByTime(orderBy) ? String.valueOf(earthquake.getTimeInMilliseconds())
+                    : earthquake.getMagnitude() + "@" + earthquake.getTimeInMilliseconds());
+        }
+        return keys;
+    }
+
+    private static boolean isByTime(EarthquakeQuery.OrderBy orderBy) {
+        return orderBy == EarthquakeQuery.OrderBy.TIME || orderBy == EarthquakeQuery.OrderBy.TIME_ASC;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Page loads that a refresh overtakes, run in a chosen order on a queued executor: they are
+ * loaded again if their rows are still in the list.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class EarthquakePagerTest {
+
+    private static final int PAGE_SIZE = 10;
+
+    /** Loads waiting to run, in the order they were started */
+    private final List<Runnable> mQueued = new ArrayList<>();
+
+    /** Number of rows the loader has */
+    private int mRowCount = 30;
+
+    private EarthquakePager mPager;
+
+    @Before
+    public void setUp() {
+        EarthquakePager.PageLoader loader = new EarthquakePager.PageLoader() {
+            @Override
+            public EarthquakeColumns loadPage(int offset, int limit) {
+                EarthquakeColumns page = new EarthquakeColumns(limit);
+                for (int i = offset; i < Math.min(offset + limit, mRowCount); i++) {
+                    page.add(new Earthquake("ev" + i, 5.0, "Somewhere", 1000000L - i, 0L, null, false));
+                }
+                return page;
+            }
+        };
+        mPager = new EarthquakePager(RuntimeEnvironment.application, loader, PAGE_SIZE, 5, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                mQueued.add(command);
+            }
+        });
+        mPager.reset();
+        runNext();
+    }
+
+    @Test
+    public void pageStillLoadingDuringARefreshIsLoadedAgain() {
+        // The second page starts loading, then the list is back on the first
+        assertNull(mPager.getItem(PAGE_SIZE + 2));
+        mPager.getItem(2);
+
+        mPager.refresh();
+        // The second page's load finishes first and is dropped as stale
+        runNext();
+        runNext();
+
+        assertEquals(1, mQueued.size());
+        runNext();
+        EarthquakeRow row = mPager.peekItem(PAGE_SIZE + 2);
+        assertNotNull(row);
+        assertEquals("ev" + (PAGE_SIZE + 2), row.getId());
+    }
+
+    @Test
+    public void pageNoLongerInTheListIsNotLoadedAgain() {
+        assertNull(mPager.getItem(PAGE_SIZE + 2));
+        mPager.getItem(2);
+
+        // Events were deleted; the refresh finds fewer rows than a page
+        mRowCount = 5;
+        mPager.refresh();
+        runNext();
+        runNext();
+
+        assertTrue(mQueued.isEmpty());
+        assertEquals(5, mPager.getCount());
+        assertTrue(mPager.isEndReached());
+    }
+
+    private void runNext() {
+        // The main looper runs the posted result at once
+        mQueued.remove(0).run();
+    }
+}
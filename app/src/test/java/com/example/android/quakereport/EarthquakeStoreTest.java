@@ -0,0 +1,174 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Merging the bundled fixture into a real SQLite store: inserts, re-deliveries, revisions,
+ * deletions and pruning, and the index and summary kept in step with the table.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class EarthquakeStoreTest {
+
+    private EarthquakeStore mStore;
+    private List<Earthquake> mFixture;
+
+    @Before
+    public void setUp() throws IOException {
+        mStore = new EarthquakeStore(RuntimeEnvironment.application);
+        mFixture = QueryUtils.readEarthquakesFromStream(new ByteArrayInputStream(Fixtures.load(1000)));
+    }
+
+    @Test
+    public void fixtureIsInserted() {
+        EarthquakeStore.MergeResult result = mStore.mergeEarthquakes(mFixture, 0L);
+
+        assertEquals(1000, result.getInserted());
+        assertEquals(0, result.getUpdated());
+        assertEquals(1000, storedCount());
+    }
+
+    @Test
+    public void redeliveredBatchChangesNothing() {
+        mStore.mergeEarthquakes(mFixture, 0L);
+
+        EarthquakeStore.MergeResult result = mStore.mergeEarthquakes(mFixture, 0L);
+
+        assertEquals(0, result.getChangeCount());
+        assertEquals(1000, storedCount());
+    }
+
+    @Test
+    public void newerRevisionReplacesTheStoredOne() {
+        mStore.mergeEarthquakes(mFixture, 0L);
+        Earthquake original = mFixture.get(0);
+
+        EarthquakeStore.MergeResult result = mStore.mergeEarthquakes(
+                Collections.singletonList(revise(original, original.getUpdatedInMilliseconds() + 1, 9.1)), 0L);
+
+        assertEquals(1, result.getUpdated());
+        assertEquals(9.1, result.getLargestMagnitude(), 0.0);
+        assertEquals(9.1, storedMagnitude(original.getId()), 0.0);
+    }
+
+    @Test
+    public void olderRevisionIsIgnored() {
+        mStore.mergeEarthquakes(mFixture, 0L);
+        Earthquake original = mFixture.get(0);
+
+        EarthquakeStore.MergeResult result = mStore.mergeEarthquakes(
+                Collections.singletonList(revise(original, original.getUpdatedInMilliseconds() - 1, 9.1)), 0L);
+
+        assertEquals(0, result.getChangeCount());
+        assertEquals(original.getMagnitude(), storedMagnitude(original.getId()), 0.0);
+    }
+
+    @Test
+    public void deletedEventIsRemoved() {
+        mStore.mergeEarthquakes(mFixture, 0L);
+        Earthquake original = mFixture.get(0);
+        Earthquake deleted = new Earthquake(original.getId(), original.getMagnitude(), original.getLocation(),
+                original.getTimeInMilliseconds(), original.getUpdatedInMilliseconds() + 1, original.getUrl(), true);
+
+        EarthquakeStore.MergeResult result = mStore.mergeEarthquakes(Collections.singletonList(deleted), 0L);
+
+        assertEquals(1, result.getDeleted());
+        assertEquals(999, storedCount());
+    }
+
+    @Test
+    public void eventsBeforeTheWindowArePruned() {
+        mStore.mergeEarthquakes(mFixture, 0L);
+        long windowStart = mFixture.get(mFixture.size() / 2).getTimeInMilliseconds();
+        int before = 0;
+        for (Earthquake earthquake : mFixture) {
+            if (earthquake.getTimeInMilliseconds() < windowStart) {
+                before++;
+            }
+        }
+
+        // Even a sync that brings nothing new moves the window
+        EarthquakeStore.MergeResult result = mStore.mergeEarthquakes(Collections.<Earthquake>emptyList(), windowStart);
+
+        assertEquals(before, result.getPruned());
+        assertEquals(0, result.getChangeCount());
+        assertEquals(1000 - before, storedCount());
+    }
+
+    @Test
+    public void indexFollowsMergesAfterItIsBuilt() {
+        mStore.mergeEarthquakes(mFixture.subList(0, 500), 0L);
+        assertNull(mStore.getSummary());
+        EarthquakeIndex index = mStore.getIndex();
+        assertEquals(500, index.size());
+        assertEquals(500, mStore.getSummary().getTotalCount());
+
+        mStore.mergeEarthquakes(mFixture.subList(500, 1000), 0L);
+        long windowStart = mFixture.get(mFixture.size() / 2).getTimeInMilliseconds();
+        mStore.mergeEarthquakes(Collections.<Earthquake>emptyList(), windowStart);
+
+        assertEquals(storedCount(), index.size());
+        assertEquals(storedCount(), mStore.getSummary().getTotalCount());
+        EarthquakeIndex.View newest = index.query(-10.0, 0L, Long.MAX_VALUE, EarthquakeQuery.OrderBy.TIME);
+        EarthquakeColumns stored = mStore.queryEarthquakeColumns(-10.0, 0L, 0, 0);
+        for (int i = 0; i < newest.size(); i++) {
+            assertEquals(stored.getTimeInMilliseconds(i), newest.getTimeInMilliseconds(i));
+        }
+    }
+
+    @Test
+    public void indexAndSummaryTakeOnlyTheChangesTheTableTook() {
+        mStore.mergeEarthquakes(mFixture, 0L);
+        EarthquakeIndex index = mStore.getIndex();
+        Earthquake first = mFixture.get(0);
+        Earthquake second = mFixture.get(1);
+
+        EarthquakeStore.MergeResult result = mStore.mergeEarthquakes(Arrays.asList(
+                // Same revision again, with another magnitude
+                revise(first, first.getUpdatedInMilliseconds(), 9.9),
+                // A deletion older than the stored revision
+                new Earthquake(second.getId(), second.getMagnitude(), second.getLocation(),
+                        second.getTimeInMilliseconds(), second.getUpdatedInMilliseconds() - 1, second.getUrl(), true),
+                new Earthquake(null, 9.8, "Nowhere", first.getTimeInMilliseconds(), 0L, null, false)), 0L);
+
+        assertEquals(0, result.getChangeCount());
+        assertEquals(1000, storedCount());
+        assertEquals(1000, index.size());
+        assertEquals(1000, mStore.getSummary().getTotalCount());
+        assertEquals(0, index.query(9.5, 0L, Long.MAX_VALUE, EarthquakeQuery.OrderBy.MAGNITUDE).size());
+    }
+
+    private int storedCount() {
+        return mStore.queryEarthquakeColumns(-10.0, 0L, 0, 0).size();
+    }
+
+    private double storedMagnitude(String eventId) {
+        EarthquakeColumns columns = mStore.queryEarthquakeColumns(-10.0, 0L, 0, 0);
+        for (int i = 0; i < columns.size(); i++) {
+            if (eventId.equals(columns.getId(i))) {
+                return columns.getMagnitude(i);
+            }
+        }
+        throw new AssertionError("Not stored: " + eventId);
+    }
+
+    private static Earthquake revise(Earthquake earthquake, long updated, double magnitude) {
+        return new Earthquake(earthquake.getId(), magnitude, earthquake.getLocation(),
+                earthquake.getTimeInMilliseconds(), updated, earthquake.getUrl(), false,
+                earthquake.getLatitude(), earthquake.getLongitude(), earthquake.getDepthKm());
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Incremental syncs against a scripted feed: revisions below the magnitude floor, deletions,
+ * and the high-water mark after an empty first sync.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class EarthquakeSyncEngineTest {
+
+    private static final long NOW = 1500000000000L;
+    private static final long HOUR_MILLIS = 60L * 60 * 1000;
+
+    private static final EarthquakeQuery BASE_QUERY = new EarthquakeQuery.Builder().minMagnitude(6.0).build();
+
+    private EarthquakeStore mStore;
+
+    /** Batches the feed returns, one per sync */
+    private final LinkedList<List<Earthquake>> mBatches = new LinkedList<>();
+
+    /** High-water mark each sync fetched from */
+    private final List<Long> mFetchedMarks = new ArrayList<>();
+
+    private EarthquakeSyncEngine mEngine;
+
+    @Before
+    public void setUp() {
+        mStore = new EarthquakeStore(RuntimeEnvironment.application);
+        // The real sync goes to USGS; only the fetch is swapped, the merge and bookkeeping are the engine's
+        mEngine = new EarthquakeSyncEngine(mStore, BASE_QUERY) {
+            @Override
+            List<Earthquake> fetchChanges(long highWaterMark, long now) {
+                mFetchedMarks.add(highWaterMark);
+                List<Earthquake> batch = mBatches.removeFirst();
+                return highWaterMark > 0L ? applyMagnitudeFloor(batch) : batch;
+            }
+        };
+    }
+
+    @Test
+    public void incrementalQueryHasNoMagnitudeFloor() {
+        assertEquals("6", mEngine.buildSyncQuery(0L, NOW).getParameter("minmagnitude"));
+        assertNull(mEngine.buildSyncQuery(NOW - HOUR_MILLIS, NOW).getParameter("minmagnitude"));
+    }
+
+    @Test
+    public void revisionBelowTheFloorRemovesTheStoredEvent() {
+        mBatches.add(Arrays.asList(event("a", 6.5, 100L), event("b", 6.1, 100L)));
+        mBatches.add(Arrays.asList(event("a", 5.8, 200L), event("c", 4.0, 200L)));
+        mEngine.sync(NOW);
+
+        EarthquakeStore.MergeResult result = mEngine.sync(NOW + HOUR_MILLIS);
+
+        assertEquals(1, result.getDeleted());
+        assertEquals(0, result.getInserted());
+        EarthquakeColumns stored = mStore.queryEarthquakeColumns(-10.0, 0L, 0, 0);
+        assertEquals(1, stored.size());
+        assertEquals("b", stored.getId(0));
+        assertEquals(1, mStore.getIndex().size());
+    }
+
+    @Test
+    public void deletionsInTheEdgeCasesFixtureRemoveStoredEvents() throws IOException {
+        mBatches.add(Arrays.asList(event("us1000ddd5", 6.5, 100L), event("ak20000006", 6.2, 100L),
+                event("b", 6.1, 100L)));
+        // Also holds a quarry blast and events below the floor, none of which are stored
+        mBatches.add(QueryUtils.readEarthquakesFromStream(new ByteArrayInputStream(Fixtures.loadEdgeCases(false))));
+        mEngine.sync(NOW);
+
+        EarthquakeStore.MergeResult result = mEngine.sync(NOW + HOUR_MILLIS);
+
+        assertEquals(2, result.getDeleted());
+        assertEquals(0, result.getInserted());
+        EarthquakeColumns stored = mStore.queryEarthquakeColumns(-10.0, 0L, 0, 0);
+        assertEquals(1, stored.size());
+        assertEquals("b", stored.getId(0));
+    }
+
+    @Test
+    public void emptyFirstSyncSeedsTheHighWaterMark() {
+        mBatches.add(Collections.<Earthquake>emptyList());
+        mBatches.add(Collections.<Earthquake>emptyList());
+
+        mEngine.sync(NOW);
+        mEngine.sync(NOW + HOUR_MILLIS);
+
+        // The second sync is incremental, from the time of the first
+        assertEquals(Arrays.asList(0L, NOW), mFetchedMarks);
+    }
+
+    private static Earthquake event(String id, double magnitude, long updated) {
+        return new Earthquake(id, magnitude, "Somewhere", NOW - 2 * HOUR_MILLIS, updated,
+                "https://example.com/" + id, false);
+    }
+}
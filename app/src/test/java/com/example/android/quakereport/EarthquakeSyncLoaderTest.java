@@ -0,0 +1,120 @@
+package com.example.android.quakereport;
+
+import android.support.v4.content.Loader;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Activities that come and go while a sync runs reattach to it instead of starting another.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class EarthquakeSyncLoaderTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    private final CountDownLatch mRelease = new CountDownLatch(1);
+    private final AtomicInteger mDeliveries = new AtomicInteger();
+    private StubServer mServer;
+    private EarthquakeSyncLoader mLoader;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubServer();
+        mServer.setHandler(new StubServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                // Hold the response until the test has restarted the loader
+                try {
+                    mRelease.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                StubServer.respond(exchange, HttpURLConnection.HTTP_OK, Fixtures.load(10), false);
+            }
+        });
+
+        final URL url = mServer.url("/query?format=geojson&limit=10");
+        // The real sync goes to USGS; only the request is swapped, the loader lifecycle is the app's
+        mLoader = new EarthquakeSyncLoader(RuntimeEnvironment.application, new EarthquakeQuery.Builder().build(), 0L) {
+            @Override
+            public EarthquakeStore.MergeResult loadInBackground() {
+                try {
+                    QueryUtils.fetchEarthquakes(url);
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+                return null;
+            }
+        };
+        mLoader.registerListener(0, new Loader.OnLoadCompleteListener<EarthquakeStore.MergeResult>() {
+            @Override
+            public void onLoadComplete(Loader<EarthquakeStore.MergeResult> loader, EarthquakeStore.MergeResult result) {
+                mDeliveries.incrementAndGet();
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mRelease.countDown();
+        mLoader.reset();
+        mServer.close();
+    }
+
+    @Test
+    public void rapidRecreationsMakeOneRequest() throws InterruptedException {
+        mLoader.startLoading();
+        for (int i = 0; i < 5; i++) {
+            // What the LoaderManager does as each Activity stops and the next one starts
+            mLoader.stopLoading();
+            mLoader.startLoading();
+        }
+        mRelease.countDown();
+
+        awaitDelivery();
+
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(1, mDeliveries.get());
+    }
+
+    @Test
+    public void finishedSyncIsRedeliveredWithoutARequest() throws InterruptedException {
+        mRelease.countDown();
+        mLoader.startLoading();
+        awaitDelivery();
+
+        mLoader.stopLoading();
+        mLoader.startLoading();
+
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(2, mDeliveries.get());
+    }
+
+    /** Run main-thread tasks until the loader has delivered, as the Activity's looper would */
+    private void awaitDelivery() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (mDeliveries.get() == 0 && System.currentTimeMillis() < deadline) {
+            ShadowLooper.runUiThreadTasks();
+            Thread.sleep(10);
+        }
+    }
+}
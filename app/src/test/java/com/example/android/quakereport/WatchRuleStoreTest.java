@@ -0,0 +1,93 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Saved rules surviving a restart, replacement and deletion by id, and the installed alert
+ * engine following every change.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(constants = BuildConfig.class, sdk = 23)
+public class WatchRuleStoreTest {
+
+    private WatchRuleStore mStore;
+
+    @Before
+    public void setUp() {
+        mStore = new WatchRuleStore(RuntimeEnvironment.application);
+        for (WatchRule rule : mStore.getRules()) {
+            mStore.remove(rule.getId());
+        }
+    }
+
+    @Test
+    public void rulesSurviveARestart() {
+        mStore.add(new WatchRule.Builder("anywhere").minMagnitude(7.0).build());
+        mStore.add(new WatchRule.Builder("tokyo").minMagnitude(5.5).within(35.68, 139.69, 300.0)
+                .validBetween(1000L, Long.MAX_VALUE).build());
+        mStore.add(new WatchRule.Builder("fiji").boundingBox(-25.0, -10.0, 170.0, -170.0)
+                .validBetween(1000L, 2000L).build());
+
+        List<WatchRule> reloaded = new WatchRuleStore(RuntimeEnvironment.application).getRules();
+
+        assertEquals(describe(mStore.getRules()), describe(reloaded));
+    }
+
+    @Test
+    public void ruleWithTheSameIdIsReplaced() {
+        mStore.add(new WatchRule.Builder("a").minMagnitude(5.0).build());
+        mStore.add(new WatchRule.Builder("b").minMagnitude(6.0).build());
+
+        mStore.add(new WatchRule.Builder("a").minMagnitude(7.0).build());
+        mStore.remove("b");
+
+        List<WatchRule> rules = new WatchRuleStore(RuntimeEnvironment.application).getRules();
+        assertEquals(1, rules.size());
+        assertEquals(7.0, rules.get(0).getMinMagnitude(), 0.0);
+    }
+
+    @Test
+    public void installedEngineFollowsTheRules() {
+        mStore.add(new WatchRule.Builder("a").minMagnitude(5.0).build());
+        mStore.install(new EarthquakeAlertNotifier(RuntimeEnvironment.application));
+        assertEquals(1, mStore.getInstalledRules().size());
+
+        mStore.add(new WatchRule.Builder("b").minMagnitude(6.0).build());
+        assertEquals(2, mStore.getInstalledRules().size());
+
+        mStore.remove("a");
+        assertEquals("b", mStore.getInstalledRules().get(0).getId());
+    }
+
+    @Test
+    public void unreadableRuleIsSkipped() {
+        List<WatchRule> rules = WatchRuleStore.fromJson(
+                "[{\"id\":\"bad\",\"area\":\"NOWHERE\"},{\"id\":\"good\",\"minMagnitude\":6,\"area\":\"EVERYWHERE\"}]");
+
+        assertEquals(1, rules.size());
+        assertEquals("good", rules.get(0).getId());
+    }
+
+    /** Every field of each rule, as text, so a mismatch shows which one differs */
+    private static List<String> describe(List<WatchRule> rules) {
+        List<String> descriptions = new ArrayList<>();
+        for (WatchRule rule : rules) {
+            descriptions.add(rule.getId() + " M" + rule.getMinMagnitude() + " " + rule.getArea()
+                    + " circle " + rule.getLatitude() + "," + rule.getLongitude() + "," + rule.getRadiusKm()
+                    + " box " + rule.getMinLatitude() + "," + rule.getMaxLatitude() + ","
+                    + rule.getMinLongitude() + "," + rule.getMaxLongitude()
+                    + " valid " + rule.getValidFrom() + "-" + rule.getValidUntil());
+        }
+        return descriptions;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching 100,000 events against 1,000 saved rules, with {@link EarthquakeAlertEngine}'s index
+ * and naively (every rule against every event). Rules and events are generated from a fixed seed
+ * by {@link AlertFixtures}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AlertBenchmark {
+
+    @Param({"1000"})
+    public int ruleCount;
+
+    @Param({"100000"})
+    public int eventCount;
+
+    private List<WatchRule> mRules;
+    private List<Earthquake> mEvents;
+    private EarthquakeAlertEngine mEngine;
+
+    @Setup
+    public void setUp() {
+        // EarthquakeAlertEngineTest checks the index finds what the naive loop finds
+        Random random = new Random(42);
+        mRules = AlertFixtures.generateRules(random, ruleCount);
+        mEvents = AlertFixtures.generateEvents(random, eventCount);
+        mEngine = new EarthquakeAlertEngine(mRules);
+    }
+
+    @Benchmark
+    public int indexed() {
+        int matches = 0;
+        for (Earthquake event : mEvents) {
+            matches += mEngine.findMatchingRules(event).size();
+        }
+        return matches;
+    }
+
+    @Benchmark
+    public int naive() {
+        int matches = 0;
+        for (Earthquake event : mEvents) {
+            for (WatchRule rule : mRules) {
+                if (rule.matches(event)) {
+                    matches++;
+                }
+            }
+        }
+        return matches;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-row formatting work of the list: splitting the location, and formatting the date,
+ * time and magnitude. Each invocation formats all rows of the 1,000-feature fixture; scores
+ * are per row.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FormatBenchmark {
+
+    private static final int ROW_COUNT = 1000;
+
+    private EarthquakeFormatter mFormatter;
+    private String[] mLocations;
+    private long[] mTimes;
+    private double[] mMagnitudes;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Earthquake> earthquakes = QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream(Fixtures.load(ROW_COUNT)));
+        if (earthquakes.size() != ROW_COUNT) {
+            throw new IllegalStateException("Fixture didn't parse into " + ROW_COUNT + " earthquakes");
+        }
+        mFormatter = new EarthquakeFormatter("Near the");
+        mLocations = new String[ROW_COUNT];
+        mTimes = new long[ROW_COUNT];
+        mMagnitudes = new double[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            Earthquake earthquake = earthquakes.get(i);
+            mLocations[i] = earthquake.getLocation();
+            mTimes[i] = earthquake.getTimeInMilliseconds();
+            mMagnitudes[i] = earthquake.getMagnitude();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void splitLocation(Blackhole blackhole) {
+        for (String location : mLocations) {
+            int separatorIndex = EarthquakeFormatter.findLocationSeparator(location);
+            blackhole.consume(mFormatter.formatLocationOffset(location, separatorIndex));
+            blackhole.consume(EarthquakeFormatter.formatPrimaryLocation(location, separatorIndex));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void formatDate(Blackhole blackhole) {
+        for (long time : mTimes) {
+            blackhole.consume(mFormatter.formatDate(time));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void formatTime(Blackhole blackhole) {
+        for (long time : mTimes) {
+            blackhole.consume(mFormatter.formatTime(time));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROW_COUNT)
+    public void formatMagnitude(Blackhole blackhole) {
+        for (double magnitude : mMagnitudes) {
+            blackhole.consume(mFormatter.formatMagnitude(magnitude));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.android.quakereport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a USGS response into {@link Earthquake} objects, at 10, 1,000 and 50,000 features:
+ * GeoJSON with the streaming parser the app uses and with the JSONObject parser it replaced, and the
+ * same events as CSV.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+
+    @Param({"10", "1000", "50000"})
+    public int featureCount;
+
+    private byte[] mBody;
+    private String mBodyString;
+    private byte[] mCsvBody;
+
+    @Setup
+    public void setUp() throws IOException {
+        mBody = Fixtures.load(featureCount);
+        mBodyString = new String(mBody, Charset.forName("UTF-8"));
+        // Fail early rather than time a parser that gives up on the fixture
+        if (QueryUtils.readEarthquakesFromStream(new ByteArrayInputStream(mBody)).size() != featureCount) {
+            throw new IllegalStateException("Fixture didn't parse into " + featureCount + " earthquakes");
+        }
+        // The same events; EarthquakeCsvReaderTest checks both formats parse alike
+        mCsvBody = Fixtures.loadCsv(featureCount);
+    }
+
+    @Benchmark
+    public List<Earthquake> streaming() throws IOException {
+        return QueryUtils.readEarthquakesFromStream(new ByteArrayInputStream(mBody));
+    }
+
+    @Benchmark
+    public List<Earthquake> jsonObject() {
+        return JsonObjectParser.parse(mBodyString);
+    }
+
+    @Benchmark
+    public List<Earthquake> csv() throws IOException {
+        return EarthquakeCsvReader.read(new ByteArrayInputStream(mCsvBody), true);
+    }
+}
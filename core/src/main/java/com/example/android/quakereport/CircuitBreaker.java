@@ -0,0 +1,104 @@
+package com.example.android.quakereport;
+
+/**
+ * Stops sending requests to an endpoint that keeps failing, so callers fail fast (and fall back
+ * to cached data) instead of each waiting out its own timeouts.
+ *
+ * Closed, requests flow; after {@code failureThreshold} consecutive failures the breaker opens
+ * and rejects requests. Once {@code openMillis} have passed it lets a single trial request
+ * through (half-open): success closes it again, failure reopens it for another period.
+ */
+public class CircuitBreaker {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = CircuitBreaker.class.getSimpleName();
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final Clock mClock;
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+
+    private State mState = State.CLOSED;
+    private int mConsecutiveFailures = 0;
+    private long mOpenedAt = 0L;
+
+    /** Whether the half-open trial request has been let through and hasn't finished */
+    private boolean mTrialInFlight = false;
+
+    /**
+     * @param failureThreshold is the number of consecutive failures that opens the breaker.
+     * @param openMillis is how long the breaker stays open before a trial request.
+     */
+    public CircuitBreaker(Clock clock, int failureThreshold, long openMillis) {
+        if (failureThreshold < 1 || openMillis <= 0L) {
+            throw new IllegalArgumentException("Invalid failure threshold or open time");
+        }
+        this.mClock = clock;
+        this.mFailureThreshold = failureThreshold;
+        this.mOpenMillis = openMillis;
+    }
+
+    /**
+     * Return whether a request may be sent now. Every allowed request must be followed by
+     * {@link #onSuccess()}, {@link #onFailure()}, or {@link #onAbandoned()} if it never reached
+     * the endpoint.
+     */
+    public synchronized boolean allowRequest() {
+        switch (mState) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (mClock.currentTimeMillis() - mOpenedAt < mOpenMillis) {
+                    return false;
+                }
+                Logger.v(LOG_TAG, "Open period over; letting a trial request through.");
+                mState = State.HALF_OPEN;
+                mTrialInFlight = true;
+                return true;
+            default:
+                if (mTrialInFlight) {
+                    return false;
+                }
+                mTrialInFlight = true;
+                return true;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (mState != State.CLOSED) {
+            Logger.v(LOG_TAG, "Request succeeded; closing the circuit.");
+        }
+        mState = State.CLOSED;
+        mConsecutiveFailures = 0;
+        mTrialInFlight = false;
+    }
+
+    public synchronized void onFailure() {
+        mConsecutiveFailures++;
+        if (mState == State.HALF_OPEN || (mState == State.CLOSED && mConsecutiveFailures >= mFailureThreshold)) {
+            Logger.e(LOG_TAG, mConsecutiveFailures + " consecutive failures; opening the circuit for "
+                    + mOpenMillis + " ms.");
+            mState = State.OPEN;
+            mOpenedAt = mClock.currentTimeMillis();
+            mTrialInFlight = false;
+        }
+    }
+
+    /**
+     * Record that an allowed request was dropped before it got an answer, e.g. cancelled while
+     * it waited for a thread. It tells nothing about the endpoint; a half-open breaker lets the
+     * next request through as its trial instead.
+     */
+    public synchronized void onAbandoned() {
+        mTrialInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return mState;
+    }
+}
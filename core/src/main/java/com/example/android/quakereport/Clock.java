@@ -0,0 +1,20 @@
+package com.example.android.quakereport;
+
+/**
+ * Source of the current time, so time-based decisions can be checked with a fake clock.
+ */
+public interface Clock {
+
+    /** The system wall clock */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /**
+     * Return the current time in milliseconds from the Epoch.
+     */
+    long currentTimeMillis();
+}
@@ -0,0 +1,191 @@
+package com.example.android.quakereport;
+
+/**
+ * Contains data for an earthquake event
+ */
+
+public class Earthquake {
+
+    /** USGS event id, unique per earthquake (e.g. "us1000abcd"). Null if unknown. */
+    private String mId = null;
+
+    /** Magnitude of the quake. Default value of 0.0 until initialized */
+    private double mMagnitude = 0.0;
+
+    /** Nearest city (or region, if no nearby city) to the earthquake */
+    private String mLocation = null;
+
+    /** Time of the earthquake */
+    private long mTimeInMilliseconds;
+
+    /** Time the USGS last revised this event (e.g. a magnitude update) */
+    private long mUpdatedInMilliseconds;
+
+    /** URL for USGS webpage with details of the earthquake */
+    private String mWebpageUrl;
+
+    /** Whether USGS has deleted this event; only reported when deleted events are requested */
+    private boolean mDeleted = false;
+
+    /** Latitude of the epicenter in degrees; NaN if unknown */
+    private double mLatitude = Double.NaN;
+
+    /** Longitude of the epicenter in degrees; NaN if unknown */
+    private double mLongitude = Double.NaN;
+
+    /** Depth of the hypocenter in km; NaN if unknown */
+    private double mDepthKm = Double.NaN;
+
+    /**
+     * Constructor for the {@link com.example.android.quakereport.Earthquake} class.
+     *
+     * @param Magnitude is the strength/size of the quake.
+     * @param Location is the nearest city to quake's epicenter, or region quake occurred in.
+     * @param timeInMilliseconds is the time in milliseconds (from the Epoch) when the
+     *  earthquake happened
+     */
+    public Earthquake(double Magnitude, String Location, long timeInMilliseconds, String webpageUrl) {
+        this(null, Magnitude, Location, timeInMilliseconds, webpageUrl);
+    }
+
+    /**
+     * Constructor for the {@link com.example.android.quakereport.Earthquake} class, including the USGS event id.
+     *
+     * @param id is the USGS event id.
+     * @param Magnitude is the strength/size of the quake.
+     * @param Location is the nearest city to quake's epicenter, or region quake occurred in.
+     * @param timeInMilliseconds is the time in milliseconds (from the Epoch) when the
+     *  earthquake happened
+     */
+    public Earthquake(String id, double Magnitude, String Location, long timeInMilliseconds, String webpageUrl) {
+        this(id, Magnitude, Location, timeInMilliseconds, timeInMilliseconds, webpageUrl, false);
+    }
+
+    /**
+     * Constructor for the {@link com.example.android.quakereport.Earthquake} class, including the
+     * revision information used when merging updates from USGS.
+     *
+     * @param id is the USGS event id.
+     * @param Magnitude is the strength/size of the quake.
+     * @param Location is the nearest city to quake's epicenter, or region quake occurred in.
+     * @param timeInMilliseconds is the time in milliseconds (from the Epoch) when the
+     *  earthquake happened
+     * @param updatedInMilliseconds is the time in milliseconds (from the Epoch) when USGS last
+     *  revised the event
+     * @param deleted is true if USGS has deleted the event
+     */
+    public Earthquake(String id, double Magnitude, String Location, long timeInMilliseconds,
+                      long updatedInMilliseconds, String webpageUrl, boolean deleted) {
+        this(id, Magnitude, Location, timeInMilliseconds, updatedInMilliseconds, webpageUrl, deleted,
+                Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Constructor for the {@link com.example.android.quakereport.Earthquake} class, including the
+     * epicenter coordinates and depth from the GeoJSON geometry.
+     *
+     * @param id is the USGS event id.
+     * @param Magnitude is the strength/size of the quake.
+     * @param Location is the nearest city to quake's epicenter, or region quake occurred in.
+     * @param timeInMilliseconds is the time in milliseconds (from the Epoch) when the
+     *  earthquake happened
+     * @param updatedInMilliseconds is the time in milliseconds (from the Epoch) when USGS last
+     *  revised the event
+     * @param deleted is true if USGS has deleted the event
+     * @param latitude is the latitude of the epicenter in degrees, or NaN if unknown.
+     * @param longitude is the longitude of the epicenter in degrees, or NaN if unknown.
+     * @param depthKm is the depth of the hypocenter in km, or NaN if unknown.
+     */
+    public Earthquake(String id, double Magnitude, String Location, long timeInMilliseconds,
+                      long updatedInMilliseconds, String webpageUrl, boolean deleted,
+                      double latitude, double longitude, double depthKm) {
+        this.mId = id;
+        this.mMagnitude = Magnitude;
+        this.mLocation = Location;
+        this.mTimeInMilliseconds = timeInMilliseconds;
+        this.mUpdatedInMilliseconds = updatedInMilliseconds;
+        this.mWebpageUrl = webpageUrl;
+        this.mDeleted = deleted;
+        this.mLatitude = latitude;
+        this.mLongitude = longitude;
+        this.mDepthKm = depthKm;
+    }
+
+    /**
+     * Returns the USGS event id of the earthquake, or null if unknown.
+     */
+    public String getId() {
+        return mId;
+    }
+
+    /**
+     * Returns the magnitude/size of the earthquake.
+     */
+    public double getMagnitude() {
+        return mMagnitude;
+    }
+
+    /**
+     * Returns the location of the earthquake.
+     */
+    public String getLocation() {
+        return mLocation;
+    }
+
+    /**
+     * Returns the time of the earthquake.
+     */
+    public long getTimeInMilliseconds() {
+        return mTimeInMilliseconds;
+    }
+
+    /**
+     * Returns the time USGS last revised the earthquake.
+     */
+    public long getUpdatedInMilliseconds() {
+        return mUpdatedInMilliseconds;
+    }
+
+    /**
+     * Returns true if USGS has deleted the earthquake.
+     */
+    public boolean isDeleted() {
+        return mDeleted;
+    }
+
+    /**
+     * Returns the latitude of the epicenter in degrees, or NaN if unknown.
+     */
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    /**
+     * Returns the longitude of the epicenter in degrees, or NaN if unknown.
+     */
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    /**
+     * Returns the depth of the hypocenter in km, or NaN if unknown.
+     */
+    public double getDepthKm() {
+        return mDepthKm;
+    }
+
+    /**
+     * Returns true if the epicenter coordinates are known.
+     */
+    public boolean hasCoordinates() {
+        return !Double.isNaN(mLatitude) && !Double.isNaN(mLongitude);
+    }
+
+    /**
+     * Returns a URL for the USGS webpage with details for this earthquake.
+     */
+    public String getUrl() {
+        return mWebpageUrl;
+    }
+
+}
@@ -0,0 +1,328 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Matches incoming events against many saved {@link WatchRule}s at once, and turns the
+ * matches into alerts, at most one per event and rule.
+ *
+ * Rules are indexed so an event is only checked against rules that could match it: they are
+ * bucketed by the 2 x 2 degree cells their area overlaps (rules watching everywhere, or areas
+ * too large to bucket, go in a global bucket), and each bucket is sorted by minimum magnitude,
+ * so an event walks only the rules of its own cell at or below its magnitude. Those candidates
+ * get the exact validity and area check. The cost per event is set by the rules near it, not
+ * by the total number of rules.
+ *
+ * The index is built once from the rules and is immutable; use {@link #withRules(List)} when
+ * the rules change, which keeps the record of alerts already sent.
+ */
+public class EarthquakeAlertEngine {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeAlertEngine.class.getSimpleName();
+
+    private static final double CELL_DEGREES = 2.0;
+    private static final int LATITUDE_CELLS = 90;
+    private static final int LONGITUDE_CELLS = 180;
+
+    /** Areas overlapping more cells than this go in the global bucket */
+    private static final int MAX_CELLS_PER_RULE = 1024;
+
+    /** Number of events whose alerts are remembered, for de-duplication */
+    private static final int MAX_REMEMBERED_EVENTS = 10000;
+
+    private static final Comparator<WatchRule> BY_MIN_MAGNITUDE = new Comparator<WatchRule>() {
+        @Override
+        public int compare(WatchRule first, WatchRule second) {
+            return Double.compare(first.getMinMagnitude(), second.getMinMagnitude());
+        }
+    };
+
+    /**
+     * An event that matched one or more rules it hadn't been alerted for.
+     */
+    public static class Alert {
+        private final Earthquake mEarthquake;
+        private final List<WatchRule> mRules;
+
+        Alert(Earthquake earthquake, List<WatchRule> rules) {
+            this.mEarthquake = earthquake;
+            this.mRules = Collections.unmodifiableList(rules);
+        }
+
+        /** USGS event id; alerts are keyed by it */
+        public String getEventId() {
+            return mEarthquake.getId();
+        }
+
+        public Earthquake getEarthquake() {
+            return mEarthquake;
+        }
+
+        /** The newly matched rules */
+        public List<WatchRule> getRules() {
+            return mRules;
+        }
+
+        @Override
+        public String toString() {
+            return getEventId() + " " + mRules;
+        }
+    }
+
+    /**
+     * Receives the alerts produced by a batch of events.
+     */
+    public interface Listener {
+        void onAlerts(List<Alert> alerts);
+    }
+
+    /**
+     * Rules of a bucket sorted by minimum magnitude, with the magnitudes in a parallel array
+     * for the binary search.
+     */
+    private static final class Bucket {
+        final WatchRule[] rules;
+        final double[] minMagnitudes;
+
+        Bucket(List<WatchRule> bucketRules) {
+            rules = bucketRules.toArray(new WatchRule[bucketRules.size()]);
+            Arrays.sort(rules, BY_MIN_MAGNITUDE);
+            minMagnitudes = new double[rules.length];
+            for (int i = 0; i < rules.length; i++) {
+                minMagnitudes[i] = rules[i].getMinMagnitude();
+            }
+        }
+
+        /** Add the rules matching the event to {@code matches} */
+        void collect(Earthquake earthquake, List<WatchRule> matches) {
+            int end = countAtOrBelow(earthquake.getMagnitude());
+            for (int i = 0; i < end; i++) {
+                if (rules[i].matches(earthquake)) {
+                    matches.add(rules[i]);
+                }
+            }
+        }
+
+        /** Return the number of rules with a minimum magnitude at or below the magnitude */
+        private int countAtOrBelow(double magnitude) {
+            int low = 0;
+            int high = minMagnitudes.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (minMagnitudes[middle] <= magnitude) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    private final List<WatchRule> mRules;
+    private final Bucket mGlobalBucket;
+
+    /** Bucket of each cell; null for cells no rule overlaps */
+    private final Bucket[] mCellBuckets = new Bucket[LATITUDE_CELLS * LONGITUDE_CELLS];
+
+    /** Rule ids already alerted, by event id; least recently alerted events are forgotten first */
+    private final Map<String, Set<String>> mAlerted;
+
+    /**
+     * Build an engine over the rules, with no alerts sent yet.
+     */
+    public EarthquakeAlertEngine(List<WatchRule> rules) {
+        this(rules, new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                return size() > MAX_REMEMBERED_EVENTS;
+            }
+        });
+    }
+
+    private EarthquakeAlertEngine(List<WatchRule> rules, Map<String, Set<String>> alerted) {
+        this.mRules = Collections.unmodifiableList(new ArrayList<>(rules));
+        this.mAlerted = alerted;
+
+        List<WatchRule> globalRules = new ArrayList<>();
+        List<List<WatchRule>> cellRules = new ArrayList<>(Collections.<List<WatchRule>>nCopies(mCellBuckets.length, null));
+        for (WatchRule rule : rules) {
+            int[] cells = cellsOf(rule);
+            if (cells == null) {
+                globalRules.add(rule);
+                continue;
+            }
+            for (int cell : cells) {
+                List<WatchRule> bucket = cellRules.get(cell);
+                if (bucket == null) {
+                    bucket = new ArrayList<>();
+                    cellRules.set(cell, bucket);
+                }
+                bucket.add(rule);
+            }
+        }
+        mGlobalBucket = new Bucket(globalRules);
+        for (int cell = 0; cell < mCellBuckets.length; cell++) {
+            if (cellRules.get(cell) != null) {
+                mCellBuckets[cell] = new Bucket(cellRules.get(cell));
+            }
+        }
+        Logger.v(LOG_TAG, "Indexed " + rules.size() + " rules; " + globalRules.size() + " global.");
+    }
+
+    /**
+     * Return an engine over new rules that remembers the alerts this one sent, so changing the
+     * rules doesn't repeat them.
+     */
+    public EarthquakeAlertEngine withRules(List<WatchRule> rules) {
+        return new EarthquakeAlertEngine(rules, mAlerted);
+    }
+
+    public List<WatchRule> getRules() {
+        return mRules;
+    }
+
+    /**
+     * Return every rule the event matches, whether or not it was alerted before.
+     */
+    public List<WatchRule> findMatchingRules(Earthquake earthquake) {
+        List<WatchRule> matches = new ArrayList<>();
+        mGlobalBucket.collect(earthquake, matches);
+        double latitude = earthquake.getLatitude();
+        double longitude = earthquake.getLongitude();
+        if (!Double.isNaN(latitude) && !Double.isNaN(longitude)) {
+            Bucket bucket = mCellBuckets[cellOf(latitude, longitude)];
+            if (bucket != null) {
+                bucket.collect(earthquake, matches);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Match a batch of events, e.g. the result of a fetch or sync, and return the alerts to
+     * send: one per event, holding the rules it matched for the first time. An event seen
+     * again (a revision, or a repeated fetch) only alerts for rules it didn't match before,
+     * e.g. after a magnitude upgrade. Events without an id can't be de-duplicated and are skipped.
+     */
+    public List<Alert> match(List<Earthquake> earthquakes) {
+        List<Alert> alerts = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            String id = earthquake.getId();
+            if (id == null) {
+                continue;
+            }
+            List<WatchRule> matches = findMatchingRules(earthquake);
+            if (matches.isEmpty()) {
+                continue;
+            }
+            List<WatchRule> fresh = new ArrayList<>(matches.size());
+            synchronized (mAlerted) {
+                Set<String> alertedRules = mAlerted.get(id);
+                if (alertedRules == null) {
+                    alertedRules = new HashSet<>();
+                    mAlerted.put(id, alertedRules);
+                }
+                for (WatchRule rule : matches) {
+                    // Keyed by rule id, so a rule saved twice still alerts once
+                    if (alertedRules.add(rule.getId())) {
+                        fresh.add(rule);
+                    }
+                }
+            }
+            if (!fresh.isEmpty()) {
+                alerts.add(new Alert(earthquake, fresh));
+            }
+        }
+        return alerts;
+    }
+
+    /**
+     * Return the cells a rule's area overlaps, or null for the global bucket.
+     */
+    private static int[] cellsOf(WatchRule rule) {
+        double minLatitude;
+        double maxLatitude;
+        double westLongitude;
+        double longitudeSpan;
+        switch (rule.getArea()) {
+            case CIRCLE: {
+                // Bounding box of the circle, as in EarthquakeSpatialIndex
+                double angularRadius = rule.getRadiusKm() / EarthquakeSpatialIndex.EARTH_RADIUS_KM;
+                double deltaLatitude = Math.toDegrees(angularRadius);
+                minLatitude = rule.getLatitude() - deltaLatitude;
+                maxLatitude = rule.getLatitude() + deltaLatitude;
+                westLongitude = -180.0;
+                longitudeSpan = 360.0;
+                if (minLatitude > -90.0 && maxLatitude < 90.0) {
+                    double sinDeltaLongitude = Math.sin(angularRadius) / Math.cos(Math.toRadians(rule.getLatitude()));
+                    if (sinDeltaLongitude < 1.0) {
+                        double deltaLongitude = Math.toDegrees(Math.asin(sinDeltaLongitude));
+                        westLongitude = rule.getLongitude() - deltaLongitude;
+                        longitudeSpan = 2 * deltaLongitude;
+                    }
+                }
+                break;
+            }
+            case BOX:
+                minLatitude = rule.getMinLatitude();
+                maxLatitude = rule.getMaxLatitude();
+                westLongitude = rule.getMinLongitude();
+                longitudeSpan = rule.getMaxLongitude() - rule.getMinLongitude();
+                if (longitudeSpan < 0) {
+                    // Crosses the date line
+                    longitudeSpan += 360.0;
+                }
+                break;
+            default:
+                return null;
+        }
+
+        int firstLatitudeCell = latitudeCell(Math.max(minLatitude, -90.0));
+        int lastLatitudeCell = latitudeCell(Math.min(maxLatitude, 90.0));
+        int firstLongitudeCell = longitudeCell(westLongitude);
+        // One extra cell, since the span can start anywhere in the first cell
+        int longitudeCellCount = Math.min((int) Math.ceil(longitudeSpan / CELL_DEGREES) + 1, LONGITUDE_CELLS);
+        int cellCount = (lastLatitudeCell - firstLatitudeCell + 1) * longitudeCellCount;
+        if (cellCount > MAX_CELLS_PER_RULE) {
+            return null;
+        }
+
+        int[] cells = new int[cellCount];
+        int count = 0;
+        for (int latitudeCell = firstLatitudeCell; latitudeCell <= lastLatitudeCell; latitudeCell++) {
+            for (int i = 0; i < longitudeCellCount; i++) {
+                cells[count++] = latitudeCell * LONGITUDE_CELLS + (firstLongitudeCell + i) % LONGITUDE_CELLS;
+            }
+        }
+        return cells;
+    }
+
+    private static int cellOf(double latitude, double longitude) {
+        return latitudeCell(latitude) * LONGITUDE_CELLS + longitudeCell(longitude);
+    }
+
+    private static int latitudeCell(double latitude) {
+        int cell = (int) Math.floor((latitude + 90.0) / CELL_DEGREES);
+        return Math.max(0, Math.min(cell, LATITUDE_CELLS - 1));
+    }
+
+    private static int longitudeCell(double longitude) {
+        // Map into [-180, 180) first
+        double normalized = (longitude + 180.0) % 360.0;
+        if (normalized < 0) {
+            normalized += 360.0;
+        }
+        int cell = (int) Math.floor(normalized / CELL_DEGREES);
+        return Math.min(cell, LONGITUDE_CELLS - 1);
+    }
+}
@@ -0,0 +1,254 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, column-oriented set of earthquakes: one primitive array per field instead of one
+ * {@link Earthquake} object per event.
+ *
+ * Magnitudes and times are stored unboxed; place names are dictionary-encoded, so the many
+ * events sharing a region name share one String; and USGS event page URLs, which are derived
+ * from the event id, are only stored when they don't follow that pattern. Rows are read by
+ * index, e.g. by the app's {@code EarthquakeRowFormatter}, without creating
+ * an {@link Earthquake} per row; {@link #getEarthquake(int)} materializes one when needed.
+ *
+ * Not thread-safe; fill it on one thread and hand it over once complete.
+ */
+public class EarthquakeColumns {
+
+    /** USGS event pages live at this prefix followed by the event id */
+    static final String EVENT_PAGE_URL_PREFIX = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int mSize = 0;
+    private String[] mIds;
+    private double[] mMagnitudes;
+    private long[] mTimes;
+    private long[] mUpdatedTimes;
+
+    /** Epicenter and depth; NaN where unknown */
+    private double[] mLatitudes;
+    private double[] mLongitudes;
+    private double[] mDepthsKm;
+
+    /** Index into {@link #mPlaces} per row, or -1 for no place */
+    private int[] mPlaceCodes;
+
+    /** URL per row, or null when it is the standard event page URL for the row's id */
+    private String[] mUrls;
+
+    private final BitSet mDeleted = new BitSet();
+
+    /** Distinct place names, and their codes */
+    private final List<String> mPlaces = new ArrayList<>();
+    private final Map<String, Integer> mPlaceCodesByName = new HashMap<>();
+
+    public EarthquakeColumns() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity is the number of rows to allocate room for up front.
+     */
+    public EarthquakeColumns(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        mIds = new String[capacity];
+        mMagnitudes = new double[capacity];
+        mTimes = new long[capacity];
+        mUpdatedTimes = new long[capacity];
+        mLatitudes = new double[capacity];
+        mLongitudes = new double[capacity];
+        mDepthsKm = new double[capacity];
+        mPlaceCodes = new int[capacity];
+        mUrls = new String[capacity];
+    }
+
+    /**
+     * Return a new set holding the given earthquakes, in the same order.
+     */
+    public static EarthquakeColumns from(List<Earthquake> earthquakes) {
+        EarthquakeColumns columns = new EarthquakeColumns(earthquakes.size());
+        for (Earthquake earthquake : earthquakes) {
+            columns.add(earthquake);
+        }
+        return columns;
+    }
+
+    /**
+     * Append an earthquake.
+     */
+    public void add(Earthquake earthquake) {
+        add(earthquake.getId(), earthquake.getMagnitude(), earthquake.getLocation(),
+                earthquake.getTimeInMilliseconds(), earthquake.getUpdatedInMilliseconds(),
+                earthquake.getUrl(), earthquake.isDeleted(),
+                earthquake.getLatitude(), earthquake.getLongitude(), earthquake.getDepthKm());
+    }
+
+    /**
+     * Append an earthquake without coordinates from its fields.
+     */
+    public void add(String id, double magnitude, String place, long timeInMilliseconds,
+                    long updatedInMilliseconds, String url, boolean deleted) {
+        add(id, magnitude, place, timeInMilliseconds, updatedInMilliseconds, url, deleted,
+                Double.NaN, Double.NaN, Double.NaN);
+    }
+
+    /**
+     * Append an earthquake from its fields, e.g. straight from a database cursor.
+     */
+    public void add(String id, double magnitude, String place, long timeInMilliseconds,
+                    long updatedInMilliseconds, String url, boolean deleted,
+                    double latitude, double longitude, double depthKm) {
+        ensureCapacity(mSize + 1);
+        mIds[mSize] = id;
+        mMagnitudes[mSize] = magnitude;
+        mTimes[mSize] = timeInMilliseconds;
+        mUpdatedTimes[mSize] = updatedInMilliseconds;
+        mLatitudes[mSize] = latitude;
+        mLongitudes[mSize] = longitude;
+        mDepthsKm[mSize] = depthKm;
+        mPlaceCodes[mSize] = encodePlace(place);
+        mUrls[mSize] = url != null && url.equals(standardUrl(id)) ? null : url;
+        mDeleted.set(mSize, deleted);
+        mSize++;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public String getId(int index) {
+        checkIndex(index);
+        return mIds[index];
+    }
+
+    public double getMagnitude(int index) {
+        checkIndex(index);
+        return mMagnitudes[index];
+    }
+
+    public long getTimeInMilliseconds(int index) {
+        checkIndex(index);
+        return mTimes[index];
+    }
+
+    public long getUpdatedInMilliseconds(int index) {
+        checkIndex(index);
+        return mUpdatedTimes[index];
+    }
+
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return mLatitudes[index];
+    }
+
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return mLongitudes[index];
+    }
+
+    public double getDepthKm(int index) {
+        checkIndex(index);
+        return mDepthsKm[index];
+    }
+
+    public String getLocation(int index) {
+        checkIndex(index);
+        int code = mPlaceCodes[index];
+        return code >= 0 ? mPlaces.get(code) : null;
+    }
+
+    public String getUrl(int index) {
+        checkIndex(index);
+        String url = mUrls[index];
+        return url != null ? url : standardUrl(mIds[index]);
+    }
+
+    public boolean isDeleted(int index) {
+        checkIndex(index);
+        return mDeleted.get(index);
+    }
+
+    /**
+     * Return the number of distinct place names stored.
+     */
+    public int getPlaceCount() {
+        return mPlaces.size();
+    }
+
+    /**
+     * Create an {@link Earthquake} for one row.
+     */
+    public Earthquake getEarthquake(int index) {
+        return new Earthquake(getId(index), getMagnitude(index), getLocation(index),
+                getTimeInMilliseconds(index), getUpdatedInMilliseconds(index), getUrl(index), isDeleted(index),
+                getLatitude(index), getLongitude(index), getDepthKm(index));
+    }
+
+    /**
+     * Create {@link Earthquake} objects for all rows.
+     */
+    public List<Earthquake> toList() {
+        List<Earthquake> earthquakes = new ArrayList<>(mSize);
+        for (int i = 0; i < mSize; i++) {
+            earthquakes.add(getEarthquake(i));
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Shrink the arrays to the number of rows, once the set is complete.
+     */
+    public void trimToSize() {
+        if (mIds.length > mSize) {
+            resize(Math.max(mSize, 1));
+        }
+    }
+
+    private int encodePlace(String place) {
+        if (place == null) {
+            return -1;
+        }
+        Integer code = mPlaceCodesByName.get(place);
+        if (code == null) {
+            code = mPlaces.size();
+            mPlaces.add(place);
+            mPlaceCodesByName.put(place, code);
+        }
+        return code;
+    }
+
+    private static String standardUrl(String id) {
+        return id != null ? EVENT_PAGE_URL_PREFIX + id : null;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mIds.length) {
+            resize(Math.max(capacity, mIds.length * 2));
+        }
+    }
+
+    private void resize(int capacity) {
+        mIds = Arrays.copyOf(mIds, capacity);
+        mMagnitudes = Arrays.copyOf(mMagnitudes, capacity);
+        mTimes = Arrays.copyOf(mTimes, capacity);
+        mUpdatedTimes = Arrays.copyOf(mUpdatedTimes, capacity);
+        mLatitudes = Arrays.copyOf(mLatitudes, capacity);
+        mLongitudes = Arrays.copyOf(mLongitudes, capacity);
+        mDepthsKm = Arrays.copyOf(mDepthsKm, capacity);
+        mPlaceCodes = Arrays.copyOf(mPlaceCodes, capacity);
+        mUrls = Arrays.copyOf(mUrls, capacity);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + mSize);
+        }
+    }
+}
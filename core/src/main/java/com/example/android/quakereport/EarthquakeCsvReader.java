@@ -0,0 +1,263 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming parser for USGS CSV output (summary feeds and FDSN {@code format=csv}), the lighter
+ * counterpart of the GeoJSON parser in {@link QueryUtils}. Records are read one at a time, and
+ * columns are found by their header name, so extra or reordered columns are fine.
+ *
+ * CSV has no "url" column; the event page URL is built from the event id, which is how USGS
+ * forms it in GeoJSON too.
+ */
+public final class EarthquakeCsvReader {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeCsvReader.class.getSimpleName();
+
+    /** Event pages live at this prefix followed by the event id */
+    static final String EVENT_PAGE_PREFIX = "https://earthquake.usgs.gov/earthquakes/eventpage/";
+
+    private static final String STATUS_DELETED = "deleted";
+    private static final String TYPE_EARTHQUAKE = "earthquake";
+
+    private static final int END_OF_RECORD = -2;
+
+    private final Reader mReader;
+    private final char[] mBuffer = new char[HttpTransport.BUFFER_SIZE];
+    private int mPosition = 0;
+    private int mLimit = 0;
+
+    /** Reused for every field */
+    private final StringBuilder mField = new StringBuilder();
+
+    private EarthquakeCsvReader(Reader reader) {
+        this.mReader = reader;
+    }
+
+    /**
+     * Parse a CSV response into a list of {@link Earthquake} objects.
+     *
+     * @param inputStream with the CSV response; not closed by this method.
+     * @param earthquakesOnly skips other event types (quarry blasts, explosions, ...), for
+     *  sources that can't filter them on the server.
+     * @return list of earthquakes parsed before the end of the stream, or before the first
+     *  malformed record (matching the GeoJSON parser).
+     * @throws IOException if the stream can't be read.
+     */
+    public static List<Earthquake> read(InputStream inputStream, boolean earthquakesOnly) throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        if (inputStream == null) {
+            return earthquakes;
+        }
+
+        EarthquakeCsvReader reader = new EarthquakeCsvReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        List<String> record = new ArrayList<>();
+        if (!reader.readRecord(record)) {
+            return earthquakes;
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < record.size(); i++) {
+            columns.put(record.get(i), i);
+        }
+        int idColumn = column(columns, "id");
+        int timeColumn = column(columns, "time");
+        int updatedColumn = column(columns, "updated");
+        int magnitudeColumn = column(columns, "mag");
+        int placeColumn = column(columns, "place");
+        int latitudeColumn = column(columns, "latitude");
+        int longitudeColumn = column(columns, "longitude");
+        int depthColumn = column(columns, "depth");
+        int typeColumn = column(columns, "type");
+        int statusColumn = column(columns, "status");
+        if (timeColumn < 0) {
+            Logger.e(LOG_TAG, "CSV response has no time column; nothing to parse!");
+            return earthquakes;
+        }
+
+        try {
+            while (reader.readRecord(record)) {
+                if (earthquakesOnly && !TYPE_EARTHQUAKE.equals(field(record, typeColumn))) {
+                    continue;
+                }
+                String id = emptyToNull(field(record, idColumn));
+                String magnitude = field(record, magnitudeColumn);
+                String time = field(record, timeColumn);
+                boolean deleted = STATUS_DELETED.equals(field(record, statusColumn));
+                // Like a GeoJSON feature: skipped without a magnitude or time, unless it's a deletion
+                if (deleted ? id == null : magnitude.isEmpty() || time.isEmpty()) {
+                    Logger.e(LOG_TAG, "Skipping record " + id + "; it lacks a magnitude or time.");
+                    continue;
+                }
+                long timeInMilliseconds = time.isEmpty() ? 0L : parseTime(time);
+                String updated = field(record, updatedColumn);
+                long updatedInMilliseconds = updated.isEmpty() ? timeInMilliseconds : parseTime(updated);
+                earthquakes.add(new Earthquake(id, parseNumber(magnitude, 0.0),
+                        emptyToNull(field(record, placeColumn)), timeInMilliseconds, updatedInMilliseconds,
+                        id != null ? EVENT_PAGE_PREFIX + id : null, deleted,
+                        parseNumber(field(record, latitudeColumn), Double.NaN),
+                        parseNumber(field(record, longitudeColumn), Double.NaN),
+                        parseNumber(field(record, depthColumn), Double.NaN)));
+            }
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException included
+            Logger.e(LOG_TAG, "Problem parsing the earthquake CSV stream", e);
+        }
+        return earthquakes;
+    }
+
+    /**
+     * Read the next non-empty record into {@code record}, replacing its contents.
+     *
+     * @return false at the end of the stream.
+     */
+    private boolean readRecord(List<String> record) throws IOException {
+        record.clear();
+        while (true) {
+            int end = readField();
+            if (end == -1 && record.isEmpty() && mField.length() == 0) {
+                return false;
+            }
+            record.add(mField.toString());
+            if (end != ',') {
+                // Skip blank lines
+                if (record.size() == 1 && record.get(0).isEmpty()) {
+                    if (end == -1) {
+                        return false;
+                    }
+                    record.clear();
+                    continue;
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Read one field into {@link #mField}, unquoting it.
+     *
+     * @return ',' if another field of the record follows, {@link #END_OF_RECORD} at the end of
+     *  the line, or -1 at the end of the stream.
+     */
+    private int readField() throws IOException {
+        mField.setLength(0);
+        int c = read();
+        if (c == '"') {
+            // Quoted: commas and line breaks are literal, "" is a quote
+            while (true) {
+                c = read();
+                if (c == -1) {
+                    return -1;
+                }
+                if (c == '"') {
+                    c = read();
+                    if (c != '"') {
+                        break;
+                    }
+                }
+                mField.append((char) c);
+            }
+        }
+        while (c != -1 && c != ',' && c != '\n' && c != '\r') {
+            mField.append((char) c);
+            c = read();
+        }
+        if (c == '\r') {
+            c = read();
+            if (c != '\n' && c != -1) {
+                // A lone carriage return ends the line; keep the character after it
+                mPosition--;
+            }
+            return END_OF_RECORD;
+        }
+        return c == '\n' ? END_OF_RECORD : c;
+    }
+
+    private int read() throws IOException {
+        if (mPosition == mLimit) {
+            mLimit = mReader.read(mBuffer);
+            mPosition = 0;
+            if (mLimit <= 0) {
+                mLimit = 0;
+                return -1;
+            }
+        }
+        return mBuffer[mPosition++];
+    }
+
+    private static int column(Map<String, Integer> columns, String name) {
+        Integer index = columns.get(name);
+        return index != null ? index : -1;
+    }
+
+    private static String field(List<String> record, int column) {
+        return column >= 0 && column < record.size() ? record.get(column) : "";
+    }
+
+    private static double parseNumber(String value, double defaultValue) {
+        return value.isEmpty() ? defaultValue : Double.parseDouble(value);
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    /**
+     * Parse a USGS CSV time, e.g. "2017-11-16T00:38:27.634Z" (always UTC), without the cost of
+     * a SimpleDateFormat per field.
+     */
+    static long parseTime(String time) {
+        if (time.length() < 19 || time.charAt(4) != '-' || time.charAt(7) != '-' || time.charAt(10) != 'T'
+                || time.charAt(13) != ':' || time.charAt(16) != ':') {
+            throw new IllegalArgumentException("Not a CSV time: " + time);
+        }
+        int year = digits(time, 0, 4);
+        int month = digits(time, 5, 7);
+        int day = digits(time, 8, 10);
+        long seconds = daysFromEpoch(year, month, day) * 86400L
+                + digits(time, 11, 13) * 3600L + digits(time, 14, 16) * 60L + digits(time, 17, 19);
+
+        // Optional fraction of a second, to millisecond precision
+        long millis = 0L;
+        if (time.length() > 19 && time.charAt(19) == '.') {
+            int scale = 100;
+            for (int i = 20; i < time.length() && Character.isDigit(time.charAt(i)); i++, scale /= 10) {
+                millis += (time.charAt(i) - '0') * scale;
+            }
+        }
+        return seconds * 1000L + millis;
+    }
+
+    private static int digits(String text, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new IllegalArgumentException("Not a CSV time: " + text);
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Return the number of days from 1970-01-01 to a date in the proleptic Gregorian calendar.
+     */
+    private static long daysFromEpoch(int year, int month, int day) {
+        // Count years from March, so the leap day is the last day of the year
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+}
@@ -0,0 +1,562 @@
+package com.example.android.quakereport;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the detail screen shows about one event, read from the USGS per-event detail GeoJSON.
+ *
+ * The detail document embeds every product (ShakeMap, PAGER, moment tensors, ...) with all
+ * their file listings, and easily reaches hundreds of kilobytes; only the summary properties
+ * and the names of the products are kept, so a cached detail is about a kilobyte.
+ */
+public class EarthquakeDetail {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mId;
+    private final double mMagnitude;
+    private final String mMagnitudeType;
+    private final String mPlace;
+    private final long mTimeInMilliseconds;
+    private final long mUpdatedInMilliseconds;
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mDepthKm;
+
+    /** Number of "Did You Feel It?" reports, or -1 if unknown */
+    private final int mFeltReports;
+
+    /** Community (DYFI) and instrumental (ShakeMap) intensities; NaN if unknown */
+    private final double mCommunityIntensity;
+    private final double mInstrumentalIntensity;
+
+    /** PAGER alert level ("green", "yellow", "orange", "red"), or null */
+    private final String mAlertLevel;
+
+    private final boolean mTsunami;
+    private final int mSignificance;
+
+    /** "automatic", "reviewed" or "deleted" */
+    private final String mStatus;
+
+    /** USGS event page */
+    private final String mUrl;
+
+    /** Names of the products USGS has for the event, e.g. "shakemap", "dyfi" */
+    private final List<String> mProductTypes;
+
+    /**
+     * Builds {@link EarthquakeDetail} instances; every field is optional.
+     */
+    public static final class Builder {
+        private String mId;
+        private double mMagnitude = Double.NaN;
+        private String mMagnitudeType = null;
+        private String mPlace = null;
+        private long mTimeInMilliseconds = 0L;
+        private long mUpdatedInMilliseconds = 0L;
+        private double mLatitude = Double.NaN;
+        private double mLongitude = Double.NaN;
+        private double mDepthKm = Double.NaN;
+        private int mFeltReports = -1;
+        private double mCommunityIntensity = Double.NaN;
+        private double mInstrumentalIntensity = Double.NaN;
+        private String mAlertLevel = null;
+        private boolean mTsunami = false;
+        private int mSignificance = 0;
+        private String mStatus = null;
+        private String mUrl = null;
+        private List<String> mProductTypes = Collections.emptyList();
+
+        public Builder(String id) {
+            if (id == null) {
+                throw new IllegalArgumentException("A detail needs an event id");
+            }
+            this.mId = id;
+        }
+
+        public Builder magnitude(double magnitude, String magnitudeType) {
+            mMagnitude = magnitude;
+            mMagnitudeType = magnitudeType;
+            return this;
+        }
+
+        public Builder place(String place) {
+            mPlace = place;
+            return this;
+        }
+
+        public Builder time(long timeInMilliseconds, long updatedInMilliseconds) {
+            mTimeInMilliseconds = timeInMilliseconds;
+            mUpdatedInMilliseconds = updatedInMilliseconds;
+            return this;
+        }
+
+        public Builder hypocenter(double latitude, double longitude, double depthKm) {
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mDepthKm = depthKm;
+            return this;
+        }
+
+        public Builder feltReports(int feltReports) {
+            mFeltReports = feltReports;
+            return this;
+        }
+
+        public Builder intensity(double communityIntensity, double instrumentalIntensity) {
+            mCommunityIntensity = communityIntensity;
+            mInstrumentalIntensity = instrumentalIntensity;
+            return this;
+        }
+
+        public Builder alertLevel(String alertLevel) {
+            mAlertLevel = alertLevel;
+            return this;
+        }
+
+        public Builder tsunami(boolean tsunami) {
+            mTsunami = tsunami;
+            return this;
+        }
+
+        public Builder significance(int significance) {
+            mSignificance = significance;
+            return this;
+        }
+
+        public Builder status(String status) {
+            mStatus = status;
+            return this;
+        }
+
+        public Builder url(String url) {
+            mUrl = url;
+            return this;
+        }
+
+        public Builder productTypes(List<String> productTypes) {
+            mProductTypes = Collections.unmodifiableList(new ArrayList<>(productTypes));
+            return this;
+        }
+
+        public EarthquakeDetail build() {
+            return new EarthquakeDetail(this);
+        }
+    }
+
+    private EarthquakeDetail(Builder builder) {
+        this.mId = builder.mId;
+        this.mMagnitude = builder.mMagnitude;
+        this.mMagnitudeType = builder.mMagnitudeType;
+        this.mPlace = builder.mPlace;
+        this.mTimeInMilliseconds = builder.mTimeInMilliseconds;
+        this.mUpdatedInMilliseconds = builder.mUpdatedInMilliseconds;
+        this.mLatitude = builder.mLatitude;
+        this.mLongitude = builder.mLongitude;
+        this.mDepthKm = builder.mDepthKm;
+        this.mFeltReports = builder.mFeltReports;
+        this.mCommunityIntensity = builder.mCommunityIntensity;
+        this.mInstrumentalIntensity = builder.mInstrumentalIntensity;
+        this.mAlertLevel = builder.mAlertLevel;
+        this.mTsunami = builder.mTsunami;
+        this.mSignificance = builder.mSignificance;
+        this.mStatus = builder.mStatus;
+        this.mUrl = builder.mUrl;
+        this.mProductTypes = builder.mProductTypes;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public double getMagnitude() {
+        return mMagnitude;
+    }
+
+    public String getMagnitudeType() {
+        return mMagnitudeType;
+    }
+
+    public String getPlace() {
+        return mPlace;
+    }
+
+    public long getTimeInMilliseconds() {
+        return mTimeInMilliseconds;
+    }
+
+    public long getUpdatedInMilliseconds() {
+        return mUpdatedInMilliseconds;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public double getDepthKm() {
+        return mDepthKm;
+    }
+
+    public int getFeltReports() {
+        return mFeltReports;
+    }
+
+    public double getCommunityIntensity() {
+        return mCommunityIntensity;
+    }
+
+    public double getInstrumentalIntensity() {
+        return mInstrumentalIntensity;
+    }
+
+    public String getAlertLevel() {
+        return mAlertLevel;
+    }
+
+    public boolean isTsunami() {
+        return mTsunami;
+    }
+
+    public int getSignificance() {
+        return mSignificance;
+    }
+
+    public String getStatus() {
+        return mStatus;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public List<String> getProductTypes() {
+        return mProductTypes;
+    }
+
+    /**
+     * Read a USGS detail GeoJSON document (a single Feature). Products are skipped except for
+     * their names, so the document is never held in memory.
+     *
+     * @throws IOException if the stream can't be read or isn't a detail document.
+     */
+    public static EarthquakeDetail read(InputStream inputStream) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, UTF_8));
+        String id = null;
+        Builder builder = null;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        double depthKm = Double.NaN;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if ("id".equals(name) && reader.peek() == JsonToken.STRING) {
+                    id = reader.nextString();
+                } else if ("properties".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    // "properties" may come before "id"; the id is set once the whole feature is read
+                    builder = new Builder("");
+                    readProperties(reader, builder);
+                } else if ("geometry".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    double[] coordinates = readCoordinates(reader);
+                    longitude = coordinates[0];
+                    latitude = coordinates[1];
+                    depthKm = coordinates[2];
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException e) {
+            // Thrown by the reader on unexpected tokens, or input that isn't JSON at all
+            throw new MalformedResponseException("Malformed detail document", e);
+        }
+        if (id == null || builder == null) {
+            throw new MalformedResponseException("Not a detail document: missing id or properties");
+        }
+        builder.mId = id;
+        return builder.hypocenter(latitude, longitude, depthKm).build();
+    }
+
+    private static void readProperties(JsonReader reader, Builder builder) throws IOException {
+        double magnitude = Double.NaN;
+        String magnitudeType = null;
+        long time = 0L;
+        long updated = 0L;
+        double communityIntensity = Double.NaN;
+        double instrumentalIntensity = Double.NaN;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            // USGS sends explicit nulls for optional fields; treat them as absent
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "mag":
+                    magnitude = reader.nextDouble();
+                    break;
+                case "magType":
+                    magnitudeType = reader.nextString();
+                    break;
+                case "place":
+                    builder.place(reader.nextString());
+                    break;
+                case "time":
+                    time = reader.nextLong();
+                    break;
+                case "updated":
+                    updated = reader.nextLong();
+                    break;
+                case "felt":
+                    builder.feltReports(reader.nextInt());
+                    break;
+                case "cdi":
+                    communityIntensity = reader.nextDouble();
+                    break;
+                case "mmi":
+                    instrumentalIntensity = reader.nextDouble();
+                    break;
+                case "alert":
+                    builder.alertLevel(reader.nextString());
+                    break;
+                case "tsunami":
+                    builder.tsunami(reader.nextInt() != 0);
+                    break;
+                case "sig":
+                    builder.significance(reader.nextInt());
+                    break;
+                case "status":
+                    builder.status(reader.nextString());
+                    break;
+                case "url":
+                    builder.url(reader.nextString());
+                    break;
+                case "products":
+                    builder.productTypes(readProductTypes(reader));
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        builder.magnitude(magnitude, magnitudeType)
+                .time(time, updated)
+                .intensity(communityIntensity, instrumentalIntensity);
+    }
+
+    /**
+     * Read the "products" object, keeping only its keys (the product types).
+     */
+    private static List<String> readProductTypes(JsonReader reader) throws IOException {
+        List<String> productTypes = new ArrayList<>();
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return productTypes;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            productTypes.add(reader.nextName());
+            reader.skipValue();
+        }
+        reader.endObject();
+        return productTypes;
+    }
+
+    /**
+     * Read a Point geometry; returns [longitude, latitude, depth in km], NaN where missing.
+     */
+    private static double[] readCoordinates(JsonReader reader) throws IOException {
+        double[] coordinates = {Double.NaN, Double.NaN, Double.NaN};
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("coordinates".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    if (i < coordinates.length && reader.peek() == JsonToken.NUMBER) {
+                        coordinates[i] = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return coordinates;
+    }
+
+    /**
+     * Return the compact form kept by {@link EarthquakeDetailCache}; read back with {@link #fromJson(String)}.
+     */
+    public String toJson() {
+        StringWriter text = new StringWriter();
+        JsonWriter writer = new JsonWriter(text);
+        try {
+            writer.beginObject();
+            writer.name("id").value(mId);
+            writeIfNumber(writer, "mag", mMagnitude);
+            writeIfPresent(writer, "magType", mMagnitudeType);
+            writeIfPresent(writer, "place", mPlace);
+            writer.name("time").value(mTimeInMilliseconds);
+            writer.name("updated").value(mUpdatedInMilliseconds);
+            writeIfNumber(writer, "lat", mLatitude);
+            writeIfNumber(writer, "lon", mLongitude);
+            writeIfNumber(writer, "depth", mDepthKm);
+            writer.name("felt").value(mFeltReports);
+            writeIfNumber(writer, "cdi", mCommunityIntensity);
+            writeIfNumber(writer, "mmi", mInstrumentalIntensity);
+            writeIfPresent(writer, "alert", mAlertLevel);
+            writer.name("tsunami").value(mTsunami);
+            writer.name("sig").value(mSignificance);
+            writeIfPresent(writer, "status", mStatus);
+            writeIfPresent(writer, "url", mUrl);
+            writer.name("products").beginArray();
+            for (String productType : mProductTypes) {
+                writer.value(productType);
+            }
+            writer.endArray();
+            writer.endObject();
+            writer.close();
+        } catch (IOException e) {
+            // A StringWriter doesn't fail, and non-finite numbers are left out above
+            throw new IllegalStateException(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Read the form written by {@link #toJson()}.
+     *
+     * @throws IOException if the text isn't a detail written by {@link #toJson()}.
+     */
+    public static EarthquakeDetail fromJson(String text) throws IOException {
+        JsonReader reader = new JsonReader(new StringReader(text));
+        Builder builder = new Builder("");
+        boolean hasId = false;
+        double magnitude = Double.NaN;
+        String magnitudeType = null;
+        long time = 0L;
+        long updated = 0L;
+        double latitude = Double.NaN;
+        double longitude = Double.NaN;
+        double depthKm = Double.NaN;
+        double communityIntensity = Double.NaN;
+        double instrumentalIntensity = Double.NaN;
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id":
+                        builder.mId = reader.nextString();
+                        hasId = true;
+                        break;
+                    case "mag":
+                        magnitude = reader.nextDouble();
+                        break;
+                    case "magType":
+                        magnitudeType = reader.nextString();
+                        break;
+                    case "place":
+                        builder.place(reader.nextString());
+                        break;
+                    case "time":
+                        time = reader.nextLong();
+                        break;
+                    case "updated":
+                        updated = reader.nextLong();
+                        break;
+                    case "lat":
+                        latitude = reader.nextDouble();
+                        break;
+                    case "lon":
+                        longitude = reader.nextDouble();
+                        break;
+                    case "depth":
+                        depthKm = reader.nextDouble();
+                        break;
+                    case "felt":
+                        builder.feltReports(reader.nextInt());
+                        break;
+                    case "cdi":
+                        communityIntensity = reader.nextDouble();
+                        break;
+                    case "mmi":
+                        instrumentalIntensity = reader.nextDouble();
+                        break;
+                    case "alert":
+                        builder.alertLevel(reader.nextString());
+                        break;
+                    case "tsunami":
+                        builder.tsunami(reader.nextBoolean());
+                        break;
+                    case "sig":
+                        builder.significance(reader.nextInt());
+                        break;
+                    case "status":
+                        builder.status(reader.nextString());
+                        break;
+                    case "url":
+                        builder.url(reader.nextString());
+                        break;
+                    case "products":
+                        List<String> productTypes = new ArrayList<>();
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            productTypes.add(reader.nextString());
+                        }
+                        reader.endArray();
+                        builder.productTypes(productTypes);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException("Malformed cached detail", e);
+        }
+        if (!hasId) {
+            throw new IOException("Cached detail has no id");
+        }
+        return builder.magnitude(magnitude, magnitudeType)
+                .time(time, updated)
+                .hypocenter(latitude, longitude, depthKm)
+                .intensity(communityIntensity, instrumentalIntensity)
+                .build();
+    }
+
+    private static void writeIfNumber(JsonWriter writer, String name, double value) throws IOException {
+        if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            writer.name(name).value(value);
+        }
+    }
+
+    private static void writeIfPresent(JsonWriter writer, String name, String value) throws IOException {
+        if (value != null) {
+            writer.name(name).value(value);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.android.quakereport;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Two-level cache of {@link EarthquakeDetail}s, keyed by event id: a small in-memory LRU, so
+ * the detail screen can show a prefetched event on its first frame, backed by a size-bounded
+ * directory of compact JSON files that survives restarts.
+ *
+ * Memory lookups never touch the disk and are safe on the main thread; disk lookups and
+ * writes are not.
+ */
+public class EarthquakeDetailCache {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeDetailCache.class.getSimpleName();
+
+    private static final String DETAIL_SUFFIX = ".json";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Directory holding one file per cached detail */
+    private final File mDirectory;
+
+    /** Upper bound for the total size of the files, in bytes */
+    private final long mMaxDiskBytes;
+
+    /** Most recently used details */
+    private final Map<String, EarthquakeDetail> mMemory;
+
+    /** Total size of the files, or -1 until first measured */
+    private long mDiskBytes = -1L;
+
+    /**
+     * Constructor for the {@link EarthquakeDetailCache} class.
+     *
+     * @param directory is where the details are stored; created if needed.
+     * @param maxMemoryEntries is the number of details kept in memory.
+     * @param maxDiskBytes is the upper bound for the total size of the stored details.
+     */
+    public EarthquakeDetailCache(File directory, final int maxMemoryEntries, long maxDiskBytes) {
+        this.mDirectory = directory;
+        this.mMaxDiskBytes = maxDiskBytes;
+        this.mMemory = new LinkedHashMap<String, EarthquakeDetail>(maxMemoryEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, EarthquakeDetail> eldest) {
+                return size() > maxMemoryEntries;
+            }
+        };
+        if (!directory.exists() && !directory.mkdirs()) {
+            Logger.e(LOG_TAG, "Unable to create cache directory: " + directory);
+        }
+    }
+
+    /**
+     * Return the detail if it is in memory, or null. Never touches the disk.
+     */
+    public synchronized EarthquakeDetail getFromMemory(String eventId) {
+        return mMemory.get(eventId);
+    }
+
+    /**
+     * Return the cached detail from memory or disk, or null if there is none. A detail read
+     * from disk is kept in memory again. Call this off the main thread.
+     */
+    public EarthquakeDetail get(String eventId) {
+        EarthquakeDetail detail = getFromMemory(eventId);
+        if (detail != null) {
+            return detail;
+        }
+
+        File file = fileFor(eventId);
+        String text;
+        synchronized (this) {
+            if (!file.exists()) {
+                return null;
+            }
+            try {
+                text = readFile(file);
+            } catch (IOException e) {
+                Logger.e(LOG_TAG, "Problem reading cached detail; dropping it.", e);
+                remove(file);
+                return null;
+            }
+            // Touch the file so eviction treats it as recently used
+            file.setLastModified(System.currentTimeMillis());
+        }
+
+        try {
+            detail = EarthquakeDetail.fromJson(text);
+        } catch (IOException e) {
+            Logger.e(LOG_TAG, "Cached detail is corrupt; dropping it.", e);
+            synchronized (this) {
+                remove(file);
+            }
+            return null;
+        }
+        synchronized (this) {
+            mMemory.put(eventId, detail);
+        }
+        return detail;
+    }
+
+    /**
+     * Keep a detail in memory and on disk, replacing any previous copy, then evict the least
+     * recently used files over the size bound. Call this off the main thread.
+     *
+     * @throws IOException if the detail can't be written; it is still kept in memory.
+     */
+    public void put(EarthquakeDetail detail) throws IOException {
+        synchronized (this) {
+            mMemory.put(detail.getId(), detail);
+        }
+        byte[] bytes = detail.toJson().getBytes(UTF_8);
+
+        // Write to a temp file first so a failed write never replaces a good copy
+        File tempFile = File.createTempFile("detail", TEMP_SUFFIX, mDirectory);
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(tempFile);
+            output.write(bytes);
+        } catch (IOException e) {
+            closeQuietly(output);
+            output = null;
+            tempFile.delete();
+            throw e;
+        } finally {
+            closeQuietly(output);
+        }
+
+        synchronized (this) {
+            File file = fileFor(detail.getId());
+            long previousLength = file.length();
+            if (file.exists()) {
+                file.delete();
+            }
+            if (!tempFile.renameTo(file)) {
+                tempFile.delete();
+                throw new IOException("Unable to store detail for " + detail.getId());
+            }
+            if (mDiskBytes >= 0L) {
+                mDiskBytes += bytes.length - previousLength;
+            }
+            trimToSize(file);
+        }
+    }
+
+    /**
+     * Return the total size of the stored details, in bytes.
+     */
+    public synchronized long size() {
+        if (mDiskBytes < 0L) {
+            long total = 0L;
+            for (File file : listDetailFiles()) {
+                total += file.length();
+            }
+            mDiskBytes = total;
+        }
+        return mDiskBytes;
+    }
+
+    /**
+     * Delete every cached detail, in memory and on disk.
+     */
+    public synchronized void clear() {
+        mMemory.clear();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDiskBytes = 0L;
+    }
+
+    /**
+     * Evict least recently used files until the rest fit in the size bound. The file just
+     * written is never evicted. Evicted details may stay in memory until they age out there.
+     */
+    private void trimToSize(File keepFile) {
+        if (size() <= mMaxDiskBytes) {
+            return;
+        }
+        File[] files = listDetailFiles();
+
+        // Oldest access time first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long lhs = a.lastModified();
+                long rhs = b.lastModified();
+                return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+            }
+        });
+
+        for (File file : files) {
+            if (mDiskBytes <= mMaxDiskBytes) {
+                break;
+            }
+            if (!file.equals(keepFile)) {
+                remove(file);
+            }
+        }
+    }
+
+    private void remove(File file) {
+        long length = file.length();
+        if (file.delete() && mDiskBytes >= 0L) {
+            mDiskBytes -= length;
+        }
+    }
+
+    private File[] listDetailFiles() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        int count = 0;
+        for (File file : files) {
+            if (file.getName().endsWith(DETAIL_SUFFIX)) {
+                files[count++] = file;
+            }
+        }
+        return Arrays.copyOf(files, count);
+    }
+
+    /**
+     * Return the file for an event; ids are hashed, since they come from the network.
+     */
+    private File fileFor(String eventId) {
+        return new File(mDirectory, EarthquakeResponseCache.keyFor(eventId) + DETAIL_SUFFIX);
+    }
+
+    private static String readFile(File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            Reader reader = new InputStreamReader(input, UTF_8);
+            StringBuilder text = new StringBuilder((int) file.length());
+            char[] buffer = new char[4096];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, count);
+            }
+            return text.toString();
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Logger.e(LOG_TAG, "Problem closing cache file.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Loads event details for the detail screen, and prefetches the details of the rows on screen
+ * so a tap finds them in the {@link EarthquakeDetailCache}.
+ *
+ * Prefetches run on their own executor, which the app gives a single low-priority thread, so
+ * they never hold up page loads or an opened detail. Each call to {@link #prefetch(List)}
+ * replaces the previous one: prefetches for rows no longer on screen are cancelled, and those
+ * still wanted keep their place. Opening a detail whose prefetch is already running waits for
+ * it instead of sending a second request; one still queued is cancelled and fetched at once.
+ *
+ * Hits, cancellations and bytes are reported to {@link PipelineMetrics}.
+ */
+public class EarthquakeDetailPrefetcher {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeDetailPrefetcher.class.getSimpleName();
+
+    /** Number of prefetched ids remembered for hit accounting */
+    private static final int MAX_REMEMBERED_PREFETCHES = 256;
+
+    /**
+     * Loads one detail from the network.
+     */
+    public interface Loader {
+        EarthquakeDetail load(String eventId, boolean prefetch) throws IOException;
+    }
+
+    /** Loads details from USGS */
+    public static final Loader USGS_LOADER = new Loader() {
+        @Override
+        public EarthquakeDetail load(String eventId, boolean prefetch) throws IOException {
+            return QueryUtils.fetchEarthquakeDetail(eventId, prefetch);
+        }
+    };
+
+    private final EarthquakeDetailCache mCache;
+    private final ExecutorService mExecutor;
+    private final Loader mLoader;
+
+    /** Prefetches queued or running, by event id; guarded by this */
+    private final Map<String, Future<EarthquakeDetail>> mPending = new LinkedHashMap<>();
+
+    /** Ids whose cached detail came from a prefetch and hasn't been opened yet; guarded by this */
+    private final Set<String> mPrefetched = Collections.newSetFromMap(
+            new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_REMEMBERED_PREFETCHES;
+                }
+            });
+
+    public EarthquakeDetailPrefetcher(EarthquakeDetailCache cache, ExecutorService executor) {
+        this(cache, executor, USGS_LOADER);
+    }
+
+    /**
+     * @param executor runs the prefetches; a single low-priority thread keeps them out of the way.
+     */
+    public EarthquakeDetailPrefetcher(EarthquakeDetailCache cache, ExecutorService executor, Loader loader) {
+        this.mCache = cache;
+        this.mExecutor = executor;
+        this.mLoader = loader;
+    }
+
+    /**
+     * Prefetch the details of these events, most wanted first, and cancel prefetches of any
+     * other events. Events already cached in memory are skipped; the disk is checked on the
+     * prefetch thread. Call this when the list comes to rest, with the rows on screen.
+     */
+    public synchronized void prefetch(List<String> eventIds) {
+        Set<String> wanted = new HashSet<>(eventIds);
+        cancelPendingExcept(wanted);
+        for (final String eventId : eventIds) {
+            if (eventId == null || mPending.containsKey(eventId) || mCache.getFromMemory(eventId) != null) {
+                continue;
+            }
+            mPending.put(eventId, mExecutor.submit(new Callable<EarthquakeDetail>() {
+                @Override
+                public EarthquakeDetail call() throws IOException {
+                    try {
+                        return prefetchOne(eventId);
+                    } finally {
+                        synchronized (EarthquakeDetailPrefetcher.this) {
+                            mPending.remove(eventId);
+                        }
+                    }
+                }
+            }));
+        }
+    }
+
+    /**
+     * Cancel every prefetch not yet running, e.g. when the list starts scrolling.
+     */
+    public synchronized void cancelAll() {
+        cancelPendingExcept(Collections.<String>emptySet());
+    }
+
+    /**
+     * Return the detail of an event the user opened if it is in memory, or null; then use
+     * {@link #load(String)}. Never touches the disk, so the detail screen can call it on the
+     * main thread and show a prefetched event on its first frame.
+     */
+    public EarthquakeDetail loadFromMemory(String eventId) {
+        EarthquakeDetail detail = mCache.getFromMemory(eventId);
+        if (detail != null) {
+            onOpened(eventId);
+        }
+        return detail;
+    }
+
+    /**
+     * Return the detail of an event the user opened: from the cache, from a prefetch already
+     * on its way, or else from the network. Call this off the main thread.
+     *
+     * @throws IOException if the detail isn't cached and can't be fetched.
+     */
+    public EarthquakeDetail load(String eventId) throws IOException {
+        Future<EarthquakeDetail> pending;
+        synchronized (this) {
+            pending = mPending.get(eventId);
+            // A prefetch still queued behind others would only delay the open; fetch it now instead
+            if (pending != null && pending.cancel(false)) {
+                mPending.remove(eventId);
+                pending = null;
+            }
+        }
+        if (pending != null) {
+            try {
+                EarthquakeDetail detail = pending.get();
+                if (detail != null) {
+                    onOpened(eventId);
+                    return detail;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for a prefetch", e);
+            } catch (CancellationException | ExecutionException e) {
+                // The prefetch was cancelled or failed; fetch it ourselves
+            }
+        }
+
+        EarthquakeDetail detail = mCache.get(eventId);
+        if (detail != null) {
+            onOpened(eventId);
+            return detail;
+        }
+        detail = mLoader.load(eventId, false);
+        store(detail);
+        PipelineMetrics.recordDetailOpen(false);
+        return detail;
+    }
+
+    private EarthquakeDetail prefetchOne(String eventId) throws IOException {
+        EarthquakeDetail detail = mCache.get(eventId);
+        if (detail != null) {
+            // Already on disk, e.g. from an earlier session; no request needed
+            return detail;
+        }
+        detail = mLoader.load(eventId, true);
+        // Before it is cached, so an open can't find it without counting the hit
+        synchronized (this) {
+            mPrefetched.add(eventId);
+        }
+        store(detail);
+        return detail;
+    }
+
+    private void store(EarthquakeDetail detail) {
+        try {
+            mCache.put(detail);
+        } catch (IOException e) {
+            // Still cached in memory
+            Logger.e(LOG_TAG, "Problem storing detail " + detail.getId(), e);
+        }
+        PipelineMetrics.recordDetailCacheSize(mCache.size());
+    }
+
+    /**
+     * Record an open served without a request of its own; a hit if a prefetch fetched it.
+     */
+    private void onOpened(String eventId) {
+        boolean prefetched;
+        synchronized (this) {
+            // Counted once; a second open of the same event is a plain cache hit
+            prefetched = mPrefetched.remove(eventId);
+        }
+        PipelineMetrics.recordDetailOpen(prefetched);
+    }
+
+    /**
+     * Cancel the pending prefetches of events not in {@code keep}. A running prefetch is left
+     * to finish, since its request is already sent and its result will be cached.
+     */
+    private void cancelPendingExcept(Set<String> keep) {
+        int cancelled = 0;
+        Iterator<Map.Entry<String, Future<EarthquakeDetail>>> iterator = mPending.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Future<EarthquakeDetail>> entry = iterator.next();
+            if (!keep.contains(entry.getKey()) && entry.getValue().cancel(false)) {
+                iterator.remove();
+                cancelled++;
+            }
+        }
+        if (cancelled > 0) {
+            Logger.v(LOG_TAG, "Cancelled " + cancelled + " prefetches.");
+            PipelineMetrics.recordDetailPrefetchesCancelled(cancelled);
+        }
+    }
+}
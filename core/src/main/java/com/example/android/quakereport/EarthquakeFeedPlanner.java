@@ -0,0 +1,257 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Chooses where to load an {@link EarthquakeQuery} from: the dynamic FDSN endpoint, which is
+ * computed for every request, or one of the static USGS summary feeds (past hour/day/week/month,
+ * by magnitude tier), which are precomputed and served from a CDN.
+ *
+ * A summary feed can only stand in for a query it covers: same kind of filters, a magnitude tier
+ * at or below the query's minimum, and a period reaching back to the query's start time. The
+ * query's filters, ordering and limit are then applied locally. Of the covering sources, the one
+ * with the lower estimated cost (a fixed cost per request plus the bytes downloaded) is chosen,
+ * so a narrow query still goes to FDSN rather than downloading a large feed to keep a few rows.
+ *
+ * Summary feeds are requested as CSV, the lighter of their formats.
+ */
+public class EarthquakeFeedPlanner {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeFeedPlanner.class.getSimpleName();
+
+    /** Prefix of the summary feed URLs; the feed name and format extension follow */
+    public static final String SUMMARY_ENDPOINT = "https://earthquake.usgs.gov/earthquakes/feed/v1.0/summary/";
+
+    private static final String CSV_EXTENSION = ".csv";
+
+    private static final long HOUR_MILLIS = 60L * 60 * 1000;
+    private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+    /** Summary feed periods, shortest first */
+    private static final String[] PERIOD_NAMES = {"hour", "day", "week", "month"};
+    private static final long[] PERIOD_MILLIS = {HOUR_MILLIS, DAY_MILLIS, 7 * DAY_MILLIS, 30 * DAY_MILLIS};
+
+    /** Summary feed magnitude tiers, highest first, with their typical number of events per day */
+    private static final String[] TIER_NAMES = {"4.5", "2.5", "1.0", "all"};
+    private static final double[] TIER_MAGNITUDES = {4.5, 2.5, 1.0, Double.NEGATIVE_INFINITY};
+    private static final double[] TIER_EVENTS_PER_DAY = {15, 45, 250, 350};
+
+    /** Fixed cost of a request, in bytes of download it is worth; FDSN is computed on demand */
+    private static final long FDSN_REQUEST_COST = 24 * 1024;
+    private static final long SUMMARY_REQUEST_COST = 2 * 1024;
+
+    /** Typical size of one event on the wire (gzip) in each format */
+    private static final long GEOJSON_BYTES_PER_EVENT = 400;
+    private static final long CSV_BYTES_PER_EVENT = 80;
+
+    /** Parameters a summary feed plus local filtering can answer */
+    private static final Set<String> LOCAL_PARAMETERS = new HashSet<>(Arrays.asList(
+            "format", "eventtype", "minmagnitude", "maxmagnitude", "starttime", "endtime",
+            "minlatitude", "maxlatitude", "minlongitude", "maxlongitude", "orderby", "limit"));
+
+    /** Summary feeds hold every event type; they are parsed keeping earthquakes only */
+    private static final String EVENT_TYPE_EARTHQUAKE = "earthquake";
+
+    /**
+     * Where to load a query from, and the local filtering that completes it.
+     */
+    public static final class Plan {
+
+        private final EarthquakeQuery mQuery;
+        private final String mUrl;
+        private final boolean mSummaryFeed;
+        private final long mEstimatedCost;
+
+        Plan(EarthquakeQuery query, String url, boolean summaryFeed, long estimatedCost) {
+            this.mQuery = query;
+            this.mUrl = url;
+            this.mSummaryFeed = summaryFeed;
+            this.mEstimatedCost = estimatedCost;
+        }
+
+        public String getUrl() {
+            return mUrl;
+        }
+
+        /** Whether the query is loaded from a summary feed (and filtered locally) rather than FDSN */
+        public boolean isSummaryFeed() {
+            return mSummaryFeed;
+        }
+
+        /** Estimated cost of the load, in bytes-equivalent; only meaningful for comparisons */
+        public long getEstimatedCost() {
+            return mEstimatedCost;
+        }
+
+        /**
+         * Return the events of a loaded source that match the query, in the query's order and
+         * within its limit. FDSN results are returned as they are.
+         */
+        public List<Earthquake> apply(List<Earthquake> earthquakes) {
+            if (!mSummaryFeed) {
+                return earthquakes;
+            }
+            long startTime = mQuery.getTimeParameter("starttime", Long.MIN_VALUE);
+            long endTime = mQuery.getTimeParameter("endtime", Long.MAX_VALUE);
+            double minMagnitude = mQuery.getNumberParameter("minmagnitude", Double.NEGATIVE_INFINITY);
+            double maxMagnitude = mQuery.getNumberParameter("maxmagnitude", Double.POSITIVE_INFINITY);
+            boolean hasBoundingBox = mQuery.getParameter("minlatitude") != null;
+            double minLatitude = mQuery.getNumberParameter("minlatitude", -90.0);
+            double maxLatitude = mQuery.getNumberParameter("maxlatitude", 90.0);
+            double minLongitude = mQuery.getNumberParameter("minlongitude", -180.0);
+            double maxLongitude = mQuery.getNumberParameter("maxlongitude", 180.0);
+
+            List<Earthquake> matches = new ArrayList<>();
+            for (Earthquake earthquake : earthquakes) {
+                long time = earthquake.getTimeInMilliseconds();
+                double magnitude = earthquake.getMagnitude();
+                if (time < startTime || time > endTime || magnitude < minMagnitude || magnitude > maxMagnitude) {
+                    continue;
+                }
+                if (hasBoundingBox && !(earthquake.getLatitude() >= minLatitude && earthquake.getLatitude() <= maxLatitude
+                        && earthquake.getLongitude() >= minLongitude && earthquake.getLongitude() <= maxLongitude)) {
+                    // Also drops events without coordinates, like the server does
+                    continue;
+                }
+                matches.add(earthquake);
+            }
+
+            Collections.sort(matches, comparatorFor(mQuery.getParameter("orderby")));
+            String limit = mQuery.getParameter("limit");
+            if (limit != null && matches.size() > Integer.parseInt(limit)) {
+                matches = new ArrayList<>(matches.subList(0, Integer.parseInt(limit)));
+            }
+            return matches;
+        }
+
+        @Override
+        public String toString() {
+            return mUrl + " (cost " + mEstimatedCost + ")";
+        }
+    }
+
+    /**
+     * Return the cheapest source that covers the query.
+     *
+     * @param now is the current time in milliseconds from the Epoch; summary feeds end at about now.
+     */
+    public Plan plan(EarthquakeQuery query, long now) {
+        // Without a start time FDSN returns the past 30 days
+        long windowMillis = now - query.getTimeParameter("starttime", now - PERIOD_MILLIS[PERIOD_MILLIS.length - 1]);
+        double minMagnitude = query.getNumberParameter("minmagnitude", Double.NEGATIVE_INFINITY);
+        String format = query.getParameter("format");
+        boolean fdsnCsv = "csv".equals(format);
+
+        // FDSN's estimate, from the tier the query falls in: about 10x fewer events per magnitude
+        // step above the tier (Gutenberg-Richter), spread over the query's window
+        int tier = findTier(minMagnitude);
+        double fdsnEvents = TIER_EVENTS_PER_DAY[tier] * Math.max(windowMillis, HOUR_MILLIS) / DAY_MILLIS
+                * getAreaFraction(query);
+        if (!Double.isInfinite(TIER_MAGNITUDES[tier])) {
+            fdsnEvents *= Math.pow(10.0, TIER_MAGNITUDES[tier] - minMagnitude);
+        }
+        long fdsnCost = FDSN_REQUEST_COST + (long) (fdsnEvents * (fdsnCsv ? CSV_BYTES_PER_EVENT : GEOJSON_BYTES_PER_EVENT));
+        Plan plan = new Plan(query, query.toUrl(), false, fdsnCost);
+
+        int period = findPeriod(windowMillis);
+        if (period >= 0 && isCoverable(query) && (format == null || fdsnCsv || "geojson".equals(format))) {
+            double summaryEvents = TIER_EVENTS_PER_DAY[tier] * PERIOD_MILLIS[period] / DAY_MILLIS;
+            long summaryCost = SUMMARY_REQUEST_COST + (long) (summaryEvents * CSV_BYTES_PER_EVENT);
+            if (summaryCost < fdsnCost) {
+                plan = new Plan(query, SUMMARY_ENDPOINT + TIER_NAMES[tier] + "_" + PERIOD_NAMES[period] + CSV_EXTENSION,
+                        true, summaryCost);
+            }
+        }
+        Logger.v(LOG_TAG, "Planned " + query + " as " + plan);
+        return plan;
+    }
+
+    /**
+     * Return whether a URL is one of the summary feeds.
+     */
+    public static boolean isSummaryFeed(String url) {
+        return url.startsWith(SUMMARY_ENDPOINT);
+    }
+
+    /**
+     * Return whether a URL asks for CSV rather than GeoJSON.
+     */
+    public static boolean isCsv(String url) {
+        int queryStart = url.indexOf('?');
+        String path = queryStart >= 0 ? url.substring(0, queryStart) : url;
+        if (path.endsWith(CSV_EXTENSION)) {
+            return true;
+        }
+        return queryStart >= 0 && ("&" + url.substring(queryStart + 1) + "&").contains("&format=csv&");
+    }
+
+    /**
+     * Return whether the query's filters can be applied locally to a summary feed.
+     */
+    private static boolean isCoverable(EarthquakeQuery query) {
+        if (!LOCAL_PARAMETERS.containsAll(query.getParameterNames())
+                || !EVENT_TYPE_EARTHQUAKE.equals(query.getParameter("eventtype"))
+                || query.getParameter("starttime") == null) {
+            return false;
+        }
+        // Bounding boxes crossing the antimeridian are left to the server
+        return query.getNumberParameter("minlongitude", -180.0) >= -180.0
+                && query.getNumberParameter("maxlongitude", 180.0) <= 180.0
+                && query.getNumberParameter("minlongitude", -180.0) <= query.getNumberParameter("maxlongitude", 180.0);
+    }
+
+    /** Return the highest tier at or below the magnitude */
+    private static int findTier(double minMagnitude) {
+        for (int i = 0; i < TIER_MAGNITUDES.length; i++) {
+            if (minMagnitude >= TIER_MAGNITUDES[i]) {
+                return i;
+            }
+        }
+        return TIER_MAGNITUDES.length - 1;
+    }
+
+    /** Return the shortest period reaching back over the window, or -1 if none does */
+    private static int findPeriod(long windowMillis) {
+        for (int i = 0; i < PERIOD_MILLIS.length; i++) {
+            if (windowMillis >= 0 && windowMillis <= PERIOD_MILLIS[i]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the share of the Earth's surface inside the query's bounding box (1 without one) */
+    private static double getAreaFraction(EarthquakeQuery query) {
+        if (query.getParameter("minlatitude") == null) {
+            return 1.0;
+        }
+        double latitudeBand = Math.sin(Math.toRadians(query.getNumberParameter("maxlatitude", 90.0)))
+                - Math.sin(Math.toRadians(query.getNumberParameter("minlatitude", -90.0)));
+        double longitudeSpan = query.getNumberParameter("maxlongitude", 180.0) - query.getNumberParameter("minlongitude", -180.0);
+        return Math.max(0.0, Math.min(1.0, latitudeBand / 2.0 * longitudeSpan / 360.0));
+    }
+
+    private static Comparator<Earthquake> comparatorFor(final String orderBy) {
+        return new Comparator<Earthquake>() {
+            @Override
+            public int compare(Earthquake first, Earthquake second) {
+                if (orderBy != null && orderBy.startsWith("magnitude")) {
+                    int order = Double.compare(first.getMagnitude(), second.getMagnitude());
+                    return orderBy.endsWith("-asc") ? order : -order;
+                }
+                long firstTime = first.getTimeInMilliseconds();
+                long secondTime = second.getTimeInMilliseconds();
+                int order = firstTime < secondTime ? -1 : (firstTime == secondTime ? 0 : 1);
+                // "time" (newest first) is the server's default
+                return orderBy != null && orderBy.endsWith("-asc") ? order : -order;
+            }
+        };
+    }
+}
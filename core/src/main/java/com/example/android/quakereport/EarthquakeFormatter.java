@@ -0,0 +1,89 @@
+package com.example.android.quakereport;
+
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Formats the text of an earthquake row: magnitude, date, time, and the location split into
+ * its offset ("87 km NNE of") and primary location ("Tokyo, Japan").
+ *
+ * The number/date formats are created once per formatter and reused for every row. They aren't
+ * thread-safe, so each background load should use its own formatter.
+ */
+public class EarthquakeFormatter {
+
+    private static final String LOCATION_SEPARATOR = "of";
+
+    private final DecimalFormat mMagnitudeFormat = new DecimalFormat("0.0");
+    private final SimpleDateFormat mDateFormat = new SimpleDateFormat("MMM dd, yyyy");
+    private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("h:mm a");
+    private final Date mDate = new Date();
+
+    /** Offset language used when the location has none */
+    private final String mNearThe;
+
+    /**
+     * @param nearThe is the offset shown for locations without one, e.g. "Near the".
+     */
+    public EarthquakeFormatter(String nearThe) {
+        this.mNearThe = nearThe;
+    }
+
+    public String formatMagnitude(double magnitude) {
+        return mMagnitudeFormat.format(magnitude);
+    }
+
+    /**
+     * Return the date of a time, e.g. "Mar 03, 2016".
+     */
+    public String formatDate(long timeInMilliseconds) {
+        mDate.setTime(timeInMilliseconds);
+        return mDateFormat.format(mDate);
+    }
+
+    /**
+     * Return the time of day of a time, e.g. "4:30 PM".
+     */
+    public String formatTime(long timeInMilliseconds) {
+        mDate.setTime(timeInMilliseconds);
+        return mTimeFormat.format(mDate);
+    }
+
+    /**
+     * Return the index of the offset language's "of" in a location, or -1 if there is none.
+     * Find it once per row and pass it to both location methods.
+     */
+    public static int findLocationSeparator(String location) {
+        return location.indexOf(LOCATION_SEPARATOR);
+    }
+
+    /**
+     * Process general location string to isolate/return offset string.
+     *
+     * @param rawLocationString is the raw location string returned from USGS Json query.
+     * @param separatorIndex is the index of "of" in the string, or -1 if there is none.
+     */
+    public String formatLocationOffset(String rawLocationString, int separatorIndex) {
+        if (separatorIndex < 0) { // If there is NO offset language, use the standard language.
+            return mNearThe;
+        }
+        // Extract the substring from beginning of general location string up to end of "of".
+        return rawLocationString.substring(0, separatorIndex + LOCATION_SEPARATOR.length());
+    }
+
+    /**
+     * Process general location string to isolate/return primary location string.
+     *
+     * @param rawLocationString is the raw location string returned from USGS Json query.
+     * @param separatorIndex is the index of "of" in the string, or -1 if there is none.
+     */
+    public static String formatPrimaryLocation(String rawLocationString, int separatorIndex) {
+        if (separatorIndex < 0) { // If there is NO offset language, the whole string is the primary location.
+            return rawLocationString;
+        }
+        // Skip "of" and the space that follows it.
+        int breakPoint = Math.min(separatorIndex + LOCATION_SEPARATOR.length() + 1, rawLocationString.length());
+        return rawLocationString.substring(breakPoint);
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.android.quakereport;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Immutable description of a USGS FDSN event query, so filtering and trimming happen on the server.
+ *
+ * {@link #toUrl()} is canonical: parameters are emitted in sorted order with fixed number and time
+ * formatting, so two equal queries always produce the same URL (and share a response cache entry).
+ * Create instances with {@link Builder}.
+ */
+public final class EarthquakeQuery {
+
+    /** Endpoint of the USGS FDSN event service */
+    public static final String ENDPOINT = "https://earthquake.usgs.gov/fdsnws/event/1/query";
+
+    /** Sort orders supported by the FDSN "orderby" parameter */
+    public enum OrderBy {
+        TIME("time"),
+        TIME_ASC("time-asc"),
+        MAGNITUDE("magnitude"),
+        MAGNITUDE_ASC("magnitude-asc");
+
+        private final String mValue;
+
+        OrderBy(String value) {
+            this.mValue = value;
+        }
+
+        public String getValue() {
+            return mValue;
+        }
+    }
+
+    /** Query parameters, sorted by name; only parameters that were set are present */
+    private final TreeMap<String, String> mParameters;
+
+    private EarthquakeQuery(TreeMap<String, String> parameters) {
+        this.mParameters = parameters;
+    }
+
+    /**
+     * Return the canonical query URL.
+     */
+    public String toUrl() {
+        return toUrl(ENDPOINT);
+    }
+
+    /**
+     * Return the canonical query URL for another FDSN event service, such as a test server.
+     */
+    String toUrl(String endpoint) {
+        StringBuilder url = new StringBuilder(endpoint);
+        char separator = '?';
+        for (Map.Entry<String, String> parameter : mParameters.entrySet()) {
+            url.append(separator).append(parameter.getKey()).append('=').append(encode(parameter.getValue()));
+            separator = '&';
+        }
+        return url.toString();
+    }
+
+    /**
+     * Return the value of a parameter, or null if it isn't set.
+     */
+    public String getParameter(String name) {
+        return mParameters.get(name);
+    }
+
+    /**
+     * Return the names of the parameters that are set, in sorted order.
+     */
+    public Set<String> getParameterNames() {
+        return Collections.unmodifiableSet(mParameters.keySet());
+    }
+
+    /**
+     * Return the value of a time parameter (e.g. "starttime") in milliseconds from the Epoch,
+     * or {@code defaultValue} if it isn't set.
+     */
+    public long getTimeParameter(String name, long defaultValue) {
+        String value = mParameters.get(name);
+        return value != null ? parseTime(value) : defaultValue;
+    }
+
+    /**
+     * Return the value of a numeric parameter (e.g. "minmagnitude"), or {@code defaultValue} if it isn't set.
+     */
+    public double getNumberParameter(String name, double defaultValue) {
+        String value = mParameters.get(name);
+        return value != null ? Double.parseDouble(value) : defaultValue;
+    }
+
+    /**
+     * Return a {@link Builder} initialized with this query's parameters.
+     */
+    public Builder buildUpon() {
+        return new Builder(mParameters);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof EarthquakeQuery && mParameters.equals(((EarthquakeQuery) other).mParameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return mParameters.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return toUrl();
+    }
+
+    /**
+     * Builds {@link EarthquakeQuery} instances. GeoJSON earthquakes are requested unless overridden.
+     */
+    public static final class Builder {
+
+        private final TreeMap<String, String> mParameters;
+
+        public Builder() {
+            mParameters = new TreeMap<>();
+            mParameters.put("format", "geojson");
+            mParameters.put("eventtype", "earthquake");
+        }
+
+        private Builder(TreeMap<String, String> parameters) {
+            mParameters = new TreeMap<>(parameters);
+        }
+
+        /** Response format, e.g. "geojson" or "csv". */
+        public Builder format(String format) {
+            return set("format", format);
+        }
+
+        /** Event type, e.g. "earthquake"; null for all event types. */
+        public Builder eventType(String eventType) {
+            return set("eventtype", eventType);
+        }
+
+        /** Smallest magnitude to include. */
+        public Builder minMagnitude(double magnitude) {
+            return set("minmagnitude", formatNumber(magnitude));
+        }
+
+        /** Include events of any magnitude, removing a magnitude floor set before. */
+        public Builder anyMinMagnitude() {
+            return set("minmagnitude", null);
+        }
+
+        /** Largest magnitude to include. */
+        public Builder maxMagnitude(double magnitude) {
+            return set("maxmagnitude", formatNumber(magnitude));
+        }
+
+        /** Earliest event time to include, in milliseconds from the Epoch. */
+        public Builder startTime(long timeInMilliseconds) {
+            return set("starttime", formatTime(timeInMilliseconds));
+        }
+
+        /** Latest event time to include, in milliseconds from the Epoch. */
+        public Builder endTime(long timeInMilliseconds) {
+            return set("endtime", formatTime(timeInMilliseconds));
+        }
+
+        /** Only include events revised after this time, in milliseconds from the Epoch. */
+        public Builder updatedAfter(long timeInMilliseconds) {
+            return set("updatedafter", formatTime(timeInMilliseconds));
+        }
+
+        /** Also return deleted events, flagged with status "deleted". */
+        public Builder includeDeleted(boolean includeDeleted) {
+            return set("includedeleted", includeDeleted ? "true" : null);
+        }
+
+        /** Restrict results to a latitude/longitude rectangle, in degrees. */
+        public Builder boundingBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+            if (minLatitude > maxLatitude) {
+                throw new IllegalArgumentException("minLatitude must not exceed maxLatitude");
+            }
+            set("minlatitude", formatNumber(minLatitude));
+            set("maxlatitude", formatNumber(maxLatitude));
+            set("minlongitude", formatNumber(minLongitude));
+            return set("maxlongitude", formatNumber(maxLongitude));
+        }
+
+        /** Restrict results to a circle around a point, in degrees and kilometers. */
+        public Builder radius(double latitude, double longitude, double maxRadiusKm) {
+            if (maxRadiusKm < 0) {
+                throw new IllegalArgumentException("maxRadiusKm must not be negative");
+            }
+            set("latitude", formatNumber(latitude));
+            set("longitude", formatNumber(longitude));
+            return set("maxradiuskm", formatNumber(maxRadiusKm));
+        }
+
+        /** Maximum number of events to return. */
+        public Builder limit(int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("limit must be positive");
+            }
+            return set("limit", String.valueOf(limit));
+        }
+
+        /** 1-based index of the first event to return, for paging. */
+        public Builder offset(int offset) {
+            if (offset < 1) {
+                throw new IllegalArgumentException("offset is 1-based and must be at least 1");
+            }
+            return set("offset", String.valueOf(offset));
+        }
+
+        /** Sort order of the results. */
+        public Builder orderBy(OrderBy orderBy) {
+            return set("orderby", orderBy != null ? orderBy.getValue() : null);
+        }
+
+        public EarthquakeQuery build() {
+            return new EarthquakeQuery(new TreeMap<>(mParameters));
+        }
+
+        private Builder set(String name, String value) {
+            if (value == null) {
+                mParameters.remove(name);
+            } else {
+                mParameters.put(name, value);
+            }
+            return this;
+        }
+    }
+
+    /**
+     * Format a number without exponent or trailing zeros, so 6, 6.0 and 6.00 all become "6".
+     */
+    static String formatNumber(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            throw new IllegalArgumentException("Not a finite number: " + value);
+        }
+        BigDecimal decimal = new BigDecimal(String.valueOf(value)).stripTrailingZeros();
+        // stripTrailingZeros leaves "0.0" as "0.0" on older runtimes; normalize it
+        return decimal.signum() == 0 ? "0" : decimal.toPlainString();
+    }
+
+    /**
+     * Format a time as the ISO 8601 UTC form accepted by the FDSN event service.
+     */
+    static String formatTime(long timeInMilliseconds) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        return format.format(new Date(timeInMilliseconds));
+    }
+
+    /**
+     * Parse a time written by {@link #formatTime(long)}.
+     */
+    static long parseTime(String time) {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("UTC"));
+        try {
+            return format.parse(time).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("Not a query time: " + time, e);
+        }
+    }
+
+    private static String encode(String value) {
+        try {
+            // URLEncoder encodes spaces as "+", which the service also accepts; keep "%20" for clarity
+            return URLEncoder.encode(value, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            // UTF-8 is always supported
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,569 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Size-bounded, on-disk cache of USGS responses, keyed by the normalized query URL.
+ *
+ * Each entry is a body file plus a small metadata file holding the ETag / Last-Modified
+ * validators, so the next request for the same URL can be sent as a conditional GET.
+ * The most recently parsed results are also kept in memory, so a 304 can skip parsing entirely.
+ *
+ * Both files are written to temp files and renamed into place, the metadata last, and an entry
+ * needs both; so a crash mid-write leaves the old entry, the new one, or none, but never a
+ * body paired with another body's validators. Leftovers are deleted when the cache is opened.
+ */
+public class EarthquakeResponseCache {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeResponseCache.class.getSimpleName();
+
+    private static final String BODY_SUFFIX = ".body";
+    private static final String META_SUFFIX = ".meta";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /** Number of parsed result lists kept in memory */
+    private static final int MAX_PARSED_ENTRIES = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** A cached response: its body file and validators. */
+    public static class Entry {
+
+        /** Cache key (hash of the normalized URL) */
+        private final String mKey;
+
+        /** File holding the full response body */
+        private final File mBodyFile;
+
+        /** ETag sent by the server, or null */
+        private final String mETag;
+
+        /** Last-Modified sent by the server, or null */
+        private final String mLastModified;
+
+        Entry(String key, File bodyFile, String eTag, String lastModified) {
+            this.mKey = key;
+            this.mBodyFile = bodyFile;
+            this.mETag = eTag;
+            this.mLastModified = lastModified;
+        }
+
+        public String getKey() {
+            return mKey;
+        }
+
+        public File getBodyFile() {
+            return mBodyFile;
+        }
+
+        public String getETag() {
+            return mETag;
+        }
+
+        public String getLastModified() {
+            return mLastModified;
+        }
+    }
+
+    /** Directory holding the cache files */
+    private final File mDirectory;
+
+    /** Upper bound for the total size of all body files, in bytes */
+    private final long mMaxSizeBytes;
+
+    /** Parsed results for recently used entries; keyed by cache key + validator */
+    private final Map<String, List<Earthquake>> mParsedResults =
+            new LinkedHashMap<String, List<Earthquake>>(MAX_PARSED_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, List<Earthquake>> eldest) {
+                    return size() > MAX_PARSED_ENTRIES;
+                }
+            };
+
+    /**
+     * Constructor for the {@link EarthquakeResponseCache} class.
+     *
+     * @param directory is where cached bodies and validators are stored; created if needed.
+     * @param maxSizeBytes is the upper bound for the total size of the cached bodies.
+     */
+    public EarthquakeResponseCache(File directory, long maxSizeBytes) {
+        this.mDirectory = directory;
+        this.mMaxSizeBytes = maxSizeBytes;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Logger.e(LOG_TAG, "Unable to create cache directory: " + directory);
+        }
+        deleteLeftovers();
+    }
+
+    /**
+     * Delete what an interrupted write left behind: temp files, and body or metadata files
+     * missing their other half.
+     */
+    private void deleteLeftovers() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            boolean leftover;
+            if (name.endsWith(TEMP_SUFFIX)) {
+                leftover = true;
+            } else if (name.endsWith(BODY_SUFFIX)) {
+                leftover = !new File(mDirectory, stripSuffix(name, BODY_SUFFIX) + META_SUFFIX).exists();
+            } else if (name.endsWith(META_SUFFIX)) {
+                leftover = !new File(mDirectory, stripSuffix(name, META_SUFFIX) + BODY_SUFFIX).exists();
+            } else {
+                leftover = false;
+            }
+            if (leftover && !file.delete()) {
+                Logger.e(LOG_TAG, "Unable to delete leftover cache file: " + file);
+            }
+        }
+    }
+
+    /**
+     * Return the cached entry for the URL, or null if there is none.
+     * Marks the entry as recently used.
+     */
+    public synchronized Entry get(String url) {
+        String key = keyFor(url);
+        File bodyFile = new File(mDirectory, key + BODY_SUFFIX);
+        File metaFile = new File(mDirectory, key + META_SUFFIX);
+        if (!bodyFile.exists() || !metaFile.exists()) {
+            return null;
+        }
+
+        String eTag = null;
+        String lastModified = null;
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(metaFile), UTF_8));
+            eTag = emptyToNull(reader.readLine());
+            lastModified = emptyToNull(reader.readLine());
+        } catch (IOException e) {
+            Logger.e(LOG_TAG, "Problem reading cache metadata; dropping entry.", e);
+            remove(key);
+            return null;
+        } finally {
+            closeQuietly(reader);
+        }
+
+        // Touch the body so eviction treats it as recently used.
+        bodyFile.setLastModified(System.currentTimeMillis());
+        return new Entry(key, bodyFile, eTag, lastModified);
+    }
+
+    /**
+     * A response body on its way into the cache: everything read from {@link #getBody()} is
+     * copied to a temp file, so the body can be parsed while it downloads. {@link #commit()}
+     * makes it the entry for its URL; {@link #close()} drops it unless it was committed.
+     */
+    public final class Download implements Closeable {
+        private final String mUrl;
+        private final String mKey;
+        private final String mETag;
+        private final String mLastModified;
+        private final File mTempFile;
+        private final OutputStream mOutput;
+        private final InputStream mBody;
+        private boolean mDone = false;
+
+        private Download(String url, String key, InputStream body, String eTag, String lastModified)
+                throws IOException {
+            this.mUrl = url;
+            this.mKey = key;
+            this.mETag = eTag;
+            this.mLastModified = lastModified;
+            // A temp file first, so a failed download never replaces a good entry
+            this.mTempFile = File.createTempFile(key, TEMP_SUFFIX, mDirectory);
+            try {
+                this.mOutput = new FileOutputStream(mTempFile);
+            } catch (IOException e) {
+                mTempFile.delete();
+                throw e;
+            }
+            this.mBody = new TeeInputStream(body, mOutput);
+        }
+
+        /**
+         * Return the response body; what is read from it is copied into the cache.
+         */
+        public InputStream getBody() {
+            return mBody;
+        }
+
+        /**
+         * Copy whatever wasn't read of the body, e.g. trailing whitespace after the JSON, and
+         * replace the entry for the URL with it.
+         *
+         * @return the new entry.
+         * @throws IOException if the body can't be read or written.
+         */
+        public Entry commit() throws IOException {
+            if (mDone) {
+                throw new IllegalStateException("Download already closed");
+            }
+            byte[] buffer = new byte[HttpTransport.BUFFER_SIZE];
+            while (mBody.read(buffer) != -1) {
+                // Copied by the tee
+            }
+            mDone = true;
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                mTempFile.delete();
+                throw e;
+            }
+            return EarthquakeResponseCache.this.commit(mUrl, mKey, mTempFile, mETag, mLastModified);
+        }
+
+        /**
+         * Drop the download unless it was committed. The body stream itself isn't closed.
+         */
+        @Override
+        public void close() {
+            if (!mDone) {
+                mDone = true;
+                closeQuietly(mOutput);
+                mTempFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Start copying a response body into the cache along with its validators, to replace any
+     * previous entry for the URL once committed. Responses without an ETag or Last-Modified are
+     * still stored, but can't be revalidated.
+     *
+     * The download runs outside the cache lock, into its own temp file, so concurrent (e.g.
+     * hedged) downloads of the same URL don't wait for each other; the last one committed wins.
+     *
+     * @param url is the request URL.
+     * @param body is the response stream; not closed.
+     * @throws IOException if the temp file can't be created.
+     */
+    public Download startDownload(String url, InputStream body, String eTag, String lastModified)
+            throws IOException {
+        return new Download(url, keyFor(url), body, eTag, lastModified);
+    }
+
+    /**
+     * Copy the response body into the cache along with its validators, replacing any previous
+     * entry; see {@link #startDownload}.
+     *
+     * @param body is the response stream; read to the end but not closed.
+     * @return the new entry, whose body file can then be parsed.
+     * @throws IOException if the body can't be read or written.
+     */
+    public Entry put(String url, InputStream body, String eTag, String lastModified)
+            throws IOException {
+        Download download = startDownload(url, body, eTag, lastModified);
+        try {
+            return download.commit();
+        } finally {
+            download.close();
+        }
+    }
+
+    /**
+     * Replace the entry for the key with a downloaded body file and its validators.
+     */
+    private Entry commit(String url, String key, File tempFile, String eTag, String lastModified)
+            throws IOException {
+        File tempMetaFile;
+        try {
+            tempMetaFile = File.createTempFile(key, TEMP_SUFFIX, mDirectory);
+            Writer metaWriter = new OutputStreamWriter(new FileOutputStream(tempMetaFile), UTF_8);
+            try {
+                metaWriter.write((eTag != null ? eTag : "") + "\n");
+                metaWriter.write((lastModified != null ? lastModified : "") + "\n");
+            } finally {
+                closeQuietly(metaWriter);
+            }
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+        return commit(url, key, tempFile, tempMetaFile, eTag, lastModified);
+    }
+
+    private synchronized Entry commit(String url, String key, File tempFile, File tempMetaFile, String eTag,
+                                      String lastModified) throws IOException {
+        File bodyFile = new File(mDirectory, key + BODY_SUFFIX);
+        File metaFile = new File(mDirectory, key + META_SUFFIX);
+
+        // Old validators go first and new ones last; in between, the entry is simply missing
+        metaFile.delete();
+        bodyFile.delete();
+        forgetParsed(key);
+        if (!tempFile.renameTo(bodyFile) || !tempMetaFile.renameTo(metaFile)) {
+            tempFile.delete();
+            tempMetaFile.delete();
+            bodyFile.delete();
+            throw new IOException("Unable to commit cache entry for " + url);
+        }
+
+        trimToSize(key);
+        return new Entry(key, bodyFile, eTag, lastModified);
+    }
+
+    /**
+     * Return the parsed result previously stored for the entry, or null.
+     */
+    public synchronized List<Earthquake> getParsed(Entry entry) {
+        return mParsedResults.get(parsedKey(entry));
+    }
+
+    /**
+     * Keep the parsed result for the entry in memory, so a later 304 can return it directly.
+     */
+    public synchronized void putParsed(Entry entry, List<Earthquake> earthquakes) {
+        mParsedResults.put(parsedKey(entry), Collections.unmodifiableList(new ArrayList<>(earthquakes)));
+    }
+
+    /**
+     * Delete every cached entry.
+     */
+    public synchronized void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mParsedResults.clear();
+    }
+
+    /**
+     * Return the total size of the cached bodies, in bytes.
+     */
+    public synchronized long size() {
+        long total = 0;
+        for (File bodyFile : listBodyFiles()) {
+            total += bodyFile.length();
+        }
+        return total;
+    }
+
+    /**
+     * Evict least recently used entries until the cached bodies fit in the size bound.
+     * The entry that was just written is never evicted, even if it alone exceeds the bound.
+     */
+    private void trimToSize(String keepKey) {
+        File[] bodyFiles = listBodyFiles();
+        long total = 0;
+        for (File bodyFile : bodyFiles) {
+            total += bodyFile.length();
+        }
+        if (total <= mMaxSizeBytes) {
+            return;
+        }
+
+        // Oldest access time first
+        Arrays.sort(bodyFiles, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long lhs = a.lastModified();
+                long rhs = b.lastModified();
+                return lhs < rhs ? -1 : (lhs == rhs ? 0 : 1);
+            }
+        });
+
+        for (File bodyFile : bodyFiles) {
+            if (total <= mMaxSizeBytes) {
+                break;
+            }
+            String key = stripSuffix(bodyFile.getName(), BODY_SUFFIX);
+            if (key.equals(keepKey)) {
+                continue;
+            }
+            total -= bodyFile.length();
+            remove(key);
+        }
+    }
+
+    private File[] listBodyFiles() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return new File[0];
+        }
+        List<File> bodyFiles = new ArrayList<>();
+        for (File file : files) {
+            if (file.getName().endsWith(BODY_SUFFIX)) {
+                bodyFiles.add(file);
+            }
+        }
+        return bodyFiles.toArray(new File[bodyFiles.size()]);
+    }
+
+    private void remove(String key) {
+        new File(mDirectory, key + BODY_SUFFIX).delete();
+        new File(mDirectory, key + META_SUFFIX).delete();
+        forgetParsed(key);
+    }
+
+    private void forgetParsed(String key) {
+        List<String> stale = new ArrayList<>();
+        for (String parsedKey : mParsedResults.keySet()) {
+            if (parsedKey.startsWith(key)) {
+                stale.add(parsedKey);
+            }
+        }
+        for (String parsedKey : stale) {
+            mParsedResults.remove(parsedKey);
+        }
+    }
+
+    private static String parsedKey(Entry entry) {
+        return entry.getKey() + "|" + entry.getETag() + "|" + entry.getLastModified();
+    }
+
+    /**
+     * Return the cache key for a URL: a hex digest of its normalized form.
+     */
+    static String keyFor(String url) {
+        String normalized = normalizeUrl(url);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(normalized.getBytes(UTF_8));
+            StringBuilder hex = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+                hex.append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-1 is always available on Android; fall back to a plain hash just in case.
+            return Integer.toHexString(normalized.hashCode());
+        }
+    }
+
+    /**
+     * Normalize a query URL so equivalent requests share a cache entry:
+     * scheme and host are lower-cased, the fragment is dropped and query parameters are sorted.
+     */
+    static String normalizeUrl(String url) {
+        URI uri;
+        try {
+            uri = new URI(url);
+        } catch (URISyntaxException e) {
+            return url;
+        }
+
+        StringBuilder normalized = new StringBuilder();
+        if (uri.getScheme() != null) {
+            normalized.append(uri.getScheme().toLowerCase()).append("://");
+        }
+        if (uri.getRawAuthority() != null) {
+            normalized.append(uri.getRawAuthority().toLowerCase());
+        }
+        if (uri.getRawPath() != null) {
+            normalized.append(uri.getRawPath());
+        }
+
+        String query = uri.getRawQuery();
+        if (query != null && !query.isEmpty()) {
+            List<String> parameters = new ArrayList<>(Arrays.asList(query.split("&")));
+            Collections.sort(parameters);
+            normalized.append('?');
+            boolean first = true;
+            for (String parameter : parameters) {
+                if (parameter.isEmpty()) {
+                    continue;
+                }
+                if (!first) {
+                    normalized.append('&');
+                }
+                normalized.append(parameter);
+                first = false;
+            }
+        }
+        return normalized.toString();
+    }
+
+    /**
+     * Copies every byte read through it to an output stream.
+     */
+    private static class TeeInputStream extends FilterInputStream {
+        private final OutputStream mCopy;
+
+        TeeInputStream(InputStream in, OutputStream copy) {
+            super(in);
+            this.mCopy = copy;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                mCopy.write(b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                mCopy.write(buffer, offset, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // Skipped bytes must still reach the copy
+            byte[] buffer = new byte[(int) Math.min(n, HttpTransport.BUFFER_SIZE)];
+            int count = read(buffer, 0, buffer.length);
+            return Math.max(count, 0);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    private static String stripSuffix(String name, String suffix) {
+        return name.substring(0, name.length() - suffix.length());
+    }
+
+    private static String emptyToNull(String value) {
+        return (value == null || value.isEmpty()) ? null : value;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Logger.e(LOG_TAG, "Problem closing cache file.", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.android.quakereport;
+
+/**
+ * Display-ready values for one row of the earthquake list, computed once per event off the
+ * UI thread by {@code EarthquakeRowFormatter}, so binding a row only assigns prepared values.
+ * Only the event id and URL are kept from the source event, so a row can be built from
+ * {@link EarthquakeColumns} without an {@link Earthquake} object.
+ */
+public class EarthquakeRow {
+
+    /** USGS event id of the earthquake this row displays; null if unknown */
+    private final String mId;
+
+    /** URL for the USGS webpage of the earthquake */
+    private final String mUrl;
+
+    /** Magnitude with a single decimal point (e.g. "6.4") */
+    private final String mMagnitudeText;
+
+    /** Offset language of the location (e.g. "87 km NNE of"), or "Near the" */
+    private final String mLocationOffsetText;
+
+    /** Primary location (e.g. "Tokyo, Japan") */
+    private final String mPrimaryLocationText;
+
+    /** Formatted date (e.g. "Mar 03, 1984") */
+    private final String mDateText;
+
+    /** Formatted time (e.g. "4:30 PM") */
+    private final String mTimeText;
+
+    /** Resolved color for the magnitude circle */
+    private final int mMagnitudeColor;
+
+    public EarthquakeRow(String id, String url, String magnitudeText, String locationOffsetText,
+                         String primaryLocationText, String dateText, String timeText, int magnitudeColor) {
+        this.mId = id;
+        this.mUrl = url;
+        this.mMagnitudeText = magnitudeText;
+        this.mLocationOffsetText = locationOffsetText;
+        this.mPrimaryLocationText = primaryLocationText;
+        this.mDateText = dateText;
+        this.mTimeText = timeText;
+        this.mMagnitudeColor = magnitudeColor;
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public String getUrl() {
+        return mUrl;
+    }
+
+    public String getMagnitudeText() {
+        return mMagnitudeText;
+    }
+
+    public String getLocationOffsetText() {
+        return mLocationOffsetText;
+    }
+
+    public String getPrimaryLocationText() {
+        return mPrimaryLocationText;
+    }
+
+    public String getDateText() {
+        return mDateText;
+    }
+
+    public String getTimeText() {
+        return mTimeText;
+    }
+
+    public int getMagnitudeColor() {
+        return mMagnitudeColor;
+    }
+
+    /**
+     * Returns true if this row would display exactly the same as another row.
+     */
+    public boolean hasSameContents(EarthquakeRow other) {
+        return mMagnitudeColor == other.mMagnitudeColor
+                && equal(mMagnitudeText, other.mMagnitudeText)
+                && equal(mLocationOffsetText, other.mLocationOffsetText)
+                && equal(mPrimaryLocationText, other.mPrimaryLocationText)
+                && equal(mDateText, other.mDateText)
+                && equal(mTimeText, other.mTimeText)
+                && equal(mUrl, other.mUrl);
+    }
+
+    private static boolean equal(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+}
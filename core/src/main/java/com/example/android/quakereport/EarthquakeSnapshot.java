@@ -0,0 +1,248 @@
+package com.example.android.quakereport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The last displayed rows of the earthquake list, already formatted, saved in a small binary
+ * file so the next launch can show them on its first frame instead of waiting for the store
+ * or the network.
+ *
+ * File layout (big-endian):
+ * <pre>
+ *   int    magic "EQSN"
+ *   int    format version
+ *   int    payload length in bytes
+ *   long   CRC32 of the payload
+ *   payload:
+ *     long   time the snapshot was taken, in milliseconds from the Epoch
+ *     byte   1 if the rows are the complete result set, 0 if more rows follow them
+ *     int    row count
+ *     per row: id, url, magnitude, location offset, primary location, date, time (strings),
+ *              then int magnitude color
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes. A file with the wrong
+ * magic, version, length or checksum is treated as missing.
+ */
+public final class EarthquakeSnapshot {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = EarthquakeSnapshot.class.getSimpleName();
+
+    /** "EQSN" */
+    private static final int MAGIC = 0x4551534E;
+
+    /** Bump whenever the layout or the meaning of a field changes */
+    static final int FORMAT_VERSION = 1;
+
+    /** Bytes before the payload: magic, version, length, CRC */
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+
+    /** Snapshots bigger than this are not trusted */
+    private static final int MAX_PAYLOAD_SIZE = 4 * 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final long mCreatedMillis;
+    private final boolean mComplete;
+    private final List<EarthquakeRow> mRows;
+
+    private EarthquakeSnapshot(long createdMillis, boolean complete, List<EarthquakeRow> rows) {
+        this.mCreatedMillis = createdMillis;
+        this.mComplete = complete;
+        this.mRows = rows;
+    }
+
+    /** Time the snapshot was taken, in milliseconds from the Epoch */
+    public long getCreatedMillis() {
+        return mCreatedMillis;
+    }
+
+    /** Whether the rows are the whole result set, rather than the first rows of it */
+    public boolean isComplete() {
+        return mComplete;
+    }
+
+    public List<EarthquakeRow> getRows() {
+        return mRows;
+    }
+
+    /**
+     * Write the rows to the snapshot file, replacing it atomically.
+     *
+     * @param file is the snapshot file.
+     * @param rows are the displayed rows, in order.
+     * @param complete is true if the rows are the complete result set.
+     * @param createdMillis is the current time in milliseconds from the Epoch.
+     * @throws IOException if the file can't be written; the previous snapshot is then kept.
+     */
+    public static void write(File file, List<EarthquakeRow> rows, boolean complete, long createdMillis)
+            throws IOException {
+        ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream(rows.size() * 128 + 16);
+        DataOutputStream payload = new DataOutputStream(payloadBytes);
+        payload.writeLong(createdMillis);
+        payload.writeByte(complete ? 1 : 0);
+        payload.writeInt(rows.size());
+        for (EarthquakeRow row : rows) {
+            writeString(payload, row.getId());
+            writeString(payload, row.getUrl());
+            writeString(payload, row.getMagnitudeText());
+            writeString(payload, row.getLocationOffsetText());
+            writeString(payload, row.getPrimaryLocationText());
+            writeString(payload, row.getDateText());
+            writeString(payload, row.getTimeText());
+            payload.writeInt(row.getMagnitudeColor());
+        }
+        payload.flush();
+        byte[] body = payloadBytes.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(body.length).putLong(crc.getValue());
+        header.flip();
+
+        // Write a temporary file and rename it over the old one, so a crash never leaves half a snapshot
+        File temporary = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temporary);
+        try {
+            FileChannel channel = output.getChannel();
+            ByteBuffer bodyBuffer = ByteBuffer.wrap(body);
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (bodyBuffer.hasRemaining()) {
+                channel.write(bodyBuffer);
+            }
+            output.getFD().sync();
+        } finally {
+            output.close();
+        }
+        if (!temporary.renameTo(file)) {
+            temporary.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+        Logger.v(LOG_TAG, "Wrote snapshot of " + rows.size() + " rows, " + (HEADER_SIZE + body.length) + " bytes.");
+    }
+
+    /**
+     * Read the snapshot file. A missing, outdated or corrupt file returns null; a corrupt one is deleted.
+     */
+    public static EarthquakeSnapshot read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+
+        FileInputStream input = null;
+        try {
+            input = new FileInputStream(file);
+            FileChannel channel = input.getChannel();
+            long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE || fileSize > HEADER_SIZE + MAX_PAYLOAD_SIZE) {
+                throw new IOException("Unexpected snapshot size " + fileSize);
+            }
+            // Map the file rather than copying it through a stream buffer
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a snapshot file");
+            }
+            int version = buffer.getInt();
+            if (version != FORMAT_VERSION) {
+                // Written by another version of the app; ignore it until it's overwritten
+                Logger.v(LOG_TAG, "Ignoring snapshot with format version " + version);
+                return null;
+            }
+            int payloadLength = buffer.getInt();
+            long expectedCrc = buffer.getLong();
+            if (payloadLength != fileSize - HEADER_SIZE) {
+                throw new IOException("Truncated snapshot");
+            }
+
+            byte[] body = new byte[payloadLength];
+            buffer.get(body);
+            CRC32 crc = new CRC32();
+            crc.update(body, 0, body.length);
+            if (crc.getValue() != expectedCrc) {
+                throw new IOException("Snapshot checksum mismatch");
+            }
+
+            return readPayload(ByteBuffer.wrap(body));
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            Logger.e(LOG_TAG, "Discarding unreadable snapshot.", e);
+            file.delete();
+            return null;
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException e) {
+                    // Nothing left to do
+                }
+            }
+        }
+    }
+
+    private static EarthquakeSnapshot readPayload(ByteBuffer payload) throws IOException {
+        long createdMillis = payload.getLong();
+        boolean complete = payload.get() != 0;
+        int count = payload.getInt();
+        if (count < 0 || count > payload.remaining() / 4) {
+            throw new IOException("Invalid row count " + count);
+        }
+
+        List<EarthquakeRow> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = readString(payload);
+            String url = readString(payload);
+            String magnitudeText = readString(payload);
+            String locationOffsetText = readString(payload);
+            String primaryLocationText = readString(payload);
+            String dateText = readString(payload);
+            String timeText = readString(payload);
+            int magnitudeColor = payload.getInt();
+            rows.add(new EarthquakeRow(id, url, magnitudeText, locationOffsetText, primaryLocationText,
+                    dateText, timeText, magnitudeColor));
+        }
+        if (payload.hasRemaining()) {
+            throw new IOException("Trailing bytes in snapshot");
+        }
+        return new EarthquakeSnapshot(createdMillis, complete, Collections.unmodifiableList(rows));
+    }
+
+    private static void writeString(DataOutputStream output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length == -1) {
+            return null;
+        }
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
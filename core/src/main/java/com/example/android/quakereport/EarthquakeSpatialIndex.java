@@ -0,0 +1,264 @@
+package com.example.android.quakereport;
+
+import java.util.Arrays;
+
+/**
+ * A spatial index over the epicenters of an {@link EarthquakeColumns} set, answering "events
+ * within R km of a point" and "k nearest events" locally.
+ *
+ * Events are bucketed into a fixed grid of 1 x 1 degree cells, stored as one flat array sorted
+ * by cell with an offset per cell. A query visits only the cells overlapping the bounding box
+ * of its search circle (wrapping at the date line, and spanning all longitudes near a pole)
+ * and checks the great-circle distance of each event in them. Events without coordinates are
+ * not indexed.
+ *
+ * The index is built once from a complete set and is immutable; build a new one when the set changes.
+ */
+public class EarthquakeSpatialIndex {
+
+    /** Mean radius of the Earth, in km */
+    public static final double EARTH_RADIUS_KM = 6371.0088;
+
+    /** Half the circumference; no two points on Earth are further apart */
+    private static final double MAX_DISTANCE_KM = Math.PI * EARTH_RADIUS_KM;
+
+    /** First search radius of a k-nearest query; doubled until enough events are found */
+    private static final double INITIAL_NEAREST_RADIUS_KM = 250.0;
+
+    private static final int LATITUDE_CELLS = 180;
+    private static final int LONGITUDE_CELLS = 360;
+
+    /** Start of each cell's events in the entry arrays; cell i spans [mCellStarts[i], mCellStarts[i + 1]) */
+    private final int[] mCellStarts = new int[LATITUDE_CELLS * LONGITUDE_CELLS + 1];
+
+    /** Row in the column set, latitude and longitude of each indexed event, grouped by cell */
+    private final int[] mEntryRows;
+    private final double[] mEntryLatitudes;
+    private final double[] mEntryLongitudes;
+
+    /**
+     * Events found by a query, nearest first.
+     */
+    public static class Result {
+        private final int[] mRows;
+        private final double[] mDistancesKm;
+
+        Result(int[] rows, double[] distancesKm) {
+            this.mRows = rows;
+            this.mDistancesKm = distancesKm;
+        }
+
+        public int size() {
+            return mRows.length;
+        }
+
+        /** Row of the i-th nearest event in the indexed {@link EarthquakeColumns} set */
+        public int getRow(int i) {
+            return mRows[i];
+        }
+
+        /** Great-circle distance of the i-th nearest event from the query point, in km */
+        public double getDistanceKm(int i) {
+            return mDistancesKm[i];
+        }
+    }
+
+    /**
+     * Indexed entries found by a query, with their distances from the query point.
+     */
+    private static final class Matches {
+        int[] slots = new int[16];
+        double[] distancesKm = new double[16];
+        int count = 0;
+
+        void add(int slot, double distanceKm) {
+            if (count == slots.length) {
+                slots = Arrays.copyOf(slots, count * 2);
+                distancesKm = Arrays.copyOf(distancesKm, count * 2);
+            }
+            slots[count] = slot;
+            distancesKm[count] = distanceKm;
+            count++;
+        }
+
+        /**
+         * Sort nearest first on the exact distances, with a stable merge sort so equally
+         * distant entries keep the order they were found in.
+         */
+        void sort() {
+            int[] slotBuffer = new int[count];
+            double[] distanceBuffer = new double[count];
+            for (int width = 1; width < count; width *= 2) {
+                for (int start = 0; start < count; start += 2 * width) {
+                    int middle = Math.min(start + width, count);
+                    int end = Math.min(start + 2 * width, count);
+                    int i = start;
+                    int j = middle;
+                    int k = start;
+                    while (i < middle || j < end) {
+                        int from = j >= end || (i < middle && distancesKm[i] <= distancesKm[j]) ? i++ : j++;
+                        slotBuffer[k] = slots[from];
+                        distanceBuffer[k++] = distancesKm[from];
+                    }
+                }
+                System.arraycopy(slotBuffer, 0, slots, 0, count);
+                System.arraycopy(distanceBuffer, 0, distancesKm, 0, count);
+            }
+        }
+    }
+
+    /**
+     * Build the index over the events of a column set that have coordinates.
+     */
+    public EarthquakeSpatialIndex(EarthquakeColumns columns) {
+        int size = columns.size();
+        int[] cells = new int[size];
+
+        // Count the events per cell, then turn the counts into start offsets
+        int indexed = 0;
+        for (int row = 0; row < size; row++) {
+            double latitude = columns.getLatitude(row);
+            double longitude = columns.getLongitude(row);
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) {
+                cells[row] = -1;
+                continue;
+            }
+            cells[row] = cellOf(latitude, longitude);
+            mCellStarts[cells[row] + 1]++;
+            indexed++;
+        }
+        for (int cell = 0; cell < LATITUDE_CELLS * LONGITUDE_CELLS; cell++) {
+            mCellStarts[cell + 1] += mCellStarts[cell];
+        }
+
+        mEntryRows = new int[indexed];
+        mEntryLatitudes = new double[indexed];
+        mEntryLongitudes = new double[indexed];
+        int[] nextSlot = Arrays.copyOf(mCellStarts, mCellStarts.length - 1);
+        for (int row = 0; row < size; row++) {
+            if (cells[row] < 0) {
+                continue;
+            }
+            int slot = nextSlot[cells[row]]++;
+            mEntryRows[slot] = row;
+            mEntryLatitudes[slot] = columns.getLatitude(row);
+            mEntryLongitudes[slot] = columns.getLongitude(row);
+        }
+    }
+
+    /**
+     * Return the number of indexed events (those with coordinates).
+     */
+    public int size() {
+        return mEntryRows.length;
+    }
+
+    /**
+     * Return the events within {@code radiusKm} of a point, nearest first.
+     */
+    public Result withinRadius(double latitude, double longitude, double radiusKm) {
+        Matches matches = collectWithinRadius(latitude, longitude, radiusKm);
+        return toResult(matches, matches.count);
+    }
+
+    /**
+     * Return the {@code k} events nearest to a point, nearest first (fewer if fewer are indexed).
+     */
+    public Result nearest(double latitude, double longitude, int k) {
+        if (k <= 0 || mEntryRows.length == 0) {
+            return new Result(new int[0], new double[0]);
+        }
+        // Every event within the radius is found, so once there are k of them the k nearest are among them
+        double radiusKm = INITIAL_NEAREST_RADIUS_KM;
+        Matches matches = collectWithinRadius(latitude, longitude, radiusKm);
+        while (matches.count < k && radiusKm < MAX_DISTANCE_KM) {
+            radiusKm = Math.min(radiusKm * 2, MAX_DISTANCE_KM);
+            matches = collectWithinRadius(latitude, longitude, radiusKm);
+        }
+        return toResult(matches, Math.min(k, matches.count));
+    }
+
+    /**
+     * Return the great-circle (haversine) distance between two points, in km.
+     */
+    public static double distanceKm(double latitude1, double longitude1, double latitude2, double longitude2) {
+        double phi1 = Math.toRadians(latitude1);
+        double phi2 = Math.toRadians(latitude2);
+        double sinHalfDeltaPhi = Math.sin((phi2 - phi1) / 2);
+        double sinHalfDeltaLambda = Math.sin(Math.toRadians(longitude2 - longitude1) / 2);
+        double a = sinHalfDeltaPhi * sinHalfDeltaPhi
+                + Math.cos(phi1) * Math.cos(phi2) * sinHalfDeltaLambda * sinHalfDeltaLambda;
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+
+    /**
+     * Return the entries within the radius, nearest first.
+     */
+    private Matches collectWithinRadius(double latitude, double longitude, double radiusKm) {
+        // Bounding box of the search circle; see "Finding Points Within a Distance of a
+        // Latitude/Longitude Using Bounding Coordinates" (J. P. Matuschek)
+        double angularRadius = radiusKm / EARTH_RADIUS_KM;
+        double deltaLatitude = Math.toDegrees(angularRadius);
+        double minLatitude = latitude - deltaLatitude;
+        double maxLatitude = latitude + deltaLatitude;
+
+        int firstLongitudeCell = 0;
+        int longitudeCellCount = LONGITUDE_CELLS;
+        if (minLatitude > -90.0 && maxLatitude < 90.0) {
+            double sinDeltaLongitude = Math.sin(angularRadius) / Math.cos(Math.toRadians(latitude));
+            if (sinDeltaLongitude < 1.0) {
+                double deltaLongitude = Math.toDegrees(Math.asin(sinDeltaLongitude));
+                firstLongitudeCell = (int) Math.floor(normalizeLongitude(longitude - deltaLongitude) + 180.0);
+                int lastLongitudeCell = (int) Math.floor(normalizeLongitude(longitude - deltaLongitude)
+                        + 2 * deltaLongitude + 180.0);
+                longitudeCellCount = Math.min(lastLongitudeCell - firstLongitudeCell + 1, LONGITUDE_CELLS);
+            }
+        }
+        int firstLatitudeCell = latitudeCell(Math.max(minLatitude, -90.0));
+        int lastLatitudeCell = latitudeCell(Math.min(maxLatitude, 90.0));
+
+        Matches matches = new Matches();
+        for (int latitudeCell = firstLatitudeCell; latitudeCell <= lastLatitudeCell; latitudeCell++) {
+            for (int i = 0; i < longitudeCellCount; i++) {
+                int longitudeCell = (firstLongitudeCell + i) % LONGITUDE_CELLS;
+                int cell = latitudeCell * LONGITUDE_CELLS + longitudeCell;
+                for (int slot = mCellStarts[cell]; slot < mCellStarts[cell + 1]; slot++) {
+                    double distance = distanceKm(latitude, longitude, mEntryLatitudes[slot], mEntryLongitudes[slot]);
+                    if (distance > radiusKm) {
+                        continue;
+                    }
+                    matches.add(slot, distance);
+                }
+            }
+        }
+        matches.sort();
+        return matches;
+    }
+
+    private Result toResult(Matches matches, int count) {
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = mEntryRows[matches.slots[i]];
+        }
+        return new Result(rows, Arrays.copyOf(matches.distancesKm, count));
+    }
+
+    private static int cellOf(double latitude, double longitude) {
+        int longitudeCell = (int) Math.floor(normalizeLongitude(longitude) + 180.0);
+        return latitudeCell(latitude) * LONGITUDE_CELLS + Math.min(longitudeCell, LONGITUDE_CELLS - 1);
+    }
+
+    private static int latitudeCell(double latitude) {
+        int cell = (int) Math.floor(latitude + 90.0);
+        return Math.max(0, Math.min(cell, LATITUDE_CELLS - 1));
+    }
+
+    /** Map a longitude into [-180, 180) */
+    private static double normalizeLongitude(double longitude) {
+        double normalized = (longitude + 180.0) % 360.0;
+        if (normalized < 0) {
+            normalized += 360.0;
+        }
+        return normalized - 180.0;
+    }
+}
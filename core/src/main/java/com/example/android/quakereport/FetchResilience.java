@@ -0,0 +1,469 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds the latency of a request to a flaky endpoint.
+ *
+ * <ul>
+ * <li>Retries: a failed attempt is retried after a fully jittered exponential backoff, up to a
+ * number of attempts. Retries also draw from a budget that refills with a fraction of each call,
+ * so an outage can't multiply the load on the server.</li>
+ * <li>Hedging: when an attempt is still running past the chosen percentile of recent latencies,
+ * a duplicate is sent and whichever finishes first wins. Hedges draw from the same budget.</li>
+ * <li>Deadline: the whole call, retries included, gives up after a fixed time.</li>
+ * <li>Circuit breaker: while the endpoint keeps failing, calls don't try it at all.</li>
+ * </ul>
+ *
+ * A call that gives up (deadline, attempts or budget exhausted, or circuit open) throws; when
+ * the caller has a fallback, typically cached data, it comes with a {@link StaleResultException}
+ * so it can't be taken for a fresh response. Failures that would repeat, such as client errors,
+ * and responses that can't be parsed, are neither retried nor counted against the endpoint.
+ *
+ * Each attempt is told how long it may take, so an attempt the call has given up on (a slow
+ * original that lost to its hedge, or one still running at the deadline) times out on its own
+ * instead of holding a thread.
+ *
+ * Create instances with {@link Builder}; one instance per endpoint, shared by all callers.
+ */
+public class FetchResilience {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = FetchResilience.class.getSimpleName();
+
+    /** Recent latencies kept for the hedging percentile */
+    private static final int LATENCY_SAMPLES = 64;
+
+    /** Most attempts running at once over all calls; more wait for a thread */
+    private static final int MAX_ATTEMPT_THREADS = 8;
+
+    /** Attempts run on daemon threads; idle ones time out */
+    private static final ThreadPoolExecutor ATTEMPT_EXECUTOR = new ThreadPoolExecutor(MAX_ATTEMPT_THREADS,
+            MAX_ATTEMPT_THREADS, 30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "FetchAttempt #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        ATTEMPT_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * A request, sent once per attempt.
+     */
+    public interface Request<V> {
+        /**
+         * Send the request and return its result. It may run at the same time as a hedged copy.
+         *
+         * @param timeoutMillis is how long the attempt may take, body included; past it the
+         *  call has moved on, so the attempt should time out.
+         */
+        V send(long timeoutMillis) throws Exception;
+    }
+
+    private final int mMaxAttempts;
+    private final long mBaseBackoffMillis;
+    private final long mMaxBackoffMillis;
+    private final long mDeadlineMillis;
+    private final double mHedgePercentile;
+    private final int mMinHedgeSamples;
+    private final CircuitBreaker mCircuitBreaker;
+    private final Executor mExecutor;
+    private final Random mRandom;
+
+    /** Retry and hedge tokens; each call adds a fraction of one, each retry or hedge takes one */
+    private final double mRetryBudgetRatio;
+    private final double mMaxRetryTokens;
+    private double mRetryTokens;
+
+    /** Latencies of recent successful attempts, in nanoseconds; a ring buffer */
+    private final long[] mLatencies = new long[LATENCY_SAMPLES];
+    private int mLatencyCount = 0;
+
+    private FetchResilience(Builder builder) {
+        this.mMaxAttempts = builder.mMaxAttempts;
+        this.mBaseBackoffMillis = builder.mBaseBackoffMillis;
+        this.mMaxBackoffMillis = builder.mMaxBackoffMillis;
+        this.mDeadlineMillis = builder.mDeadlineMillis;
+        this.mHedgePercentile = builder.mHedgePercentile;
+        this.mMinHedgeSamples = builder.mMinHedgeSamples;
+        this.mCircuitBreaker = new CircuitBreaker(builder.mClock, builder.mFailureThreshold, builder.mOpenMillis);
+        this.mExecutor = builder.mExecutor;
+        this.mRandom = builder.mRandom;
+        this.mRetryBudgetRatio = builder.mRetryBudgetRatio;
+        this.mMaxRetryTokens = builder.mMaxRetryTokens;
+        this.mRetryTokens = builder.mMaxRetryTokens;
+    }
+
+    /**
+     * Builds {@link FetchResilience} instances. The defaults suit the USGS feed.
+     */
+    public static final class Builder {
+        private int mMaxAttempts = 3;
+        private long mBaseBackoffMillis = 250L;
+        private long mMaxBackoffMillis = 4000L;
+        private long mDeadlineMillis = 20000L;
+        private double mHedgePercentile = 0.95;
+        private int mMinHedgeSamples = 20;
+        private double mRetryBudgetRatio = 0.2;
+        private double mMaxRetryTokens = 10.0;
+        private int mFailureThreshold = 5;
+        private long mOpenMillis = 30000L;
+        private Clock mClock = Clock.SYSTEM;
+        private Executor mExecutor = ATTEMPT_EXECUTOR;
+        private Random mRandom = new Random();
+
+        /** Attempts per call, the first one included. */
+        public Builder maxAttempts(int maxAttempts) {
+            mMaxAttempts = maxAttempts;
+            return this;
+        }
+
+        /** Backoff before retry n is random in [0, min(max, base * 2^(n-1))]. */
+        public Builder backoff(long baseMillis, long maxMillis) {
+            mBaseBackoffMillis = baseMillis;
+            mMaxBackoffMillis = maxMillis;
+            return this;
+        }
+
+        /** Longest a call waits, retries and hedges included. */
+        public Builder deadline(long deadlineMillis) {
+            mDeadlineMillis = deadlineMillis;
+            return this;
+        }
+
+        /**
+         * Send a hedge once an attempt runs past this percentile (e.g. 0.95) of recent latencies,
+         * known from {@code minSamples} successful attempts; 0 turns hedging off.
+         */
+        public Builder hedgeAt(double percentile, int minSamples) {
+            mHedgePercentile = percentile;
+            mMinHedgeSamples = minSamples;
+            return this;
+        }
+
+        /** Each call adds {@code ratio} retry tokens, up to {@code maxTokens}; the budget starts full. */
+        public Builder retryBudget(double ratio, double maxTokens) {
+            mRetryBudgetRatio = ratio;
+            mMaxRetryTokens = maxTokens;
+            return this;
+        }
+
+        /** Open the circuit after this many consecutive failures, for this long. */
+        public Builder circuitBreaker(int failureThreshold, long openMillis) {
+            mFailureThreshold = failureThreshold;
+            mOpenMillis = openMillis;
+            return this;
+        }
+
+        public Builder clock(Clock clock) {
+            mClock = clock;
+            return this;
+        }
+
+        /** Runs the attempts; it must be able to run two at once per call for hedging. */
+        public Builder executor(Executor executor) {
+            mExecutor = executor;
+            return this;
+        }
+
+        public Builder random(Random random) {
+            mRandom = random;
+            return this;
+        }
+
+        public FetchResilience build() {
+            if (mMaxAttempts < 1 || mBaseBackoffMillis < 0L || mMaxBackoffMillis < mBaseBackoffMillis
+                    || mDeadlineMillis <= 0L || mHedgePercentile < 0.0 || mHedgePercentile >= 1.0) {
+                throw new IllegalArgumentException("Invalid resilience settings");
+            }
+            return new FetchResilience(this);
+        }
+    }
+
+    /**
+     * Return the circuit breaker guarding the endpoint.
+     */
+    public CircuitBreaker getCircuitBreaker() {
+        return mCircuitBreaker;
+    }
+
+    /**
+     * Run a request with retries, hedging, the deadline and the circuit breaker.
+     *
+     * @param request sends the request once; it must be safe to run twice at the same time.
+     * @param fallback returns the data to use when the call gives up (e.g. from a cache), or
+     *  null when there is none; may be null.
+     * @throws StaleResultException with the fallback's data if the call gave up and there was
+     *  some.
+     * @throws IOException if the call gave up without a fallback, or failed in a way that
+     *  retrying can't fix.
+     */
+    public <V> V call(Request<V> request, Callable<V> fallback) throws IOException {
+        if (!mCircuitBreaker.allowRequest()) {
+            throw giveUp(fallback, new IOException("Circuit open; not contacting the endpoint"));
+        }
+        depositRetryTokens();
+
+        long startNanos = System.nanoTime();
+        long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(mDeadlineMillis);
+        CompletionService<V> completionService = new ExecutorCompletionService<>(mExecutor);
+        List<Attempt<V>> attempts = new ArrayList<>();
+        List<Future<V>> running = new ArrayList<>();
+        IOException failure = null;
+        try {
+            for (int attempt = 1; ; attempt++) {
+                running.add(submit(completionService, new Attempt<>(request, deadlineNanos), attempts));
+                long attemptStartNanos = System.nanoTime();
+                long hedgeDelayNanos = getHedgeDelayNanos();
+
+                // Wait for this attempt (and its hedge, if one is sent)
+                while (!running.isEmpty()) {
+                    long now = System.nanoTime();
+                    if (now >= deadlineNanos) {
+                        throw new SocketTimeoutException("Gave up after " + mDeadlineMillis + " ms");
+                    }
+                    boolean mayHedge = hedgeDelayNanos > 0L && running.size() == 1;
+                    long waitNanos = deadlineNanos - now;
+                    if (mayHedge) {
+                        waitNanos = Math.min(waitNanos, Math.max(attemptStartNanos + hedgeDelayNanos - now, 0L));
+                    }
+
+                    Future<V> done = completionService.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        if (mayHedge && System.nanoTime() - attemptStartNanos >= hedgeDelayNanos) {
+                            // Only one hedge per attempt, whether or not it could be sent
+                            hedgeDelayNanos = 0L;
+                            if (allowResend()) {
+                                Logger.v(LOG_TAG, "Attempt " + attempt + " is slow; sending a hedged request.");
+                                running.add(submit(completionService, new Attempt<>(request, deadlineNanos), attempts));
+                            }
+                        }
+                        continue;
+                    }
+                    running.remove(done);
+                    try {
+                        return done.get();
+                    } catch (ExecutionException e) {
+                        failure = toIOException(e.getCause());
+                        if (!isRetryable(failure)) {
+                            throw failure;
+                        }
+                    }
+                }
+
+                // Every request of this attempt failed
+                if (attempt >= mMaxAttempts) {
+                    break;
+                }
+                long backoffMillis = getBackoffMillis(attempt);
+                if (System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis) >= deadlineNanos
+                        || !allowResend()) {
+                    break;
+                }
+                Logger.e(LOG_TAG, "Attempt " + attempt + " failed; retrying in " + backoffMillis + " ms.", failure);
+                Thread.sleep(backoffMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching");
+        } catch (SocketTimeoutException e) {
+            failure = e;
+        } finally {
+            // Abandon the losers; a blocked read finishes on its own thread and is dropped
+            for (Future<V> future : running) {
+                future.cancel(true);
+            }
+            // Attempts that never started give back their place in the circuit breaker
+            for (Attempt<V> attempt : attempts) {
+                attempt.abandon();
+            }
+        }
+        throw giveUp(fallback, failure);
+    }
+
+    /**
+     * Return whether a retry or hedge may be sent: the circuit breaker allows it and the retry
+     * budget pays for it. A breaker permission the budget can't pay for is given back.
+     */
+    private boolean allowResend() {
+        if (!mCircuitBreaker.allowRequest()) {
+            return false;
+        }
+        if (withdrawRetryToken()) {
+            return true;
+        }
+        mCircuitBreaker.onAbandoned();
+        return false;
+    }
+
+    private static <V> Future<V> submit(CompletionService<V> completionService, Attempt<V> attempt,
+                                        List<Attempt<V>> attempts) {
+        attempts.add(attempt);
+        return completionService.submit(attempt);
+    }
+
+    /**
+     * One attempt at a request. It times out at the call's deadline, and reports its outcome to
+     * the circuit breaker and its latency to the hedging percentile, even if the call has moved
+     * on without it. An attempt abandoned before it started, or started past the deadline,
+     * never contacts the endpoint and gives its circuit breaker permission back instead.
+     */
+    private final class Attempt<V> implements Callable<V> {
+        private final Request<V> mRequest;
+        private final long mDeadlineNanos;
+
+        /** Set by whichever comes first: the attempt starting, or the call abandoning it */
+        private final AtomicBoolean mClaimed = new AtomicBoolean();
+
+        Attempt(Request<V> request, long deadlineNanos) {
+            this.mRequest = request;
+            this.mDeadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public V call() throws Exception {
+            if (!mClaimed.compareAndSet(false, true)) {
+                throw new InterruptedIOException("Attempt abandoned before it started");
+            }
+            long startNanos = System.nanoTime();
+            // An attempt that waited for a thread may start with little of the call left
+            long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(mDeadlineNanos - startNanos);
+            if (timeoutMillis <= 0L) {
+                mCircuitBreaker.onAbandoned();
+                throw new SocketTimeoutException("Call deadline passed before the attempt started");
+            }
+            V result;
+            try {
+                result = mRequest.send(timeoutMillis);
+            } catch (Exception e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    // Cancelled by the call, which got its answer elsewhere or gave up
+                    mCircuitBreaker.onAbandoned();
+                } else if (isRetryable(e)) {
+                    mCircuitBreaker.onFailure();
+                } else {
+                    // The endpoint answered; the request or its payload was at fault
+                    mCircuitBreaker.onSuccess();
+                }
+                throw e;
+            }
+            mCircuitBreaker.onSuccess();
+            recordLatency(System.nanoTime() - startNanos);
+            return result;
+        }
+
+        /** Give the permission back if the attempt hasn't started; it then never will */
+        void abandon() {
+            if (mClaimed.compareAndSet(false, true)) {
+                mCircuitBreaker.onAbandoned();
+            }
+        }
+    }
+
+    /**
+     * Return the exception a call gives up with: the fallback's data in a
+     * {@link StaleResultException} if there is some, otherwise the failure.
+     */
+    private static <V> IOException giveUp(Callable<V> fallback, IOException failure) {
+        if (fallback != null) {
+            try {
+                V result = fallback.call();
+                if (result != null) {
+                    Logger.e(LOG_TAG, "Endpoint unavailable; serving the fallback as stale.", failure);
+                    return new StaleResultException(result, failure);
+                }
+            } catch (Exception e) {
+                Logger.e(LOG_TAG, "Problem reading the fallback.", e);
+            }
+        }
+        return failure;
+    }
+
+    /** Full jitter: uniformly random up to the exponential backoff for this retry */
+    private long getBackoffMillis(int attempt) {
+        long ceiling = Math.min(mMaxBackoffMillis, mBaseBackoffMillis << Math.min(attempt - 1, 30));
+        return ceiling > 0L ? (long) (mRandom.nextDouble() * ceiling) : 0L;
+    }
+
+    private synchronized void depositRetryTokens() {
+        mRetryTokens = Math.min(mMaxRetryTokens, mRetryTokens + mRetryBudgetRatio);
+    }
+
+    private synchronized boolean withdrawRetryToken() {
+        if (mRetryTokens < 1.0) {
+            Logger.v(LOG_TAG, "Retry budget exhausted.");
+            return false;
+        }
+        mRetryTokens -= 1.0;
+        return true;
+    }
+
+    private synchronized void recordLatency(long latencyNanos) {
+        mLatencies[mLatencyCount % LATENCY_SAMPLES] = latencyNanos;
+        mLatencyCount++;
+    }
+
+    /**
+     * Return how long an attempt may run before it is hedged, or 0 for no hedging (turned off,
+     * or too few samples yet).
+     */
+    private synchronized long getHedgeDelayNanos() {
+        int samples = Math.min(mLatencyCount, LATENCY_SAMPLES);
+        if (mHedgePercentile <= 0.0 || samples < Math.max(mMinHedgeSamples, 1)) {
+            return 0L;
+        }
+        long[] sorted = Arrays.copyOf(mLatencies, samples);
+        Arrays.sort(sorted);
+        return Math.max(sorted[(int) Math.min(samples - 1, Math.floor(mHedgePercentile * samples))], 1L);
+    }
+
+    /**
+     * Return whether a failure may not happen again: transport failures and retryable HTTP
+     * statuses. Only these count against the endpoint. A response that can't be parsed would
+     * be the same payload again.
+     */
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof HttpStatusException) {
+            return ((HttpStatusException) e).isRetryable();
+        }
+        return e instanceof IOException && !(e instanceof MalformedResponseException);
+    }
+
+    private static IOException toIOException(Throwable cause) {
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+}
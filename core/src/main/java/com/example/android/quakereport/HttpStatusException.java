@@ -0,0 +1,30 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server answers with an unexpected HTTP status code.
+ */
+public class HttpStatusException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int mCode;
+
+    public HttpStatusException(int code) {
+        super("HTTP connection error code:" + code);
+        this.mCode = code;
+    }
+
+    public int getCode() {
+        return mCode;
+    }
+
+    /**
+     * Return whether the same request may succeed if sent again: server errors, throttling and
+     * request timeouts. Other client errors will fail the same way every time.
+     */
+    public boolean isRetryable() {
+        return mCode >= 500 || mCode == 429 || mCode == 408;
+    }
+}
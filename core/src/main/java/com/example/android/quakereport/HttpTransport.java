@@ -0,0 +1,350 @@
+package com.example.android.quakereport;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP GET transport for the USGS requests.
+ *
+ * Asks for gzip and decodes it incrementally as the body is read, reads through large fixed
+ * buffers, and leaves connections open for reuse: {@link HttpURLConnection} returns a connection
+ * to its keep-alive pool when the body is read to the end and closed, as long as
+ * {@code disconnect()} isn't called. Byte counts and latencies are tracked in {@link Stats}.
+ */
+public final class HttpTransport {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = HttpTransport.class.getSimpleName();
+
+    /** Size of the read buffers, in bytes */
+    public static final int BUFFER_SIZE = 16 * 1024;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 10000;
+    private static final int READ_TIMEOUT_MILLIS = 15000;
+
+    /** Totals across all requests made through this transport */
+    private static final Stats sStats = new Stats();
+
+    private HttpTransport() {
+    }
+
+    /**
+     * Cumulative transfer statistics. Wire bytes are counted before gzip decoding,
+     * body bytes after it.
+     */
+    public static class Stats {
+        private final AtomicLong mRequestCount = new AtomicLong();
+        private final AtomicLong mGzipResponseCount = new AtomicLong();
+        private final AtomicLong mWireBytes = new AtomicLong();
+        private final AtomicLong mBodyBytes = new AtomicLong();
+        private final AtomicLong mTimeToFirstByteMillis = new AtomicLong();
+        private final AtomicLong mDownloadMillis = new AtomicLong();
+
+        public long getRequestCount() {
+            return mRequestCount.get();
+        }
+
+        public long getGzipResponseCount() {
+            return mGzipResponseCount.get();
+        }
+
+        public long getWireBytes() {
+            return mWireBytes.get();
+        }
+
+        public long getBodyBytes() {
+            return mBodyBytes.get();
+        }
+
+        /** Total time from opening the request to receiving the response headers, over all requests */
+        public long getTimeToFirstByteMillis() {
+            return mTimeToFirstByteMillis.get();
+        }
+
+        /** Total time spent reading response bodies, over all requests */
+        public long getDownloadMillis() {
+            return mDownloadMillis.get();
+        }
+
+        @Override
+        public String toString() {
+            return getRequestCount() + " requests (" + getGzipResponseCount() + " gzip), "
+                    + getWireBytes() + " wire bytes, " + getBodyBytes() + " body bytes, "
+                    + getTimeToFirstByteMillis() + " ms to first byte, " + getDownloadMillis() + " ms downloading";
+        }
+    }
+
+    /**
+     * An open response. Close it when done with the body: a body read to the end releases the
+     * connection back to the pool, anything else (including a body never opened) discards the
+     * connection.
+     */
+    public static class Response implements Closeable {
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final long mStartNanos;
+        private final long mTimeToFirstByteMillis;
+        private final PipelineMetrics.Timer mTimer;
+
+        /** When the body must have arrived, in {@link System#nanoTime()}; 0 for no limit */
+        private final long mDeadlineNanos;
+
+        private CountingInputStream mWireStream = null;
+        private CountingInputStream mBodyStream = null;
+        private boolean mClosed = false;
+
+        Response(HttpURLConnection connection, int code, long startNanos, long timeToFirstByteMillis,
+                 PipelineMetrics.Timer timer, long deadlineNanos) {
+            this.mConnection = connection;
+            this.mCode = code;
+            this.mStartNanos = startNanos;
+            this.mTimeToFirstByteMillis = timeToFirstByteMillis;
+            this.mTimer = timer;
+            this.mDeadlineNanos = deadlineNanos;
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        /** Time from opening the request to receiving the response headers */
+        public long getTimeToFirstByteMillis() {
+            return mTimeToFirstByteMillis;
+        }
+
+        /** Stage timings of this request; mark the parse on it, the transport marks the rest */
+        public PipelineMetrics.Timer getTimer() {
+            return mTimer;
+        }
+
+        /** Bytes received so far, before gzip decoding */
+        public long getWireBytes() {
+            return mWireStream != null ? mWireStream.getCount() : 0L;
+        }
+
+        /** Bytes of the decoded body read so far */
+        public long getBodyBytes() {
+            return mBodyStream != null ? mBodyStream.getCount() : 0L;
+        }
+
+        /**
+         * Return the decoded, buffered response body. Only call this once.
+         */
+        public InputStream getBody() throws IOException {
+            if (mBodyStream != null) {
+                throw new IllegalStateException("Body already opened");
+            }
+            mWireStream = new CountingInputStream(mConnection.getInputStream(), mDeadlineNanos);
+            InputStream decoded;
+            if ("gzip".equalsIgnoreCase(mConnection.getHeaderField("Content-Encoding"))) {
+                sStats.mGzipResponseCount.incrementAndGet();
+                decoded = new GZIPInputStream(mWireStream, BUFFER_SIZE);
+            } else {
+                decoded = mWireStream;
+            }
+            mBodyStream = new CountingInputStream(new BufferedInputStream(decoded, BUFFER_SIZE), 0L);
+            return mBodyStream;
+        }
+
+        @Override
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+
+            boolean reusable = false;
+            if (mBodyStream != null) {
+                try {
+                    // Only a body read to its end leaves the connection reusable. An abandoned one
+                    // is dropped rather than read out, which could take the rest of the download;
+                    // once the body has ended, the wire only has the gzip trailer or EOF left
+                    reusable = mBodyStream.isAtEnd() && mWireStream.read() == -1;
+                    mBodyStream.close();
+                } catch (IOException e) {
+                    reusable = false;
+                }
+            } else if (mCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                // Error bodies are short; drain it so the connection can be reused
+                reusable = drainErrorStream();
+            } else {
+                // A body that was never opened would have to be read out first; a 304 has none
+                reusable = !hasBody();
+            }
+            if (!reusable) {
+                mConnection.disconnect();
+            }
+
+            long downloadMillis = (System.nanoTime() - mStartNanos) / 1000000L - mTimeToFirstByteMillis;
+            sStats.mWireBytes.addAndGet(getWireBytes());
+            sStats.mBodyBytes.addAndGet(getBodyBytes());
+            sStats.mDownloadMillis.addAndGet(Math.max(downloadMillis, 0L));
+            mTimer.finished(getWireBytes(), getBodyBytes());
+        }
+
+        private boolean hasBody() {
+            return mCode != HttpURLConnection.HTTP_NOT_MODIFIED && mCode != HttpURLConnection.HTTP_NO_CONTENT
+                    && mConnection.getContentLength() != 0;
+        }
+
+        private boolean drainErrorStream() {
+            InputStream errorStream = mConnection.getErrorStream();
+            if (errorStream == null) {
+                return false;
+            }
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                while (errorStream.read(buffer) != -1) {
+                    // Discard
+                }
+                errorStream.close();
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Send a GET request and return the response once its headers have arrived.
+     *
+     * @param url is the request URL.
+     * @param requestHeaders are extra headers (e.g. conditional GET validators); may be null.
+     * @throws IOException if the connection fails.
+     */
+    public static Response get(URL url, Map<String, String> requestHeaders) throws IOException {
+        return get(url, requestHeaders, 0L);
+    }
+
+    /**
+     * Send a GET request that must finish, body included, within a time limit, and return the
+     * response once its headers have arrived. Connecting and each read time out within the
+     * limit, and reading the body fails with a {@link SocketTimeoutException} once it has passed.
+     *
+     * @param timeoutMillis is the time limit; 0 for only the usual connect and read timeouts.
+     */
+    public static Response get(URL url, Map<String, String> requestHeaders, long timeoutMillis) throws IOException {
+        long startNanos = System.nanoTime();
+        long deadlineNanos = timeoutMillis > 0L ? startNanos + timeoutMillis * 1000000L : 0L;
+        sStats.mRequestCount.incrementAndGet();
+        PipelineMetrics.Timer timer = PipelineMetrics.startRequest(url.toString());
+
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        try {
+            // Prepare the request / Set the parameters
+            connection.setConnectTimeout(limitTimeout(CONNECT_TIMEOUT_MILLIS, timeoutMillis));
+            connection.setReadTimeout(limitTimeout(READ_TIMEOUT_MILLIS, timeoutMillis));
+            connection.setRequestMethod("GET");
+            // Setting this ourselves turns off transparent decoding, so getBody() gunzips
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            if (requestHeaders != null) {
+                for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                    connection.setRequestProperty(header.getKey(), header.getValue());
+                }
+            }
+
+            // Make the connection (DNS, TCP, TLS; a no-op when a pooled one is reused),
+            // then wait for the response headers
+            connection.connect();
+            timer.connected();
+            int code = connection.getResponseCode();
+            timer.firstByte(code);
+            long timeToFirstByteMillis = (System.nanoTime() - startNanos) / 1000000L;
+            sStats.mTimeToFirstByteMillis.addAndGet(timeToFirstByteMillis);
+            return new Response(connection, code, startNanos, timeToFirstByteMillis, timer, deadlineNanos);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /** Return the shorter of a timeout and a time limit (0 for none), in milliseconds */
+    private static int limitTimeout(int timeoutMillis, long limitMillis) {
+        return limitMillis > 0L ? (int) Math.min(timeoutMillis, limitMillis) : timeoutMillis;
+    }
+
+    /**
+     * Return the cumulative transfer statistics.
+     */
+    public static Stats getStats() {
+        return sStats;
+    }
+
+    /**
+     * Counts the bytes read through it, notes when the end has been reached, and fails reads
+     * once a deadline has passed.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+        private final long mDeadlineNanos;
+        private long mCount = 0L;
+        private boolean mAtEnd = false;
+
+        /**
+         * @param deadlineNanos is when reads start failing, in {@link System#nanoTime()}; 0 for never.
+         */
+        CountingInputStream(InputStream in, long deadlineNanos) {
+            super(in);
+            this.mDeadlineNanos = deadlineNanos;
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        /** Whether a read has returned the end of the stream */
+        boolean isAtEnd() {
+            return mAtEnd;
+        }
+
+        @Override
+        public int read() throws IOException {
+            checkDeadline();
+            int b = super.read();
+            if (b != -1) {
+                mCount++;
+            } else {
+                mAtEnd = true;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            checkDeadline();
+            int count = super.read(buffer, offset, length);
+            if (count > 0) {
+                mCount += count;
+            } else if (count == -1) {
+                mAtEnd = true;
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            checkDeadline();
+            long skipped = super.skip(n);
+            mCount += skipped;
+            return skipped;
+        }
+
+        private void checkDeadline() throws SocketTimeoutException {
+            if (mDeadlineNanos != 0L && System.nanoTime() - mDeadlineNanos > 0L) {
+                throw new SocketTimeoutException("Response body took too long");
+            }
+        }
+    }
+}
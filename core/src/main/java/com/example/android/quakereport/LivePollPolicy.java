@@ -0,0 +1,117 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides when live mode polls the recent-events feed, and which polled events are news.
+ *
+ * Polls only happen while the list is visible, at most one at a time: a poll that is due while
+ * the previous one is still running is folded into it, and the next one is due an interval
+ * after it finishes, so late responses never pile up. Becoming visible again polls right away
+ * if the last poll is older than the interval.
+ *
+ * Pure logic over a {@link Clock}; the app runs the polls and the timer.
+ */
+public class LivePollPolicy {
+
+    /** Summary feeds are regenerated about once a minute; polling faster finds nothing new */
+    public static final long DEFAULT_INTERVAL_MILLIS = 60L * 1000;
+
+    private final Clock mClock;
+    private final long mIntervalMillis;
+
+    private boolean mVisible = false;
+    private boolean mPollInFlight = false;
+
+    /** When the last poll finished; 0 before the first one */
+    private long mLastPollFinished = 0L;
+
+    /** "updated" time of every event in the last polled feed, by event id */
+    private Map<String, Long> mLastSeen = new HashMap<>();
+
+    public LivePollPolicy(Clock clock) {
+        this(clock, DEFAULT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param intervalMillis is the time from the end of one poll to the start of the next.
+     */
+    public LivePollPolicy(Clock clock, long intervalMillis) {
+        if (intervalMillis <= 0L) {
+            throw new IllegalArgumentException("Invalid poll interval: " + intervalMillis);
+        }
+        this.mClock = clock;
+        this.mIntervalMillis = intervalMillis;
+    }
+
+    public synchronized void setVisible(boolean visible) {
+        mVisible = visible;
+    }
+
+    public synchronized boolean isVisible() {
+        return mVisible;
+    }
+
+    /**
+     * Return how long until the next poll is due (0 if it is due now), or -1 if there is nothing
+     * to schedule: the list is hidden, or a poll is running and will schedule the next one.
+     */
+    public synchronized long getDelayUntilNextPoll() {
+        if (!mVisible || mPollInFlight) {
+            return -1L;
+        }
+        if (mLastPollFinished == 0L) {
+            return 0L;
+        }
+        long elapsed = mClock.currentTimeMillis() - mLastPollFinished;
+        // A clock set backwards counts as due
+        return elapsed < 0L ? 0L : Math.max(mIntervalMillis - elapsed, 0L);
+    }
+
+    /**
+     * Start a poll if one is due now. Every started poll must be followed by {@link #onPollFinished()}.
+     *
+     * @return whether the caller should poll.
+     */
+    public synchronized boolean tryStartPoll() {
+        if (getDelayUntilNextPoll() != 0L) {
+            return false;
+        }
+        mPollInFlight = true;
+        return true;
+    }
+
+    /**
+     * Record the end of a poll, whether it succeeded or not.
+     */
+    public synchronized void onPollFinished() {
+        mPollInFlight = false;
+        mLastPollFinished = mClock.currentTimeMillis();
+    }
+
+    /**
+     * Return the events of a polled feed that are new or revised since the last poll, and
+     * remember the feed for the next one. Events that left the feed are forgotten, so memory
+     * stays bounded by the feed size.
+     */
+    public synchronized List<Earthquake> retainChanged(List<Earthquake> polled) {
+        List<Earthquake> changed = new ArrayList<>();
+        Map<String, Long> seen = new HashMap<>();
+        for (Earthquake earthquake : polled) {
+            String id = earthquake.getId();
+            if (id == null) {
+                continue;
+            }
+            Long lastUpdated = mLastSeen.get(id);
+            if (lastUpdated == null || earthquake.getUpdatedInMilliseconds() > lastUpdated) {
+                changed.add(earthquake);
+            }
+            seen.put(id, earthquake.getUpdatedInMilliseconds());
+        }
+        mLastSeen = seen;
+        return changed;
+    }
+}
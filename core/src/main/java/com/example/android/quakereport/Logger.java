@@ -0,0 +1,87 @@
+package com.example.android.quakereport;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Logging for the platform-independent code, with the shape of {@code android.util.Log}.
+ *
+ * Messages go to the installed {@link Sink}; the app routes them to the Android log. Until a
+ * sink is installed (e.g. in benchmarks on a plain JVM), errors are printed to System.err and
+ * everything else is dropped.
+ */
+public final class Logger {
+
+    /** Priorities, with the values of the matching {@code android.util.Log} constants */
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int ERROR = 6;
+
+    /**
+     * Receives the log messages, and decides which of them to keep.
+     */
+    public interface Sink {
+        /** Whether messages of a priority are wanted, for guarding expensive ones */
+        boolean isLoggable(String tag, int priority);
+
+        void log(int priority, String tag, String message, Throwable throwable);
+    }
+
+    private static final Sink STDERR_SINK = new Sink() {
+        @Override
+        public boolean isLoggable(String tag, int priority) {
+            return priority >= ERROR;
+        }
+
+        @Override
+        public void log(int priority, String tag, String message, Throwable throwable) {
+            if (!isLoggable(tag, priority)) {
+                return;
+            }
+            StringWriter text = new StringWriter();
+            PrintWriter writer = new PrintWriter(text);
+            writer.println(tag + ": " + message);
+            if (throwable != null) {
+                throwable.printStackTrace(writer);
+            }
+            writer.flush();
+            System.err.print(text);
+        }
+    };
+
+    private static volatile Sink sSink = STDERR_SINK;
+
+    private Logger() {
+    }
+
+    /**
+     * Route all messages to {@code sink}, or back to System.err when null.
+     */
+    public static void setSink(Sink sink) {
+        sSink = sink != null ? sink : STDERR_SINK;
+    }
+
+    public static boolean isLoggable(String tag, int priority) {
+        return sSink.isLoggable(tag, priority);
+    }
+
+    public static void v(String tag, String message) {
+        log(VERBOSE, tag, message, null);
+    }
+
+    public static void d(String tag, String message) {
+        log(DEBUG, tag, message, null);
+    }
+
+    public static void e(String tag, String message) {
+        log(ERROR, tag, message, null);
+    }
+
+    public static void e(String tag, String message, Throwable throwable) {
+        log(ERROR, tag, message, throwable);
+    }
+
+    private static void log(int priority, String tag, String message, Throwable throwable) {
+        sSink.log(priority, tag, message, throwable);
+    }
+}
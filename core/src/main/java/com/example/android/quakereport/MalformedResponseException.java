@@ -0,0 +1,20 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the server answered but its response can't be parsed. Sending the request again
+ * would get the same payload, so it is neither retried nor counted as the endpoint failing.
+ */
+public class MalformedResponseException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MalformedResponseException(String message) {
+        super(message);
+    }
+
+    public MalformedResponseException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
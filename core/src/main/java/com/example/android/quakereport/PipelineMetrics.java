@@ -0,0 +1,362 @@
+package com.example.android.quakereport;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Per-request timings of the load pipeline, for the debug build: connect (including DNS and
+ * TLS), time to first byte, download bytes and duration, parse time and events per second,
+ * plus the time from launch to the first bound row, and how well detail prefetching pays off.
+ *
+ * Timings use {@link System#nanoTime()}. Everything is off until {@link #setEnabled(boolean)}
+ * (the app does so in debug builds); when off, {@link #startRequest(String)} returns a shared
+ * no-op timer and the other calls return after one field read. Verbose logging of whole payloads
+ * is gated by {@link #isPayloadLoggingEnabled()}.
+ */
+public final class PipelineMetrics {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = PipelineMetrics.class.getSimpleName();
+
+    /** Whether metrics are recorded at all */
+    private static volatile boolean sEnabled = false;
+
+    /** Whether full payloads may be logged; see {@link #isPayloadLoggingEnabled()} */
+    private static volatile boolean sPayloadLoggingEnabled = false;
+
+    /** Number of recent requests kept for the dump */
+    private static final int MAX_RECORDED_REQUESTS = 32;
+
+    private static final Timer NO_OP_TIMER = new Timer(null);
+
+    /** Finished requests, oldest first */
+    private static final Deque<Timer> sRecentRequests = new ArrayDeque<>();
+
+    /** When the current launch started, or 0 */
+    private static long sLaunchNanos = 0L;
+
+    /** Time from launch to the first bound row, or -1 until it happens */
+    private static long sFirstBindMillis = -1L;
+
+    /** Detail prefetching: requests and bytes spent, and prefetches cancelled before they ran */
+    private static long sDetailPrefetches = 0L;
+    private static long sDetailPrefetchBytes = 0L;
+    private static long sDetailPrefetchCancels = 0L;
+
+    /** Details opened, how many were ready thanks to a prefetch, and bytes fetched on demand */
+    private static long sDetailOpens = 0L;
+    private static long sDetailPrefetchHits = 0L;
+    private static long sDetailOnDemandBytes = 0L;
+
+    /** Size of the on-disk detail cache, as last reported */
+    private static long sDetailCacheBytes = 0L;
+
+    private PipelineMetrics() {
+    }
+
+    /**
+     * Turn recording on or off. Call this once at startup, before any request.
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+        sPayloadLoggingEnabled = enabled && Logger.isLoggable(LOG_TAG, Logger.VERBOSE);
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Whether full payloads (response bodies, parsed lists) may be logged. Only when enabled, and
+     * on Android only with {@code adb shell setprop log.tag.PipelineMetrics VERBOSE}.
+     */
+    public static boolean isPayloadLoggingEnabled() {
+        return sPayloadLoggingEnabled;
+    }
+
+    /**
+     * Timings of one request, marked by the stages as they happen. Each mark is a single
+     * clock read; a no-op when metrics are disabled.
+     */
+    public static final class Timer {
+        private final String mUrl;
+        private final long mStartNanos;
+        private long mConnectedNanos = 0L;
+        private long mFirstByteNanos = 0L;
+        private long mParseStartNanos = 0L;
+        private long mParseEndNanos = 0L;
+        private long mEndNanos = 0L;
+        private int mResponseCode = 0;
+        private long mWireBytes = 0L;
+        private long mBodyBytes = 0L;
+        private int mEventCount = 0;
+        private boolean mFromCache = false;
+
+        Timer(String url) {
+            this.mUrl = url;
+            this.mStartNanos = url != null ? System.nanoTime() : 0L;
+        }
+
+        private boolean isActive() {
+            return mUrl != null;
+        }
+
+        /** The connection (DNS, TCP, TLS) is established */
+        public void connected() {
+            if (isActive()) {
+                mConnectedNanos = System.nanoTime();
+            }
+        }
+
+        /** The response headers have arrived */
+        public void firstByte(int responseCode) {
+            if (isActive()) {
+                mFirstByteNanos = System.nanoTime();
+                mResponseCode = responseCode;
+            }
+        }
+
+        /** Parsing starts; when the body was downloaded first, this also ends the download */
+        public void parseStarted() {
+            if (isActive()) {
+                mParseStartNanos = System.nanoTime();
+            }
+        }
+
+        /** Parsing ended with {@code eventCount} events */
+        public void parsed(int eventCount, boolean fromCache) {
+            if (isActive()) {
+                mParseEndNanos = System.nanoTime();
+                mEventCount = eventCount;
+                mFromCache = fromCache;
+            }
+        }
+
+        /** The request is over and its connection released; records it */
+        public void finished(long wireBytes, long bodyBytes) {
+            if (!isActive()) {
+                return;
+            }
+            mEndNanos = System.nanoTime();
+            mWireBytes = wireBytes;
+            mBodyBytes = bodyBytes;
+            record(this);
+        }
+
+        long getConnectMillis() {
+            return millisBetween(mStartNanos, mConnectedNanos);
+        }
+
+        long getTimeToFirstByteMillis() {
+            return millisBetween(mStartNanos, mFirstByteNanos);
+        }
+
+        /** From the first byte to the start of parsing, or to the end when the body was parsed as it arrived */
+        long getDownloadMillis() {
+            return millisBetween(mFirstByteNanos, mParseStartNanos != 0L ? mParseStartNanos : mEndNanos);
+        }
+
+        long getParseMillis() {
+            return millisBetween(mParseStartNanos, mParseEndNanos);
+        }
+
+        long getTotalMillis() {
+            return millisBetween(mStartNanos, mEndNanos);
+        }
+
+        double getEventsPerSecond() {
+            long parseNanos = mParseEndNanos - mParseStartNanos;
+            return mParseStartNanos != 0L && parseNanos > 0L ? mEventCount * 1e9 / parseNanos : 0.0;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("url", mUrl);
+            json.put("responseCode", mResponseCode);
+            json.put("fromCache", mFromCache);
+            json.put("connectMs", getConnectMillis());
+            json.put("timeToFirstByteMs", getTimeToFirstByteMillis());
+            json.put("downloadMs", getDownloadMillis());
+            json.put("wireBytes", mWireBytes);
+            json.put("bodyBytes", mBodyBytes);
+            json.put("parseMs", getParseMillis());
+            json.put("events", mEventCount);
+            json.put("eventsPerSecond", Math.round(getEventsPerSecond()));
+            json.put("totalMs", getTotalMillis());
+            return json;
+        }
+
+        private static long millisBetween(long startNanos, long endNanos) {
+            return startNanos != 0L && endNanos != 0L ? (endNanos - startNanos) / 1000000L : -1L;
+        }
+    }
+
+    /**
+     * Start timing a request. Returns a no-op timer when metrics are disabled.
+     */
+    public static Timer startRequest(String url) {
+        return sEnabled ? new Timer(url) : NO_OP_TIMER;
+    }
+
+    /**
+     * Mark the start of a cold launch; the next {@link #markFirstBind()} is measured from here.
+     */
+    public static synchronized void markLaunch() {
+        if (sEnabled) {
+            sLaunchNanos = System.nanoTime();
+            sFirstBindMillis = -1L;
+        }
+    }
+
+    /**
+     * Mark that a row with content was bound. Only the first one after a launch is recorded.
+     */
+    public static void markFirstBind() {
+        if (!sEnabled) {
+            return;
+        }
+        synchronized (PipelineMetrics.class) {
+            if (sLaunchNanos != 0L && sFirstBindMillis < 0L) {
+                sFirstBindMillis = (System.nanoTime() - sLaunchNanos) / 1000000L;
+                Logger.d(LOG_TAG, "Time to first bind: " + sFirstBindMillis + " ms");
+            }
+        }
+    }
+
+    /**
+     * Record a detail request: a prefetch, or a fetch for a detail that was opened.
+     */
+    public static synchronized void recordDetailFetch(boolean prefetch, long wireBytes) {
+        if (!sEnabled) {
+            return;
+        }
+        if (prefetch) {
+            sDetailPrefetches++;
+            sDetailPrefetchBytes += wireBytes;
+        } else {
+            sDetailOnDemandBytes += wireBytes;
+        }
+    }
+
+    /**
+     * Record prefetches that were cancelled before they ran, e.g. because their rows scrolled off.
+     */
+    public static synchronized void recordDetailPrefetchesCancelled(int count) {
+        if (sEnabled) {
+            sDetailPrefetchCancels += count;
+        }
+    }
+
+    /**
+     * Record an opened detail, and whether a prefetch had it ready (or already on its way).
+     */
+    public static synchronized void recordDetailOpen(boolean prefetched) {
+        if (!sEnabled) {
+            return;
+        }
+        sDetailOpens++;
+        if (prefetched) {
+            sDetailPrefetchHits++;
+        }
+        Logger.d(LOG_TAG, "Detail prefetch hits: " + sDetailPrefetchHits + " of " + sDetailOpens + " opens, "
+                + sDetailPrefetches + " prefetches (" + sDetailPrefetchBytes + " bytes)");
+    }
+
+    /**
+     * Record the current size of the on-disk detail cache.
+     */
+    public static synchronized void recordDetailCacheSize(long bytes) {
+        if (sEnabled) {
+            sDetailCacheBytes = bytes;
+        }
+    }
+
+    private static void record(Timer timer) {
+        synchronized (PipelineMetrics.class) {
+            sRecentRequests.addLast(timer);
+            while (sRecentRequests.size() > MAX_RECORDED_REQUESTS) {
+                sRecentRequests.removeFirst();
+            }
+        }
+        Logger.d(LOG_TAG, "Request: connect " + timer.getConnectMillis() + " ms, first byte "
+                + timer.getTimeToFirstByteMillis() + " ms, download " + timer.getDownloadMillis() + " ms ("
+                + timer.mWireBytes + " bytes), parse " + timer.getParseMillis() + " ms ("
+                + timer.mEventCount + " events)");
+    }
+
+    /**
+     * Return the recorded metrics as a JSON document, or "{}" when disabled.
+     */
+    public static String dump() {
+        if (!sEnabled) {
+            return "{}";
+        }
+        try {
+            JSONObject json = new JSONObject();
+            JSONArray requests = new JSONArray();
+            JSONObject detailPrefetch = new JSONObject();
+            synchronized (PipelineMetrics.class) {
+                json.put("firstBindMs", sFirstBindMillis);
+                for (Timer timer : sRecentRequests) {
+                    requests.put(timer.toJson());
+                }
+                detailPrefetch.put("prefetches", sDetailPrefetches);
+                detailPrefetch.put("prefetchBytes", sDetailPrefetchBytes);
+                detailPrefetch.put("cancelled", sDetailPrefetchCancels);
+                detailPrefetch.put("opens", sDetailOpens);
+                detailPrefetch.put("hits", sDetailPrefetchHits);
+                detailPrefetch.put("hitRate", sDetailOpens > 0L ? (double) sDetailPrefetchHits / sDetailOpens : 0.0);
+                detailPrefetch.put("onDemandBytes", sDetailOnDemandBytes);
+                detailPrefetch.put("cacheBytes", sDetailCacheBytes);
+            }
+            json.put("requests", requests);
+            json.put("detailPrefetch", detailPrefetch);
+
+            HttpTransport.Stats stats = HttpTransport.getStats();
+            JSONObject transport = new JSONObject();
+            transport.put("requests", stats.getRequestCount());
+            transport.put("gzipResponses", stats.getGzipResponseCount());
+            transport.put("wireBytes", stats.getWireBytes());
+            transport.put("bodyBytes", stats.getBodyBytes());
+            json.put("transport", transport);
+            return json.toString(2);
+        } catch (JSONException e) {
+            Logger.e(LOG_TAG, "Problem building the metrics dump", e);
+            return "{}";
+        }
+    }
+
+    /**
+     * Write {@link #dump()} to a file, for pulling off a debug device. Does nothing when disabled.
+     */
+    public static void writeDump(File file) {
+        if (!sEnabled) {
+            return;
+        }
+        Writer writer = null;
+        try {
+            writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"));
+            writer.write(dump());
+        } catch (IOException e) {
+            Logger.e(LOG_TAG, "Problem writing the metrics dump", e);
+        } finally {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    // Nothing left to do
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,627 @@
+package com.example.android.quakereport;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Helper methods related to requesting and receiving earthquake data from USGS.
+ */
+public final class QueryUtils {
+
+    /**
+     * Tag for the log messages
+     */
+    public static final String LOG_TAG = QueryUtils.class.getSimpleName();
+
+    /**
+     * Value of the "status" property for events USGS has deleted
+     */
+    private static final String STATUS_DELETED = "deleted";
+
+    /**
+     * Value of the "type" property for earthquakes, as opposed to quarry blasts, explosions, etc.
+     */
+    private static final String TYPE_EARTHQUAKE = "earthquake";
+
+    /**
+     * Default upper bound for the on-disk response cache
+     */
+    private static final long RESPONSE_CACHE_SIZE_BYTES = 4 * 1024 * 1024;
+
+    /**
+     * Response cache used for conditional requests; null until installed
+     */
+    private static volatile EarthquakeResponseCache sResponseCache = null;
+
+    /**
+     * Fetches currently in flight, so identical concurrent requests share one HTTP request
+     */
+    private static final RequestCoalescer<List<Earthquake>> sInFlightRequests = new RequestCoalescer<>();
+
+    /**
+     * Retries, hedging and circuit breaking for every request to USGS
+     */
+    private static volatile FetchResilience sResilience = new FetchResilience.Builder().build();
+
+    /**
+     * Chooses between FDSN queries and the precomputed summary feeds
+     */
+    private static final EarthquakeFeedPlanner sFeedPlanner = new EarthquakeFeedPlanner();
+
+    /**
+     * Standing queries matched against every fetched batch, and where their alerts go; null until installed
+     */
+    private static volatile EarthquakeAlertEngine sAlertEngine = null;
+    private static volatile EarthquakeAlertEngine.Listener sAlertListener = null;
+
+    /**
+     * Install an on-disk response cache in the given directory, if one isn't installed yet.
+     * Requests made after this are sent as conditional GETs when a cached copy exists.
+     */
+    public static synchronized void installResponseCache(File cacheDirectory) {
+        if (sResponseCache == null) {
+            sResponseCache = new EarthquakeResponseCache(cacheDirectory, RESPONSE_CACHE_SIZE_BYTES);
+        }
+    }
+
+    /**
+     * Replace the response cache, or remove it with null; for tests, which each need their own.
+     */
+    static synchronized void setResponseCache(EarthquakeResponseCache cache) {
+        sResponseCache = cache;
+    }
+
+    /**
+     * Replace the retry, hedging and circuit breaker settings; for tests, which each need a
+     * closed circuit and their own latency history.
+     */
+    static synchronized void setResilience(FetchResilience resilience) {
+        sResilience = resilience;
+    }
+
+    /**
+     * Match every batch of earthquakes fetched from now on against the engine's rules, and
+     * send the resulting alerts to the listener, on the fetching thread. Pass a null engine to stop.
+     */
+    public static synchronized void installAlertEngine(EarthquakeAlertEngine engine,
+                                                       EarthquakeAlertEngine.Listener listener) {
+        sAlertListener = listener;
+        sAlertEngine = engine;
+    }
+
+    /**
+     * Return the earthquakes matching a query, loaded from the cheapest USGS source that covers
+     * it (see {@link EarthquakeFeedPlanner}). While USGS is unavailable the cached copy is
+     * returned, however old; other errors are logged and give an empty list.
+     */
+    public static List<Earthquake> extractEarthquakes(EarthquakeQuery query) {
+        try {
+            return fetchEarthquakes(query, System.currentTimeMillis());
+        } catch (StaleResultException e) {
+            return e.getResult();
+        } catch (IOException e) {
+            Logger.e(LOG_TAG, "Unable to complete URL connection.", e);
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Return the earthquakes matching a query, loaded from the cheapest USGS source that covers
+     * it: the FDSN endpoint, or a precomputed summary feed filtered locally.
+     *
+     * @param now is the current time in milliseconds from the Epoch.
+     * @throws StaleResultException with the cached copy, filtered like a fresh result, if the
+     *  source can't be loaded.
+     * @throws IOException if the source can't be loaded and there is no cached copy.
+     */
+    public static List<Earthquake> fetchEarthquakes(EarthquakeQuery query, long now) throws IOException {
+        EarthquakeFeedPlanner.Plan plan = sFeedPlanner.plan(query, now);
+        URL url = formatURL(plan.getUrl());
+        if (url == null) {
+            throw new IOException("Invalid query URL: " + plan.getUrl());
+        }
+        try {
+            return plan.apply(fetchEarthquakes(url));
+        } catch (StaleResultException e) {
+            List<Earthquake> cached = e.getResult();
+            throw new StaleResultException(plan.apply(cached), e);
+        }
+    }
+
+    /**
+     * Parse a GeoJSON response into a list of {@link Earthquake} objects, one feature at a time,
+     * without holding the response body (or a JSON tree of it) in memory.
+     * Fields we don't use are skipped without being materialized.
+     *
+     * A feature needs "mag", "place", "time" and "url", and a value for "mag" and "time"; an
+     * explicit null place or url is kept as null. A feature that lacks one is logged and
+     * skipped, so one bad event doesn't cost the whole feed; a deleted event only needs its id,
+     * so its deletion still reaches the store. The JSONObject parser this replaced, which
+     * stopped at the first bad feature, is no longer shipped: it lives on in the tests as
+     * {@code JsonObjectParser}, the reference this parser is checked and benchmarked against.
+     *
+     * @param inputStream with the GeoJSON response; not closed by this method.
+     * @return list of earthquakes in the response.
+     * @throws MalformedResponseException if the response is malformed; no partial list is
+     *  returned.
+     * @throws IOException if the stream can't be read.
+     */
+    public static List<Earthquake> readEarthquakesFromStream(InputStream inputStream) throws IOException {
+        return readEarthquakesFromStream(inputStream, false);
+    }
+
+    /**
+     * Parse a GeoJSON response like {@link #readEarthquakesFromStream(InputStream)}.
+     *
+     * @param earthquakesOnly skips other event types (quarry blasts, explosions, ...), for
+     *  sources that can't filter them on the server.
+     */
+    public static List<Earthquake> readEarthquakesFromStream(InputStream inputStream, boolean earthquakesOnly)
+            throws IOException {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        if (inputStream == null) {
+            return earthquakes;
+        }
+
+        JsonReader reader = new JsonReader(new InputStreamReader(inputStream, Charset.forName("UTF-8")));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                // "features" is the only top-level member we care about; skip "metadata", "bbox", etc.
+                if ("features".equals(reader.nextName())) {
+                    FeatureFields fields = new FeatureFields();
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        readFeature(reader, fields);
+                        // Other event types are dropped before they are checked
+                        if (earthquakesOnly && !TYPE_EARTHQUAKE.equals(fields.type)) {
+                            continue;
+                        }
+                        Earthquake earthquake = fields.build();
+                        if (earthquake != null) {
+                            earthquakes.add(earthquake);
+                        } else {
+                            Logger.e(LOG_TAG, "Skipping feature " + fields.id
+                                    + "; it lacks a magnitude, place, time or url.");
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException | MalformedJsonException e) {
+            // Thrown by JsonReader when a token isn't of the expected type, or isn't JSON at all
+            throw new MalformedResponseException("Malformed earthquake JSON", e);
+        }
+
+        return earthquakes;
+    }
+
+    /**
+     * Fields collected for one feature while it is being read. "id", "properties" and "geometry"
+     * can arrive in any order, so the {@link Earthquake} is only built once the feature is done.
+     */
+    private static final class FeatureFields {
+        String id;
+        boolean hasMagnitude;
+        boolean hasPlace;
+        boolean hasTime;
+        boolean hasUrl;
+        double magnitude;
+        String place;
+        long timeInMilliseconds;
+        long updatedInMilliseconds;
+        String url;
+        String status;
+        String type;
+        double longitude;
+        double latitude;
+        double depthKm;
+
+        void reset() {
+            id = null;
+            hasMagnitude = false;
+            hasPlace = false;
+            hasTime = false;
+            hasUrl = false;
+            magnitude = 0.0;
+            place = null;
+            timeInMilliseconds = 0L;
+            updatedInMilliseconds = 0L;
+            url = null;
+            status = null;
+            type = null;
+            longitude = Double.NaN;
+            latitude = Double.NaN;
+            depthKm = Double.NaN;
+        }
+
+        /**
+         * Return the feature's earthquake, or null if it lacks a field it needs. A deletion
+         * only needs the id of the event it removes.
+         */
+        Earthquake build() {
+            boolean deleted = STATUS_DELETED.equals(status);
+            if (deleted ? id == null : !hasMagnitude || !hasPlace || !hasTime || !hasUrl) {
+                return null;
+            }
+            // Events that were never revised have no "updated" time; fall back to the event time
+            long updated = updatedInMilliseconds != 0L ? updatedInMilliseconds : timeInMilliseconds;
+            return new Earthquake(id, magnitude, place, timeInMilliseconds, updated, url,
+                    deleted, latitude, longitude, depthKm);
+        }
+    }
+
+    /**
+     * Read a single GeoJSON feature into the fields.
+     */
+    private static void readFeature(JsonReader reader, FeatureFields fields) throws IOException {
+        fields.reset();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("properties".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readProperties(reader, fields);
+            } else if ("id".equals(name) && reader.peek() == JsonToken.STRING) {
+                fields.id = reader.nextString();
+            } else if ("geometry".equals(name) && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                readGeometry(reader, fields);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "geometry" object of a feature: a Point whose coordinates are
+     * [longitude, latitude, depth in km].
+     */
+    private static void readGeometry(JsonReader reader, FeatureFields fields) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("coordinates".equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                for (int i = 0; reader.hasNext(); i++) {
+                    if (i > 2 || reader.peek() != JsonToken.NUMBER) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    double value = reader.nextDouble();
+                    if (i == 0) {
+                        fields.longitude = value;
+                    } else if (i == 1) {
+                        fields.latitude = value;
+                    } else {
+                        fields.depthKm = value;
+                    }
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read the "properties" object of a feature, keeping only the fields the app displays.
+     */
+    private static void readProperties(JsonReader reader, FeatureFields fields) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            // USGS sends explicit nulls for some fields. A null place or url is kept as null; any
+            // other null counts as absent, so a feature with a null magnitude or time is skipped.
+            if (reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                fields.hasPlace |= "place".equals(name);
+                fields.hasUrl |= "url".equals(name);
+                continue;
+            }
+            switch (name) {
+                case "mag":
+                    fields.magnitude = reader.nextDouble();
+                    fields.hasMagnitude = true;
+                    break;
+                case "place":
+                    fields.place = reader.nextString();
+                    fields.hasPlace = true;
+                    break;
+                case "time":
+                    fields.timeInMilliseconds = reader.nextLong();
+                    fields.hasTime = true;
+                    break;
+                case "updated":
+                    fields.updatedInMilliseconds = reader.nextLong();
+                    break;
+                case "url":
+                    fields.url = reader.nextString();
+                    fields.hasUrl = true;
+                    break;
+                case "status":
+                    fields.status = reader.nextString();
+                    break;
+                case "type":
+                    fields.type = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Open an HTTP connection for the URL and parse the response straight off the network stream.
+     * When a response cache is installed, the request is sent as a conditional GET and a 304
+     * is served from the cache (from the already-parsed result when it's still in memory).
+     *
+     * Unlike {@link #extractEarthquakes(EarthquakeQuery)}, failures are reported to the caller, so an
+     * empty list always means the server had no matching events.
+     *
+     * Concurrent calls for the same (normalized) URL share a single HTTP request. Failed requests
+     * are retried and slow ones hedged; see {@link FetchResilience}. A cached response served
+     * because USGS keeps failing is never returned as if it were fresh, and isn't matched against
+     * the alert rules again.
+     *
+     * @param urlObject formatted URL instance for data source
+     * @return list of earthquakes in the response.
+     * @throws StaleResultException with the cached earthquakes if the request failed and the
+     *  response is cached.
+     * @throws IOException if the connection fails or the server returns an error code, and
+     *  there is no cached response to fall back to.
+     */
+    public static List<Earthquake> fetchEarthquakes(final URL urlObject) throws IOException {
+        List<Earthquake> earthquakes = sInFlightRequests.execute(
+                EarthquakeResponseCache.normalizeUrl(urlObject.toString()),
+                new Callable<List<Earthquake>>() {
+                    @Override
+                    public List<Earthquake> call() throws IOException {
+                        List<Earthquake> fetched = sResilience.call(new FetchResilience.Request<List<Earthquake>>() {
+                            @Override
+                            public List<Earthquake> send(long timeoutMillis) throws IOException {
+                                return fetchEarthquakesUncoalesced(urlObject, timeoutMillis);
+                            }
+                        }, new Callable<List<Earthquake>>() {
+                            @Override
+                            public List<Earthquake> call() throws IOException {
+                                return readCachedEarthquakes(urlObject);
+                            }
+                        });
+                        // Once per fetch, however many callers share it
+                        dispatchAlerts(fetched);
+                        return fetched;
+                    }
+                });
+        // Each caller gets its own list, since joined callers share the same result
+        return new ArrayList<>(earthquakes);
+    }
+
+    private static List<Earthquake> fetchEarthquakesUncoalesced(URL urlObject, long timeoutMillis) throws IOException {
+        Logger.v(LOG_TAG,"Entering the fetchEarthquakes method. Passed URL argument: " + urlObject.toString());
+        List<Earthquake> earthquakes = new ArrayList<>();
+
+        EarthquakeResponseCache cache = sResponseCache;
+        EarthquakeResponseCache.Entry cachedEntry = cache != null ? cache.get(urlObject.toString()) : null;
+
+        // Make the (gzip, conditional) request; the connection is pooled for reuse once the body is read
+        HttpTransport.Response response = HttpTransport.get(urlObject, buildValidators(cachedEntry), timeoutMillis);
+        try {
+            // Check whether connection was successful
+            int responseCode = response.getCode();
+            PipelineMetrics.Timer timer = response.getTimer();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED && cachedEntry != null) {
+                Logger.v(LOG_TAG, "In fetchEarthquakes method; response not modified, serving from cache.");
+                timer.parseStarted();
+                earthquakes = readCachedEarthquakes(cache, cachedEntry, urlObject);
+                timer.parsed(earthquakes.size(), true);
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                // Get the decoded, buffered InputStream
+                InputStream inputStream = response.getBody();
+                if (cache != null) {
+                    // Parse the stream as it arrives while copying it into the cache; only a
+                    // body that parsed is committed, and its result is kept for the next 304
+                    EarthquakeResponseCache.Download download = cache.startDownload(urlObject.toString(),
+                            inputStream, response.getHeader("ETag"), response.getHeader("Last-Modified"));
+                    try {
+                        timer.parseStarted();
+                        earthquakes = readEarthquakes(download.getBody(), urlObject);
+                        cache.putParsed(download.commit(), earthquakes);
+                    } finally {
+                        download.close();
+                    }
+                } else {
+                    // Parse the stream as it arrives; the parse time then includes the download
+                    timer.parseStarted();
+                    earthquakes = readEarthquakes(inputStream, urlObject);
+                }
+                timer.parsed(earthquakes.size(), false);
+                Logger.v(LOG_TAG, "In fetchEarthquakes method; received " + response.getWireBytes()
+                        + " bytes for a " + response.getBodyBytes() + " byte body.");
+            } else {
+                throw new HttpStatusException(responseCode);
+            }
+        } finally { /* Release the body; the connection goes back to the pool if it was read to the end */
+            response.close();
+        }
+
+        return earthquakes;
+    }
+
+    /**
+     * Fetch and parse the USGS detail GeoJSON of one event.
+     *
+     * A detail opened by the user goes through {@link FetchResilience} like every other request.
+     * A prefetch is sent once and never retried or hedged: it is speculative, and must not add
+     * load while USGS is struggling. Bytes are reported to {@link PipelineMetrics}.
+     *
+     * @param eventId is the USGS event id.
+     * @param prefetch is whether the detail is prefetched rather than opened.
+     * @throws IOException if the connection fails, the server returns an error code, or the
+     *  response isn't a detail document.
+     */
+    public static EarthquakeDetail fetchEarthquakeDetail(String eventId, boolean prefetch) throws IOException {
+        final URL urlObject = formatURL(EarthquakeQuery.ENDPOINT + "?eventid="
+                + URLEncoder.encode(eventId, "UTF-8") + "&format=geojson");
+        if (urlObject == null) {
+            throw new IOException("Invalid event id: " + eventId);
+        }
+        if (prefetch) {
+            return fetchEarthquakeDetailOnce(urlObject, true, 0L);
+        }
+        return sResilience.call(new FetchResilience.Request<EarthquakeDetail>() {
+            @Override
+            public EarthquakeDetail send(long timeoutMillis) throws IOException {
+                return fetchEarthquakeDetailOnce(urlObject, false, timeoutMillis);
+            }
+        }, null);
+    }
+
+    private static EarthquakeDetail fetchEarthquakeDetailOnce(URL urlObject, boolean prefetch,
+                                                              long timeoutMillis) throws IOException {
+        HttpTransport.Response response = HttpTransport.get(urlObject, null, timeoutMillis);
+        try {
+            int responseCode = response.getCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new HttpStatusException(responseCode);
+            }
+            PipelineMetrics.Timer timer = response.getTimer();
+            // Parse as it arrives; the products are skipped without being held in memory
+            timer.parseStarted();
+            EarthquakeDetail detail = EarthquakeDetail.read(response.getBody());
+            timer.parsed(1, false);
+            return detail;
+        } finally {
+            response.close();
+            PipelineMetrics.recordDetailFetch(prefetch, response.getWireBytes());
+        }
+    }
+
+    /**
+     * Match a fetched batch against the installed alert engine, if any, and deliver its alerts.
+     */
+    private static void dispatchAlerts(List<Earthquake> earthquakes) {
+        EarthquakeAlertEngine engine = sAlertEngine;
+        EarthquakeAlertEngine.Listener listener = sAlertListener;
+        if (engine == null || listener == null || earthquakes.isEmpty()) {
+            return;
+        }
+        List<EarthquakeAlertEngine.Alert> alerts = engine.match(earthquakes);
+        if (!alerts.isEmpty()) {
+            Logger.v(LOG_TAG, alerts.size() + " new alerts.");
+            listener.onAlerts(alerts);
+        }
+    }
+
+    /**
+     * Return the cached earthquakes for the URL, however old, or null if nothing is cached.
+     */
+    private static List<Earthquake> readCachedEarthquakes(URL urlObject) throws IOException {
+        EarthquakeResponseCache cache = sResponseCache;
+        EarthquakeResponseCache.Entry cachedEntry = cache != null ? cache.get(urlObject.toString()) : null;
+        return cachedEntry != null ? readCachedEarthquakes(cache, cachedEntry, urlObject) : null;
+    }
+
+    /**
+     * Return the parsed earthquakes for a cache entry, parsing its body file only if the
+     * result isn't already held in memory.
+     */
+    private static List<Earthquake> readCachedEarthquakes(EarthquakeResponseCache cache,
+                                                          EarthquakeResponseCache.Entry entry,
+                                                          URL urlObject) throws IOException {
+        List<Earthquake> earthquakes = cache.getParsed(entry);
+        if (earthquakes != null) {
+            return new ArrayList<>(earthquakes);
+        }
+
+        InputStream bodyStream = new BufferedInputStream(new FileInputStream(entry.getBodyFile()),
+                HttpTransport.BUFFER_SIZE);
+        try {
+            earthquakes = readEarthquakes(bodyStream, urlObject);
+        } finally {
+            bodyStream.close();
+        }
+        cache.putParsed(entry, earthquakes);
+        return earthquakes;
+    }
+
+    /**
+     * Parse a response with the parser for the URL's format: CSV or GeoJSON. Summary feeds hold
+     * every event type, so only their earthquakes are kept.
+     */
+    private static List<Earthquake> readEarthquakes(InputStream inputStream, URL urlObject) throws IOException {
+        String url = urlObject.toString();
+        boolean earthquakesOnly = EarthquakeFeedPlanner.isSummaryFeed(url);
+        if (EarthquakeFeedPlanner.isCsv(url)) {
+            return EarthquakeCsvReader.read(inputStream, earthquakesOnly);
+        }
+        return readEarthquakesFromStream(inputStream, earthquakesOnly);
+    }
+
+    /**
+     * Return If-None-Match / If-Modified-Since headers for a cached entry, turning the request into a conditional GET.
+     */
+    private static Map<String, String> buildValidators(EarthquakeResponseCache.Entry cachedEntry) {
+        Map<String, String> headers = new HashMap<>();
+        if (cachedEntry == null) {
+            return headers;
+        }
+        if (cachedEntry.getETag() != null) {
+            headers.put("If-None-Match", cachedEntry.getETag());
+        }
+        if (cachedEntry.getLastModified() != null) {
+            headers.put("If-Modified-Since", cachedEntry.getLastModified());
+        }
+        return headers;
+    }
+
+    /**
+     * Helper method to convert URL in String format to URL object.
+     *
+     * @param urlString
+     * @return
+     */
+    public static URL formatURL(String urlString) {
+        Logger.v(LOG_TAG,"Entering the formatURL method.");
+        // Return early if we have a null or empty String.
+        if (urlString == null || urlString == "") {
+            Logger.v(LOG_TAG,"In formatURL method & urlString is null.");
+            return null;
+        }
+
+        // Convert URL String into URL object.
+        URL url;
+        try {
+            url = new URL(urlString);
+            Logger.v(LOG_TAG,"In the formatURL method's try block...");
+        } catch (MalformedURLException e) {
+            Logger.e(LOG_TAG, "Problem creating URL object.", e);
+            return null;
+        }
+
+        Logger.v(LOG_TAG, "In formatURL method. Made it to final return statement; returning: " + url.toString());
+        return url;
+    }
+}
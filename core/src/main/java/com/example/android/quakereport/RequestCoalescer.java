@@ -0,0 +1,58 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces concurrent requests for the same key into a single in-flight operation.
+ * The first caller runs the request on its own thread; callers arriving while it is running
+ * wait for, and share, its result (or its failure). Results are not kept once the request ends.
+ *
+ * @param <V> is the type of the result.
+ */
+public class RequestCoalescer<V> {
+
+    /** Requests currently running, by key */
+    private final ConcurrentMap<String, FutureTask<V>> mInFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Run the request, or join the identical one already in flight.
+     *
+     * @param key identifies identical requests (e.g. the normalized URL).
+     * @param request does the actual work.
+     * @throws IOException if the request failed.
+     */
+    public V execute(String key, Callable<V> request) throws IOException {
+        FutureTask<V> task = new FutureTask<>(request);
+        FutureTask<V> existing = mInFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            // We're first; run it here and let later callers join
+            try {
+                task.run();
+            } finally {
+                mInFlight.remove(key, task);
+            }
+            existing = task;
+        }
+
+        try {
+            return existing.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + key, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Request failed for " + key, cause);
+        }
+    }
+}
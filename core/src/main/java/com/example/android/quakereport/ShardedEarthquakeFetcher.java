@@ -0,0 +1,233 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fetches a long time window from USGS as several shorter time shards, downloaded and parsed
+ * concurrently, so a multi-month query takes roughly as long as its slowest shard instead of
+ * one long serial download. It also keeps each request under the server's result cap.
+ *
+ * Each shard's request is retried on its own by {@link QueryUtils#fetchEarthquakes(URL)}; the
+ * fetch only fails if a shard still fails after that. Shards share their boundary instant, so the results are merged by event id (keeping
+ * the latest revision) and returned newest first.
+ *
+ * Shard boundaries are laid on a grid from the start of the window, and the last shard ends on
+ * the grid too rather than at the end time, so fetching a window that ends "now" again builds
+ * the same URLs and the response cache can revalidate every shard.
+ */
+public class ShardedEarthquakeFetcher {
+
+    /** Tag for the log messages */
+    public static final String LOG_TAG = ShardedEarthquakeFetcher.class.getSimpleName();
+
+    /** Default shard length */
+    public static final long DEFAULT_SHARD_MILLIS = 7L * 24 * 60 * 60 * 1000;
+
+    /** Most events USGS returns for a single query; a full shard is split and fetched again */
+    static final int MAX_RESULTS_PER_QUERY = 20000;
+
+    /** Shards are never split below this length */
+    private static final long MIN_SHARD_MILLIS = 60L * 60 * 1000;
+
+    /** Maximum number of shards downloaded at once by the shared executor */
+    private static final int MAX_PARALLEL_SHARDS = 4;
+
+    /** Bounded executor shared by all fetchers; daemon threads, and idle ones time out */
+    private static final ThreadPoolExecutor SHARD_EXECUTOR;
+
+    static {
+        SHARD_EXECUTOR = new ThreadPoolExecutor(MAX_PARALLEL_SHARDS, MAX_PARALLEL_SHARDS,
+                30L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "EarthquakeShard #" + mCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        SHARD_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /** Newest first, like the rest of the app */
+    private static final Comparator<Earthquake> NEWEST_FIRST = new Comparator<Earthquake>() {
+        @Override
+        public int compare(Earthquake first, Earthquake second) {
+            long firstTime = first.getTimeInMilliseconds();
+            long secondTime = second.getTimeInMilliseconds();
+            return firstTime < secondTime ? 1 : (firstTime == secondTime ? 0 : -1);
+        }
+    };
+
+    private final EarthquakeQuery mBaseQuery;
+    private final long mShardMillis;
+    private final Executor mExecutor;
+    private final String mEndpoint;
+
+    /**
+     * Constructor for the {@link ShardedEarthquakeFetcher} class, with the default shard length
+     * and the shared bounded executor.
+     *
+     * @param baseQuery is the FDSN query (magnitude, region, ...); its time window is replaced per shard.
+     */
+    public ShardedEarthquakeFetcher(EarthquakeQuery baseQuery) {
+        this(baseQuery, DEFAULT_SHARD_MILLIS, SHARD_EXECUTOR);
+    }
+
+    /**
+     * Constructor for the {@link ShardedEarthquakeFetcher} class.
+     *
+     * @param baseQuery is the FDSN query (magnitude, region, ...); its time window is replaced per shard.
+     * @param shardMillis is the length of each shard.
+     * @param executor runs the shard downloads; its size bounds the number of concurrent requests.
+     */
+    public ShardedEarthquakeFetcher(EarthquakeQuery baseQuery, long shardMillis, Executor executor) {
+        this(baseQuery, shardMillis, executor, EarthquakeQuery.ENDPOINT);
+    }
+
+    /**
+     * Constructor for a fetcher that queries another FDSN event service, such as a test server.
+     */
+    ShardedEarthquakeFetcher(EarthquakeQuery baseQuery, long shardMillis, Executor executor, String endpoint) {
+        if (shardMillis <= 0L) {
+            throw new IllegalArgumentException("Invalid shard length");
+        }
+        this.mBaseQuery = baseQuery;
+        this.mShardMillis = shardMillis;
+        this.mExecutor = executor;
+        this.mEndpoint = endpoint;
+    }
+
+    /**
+     * Fetch every event in the window, newest first and without duplicates.
+     * Blocks until all shards are done; call it on a background thread.
+     *
+     * @param startTime is the start of the window, in milliseconds from the Epoch.
+     * @param endTime is the end of the window, in milliseconds from the Epoch.
+     * @throws IOException if a shard still failed after its retries.
+     */
+    public List<Earthquake> fetch(long startTime, long endTime) throws IOException {
+        Logger.v(LOG_TAG, "Entering the fetch method.");
+        List<FutureTask<List<Earthquake>>> tasks = new ArrayList<>();
+        for (long shardStart = startTime; shardStart < endTime; shardStart += mShardMillis) {
+            final long start = shardStart;
+            final long end = shardStart + mShardMillis;
+            FutureTask<List<Earthquake>> task = new FutureTask<>(new Callable<List<Earthquake>>() {
+                @Override
+                public List<Earthquake> call() throws IOException {
+                    return fetchShard(start, end);
+                }
+            });
+            tasks.add(task);
+            mExecutor.execute(task);
+        }
+
+        List<List<Earthquake>> shards = new ArrayList<>(tasks.size());
+        try {
+            for (FutureTask<List<Earthquake>> task : tasks) {
+                shards.add(task.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Shard fetch failed", cause);
+        } finally {
+            // No point finishing the other shards once one has failed
+            for (FutureTask<List<Earthquake>> task : tasks) {
+                task.cancel(true);
+            }
+        }
+
+        List<Earthquake> earthquakes = merge(shards);
+        // The last shard reaches past the end time; FDSN end times are inclusive
+        for (Iterator<Earthquake> iterator = earthquakes.iterator(); iterator.hasNext(); ) {
+            if (iterator.next().getTimeInMilliseconds() > endTime) {
+                iterator.remove();
+            }
+        }
+        Logger.v(LOG_TAG, "In fetch method; " + tasks.size() + " shards, " + earthquakes.size() + " earthquakes.");
+        return earthquakes;
+    }
+
+    /**
+     * Fetch one shard. A shard that comes back at the
+     * server's result cap is split in two and each half fetched instead.
+     */
+    private List<Earthquake> fetchShard(long startTime, long endTime) throws IOException {
+        List<Earthquake> earthquakes = fetchOne(startTime, endTime);
+        if (earthquakes.size() >= MAX_RESULTS_PER_QUERY && endTime - startTime > MIN_SHARD_MILLIS) {
+            Logger.v(LOG_TAG, "In fetchShard method; shard hit the result cap, splitting it.");
+            long middle = startTime + (endTime - startTime) / 2;
+            earthquakes = fetchShard(startTime, middle);
+            earthquakes.addAll(fetchShard(middle, endTime));
+        }
+        return earthquakes;
+    }
+
+    private List<Earthquake> fetchOne(long startTime, long endTime) throws IOException {
+        URL url = QueryUtils.formatURL(mBaseQuery.buildUpon()
+                .startTime(startTime)
+                .endTime(endTime)
+                .build()
+                .toUrl(mEndpoint));
+        if (url == null) {
+            throw new IOException("Invalid shard query");
+        }
+
+        // Retried, hedged and guarded by the circuit breaker in QueryUtils; retrying here too
+        // would multiply the attempts
+        return QueryUtils.fetchEarthquakes(url);
+    }
+
+    /**
+     * Merge shard results into one list, newest first, keeping only the latest revision of an
+     * event that appears in more than one shard. Events without an id are always kept.
+     */
+    static List<Earthquake> merge(List<List<Earthquake>> shards) {
+        Map<String, Earthquake> byId = new HashMap<>();
+        List<Earthquake> merged = new ArrayList<>();
+        for (List<Earthquake> shard : shards) {
+            for (Earthquake earthquake : shard) {
+                String id = earthquake.getId();
+                if (id == null) {
+                    merged.add(earthquake);
+                    continue;
+                }
+                Earthquake existing = byId.get(id);
+                if (existing == null
+                        || earthquake.getUpdatedInMilliseconds() > existing.getUpdatedInMilliseconds()) {
+                    byId.put(id, earthquake);
+                }
+            }
+        }
+        merged.addAll(byId.values());
+        Collections.sort(merged, NEWEST_FIRST);
+        return merged;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.android.quakereport;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a request gave up and an old copy of its result, typically from the response
+ * cache, is all there is. The copy is there for callers that would rather show old data than
+ * nothing; it must not be taken for a fresh response (e.g. recorded as a successful sync).
+ */
+public class StaleResultException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Not serialized; a deserialized exception has no result */
+    private final transient Object mResult;
+
+    public StaleResultException(Object result, IOException cause) {
+        super("Serving a stale result: " + cause.getMessage(), cause);
+        this.mResult = result;
+    }
+
+    /**
+     * Return the old result, of the type the request returns.
+     */
+    @SuppressWarnings("unchecked")
+    public <V> V getResult() {
+        return (V) mResult;
+    }
+}
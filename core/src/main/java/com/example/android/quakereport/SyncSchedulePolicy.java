@@ -0,0 +1,127 @@
+package com.example.android.quakereport;
+
+/**
+ * Decides when the next background sync should run.
+ *
+ * Syncs normally run every base interval. After a sync that brings in a large recent event,
+ * the interval drops to the minimum, so aftershocks and revisions show up quickly, then relaxes
+ * back to the base interval by doubling with each sync. After a sync that changes nothing, or
+ * fails, the interval doubles, up to the maximum. Any other sync resets it to the base interval.
+ *
+ * Pure logic over a {@link Clock}; the app keeps the current interval and arms the alarms.
+ */
+public class SyncSchedulePolicy {
+
+    /** Default intervals: every 15 minutes, between 5 minutes and 4 hours */
+    public static final long DEFAULT_BASE_INTERVAL_MILLIS = 15L * 60 * 1000;
+    public static final long DEFAULT_MIN_INTERVAL_MILLIS = 5L * 60 * 1000;
+    public static final long DEFAULT_MAX_INTERVAL_MILLIS = 4L * 60 * 60 * 1000;
+
+    /** Default magnitude from which an event counts as large */
+    public static final double DEFAULT_LARGE_MAGNITUDE = 6.0;
+
+    /** Only events that happened this recently tighten the interval, not revisions of old ones */
+    private static final long RECENT_EVENT_MILLIS = 6L * 60 * 60 * 1000;
+
+    /**
+     * Alarms and the stored sync time use different clocks; a sync this close to being due
+     * counts as due, so a slightly early alarm doesn't reschedule itself for a few seconds.
+     */
+    private static final long DUE_TOLERANCE_MILLIS = 60L * 1000;
+
+    private final Clock mClock;
+    private final long mBaseIntervalMillis;
+    private final long mMinIntervalMillis;
+    private final long mMaxIntervalMillis;
+    private final double mLargeMagnitude;
+
+    /**
+     * Create a policy with the default intervals and large-event magnitude.
+     */
+    public SyncSchedulePolicy(Clock clock) {
+        this(clock, DEFAULT_BASE_INTERVAL_MILLIS, DEFAULT_MIN_INTERVAL_MILLIS, DEFAULT_MAX_INTERVAL_MILLIS,
+                DEFAULT_LARGE_MAGNITUDE);
+    }
+
+    /**
+     * @param baseIntervalMillis is the usual time between syncs.
+     * @param minIntervalMillis is the time between syncs after a large event.
+     * @param maxIntervalMillis is the longest the interval backs off to.
+     * @param largeMagnitude is the magnitude from which a new event counts as large.
+     */
+    public SyncSchedulePolicy(Clock clock, long baseIntervalMillis, long minIntervalMillis,
+                              long maxIntervalMillis, double largeMagnitude) {
+        if (minIntervalMillis <= 0 || minIntervalMillis > baseIntervalMillis
+                || baseIntervalMillis > maxIntervalMillis) {
+            throw new IllegalArgumentException("Need 0 < min <= base <= max; got " + minIntervalMillis
+                    + ", " + baseIntervalMillis + ", " + maxIntervalMillis);
+        }
+        this.mClock = clock;
+        this.mBaseIntervalMillis = baseIntervalMillis;
+        this.mMinIntervalMillis = minIntervalMillis;
+        this.mMaxIntervalMillis = maxIntervalMillis;
+        this.mLargeMagnitude = largeMagnitude;
+    }
+
+    public long getBaseIntervalMillis() {
+        return mBaseIntervalMillis;
+    }
+
+    public long getMinIntervalMillis() {
+        return mMinIntervalMillis;
+    }
+
+    /**
+     * Return the interval after a successful sync.
+     *
+     * @param changeCount is the number of events the sync inserted, updated or deleted.
+     * @param largestMagnitude is the largest magnitude among the inserted and updated events, or NaN.
+     * @param largestMagnitudeTime is when that event happened, in milliseconds from the Epoch.
+     */
+    public long nextIntervalAfterSync(long currentIntervalMillis, int changeCount,
+                                      double largestMagnitude, long largestMagnitudeTime) {
+        if (largestMagnitude >= mLargeMagnitude
+                && mClock.currentTimeMillis() - largestMagnitudeTime <= RECENT_EVENT_MILLIS) {
+            return mMinIntervalMillis;
+        }
+        if (changeCount == 0) {
+            return backOff(currentIntervalMillis);
+        }
+        if (currentIntervalMillis < mBaseIntervalMillis) {
+            // Relax gradually after a large event
+            return Math.min(Math.max(currentIntervalMillis, mMinIntervalMillis) * 2, mBaseIntervalMillis);
+        }
+        return mBaseIntervalMillis;
+    }
+
+    /**
+     * Return the interval after a failed sync.
+     */
+    public long nextIntervalAfterFailure(long currentIntervalMillis) {
+        return backOff(currentIntervalMillis);
+    }
+
+    /**
+     * Return whether a sync is due, given when the last one succeeded (0 for never).
+     */
+    public boolean isSyncDue(long lastSyncTime, long intervalMillis) {
+        return getDelayUntilDue(lastSyncTime, intervalMillis) == 0L;
+    }
+
+    /**
+     * Return how long until a sync is due, or 0 if it is due now.
+     */
+    public long getDelayUntilDue(long lastSyncTime, long intervalMillis) {
+        long delay = lastSyncTime + intervalMillis - mClock.currentTimeMillis();
+        // A last sync "in the future" means the clock was set back; don't wait for it to catch up
+        if (delay <= DUE_TOLERANCE_MILLIS || delay > intervalMillis) {
+            return 0L;
+        }
+        return delay;
+    }
+
+    private long backOff(long currentIntervalMillis) {
+        long interval = Math.max(currentIntervalMillis, mBaseIntervalMillis);
+        return interval >= mMaxIntervalMillis / 2 ? mMaxIntervalMillis : interval * 2;
+    }
+}
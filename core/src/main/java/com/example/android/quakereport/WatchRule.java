@@ -0,0 +1,222 @@
+package com.example.android.quakereport;
+
+/**
+ * A saved standing query: alert on events of at least a magnitude, optionally only within a
+ * circle or a latitude/longitude box, and only while the rule is valid.
+ *
+ * Immutable; create instances with {@link Builder}.
+ */
+public final class WatchRule {
+
+    /** Shape of the area a rule watches */
+    public enum Area {
+        EVERYWHERE,
+        CIRCLE,
+        BOX
+    }
+
+    private final String mId;
+    private final double mMinMagnitude;
+    private final Area mArea;
+
+    /** Circle: center and radius */
+    private final double mLatitude;
+    private final double mLongitude;
+    private final double mRadiusKm;
+
+    /** Box; a box with minLongitude > maxLongitude crosses the date line */
+    private final double mMinLatitude;
+    private final double mMaxLatitude;
+    private final double mMinLongitude;
+    private final double mMaxLongitude;
+
+    /** Events are matched while the rule is valid: validFrom <= event time <= validUntil */
+    private final long mValidFrom;
+    private final long mValidUntil;
+
+    private WatchRule(Builder builder) {
+        this.mId = builder.mId;
+        this.mMinMagnitude = builder.mMinMagnitude;
+        this.mArea = builder.mArea;
+        this.mLatitude = builder.mLatitude;
+        this.mLongitude = builder.mLongitude;
+        this.mRadiusKm = builder.mRadiusKm;
+        this.mMinLatitude = builder.mMinLatitude;
+        this.mMaxLatitude = builder.mMaxLatitude;
+        this.mMinLongitude = builder.mMinLongitude;
+        this.mMaxLongitude = builder.mMaxLongitude;
+        this.mValidFrom = builder.mValidFrom;
+        this.mValidUntil = builder.mValidUntil;
+    }
+
+    /**
+     * Builds {@link WatchRule} instances. Without an area the rule watches everywhere; without
+     * a validity window it is always valid.
+     */
+    public static final class Builder {
+        private final String mId;
+        private double mMinMagnitude = Double.NEGATIVE_INFINITY;
+        private Area mArea = Area.EVERYWHERE;
+        private double mLatitude;
+        private double mLongitude;
+        private double mRadiusKm;
+        private double mMinLatitude;
+        private double mMaxLatitude;
+        private double mMinLongitude;
+        private double mMaxLongitude;
+        private long mValidFrom = Long.MIN_VALUE;
+        private long mValidUntil = Long.MAX_VALUE;
+
+        /**
+         * @param id identifies the rule in alerts; unique among the saved rules.
+         */
+        public Builder(String id) {
+            if (id == null) {
+                throw new IllegalArgumentException("A rule needs an id");
+            }
+            this.mId = id;
+        }
+
+        /** Smallest magnitude to alert on. */
+        public Builder minMagnitude(double magnitude) {
+            mMinMagnitude = magnitude;
+            return this;
+        }
+
+        /** Only alert on events within a circle around a point, in degrees and kilometers. */
+        public Builder within(double latitude, double longitude, double radiusKm) {
+            if (radiusKm < 0) {
+                throw new IllegalArgumentException("radiusKm must not be negative");
+            }
+            mArea = Area.CIRCLE;
+            mLatitude = latitude;
+            mLongitude = longitude;
+            mRadiusKm = radiusKm;
+            return this;
+        }
+
+        /**
+         * Only alert on events within a latitude/longitude box, in degrees. A box with
+         * {@code minLongitude > maxLongitude} crosses the date line.
+         */
+        public Builder boundingBox(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+            if (minLatitude > maxLatitude) {
+                throw new IllegalArgumentException("minLatitude must not exceed maxLatitude");
+            }
+            if (!isLongitude(minLongitude) || !isLongitude(maxLongitude)) {
+                throw new IllegalArgumentException("Longitudes must be within [-180, 180]");
+            }
+            mArea = Area.BOX;
+            mMinLatitude = minLatitude;
+            mMaxLatitude = maxLatitude;
+            mMinLongitude = minLongitude;
+            mMaxLongitude = maxLongitude;
+            return this;
+        }
+
+        /** Only alert on events that happen in this window, in milliseconds from the Epoch. */
+        public Builder validBetween(long validFrom, long validUntil) {
+            if (validFrom > validUntil) {
+                throw new IllegalArgumentException("validFrom must not be after validUntil");
+            }
+            mValidFrom = validFrom;
+            mValidUntil = validUntil;
+            return this;
+        }
+
+        public WatchRule build() {
+            return new WatchRule(this);
+        }
+
+        private static boolean isLongitude(double longitude) {
+            return longitude >= -180.0 && longitude <= 180.0;
+        }
+    }
+
+    public String getId() {
+        return mId;
+    }
+
+    public double getMinMagnitude() {
+        return mMinMagnitude;
+    }
+
+    public Area getArea() {
+        return mArea;
+    }
+
+    public double getLatitude() {
+        return mLatitude;
+    }
+
+    public double getLongitude() {
+        return mLongitude;
+    }
+
+    public double getRadiusKm() {
+        return mRadiusKm;
+    }
+
+    public double getMinLatitude() {
+        return mMinLatitude;
+    }
+
+    public double getMaxLatitude() {
+        return mMaxLatitude;
+    }
+
+    public double getMinLongitude() {
+        return mMinLongitude;
+    }
+
+    public double getMaxLongitude() {
+        return mMaxLongitude;
+    }
+
+    public long getValidFrom() {
+        return mValidFrom;
+    }
+
+    public long getValidUntil() {
+        return mValidUntil;
+    }
+
+    /**
+     * Return whether an event matches the rule. This is the reference check; the
+     * {@link EarthquakeAlertEngine} only calls it for rules its index can't rule out.
+     */
+    public boolean matches(Earthquake earthquake) {
+        long time = earthquake.getTimeInMilliseconds();
+        if (earthquake.isDeleted() || !(earthquake.getMagnitude() >= mMinMagnitude)
+                || time < mValidFrom || time > mValidUntil) {
+            return false;
+        }
+        return isInArea(earthquake.getLatitude(), earthquake.getLongitude());
+    }
+
+    /**
+     * Return whether a point is in the watched area. Events without coordinates are only in
+     * the area of rules that watch everywhere.
+     */
+    boolean isInArea(double latitude, double longitude) {
+        switch (mArea) {
+            case CIRCLE:
+                return EarthquakeSpatialIndex.distanceKm(mLatitude, mLongitude, latitude, longitude) <= mRadiusKm;
+            case BOX:
+                if (!(latitude >= mMinLatitude && latitude <= mMaxLatitude)) {
+                    return false;
+                }
+                if (mMinLongitude <= mMaxLongitude) {
+                    return longitude >= mMinLongitude && longitude <= mMaxLongitude;
+                }
+                return longitude >= mMinLongitude || longitude <= mMaxLongitude;
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return mId;
+    }
+}
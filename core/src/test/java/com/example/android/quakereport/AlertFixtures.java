@@ -0,0 +1,94 @@
+package com.example.android.quakereport;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Watch rules and events generated from a seed, for the alert tests and benchmark: a mix of
+ * magnitude-only, circle and box rules (some crossing the date line, some with a validity
+ * window), and events with a Gutenberg-Richter-like magnitude distribution.
+ */
+final class AlertFixtures {
+
+    private static final long START_TIME = 1510790400000L;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+    private AlertFixtures() {
+    }
+
+    /** Return the rules an event matches, checking every rule */
+    static Set<WatchRule> matchNaively(List<WatchRule> rules, Earthquake event) {
+        Set<WatchRule> matches = new HashSet<>();
+        for (WatchRule rule : rules) {
+            if (rule.matches(event)) {
+                matches.add(rule);
+            }
+        }
+        return matches;
+    }
+
+    static List<WatchRule> generateRules(Random random, int count) {
+        List<WatchRule> rules = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            WatchRule.Builder rule = new WatchRule.Builder("rule-" + i)
+                    .minMagnitude(Math.round(random.nextDouble() * 70) / 10.0);
+            switch (i % 4) {
+                case 0:
+                    // Magnitude only, e.g. "M >= 6 anywhere"
+                    break;
+                case 1:
+                case 2:
+                    // Around a place, e.g. "M >= 4 within 200 km of home"
+                    rule.within(randomLatitude(random), randomLongitude(random), 10 + random.nextDouble() * 990);
+                    break;
+                default:
+                    // A region; one in four of them crosses the date line
+                    double minLatitude = randomLatitude(random);
+                    double width = 1 + random.nextDouble() * 40;
+                    double minLongitude;
+                    double maxLongitude;
+                    if (i % 16 == 3) {
+                        minLongitude = 180 - random.nextDouble() * width;
+                        maxLongitude = minLongitude + width - 360;
+                    } else {
+                        minLongitude = randomLongitude(random);
+                        maxLongitude = Math.min(minLongitude + width, 180);
+                    }
+                    rule.boundingBox(minLatitude, Math.min(minLatitude + 1 + random.nextDouble() * 30, 90),
+                            minLongitude, maxLongitude);
+                    break;
+            }
+            if (i % 5 == 0) {
+                long from = START_TIME + (long) (random.nextDouble() * 30 * DAY_MILLIS);
+                rule.validBetween(from, from + (long) (random.nextDouble() * 10 * DAY_MILLIS));
+            }
+            rules.add(rule.build());
+        }
+        return rules;
+    }
+
+    static List<Earthquake> generateEvents(Random random, int count) {
+        List<Earthquake> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            // About ten times fewer events per magnitude step
+            double magnitude = Math.round(-Math.log10(1 - random.nextDouble()) * 10 + 10) / 10.0 - 1.0;
+            long time = START_TIME + (long) (random.nextDouble() * 40 * DAY_MILLIS);
+            boolean located = i % 100 != 0;
+            events.add(new Earthquake("ev" + i, magnitude, "Somewhere", time, time, null, false,
+                    located ? randomLatitude(random) : Double.NaN, located ? randomLongitude(random) : Double.NaN, 10.0));
+        }
+        return events;
+    }
+
+    private static double randomLatitude(Random random) {
+        // Uniform over the sphere's surface
+        return Math.toDegrees(Math.asin(2 * random.nextDouble() - 1));
+    }
+
+    private static double randomLongitude(Random random) {
+        return random.nextDouble() * 360 - 180;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The rule index against checking every rule, and de-duplication of alerts across batches and
+ * rule changes.
+ */
+public class EarthquakeAlertEngineTest {
+
+    @Test
+    public void indexMatchesNaiveCheck() {
+        // The benchmark's rules and events
+        Random random = new Random(42);
+        List<WatchRule> rules = AlertFixtures.generateRules(random, 1000);
+        List<Earthquake> events = AlertFixtures.generateEvents(random, 100000);
+        EarthquakeAlertEngine engine = new EarthquakeAlertEngine(rules);
+
+        for (Earthquake event : events) {
+            assertEquals(event.getId(), AlertFixtures.matchNaively(rules, event),
+                    new HashSet<>(engine.findMatchingRules(event)));
+        }
+    }
+
+    @Test
+    public void eachRuleAlertsOncePerEvent() {
+        WatchRule anywhere = new WatchRule.Builder("anywhere").minMagnitude(6.0).build();
+        WatchRule large = new WatchRule.Builder("large").minMagnitude(7.0).build();
+        EarthquakeAlertEngine engine = new EarthquakeAlertEngine(Arrays.asList(anywhere, large));
+
+        List<EarthquakeAlertEngine.Alert> first = engine.match(Collections.singletonList(event(6.5, 1L)));
+        List<EarthquakeAlertEngine.Alert> repeated = engine.match(Collections.singletonList(event(6.5, 1L)));
+        // Upgraded by a revision
+        List<EarthquakeAlertEngine.Alert> upgraded = engine.match(Collections.singletonList(event(7.2, 2L)));
+
+        assertEquals(1, first.size());
+        assertEquals(Collections.singletonList(anywhere), first.get(0).getRules());
+        assertTrue(repeated.isEmpty());
+        assertEquals(1, upgraded.size());
+        assertEquals(Collections.singletonList(large), upgraded.get(0).getRules());
+    }
+
+    @Test
+    public void changedRulesDontRepeatAlerts() {
+        WatchRule anywhere = new WatchRule.Builder("anywhere").minMagnitude(6.0).build();
+        EarthquakeAlertEngine engine = new EarthquakeAlertEngine(Collections.singletonList(anywhere));
+        engine.match(Collections.singletonList(event(6.5, 1L)));
+
+        WatchRule nearby = new WatchRule.Builder("nearby").within(35.0, 139.0, 500.0).build();
+        EarthquakeAlertEngine changed = engine.withRules(Arrays.asList(anywhere, nearby));
+        List<EarthquakeAlertEngine.Alert> alerts = changed.match(Collections.singletonList(event(6.5, 1L)));
+
+        assertEquals(1, alerts.size());
+        assertEquals(Collections.singletonList(nearby), alerts.get(0).getRules());
+    }
+
+    private static Earthquake event(double magnitude, long updated) {
+        return new Earthquake("us1000abcd", magnitude, "87 km NNE of Tokyo, Japan", 1510790400000L, updated,
+                null, false, 35.5, 139.5, 10.0);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Rows read back as they were added, and the heap the columns take at 50,000 events against a
+ * list of {@link Earthquake} objects.
+ */
+public class EarthquakeColumnsTest {
+
+    private static final int EVENT_COUNT = 50000;
+
+    /** Distinct place names among the events, about as many as a month of the feed has */
+    private static final int PLACE_COUNT = 2400;
+
+    @Test
+    public void rowsReadBackAsAdded() {
+        List<Earthquake> earthquakes = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            earthquakes.add(event(i));
+        }
+        earthquakes.add(new Earthquake("nowhere", 4.0, null, 5L, 6L, "https://example.com/nowhere", true));
+
+        EarthquakeColumns columns = EarthquakeColumns.from(earthquakes);
+
+        assertEquals(earthquakes.size(), columns.size());
+        assertEquals(1000, columns.getPlaceCount());
+        for (int i = 0; i < earthquakes.size(); i++) {
+            Earthquake expected = earthquakes.get(i);
+            assertEquals(expected.getId(), columns.getId(i));
+            assertEquals(expected.getMagnitude(), columns.getMagnitude(i), 0.0);
+            assertEquals(expected.getLocation(), columns.getLocation(i));
+            assertEquals(expected.getTimeInMilliseconds(), columns.getTimeInMilliseconds(i));
+            assertEquals(expected.getUpdatedInMilliseconds(), columns.getUpdatedInMilliseconds(i));
+            assertEquals(expected.getUrl(), columns.getUrl(i));
+            assertEquals(expected.isDeleted(), columns.isDeleted(i));
+            assertEquals(expected.getLatitude(), columns.getLatitude(i), 0.0);
+            assertEquals(expected.getLongitude(), columns.getLongitude(i), 0.0);
+            assertEquals(expected.getDepthKm(), columns.getDepthKm(i), 0.0);
+        }
+        assertNull(columns.getLocation(earthquakes.size() - 1));
+    }
+
+    @Test
+    public void columnsTakeUnderHalfTheHeapOfAList() throws InterruptedException {
+        long startBytes = MemoryMeter.usedHeapBytes();
+        List<Earthquake> earthquakes = new ArrayList<>(EVENT_COUNT);
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            earthquakes.add(event(i));
+        }
+        long listBytes = MemoryMeter.usedHeapBytes() - startBytes;
+        assertEquals(EVENT_COUNT, earthquakes.size());
+        earthquakes = null;
+
+        startBytes = MemoryMeter.usedHeapBytes();
+        EarthquakeColumns columns = new EarthquakeColumns(EVENT_COUNT);
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            columns.add(event(i));
+        }
+        long columnsBytes = MemoryMeter.usedHeapBytes() - startBytes;
+        assertEquals(EVENT_COUNT, columns.size());
+
+        // About 15 MB against 6 MB on a 64-bit HotSpot
+        assertTrue("List " + listBytes + " bytes, columns " + columnsBytes + " bytes",
+                columnsBytes > 0 && columnsBytes * 2 < listBytes);
+    }
+
+    /**
+     * A synthetic event, with its own copies of the place and URL strings, as parsing a feed
+     * gives each event.
+     */
+    private static Earthquake event(int i) {
+        String id = "us" + Integer.toString(1000000 + i, 36);
+        String place = (i % 100) + " km NNE of Place " + (i % PLACE_COUNT) + ", Region";
+        return new Earthquake(id, 2.5 + (i % 60) / 10.0, place, 1500000000000L + i * 60000L,
+                1500000000000L + i * 60000L + 1000L, EarthquakeColumns.EVENT_PAGE_URL_PREFIX + id, false,
+                (i % 180) - 90.0, (i % 360) - 180.0, 10.0 + i % 50);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The CSV fixtures parse into the same earthquakes as their GeoJSON counterparts, so the parse
+ * benchmark compares like with like.
+ */
+public class EarthquakeCsvReaderTest {
+
+    @Test
+    public void csvMatchesGeoJsonOnFixtures() throws IOException {
+        for (int featureCount : new int[]{10, 1000, 5000}) {
+            List<Earthquake> fromJson = QueryUtils.readEarthquakesFromStream(
+                    new ByteArrayInputStream(Fixtures.load(featureCount)));
+            List<Earthquake> fromCsv = EarthquakeCsvReader.read(
+                    new ByteArrayInputStream(Fixtures.loadCsv(featureCount)), true);
+
+            assertEquals(featureCount, fromJson.size());
+            assertEquals("Fixture of " + featureCount, describe(fromJson), describe(fromCsv));
+        }
+    }
+
+    @Test
+    public void csvMatchesGeoJsonOnEdgeCases() throws IOException {
+        for (boolean earthquakesOnly : new boolean[]{false, true}) {
+            List<Earthquake> fromJson = QueryUtils.readEarthquakesFromStream(
+                    new ByteArrayInputStream(Fixtures.loadEdgeCases(false)), earthquakesOnly);
+            List<Earthquake> fromCsv = EarthquakeCsvReader.read(
+                    new ByteArrayInputStream(Fixtures.loadEdgeCases(true)), earthquakesOnly);
+
+            // Null magnitudes skipped, deletions kept; other event types only without the filter
+            assertEquals(earthquakesOnly ? 4 : 5, fromCsv.size());
+            assertEquals("Earthquakes only: " + earthquakesOnly, describe(fromJson), describe(fromCsv));
+        }
+    }
+
+    /** Every field of every earthquake, independent of order */
+    private static Set<String> describe(List<Earthquake> earthquakes) {
+        Set<String> descriptions = new HashSet<>();
+        for (Earthquake earthquake : earthquakes) {
+            descriptions.add(earthquake.getId() + "|" + earthquake.getMagnitude() + "|" + earthquake.getLocation()
+                    + "|" + earthquake.getTimeInMilliseconds() + "|" + earthquake.getUpdatedInMilliseconds()
+                    + "|" + earthquake.getUrl() + "|" + earthquake.isDeleted() + "|" + earthquake.getLatitude()
+                    + "|" + earthquake.getLongitude() + "|" + earthquake.getDepthKm());
+        }
+        return descriptions;
+    }
+}
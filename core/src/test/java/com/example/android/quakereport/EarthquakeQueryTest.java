@@ -0,0 +1,122 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Canonical URLs: parameter order, number and time formatting, and encoding.
+ */
+public class EarthquakeQueryTest {
+
+    /** 2017-11-16T00:00:00.000Z */
+    private static final long TIME = 1510790400000L;
+
+    @Test
+    public void defaultsAreGeoJsonEarthquakes() {
+        assertEquals(EarthquakeQuery.ENDPOINT + "?eventtype=earthquake&format=geojson",
+                new EarthquakeQuery.Builder().build().toUrl());
+    }
+
+    @Test
+    public void parametersAreSortedWhateverTheCallOrder() {
+        EarthquakeQuery first = new EarthquakeQuery.Builder()
+                .limit(20)
+                .minMagnitude(6)
+                .orderBy(EarthquakeQuery.OrderBy.TIME)
+                .startTime(TIME)
+                .build();
+        EarthquakeQuery second = new EarthquakeQuery.Builder()
+                .startTime(TIME)
+                .orderBy(EarthquakeQuery.OrderBy.TIME)
+                .minMagnitude(6)
+                .limit(20)
+                .build();
+
+        assertEquals(EarthquakeQuery.ENDPOINT + "?eventtype=earthquake&format=geojson&limit=20"
+                + "&minmagnitude=6&orderby=time&starttime=2017-11-16T00%3A00%3A00.000", first.toUrl());
+        assertEquals(first.toUrl(), second.toUrl());
+        assertEquals(first, second);
+        assertEquals(first.hashCode(), second.hashCode());
+    }
+
+    @Test
+    public void equalNumbersAreFormattedAlike() {
+        assertEquals("6", EarthquakeQuery.formatNumber(6));
+        assertEquals("6", EarthquakeQuery.formatNumber(6.00));
+        assertEquals("4.5", EarthquakeQuery.formatNumber(4.50));
+        assertEquals("0", EarthquakeQuery.formatNumber(-0.0));
+        assertEquals("0.0001", EarthquakeQuery.formatNumber(1e-4));
+        assertEquals("-122.5", EarthquakeQuery.formatNumber(-122.5));
+        assertEquals(new EarthquakeQuery.Builder().minMagnitude(6).build(),
+                new EarthquakeQuery.Builder().minMagnitude(6.0).build());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonFiniteNumbersAreRejected() {
+        new EarthquakeQuery.Builder().minMagnitude(Double.NaN);
+    }
+
+    @Test
+    public void timesAreUtcAndRoundTrip() {
+        String formatted = EarthquakeQuery.formatTime(TIME + 1234L);
+
+        assertEquals("2017-11-16T00:00:01.234", formatted);
+        assertEquals(TIME + 1234L, EarthquakeQuery.parseTime(formatted));
+        assertEquals(TIME, new EarthquakeQuery.Builder().startTime(TIME).build().getTimeParameter("starttime", 0L));
+    }
+
+    @Test
+    public void valuesAreEncoded() {
+        String url = new EarthquakeQuery.Builder().eventType("quarry blast&x=1").build().toUrl();
+
+        assertEquals(EarthquakeQuery.ENDPOINT + "?eventtype=quarry%20blast%26x%3D1&format=geojson", url);
+    }
+
+    @Test
+    public void nullAndFalseRemoveParameters() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder()
+                .eventType(null)
+                .includeDeleted(true)
+                .orderBy(EarthquakeQuery.OrderBy.MAGNITUDE)
+                .build()
+                .buildUpon()
+                .includeDeleted(false)
+                .orderBy(null)
+                .build();
+
+        assertEquals(EarthquakeQuery.ENDPOINT + "?format=geojson", query.toUrl());
+        assertNull(query.getParameter("eventtype"));
+    }
+
+    @Test
+    public void buildUponLeavesTheOriginalAlone() {
+        EarthquakeQuery original = new EarthquakeQuery.Builder().minMagnitude(5).build();
+
+        EarthquakeQuery derived = original.buildUpon().limit(10).build();
+
+        assertNotEquals(original, derived);
+        assertNull(original.getParameter("limit"));
+        assertEquals("10", derived.getParameter("limit"));
+    }
+
+    @Test
+    public void equalQueriesShareACacheKey() {
+        EarthquakeQuery query = new EarthquakeQuery.Builder().minMagnitude(6).limit(20).build();
+        String reordered = EarthquakeQuery.ENDPOINT + "?limit=20&minmagnitude=6&format=geojson&eventtype=earthquake";
+
+        assertEquals(EarthquakeResponseCache.keyFor(query.toUrl()), EarthquakeResponseCache.keyFor(reordered));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void offsetIsOneBased() {
+        new EarthquakeQuery.Builder().offset(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invertedBoundingBoxIsRejected() {
+        new EarthquakeQuery.Builder().boundingBox(10, -10, 0, 10);
+    }
+}
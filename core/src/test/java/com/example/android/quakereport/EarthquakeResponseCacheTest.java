@@ -0,0 +1,256 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Misses, hits and 304 revalidation against a stub server, the cached copy served as stale while
+ * the server fails, and recovery from interrupted writes.
+ */
+public class EarthquakeResponseCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private StubServer mServer;
+    private File mDirectory;
+    private EarthquakeResponseCache mCache;
+
+    /** ETag of the body the server currently holds */
+    private volatile String mETag = "\"v1\"";
+    private volatile byte[] mBody;
+
+    /** Whether the server answers every request with a 503 */
+    private volatile boolean mUnavailable = false;
+
+    @Before
+    public void setUp() throws IOException {
+        mBody = Fixtures.load(10);
+        mServer = new StubServer();
+        mServer.setHandler(new StubServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                if (mUnavailable) {
+                    StubServer.respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE, null, false);
+                    return;
+                }
+                if (mETag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    StubServer.respond(exchange, HttpURLConnection.HTTP_NOT_MODIFIED, null, false);
+                    return;
+                }
+                exchange.getResponseHeaders().set("ETag", mETag);
+                StubServer.respond(exchange, HttpURLConnection.HTTP_OK, mBody, true);
+            }
+        });
+        mDirectory = mFolder.newFolder("responses");
+        mCache = new EarthquakeResponseCache(mDirectory, 1024 * 1024);
+        QueryUtils.setResponseCache(mCache);
+        // One attempt, and a circuit of its own that never opens during a test
+        QueryUtils.setResilience(new FetchResilience.Builder().maxAttempts(1).circuitBreaker(100, 60000L).build());
+    }
+
+    @After
+    public void tearDown() {
+        QueryUtils.setResponseCache(null);
+        QueryUtils.setResilience(new FetchResilience.Builder().build());
+        mServer.close();
+    }
+
+    @Test
+    public void missStoresTheBodyWithItsETag() throws IOException {
+        URL url = mServer.url("/query?format=geojson&limit=10");
+
+        List<Earthquake> earthquakes = QueryUtils.fetchEarthquakes(url);
+
+        assertEquals(10, earthquakes.size());
+        assertNull(mServer.getRequests().get(0).getHeader("If-None-Match"));
+        EarthquakeResponseCache.Entry entry = mCache.get(url.toString());
+        assertNotNull(entry);
+        assertEquals("\"v1\"", entry.getETag());
+        assertEquals(mBody.length, entry.getBodyFile().length());
+    }
+
+    @Test
+    public void hitIsRevalidatedAndServedOn304() throws IOException {
+        URL url = mServer.url("/query?format=geojson&limit=10");
+        List<Earthquake> first = QueryUtils.fetchEarthquakes(url);
+
+        List<Earthquake> second = QueryUtils.fetchEarthquakes(url);
+
+        assertEquals(2, mServer.getRequestCount());
+        assertEquals("\"v1\"", mServer.getRequests().get(1).getHeader("If-None-Match"));
+        assertEquals(QueryUtilsTest.describe(first), QueryUtilsTest.describe(second));
+    }
+
+    @Test
+    public void hitIsServedFromTheFileWhenTheParsedResultIsGone() throws IOException {
+        URL url = mServer.url("/query?format=geojson&limit=10");
+        List<Earthquake> first = QueryUtils.fetchEarthquakes(url);
+        // A new cache over the same directory, as after a restart
+        QueryUtils.setResponseCache(new EarthquakeResponseCache(mDirectory, 1024 * 1024));
+
+        List<Earthquake> second = QueryUtils.fetchEarthquakes(url);
+
+        assertEquals("\"v1\"", mServer.getRequests().get(1).getHeader("If-None-Match"));
+        assertEquals(QueryUtilsTest.describe(first), QueryUtilsTest.describe(second));
+    }
+
+    @Test
+    public void changedResponseReplacesTheEntry() throws IOException {
+        URL url = mServer.url("/query?format=geojson&limit=10");
+        QueryUtils.fetchEarthquakes(url);
+        mETag = "\"v2\"";
+        mBody = Fixtures.load(1000);
+
+        List<Earthquake> earthquakes = QueryUtils.fetchEarthquakes(url);
+
+        assertEquals(1000, earthquakes.size());
+        EarthquakeResponseCache.Entry entry = mCache.get(url.toString());
+        assertEquals("\"v2\"", entry.getETag());
+        assertEquals(mBody.length, entry.getBodyFile().length());
+    }
+
+    @Test
+    public void bodyIsCopiedWhileItIsParsed() throws IOException {
+        // Trailing bytes the parser never reads must still reach the cache
+        mBody = (new String(Fixtures.load(10), "UTF-8") + "\n\n").getBytes("UTF-8");
+        URL url = mServer.url("/query?format=geojson&limit=10");
+
+        QueryUtils.fetchEarthquakes(url);
+
+        assertArrayEquals(mBody, read(mCache.get(url.toString()).getBodyFile()));
+        assertEquals(2, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void bodyThatFailsToParseIsNotCached() throws IOException {
+        mBody = "{\"features\":[{\"properties\":{\"mag\":".getBytes("UTF-8");
+        URL url = mServer.url("/query?format=geojson&limit=10");
+
+        try {
+            QueryUtils.fetchEarthquakes(url);
+            fail("Parsed a truncated response");
+        } catch (IOException expected) {
+            // Nothing to fall back to
+        }
+
+        assertNull(mCache.get(url.toString()));
+        assertEquals(0, mDirectory.listFiles().length);
+    }
+
+    @Test
+    public void equivalentUrlsShareAnEntry() throws IOException {
+        QueryUtils.fetchEarthquakes(mServer.url("/query?format=geojson&limit=10"));
+
+        QueryUtils.fetchEarthquakes(mServer.url("/query?limit=10&format=geojson"));
+
+        assertEquals("\"v1\"", mServer.getRequests().get(1).getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void cachedCopyIsServedAsStaleWhileTheServerFails() throws IOException {
+        URL url = mServer.url("/query?format=geojson&limit=10");
+        QueryUtils.fetchEarthquakes(url);
+        mUnavailable = true;
+
+        try {
+            QueryUtils.fetchEarthquakes(url);
+            fail("Expected a StaleResultException");
+        } catch (StaleResultException e) {
+            List<Earthquake> cached = e.getResult();
+            assertEquals(10, cached.size());
+            assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, ((HttpStatusException) e.getCause()).getCode());
+        }
+    }
+
+    @Test
+    public void failureWithoutACachedCopyIsThrown() throws IOException {
+        mUnavailable = true;
+
+        try {
+            QueryUtils.fetchEarthquakes(mServer.url("/query?format=geojson&limit=10"));
+            fail("Expected an HttpStatusException");
+        } catch (HttpStatusException e) {
+            assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, e.getCode());
+        }
+    }
+
+    @Test
+    public void leftoversOfAnInterruptedWriteAreDeletedOnOpen() throws IOException {
+        File directory = mFolder.newFolder("interrupted");
+        EarthquakeResponseCache cache = new EarthquakeResponseCache(directory, 1024 * 1024);
+        String url = "https://earthquake.usgs.gov/fdsnws/event/1/query?limit=10";
+        cache.put(url, new ByteArrayInputStream(mBody), "\"v1\"", null);
+        String key = EarthquakeResponseCache.keyFor(url);
+        // A crash after the old validators were deleted, with the next download half written
+        assertTrue(new File(directory, key + ".meta").delete());
+        write(new File(directory, key + "123.tmp"), new byte[100]);
+
+        EarthquakeResponseCache reopened = new EarthquakeResponseCache(directory, 1024 * 1024);
+
+        // A body without validators is a miss, never a body paired with another body's ETag
+        assertNull(reopened.get(url));
+        assertEquals(0, directory.listFiles().length);
+    }
+
+    @Test
+    public void entriesOverTheSizeBoundAreEvicted() throws IOException {
+        EarthquakeResponseCache cache = new EarthquakeResponseCache(mFolder.newFolder("small"),
+                mBody.length * 2L);
+        for (int i = 0; i < 3; i++) {
+            cache.put("https://example.com/query?page=" + i, new ByteArrayInputStream(mBody), "\"" + i + "\"", null);
+        }
+
+        assertTrue(cache.size() <= mBody.length * 2L);
+        // The entry just written is kept; one of the older two is evicted
+        assertNotNull(cache.get("https://example.com/query?page=2"));
+        assertTrue(cache.get("https://example.com/query?page=0") == null
+                || cache.get("https://example.com/query?page=1") == null);
+    }
+
+    private static byte[] read(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void write(File file, byte[] bytes) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(bytes);
+        } finally {
+            output.close();
+        }
+    }
+}
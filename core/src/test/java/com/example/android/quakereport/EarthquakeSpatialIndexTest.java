@@ -0,0 +1,149 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Radius and nearest queries against a brute-force haversine oracle, including query points
+ * near the poles and the date line.
+ */
+public class EarthquakeSpatialIndexTest {
+
+    private static final int EVENT_COUNT = 5000;
+
+    @Test
+    public void withinRadiusMatchesOracle() {
+        Random random = new Random(7);
+        EarthquakeColumns columns = randomEvents(random);
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(columns);
+
+        for (double[] point : queryPoints(random)) {
+            for (double radiusKm : new double[]{10.0, 300.0, 2500.0, 20000.0}) {
+                EarthquakeSpatialIndex.Result result = index.withinRadius(point[0], point[1], radiusKm);
+
+                double[] expected = oracleDistances(columns, point[0], point[1]);
+                int expectedCount = 0;
+                while (expectedCount < expected.length && expected[expectedCount] <= radiusKm) {
+                    expectedCount++;
+                }
+                assertEquals(Arrays.toString(point) + " within " + radiusKm, expectedCount, result.size());
+                assertNearestFirst(columns, result, point);
+            }
+        }
+    }
+
+    @Test
+    public void nearestMatchesOracle() {
+        Random random = new Random(11);
+        EarthquakeColumns columns = randomEvents(random);
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(columns);
+
+        for (double[] point : queryPoints(random)) {
+            for (int k : new int[]{1, 10, 100}) {
+                EarthquakeSpatialIndex.Result result = index.nearest(point[0], point[1], k);
+
+                double[] expected = Arrays.copyOf(oracleDistances(columns, point[0], point[1]), k);
+                double[] actual = new double[result.size()];
+                for (int i = 0; i < actual.length; i++) {
+                    actual[i] = result.getDistanceKm(i);
+                }
+                assertArrayEquals(Arrays.toString(point) + " k=" + k, expected, actual, 0.0);
+                assertNearestFirst(columns, result, point);
+            }
+        }
+    }
+
+    @Test
+    public void distancesCloserThanAFloatCanTellApartAreOrdered() {
+        // In one grid cell, about 9,000 km away and 0.1 m apart; as floats both distances are equal
+        EarthquakeColumns columns = new EarthquakeColumns();
+        columns.add(event("farther", 80.5, 0.0));
+        columns.add(event("nearer", 80.5 - 1e-6, 0.0));
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(columns);
+
+        EarthquakeSpatialIndex.Result result = index.nearest(0.0, 0.0, 2);
+
+        assertEquals(1, result.getRow(0));
+        assertEquals(0, result.getRow(1));
+        assertTrue(result.getDistanceKm(0) < result.getDistanceKm(1));
+    }
+
+    @Test
+    public void eventsWithoutCoordinatesAreNotIndexed() {
+        EarthquakeColumns columns = new EarthquakeColumns();
+        columns.add(event("located", 10.0, 20.0));
+        columns.add(new Earthquake("unlocated", 5.0, "Somewhere", 0L, 0L, null, false));
+
+        EarthquakeSpatialIndex index = new EarthquakeSpatialIndex(columns);
+
+        assertEquals(1, index.size());
+        assertEquals(1, index.nearest(0.0, 0.0, 5).size());
+    }
+
+    /** Check the result is sorted and each reported distance is the haversine distance of its row */
+    private static void assertNearestFirst(EarthquakeColumns columns, EarthquakeSpatialIndex.Result result,
+                                           double[] point) {
+        for (int i = 0; i < result.size(); i++) {
+            int row = result.getRow(i);
+            assertEquals(EarthquakeSpatialIndex.distanceKm(point[0], point[1],
+                    columns.getLatitude(row), columns.getLongitude(row)), result.getDistanceKm(i), 0.0);
+            if (i > 0) {
+                assertTrue(result.getDistanceKm(i - 1) <= result.getDistanceKm(i));
+            }
+        }
+    }
+
+    /** Distance of every event from the point, sorted */
+    private static double[] oracleDistances(EarthquakeColumns columns, double latitude, double longitude) {
+        double[] distances = new double[columns.size()];
+        for (int row = 0; row < columns.size(); row++) {
+            distances[row] = EarthquakeSpatialIndex.distanceKm(latitude, longitude,
+                    columns.getLatitude(row), columns.getLongitude(row));
+        }
+        Arrays.sort(distances);
+        return distances;
+    }
+
+    private static List<double[]> queryPoints(Random random) {
+        List<double[]> points = new ArrayList<>();
+        points.add(new double[]{89.9, 10.0});
+        points.add(new double[]{-89.5, -170.0});
+        points.add(new double[]{0.0, 179.95});
+        points.add(new double[]{35.0, -179.9});
+        for (int i = 0; i < 20; i++) {
+            points.add(new double[]{random.nextDouble() * 180.0 - 90.0, random.nextDouble() * 360.0 - 180.0});
+        }
+        return points;
+    }
+
+    /** Uniform over the sphere, with a cluster across the date line */
+    private static EarthquakeColumns randomEvents(Random random) {
+        EarthquakeColumns columns = new EarthquakeColumns(EVENT_COUNT);
+        for (int i = 0; i < EVENT_COUNT; i++) {
+            double latitude;
+            double longitude;
+            if (i % 5 == 0) {
+                latitude = random.nextDouble() * 10.0 - 5.0;
+                longitude = random.nextDouble() * 10.0 + 175.0;
+                longitude = longitude >= 180.0 ? longitude - 360.0 : longitude;
+            } else {
+                latitude = Math.toDegrees(Math.asin(random.nextDouble() * 2.0 - 1.0));
+                longitude = random.nextDouble() * 360.0 - 180.0;
+            }
+            columns.add(event("ev" + i, latitude, longitude));
+        }
+        return columns;
+    }
+
+    private static Earthquake event(String id, double latitude, double longitude) {
+        return new Earthquake(id, 5.0, "Somewhere", 0L, 0L, null, false, latitude, longitude, 10.0);
+    }
+}
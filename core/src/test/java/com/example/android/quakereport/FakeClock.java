@@ -0,0 +1,27 @@
+package com.example.android.quakereport;
+
+/**
+ * A {@link Clock} that only moves when a test moves it.
+ */
+public class FakeClock implements Clock {
+
+    private long mNowMillis;
+
+    public FakeClock(long startMillis) {
+        this.mNowMillis = startMillis;
+    }
+
+    @Override
+    public synchronized long currentTimeMillis() {
+        return mNowMillis;
+    }
+
+    /** Move the clock forward, or back for a negative amount */
+    public synchronized void advance(long millis) {
+        mNowMillis += millis;
+    }
+
+    public synchronized void set(long nowMillis) {
+        mNowMillis = nowMillis;
+    }
+}
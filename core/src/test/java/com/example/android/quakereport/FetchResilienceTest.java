@@ -0,0 +1,276 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Retries of 5xx responses, hedging of slow ones, attempt timeouts and the circuit breaker,
+ * against a stub server.
+ */
+public class FetchResilienceTest {
+
+    private static final long TIMEOUT_MILLIS = 10000;
+
+    /** How long the slow responses take */
+    private static final long SLOW_MILLIS = 3000;
+
+    private StubServer mServer;
+
+    /** Number of 503s "/flaky" answers before it recovers */
+    private final AtomicInteger mFlakyFailures = new AtomicInteger();
+
+    /** Number of requests to "/slow-once" so far; only the first is slow */
+    private final AtomicInteger mSlowOnceRequests = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubServer();
+        mServer.setHandler(new StubServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                if (path.equals("/unavailable")
+                        || (path.equals("/flaky") && mFlakyFailures.getAndDecrement() > 0)) {
+                    StubServer.respond(exchange, HttpURLConnection.HTTP_UNAVAILABLE, "Busy".getBytes("UTF-8"), false);
+                } else if (path.equals("/missing")) {
+                    StubServer.respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, "No such event".getBytes("UTF-8"), false);
+                } else if (path.equals("/slow-once") && mSlowOnceRequests.getAndIncrement() == 0) {
+                    StubServer.pause(SLOW_MILLIS);
+                    StubServer.respond(exchange, HttpURLConnection.HTTP_OK, "slow".getBytes("UTF-8"), false);
+                } else if (path.equals("/trickle")) {
+                    // A byte every 50 ms: no single read ever times out
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, 0);
+                    OutputStream output = exchange.getResponseBody();
+                    for (int i = 0; i < SLOW_MILLIS / 50 && !Thread.currentThread().isInterrupted(); i++) {
+                        output.write('x');
+                        output.flush();
+                        StubServer.pause(50);
+                    }
+                    output.close();
+                } else {
+                    StubServer.respond(exchange, HttpURLConnection.HTTP_OK, "ok".getBytes("UTF-8"), false);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Test
+    public void serverErrorsAreRetried() throws IOException {
+        mFlakyFailures.set(2);
+        FetchResilience resilience = builder().maxAttempts(3).build();
+
+        String body = resilience.call(get("/flaky", null), null);
+
+        assertEquals("ok", body);
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void clientErrorIsNeitherRetriedNorCounted() throws IOException {
+        FetchResilience resilience = builder().maxAttempts(3).circuitBreaker(1, 60000L).build();
+
+        try {
+            resilience.call(get("/missing", null), null);
+            fail("Expected an HttpStatusException");
+        } catch (HttpStatusException e) {
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, e.getCode());
+        }
+
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void slowAttemptIsHedged() throws IOException {
+        FetchResilience resilience = builder().hedgeAt(0.5, 5).build();
+        // Latency history for the percentile
+        for (int i = 0; i < 5; i++) {
+            resilience.call(get("/ok", null), null);
+        }
+
+        long startMillis = System.currentTimeMillis();
+        String body = resilience.call(get("/slow-once", null), null);
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+        assertEquals("ok", body);
+        assertEquals(7, mServer.getRequestCount());
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < SLOW_MILLIS / 2);
+    }
+
+    @Test
+    public void attemptTimesOutAtTheDeadline() throws IOException, InterruptedException {
+        FetchResilience resilience = builder().maxAttempts(1).deadline(500L).build();
+        CountDownLatch attemptFinished = new CountDownLatch(1);
+
+        long startMillis = System.currentTimeMillis();
+        try {
+            resilience.call(get("/trickle", attemptFinished), null);
+            fail("Expected a SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            // The call gave up
+        }
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < SLOW_MILLIS / 2);
+        // The abandoned attempt doesn't keep reading the body until it ends
+        assertTrue(attemptFinished.await(SLOW_MILLIS / 2, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void openCircuitServesTheFallbackAsStale() throws IOException {
+        FetchResilience resilience = builder().maxAttempts(1).circuitBreaker(2, 60000L).build();
+        for (int i = 0; i < 2; i++) {
+            try {
+                resilience.call(get("/unavailable", null), null);
+                fail("Expected an HttpStatusException");
+            } catch (HttpStatusException e) {
+                assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, e.getCode());
+            }
+        }
+        assertEquals(CircuitBreaker.State.OPEN, resilience.getCircuitBreaker().getState());
+
+        try {
+            resilience.call(get("/ok", null), new Callable<String>() {
+                @Override
+                public String call() {
+                    return "cached";
+                }
+            });
+            fail("Expected a StaleResultException");
+        } catch (StaleResultException e) {
+            assertEquals("cached", e.<String>getResult());
+        }
+
+        // The open circuit kept the last call off the network
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void malformedResponseIsNeitherRetriedNorCounted() throws IOException {
+        FetchResilience resilience = builder().maxAttempts(3).circuitBreaker(1, 60000L).build();
+        final FetchResilience.Request<String> get = get("/ok", null);
+
+        try {
+            resilience.call(new FetchResilience.Request<String>() {
+                @Override
+                public String send(long timeoutMillis) throws Exception {
+                    get.send(timeoutMillis);
+                    throw new MalformedResponseException("Not an earthquake feed");
+                }
+            }, null);
+            fail("Expected a MalformedResponseException");
+        } catch (MalformedResponseException e) {
+            // The endpoint answered; its payload was at fault
+        }
+
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getCircuitBreaker().getState());
+    }
+
+    @Test
+    public void trialAbandonedBeforeItStartsLetsTheNextOneThrough() throws IOException {
+        FakeClock clock = new FakeClock(0L);
+        final boolean[] holding = {false};
+        // Runs attempts on their own thread, or holds them in the queue forever
+        Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                if (!holding[0]) {
+                    new Thread(command).start();
+                }
+            }
+        };
+        FetchResilience resilience = builder().maxAttempts(1).deadline(200L).circuitBreaker(1, 60000L)
+                .clock(clock).executor(executor).build();
+        try {
+            resilience.call(get("/unavailable", null), null);
+            fail("Expected an HttpStatusException");
+        } catch (HttpStatusException e) {
+            assertEquals(HttpURLConnection.HTTP_UNAVAILABLE, e.getCode());
+        }
+        clock.advance(60000L);
+
+        // The trial waits for a thread past the deadline and is cancelled unstarted
+        holding[0] = true;
+        try {
+            resilience.call(get("/ok", null), null);
+            fail("Expected a SocketTimeoutException");
+        } catch (SocketTimeoutException e) {
+            // The call gave up
+        }
+        holding[0] = false;
+
+        assertEquals("ok", resilience.call(get("/ok", null), null));
+        assertEquals(CircuitBreaker.State.CLOSED, resilience.getCircuitBreaker().getState());
+    }
+
+    /** Fast backoff and a fixed seed, so the tests don't wait or vary */
+    private static FetchResilience.Builder builder() {
+        return new FetchResilience.Builder()
+                .backoff(1L, 10L)
+                .deadline(TIMEOUT_MILLIS)
+                .hedgeAt(0.0, 0)
+                .random(new Random(20));
+    }
+
+    /**
+     * A request reading the whole body of a path, within the attempt's time limit.
+     *
+     * @param finished is counted down when the attempt ends, however it ends; may be null.
+     */
+    private FetchResilience.Request<String> get(final String path, final CountDownLatch finished) {
+        return new FetchResilience.Request<String>() {
+            @Override
+            public String send(long timeoutMillis) throws IOException {
+                HttpTransport.Response response = HttpTransport.get(mServer.url(path), null, timeoutMillis);
+                try {
+                    if (response.getCode() != HttpURLConnection.HTTP_OK) {
+                        throw new HttpStatusException(response.getCode());
+                    }
+                    return new String(readFully(response.getBody()), "UTF-8");
+                } finally {
+                    response.close();
+                    if (finished != null) {
+                        finished.countDown();
+                    }
+                }
+            }
+        };
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[HttpTransport.BUFFER_SIZE];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            bytes.write(buffer, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.android.quakereport;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads the bundled fixtures: USGS-shaped responses of 10 and 1,000 features, as GeoJSON and
+ * as CSV holding the same events. Larger sizes are built by repeating the 1,000-feature
+ * fixture with distinct event ids, so the repository doesn't carry a 50 MB file.
+ *
+ * The edge-case fixture is a hand-built response of the events the others lack, in both
+ * formats: see {@link #EDGE_CASE_IDS}.
+ */
+final class Fixtures {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** The largest bundled fixture; larger sizes repeat it */
+    private static final int LARGEST_BUNDLED = 1000;
+
+    /**
+     * Events of the edge-case fixture, in order: an earthquake; an earthquake with a null
+     * magnitude; a quarry blast; an explosion with a null magnitude; a deleted earthquake; a
+     * deleted earthquake with a null magnitude and place; an earthquake with a null place.
+     */
+    static final String[] EDGE_CASE_IDS = {"us1000aaa1", "ci38000002", "uu60000003", "nc73000004",
+            "us1000ddd5", "ak20000006", "hv70000007"};
+
+    private Fixtures() {
+    }
+
+    /**
+     * Return the response body of a fixture with {@code featureCount} features.
+     */
+    static byte[] load(int featureCount) throws IOException {
+        if (featureCount <= LARGEST_BUNDLED) {
+            return readResource("/fixtures/earthquakes-" + featureCount + ".geojson.gz");
+        }
+        if (featureCount % LARGEST_BUNDLED != 0) {
+            throw new IllegalArgumentException("Not a multiple of " + LARGEST_BUNDLED + ": " + featureCount);
+        }
+
+        JsonObject base = new JsonParser().parse(new String(readResource(
+                "/fixtures/earthquakes-" + LARGEST_BUNDLED + ".geojson.gz"), UTF_8)).getAsJsonObject();
+        JsonArray baseFeatures = base.getAsJsonArray("features");
+        JsonArray features = new JsonArray();
+        for (int copy = 0; copy < featureCount / LARGEST_BUNDLED; copy++) {
+            for (JsonElement baseFeature : baseFeatures) {
+                JsonObject feature = baseFeature.getAsJsonObject().deepCopy();
+                String id = feature.get("id").getAsString() + "-" + copy;
+                feature.addProperty("id", id);
+                // USGS event pages are addressed by id
+                feature.getAsJsonObject("properties").addProperty("url", EarthquakeCsvReader.EVENT_PAGE_PREFIX + id);
+                features.add(feature);
+            }
+        }
+        base.add("features", features);
+        base.getAsJsonObject("metadata").addProperty("count", featureCount);
+        return base.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Return the CSV response body of a fixture with {@code featureCount} events; the same
+     * events as {@link #load(int)}.
+     */
+    static byte[] loadCsv(int featureCount) throws IOException {
+        if (featureCount <= LARGEST_BUNDLED) {
+            return readResource("/fixtures/earthquakes-" + featureCount + ".csv.gz");
+        }
+        if (featureCount % LARGEST_BUNDLED != 0) {
+            throw new IllegalArgumentException("Not a multiple of " + LARGEST_BUNDLED + ": " + featureCount);
+        }
+
+        String[] lines = new String(readResource("/fixtures/earthquakes-" + LARGEST_BUNDLED + ".csv.gz"), UTF_8)
+                .split("\n");
+        int idColumn = Arrays.asList(lines[0].split(",")).indexOf("id");
+        StringBuilder csv = new StringBuilder(lines[0]).append('\n');
+        for (int copy = 0; copy < featureCount / LARGEST_BUNDLED; copy++) {
+            for (int i = 1; i < lines.length; i++) {
+                // Same suffix as the GeoJSON copies, at the end of the id field
+                int idEnd = findFieldEnd(lines[i], idColumn);
+                csv.append(lines[i], 0, idEnd).append('-').append(copy).append(lines[i], idEnd, lines[i].length())
+                        .append('\n');
+            }
+        }
+        return csv.toString().getBytes(UTF_8);
+    }
+
+    /**
+     * Return the response body of the edge-case fixture, as GeoJSON or as CSV.
+     */
+    static byte[] loadEdgeCases(boolean csv) throws IOException {
+        return readResource("/fixtures/edge-cases." + (csv ? "csv" : "geojson") + ".gz");
+    }
+
+    /** Return the index just past a field of a CSV line, skipping commas inside quotes */
+    private static int findFieldEnd(String line, int column) {
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == ',' && !quoted && column-- == 0) {
+                return i;
+            }
+        }
+        return line.length();
+    }
+
+    private static byte[] readResource(String name) throws IOException {
+        InputStream resource = Fixtures.class.getResourceAsStream(name);
+        if (resource == null) {
+            throw new FileNotFoundException(name);
+        }
+        InputStream inputStream = new GZIPInputStream(resource);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[HttpTransport.BUFFER_SIZE];
+            int count;
+            while ((count = inputStream.read(buffer)) != -1) {
+                bytes.write(buffer, 0, count);
+            }
+            return bytes.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+}
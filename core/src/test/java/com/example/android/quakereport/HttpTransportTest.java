@@ -0,0 +1,150 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Gzip decoding, byte counts and connection reuse against a stub server.
+ */
+public class HttpTransportTest {
+
+    /** How long the slow response stalls halfway through its body */
+    private static final long STALL_MILLIS = 3000;
+
+    private StubServer mServer;
+    private byte[] mBody;
+
+    @Before
+    public void setUp() throws IOException {
+        mBody = Fixtures.load(1000);
+        mServer = new StubServer();
+        mServer.setHandler(new StubServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                if (path.equals("/not-modified")) {
+                    StubServer.respond(exchange, HttpURLConnection.HTTP_NOT_MODIFIED, null, false);
+                } else if (path.equals("/missing")) {
+                    StubServer.respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, "No such event".getBytes("UTF-8"), false);
+                } else if (path.equals("/slow")) {
+                    exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, mBody.length);
+                    OutputStream output = exchange.getResponseBody();
+                    output.write(mBody, 0, mBody.length / 2);
+                    output.flush();
+                    StubServer.pause(STALL_MILLIS);
+                    output.write(mBody, mBody.length / 2, mBody.length - mBody.length / 2);
+                    output.close();
+                } else {
+                    StubServer.respond(exchange, HttpURLConnection.HTTP_OK, mBody, true);
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mServer.close();
+    }
+
+    @Test
+    public void gzipBodyIsDecodedAndCounted() throws IOException {
+        HttpTransport.Response response = HttpTransport.get(mServer.url("/query"), null);
+        byte[] body;
+        try {
+            body = readFully(response.getBody());
+        } finally {
+            response.close();
+        }
+
+        assertEquals("gzip", mServer.getRequests().get(0).getHeader("Accept-Encoding"));
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertArrayEquals(mBody, body);
+        assertEquals(mBody.length, response.getBodyBytes());
+        assertTrue(response.getWireBytes() > 0 && response.getWireBytes() < mBody.length / 2);
+    }
+
+    @Test
+    public void bodyReadToTheEndReusesTheConnection() throws IOException {
+        for (int i = 0; i < 3; i++) {
+            HttpTransport.Response response = HttpTransport.get(mServer.url("/query?page=" + i), null);
+            try {
+                readFully(response.getBody());
+            } finally {
+                response.close();
+            }
+        }
+
+        assertEquals(3, mServer.getRequestCount());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void abandonedBodyIsNotReadOutOnClose() throws IOException {
+        HttpTransport.Response response = HttpTransport.get(mServer.url("/slow"), null);
+        response.getBody().read(new byte[1024]);
+
+        long startMillis = System.currentTimeMillis();
+        response.close();
+        long closeMillis = System.currentTimeMillis() - startMillis;
+
+        assertTrue("close() took " + closeMillis + " ms", closeMillis < STALL_MILLIS / 2);
+        fetch("/query");
+        assertEquals(2, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void unopenedBodyIsNotReused() throws IOException {
+        HttpTransport.get(mServer.url("/query"), null).close();
+
+        fetch("/query");
+
+        assertEquals(2, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void notModifiedAndErrorResponsesReuseTheConnection() throws IOException {
+        HttpTransport.Response notModified = HttpTransport.get(mServer.url("/not-modified"), null);
+        notModified.close();
+        HttpTransport.Response missing = HttpTransport.get(mServer.url("/missing"), null);
+        missing.close();
+
+        fetch("/query");
+
+        assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, notModified.getCode());
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, missing.getCode());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    private void fetch(String pathAndQuery) throws IOException {
+        HttpTransport.Response response = HttpTransport.get(mServer.url(pathAndQuery), null);
+        try {
+            readFully(response.getBody());
+        } finally {
+            response.close();
+        }
+    }
+
+    private static byte[] readFully(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] buffer = new byte[HttpTransport.BUFFER_SIZE];
+        int count;
+        while ((count = input.read(buffer)) != -1) {
+            bytes.write(buffer, 0, count);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.android.quakereport;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The JSONObject parser the app used before {@link QueryUtils#readEarthquakesFromStream}; kept
+ * as the reference the streaming parser is tested and benchmarked against.
+ */
+final class JsonObjectParser {
+
+    private static final String LOG_TAG = JsonObjectParser.class.getSimpleName();
+
+    private static final String STATUS_DELETED = "deleted";
+
+    private JsonObjectParser() {
+    }
+
+    /**
+     * Parse a complete GeoJSON response String into a list of {@link Earthquake} objects,
+     * by building a full JSONObject tree.
+     *
+     * @param queryString is the full response body from the USGS server.
+     * @return list of earthquakes; empty if the String is null, empty or malformed.
+     */
+    static List<Earthquake> parse(String queryString) {
+        // Create an empty ArrayList that we can start adding earthquakes to
+        List<Earthquake> earthquakes = new ArrayList<>();
+
+        if (queryString != null && queryString != "") {
+            // Try to parse the queryString response. If there's a problem with the way the JSON
+            // is formatted, a JSONException exception object will be thrown.
+            // Catch the exception so the app doesn't crash, and print the error message to the logs.
+            try {
+
+                // Parse the response given by the SAMPLE_JSON_RESPONSE string and
+                // build up a list of Earthquake objects with the corresponding data.
+
+                // Convert the Json string into a Json object
+                JSONObject queriedEarthquakes = new JSONObject(queryString);
+
+                //Extract “features”JSONArray
+                JSONArray earthquakeFeatures = queriedEarthquakes.getJSONArray("features");
+
+                //Loop through each feature in the array
+                for (int i = 0; i < earthquakeFeatures.length(); i++) {
+                    //Get earthquake JSONObject at position i
+                    JSONObject earthquakeJsonObject = earthquakeFeatures.getJSONObject(i);
+
+                    // Extract "id" for the USGS event id
+                    String id = earthquakeJsonObject.optString("id", null);
+
+                    //Get “properties” JSONObject
+                    JSONObject properties = earthquakeJsonObject.getJSONObject("properties");
+
+                    //Extract “mag” for magnitude
+                    double magnitude = properties.getDouble("mag");
+                    //Extract “place” for location; may be null
+                    String place = optNullableString(properties, "place");
+                    //Extract “time” for time
+                    long timeInMilliseconds = properties.getLong("time");
+                    // Extract "url" for USGS webpage url; may be null
+                    String url = optNullableString(properties, "url");
+                    // Extract "updated" for the time of the last revision, and "status" to spot deleted events
+                    long updatedInMilliseconds = properties.optLong("updated", timeInMilliseconds);
+                    boolean deleted = STATUS_DELETED.equals(properties.optString("status"));
+
+                    // Extract "geometry" coordinates: [longitude, latitude, depth in km]
+                    double longitude = Double.NaN;
+                    double latitude = Double.NaN;
+                    double depthKm = Double.NaN;
+                    JSONObject geometry = earthquakeJsonObject.optJSONObject("geometry");
+                    JSONArray coordinates = geometry != null ? geometry.optJSONArray("coordinates") : null;
+                    if (coordinates != null && coordinates.length() >= 2) {
+                        longitude = coordinates.optDouble(0);
+                        latitude = coordinates.optDouble(1);
+                        depthKm = coordinates.optDouble(2);
+                    }
+
+                    //Create Earthquake java object from magnitude, location, and time
+                    Earthquake earthquake = new Earthquake(id, magnitude, place, timeInMilliseconds,
+                            updatedInMilliseconds, url, deleted, latitude, longitude, depthKm);
+
+                    //Add earthquake to list of earthquakes
+                    earthquakes.add(earthquake);
+                }
+
+            } catch (JSONException e) {
+                // If an error is thrown when executing any of the above statements in the "try" block,
+                // catch the exception here, so the app doesn't crash. Print a log message
+                // with the message from the exception.
+                Logger.e(LOG_TAG, "Problem parsing the earthquake JSON results", e);
+            }
+        } else {
+            Logger.e(LOG_TAG, "The USGS string is either null or empty; nothing to parse!");
+        }
+
+        return earthquakes;
+    }
+
+    /**
+     * Return a required string member, or null if its value is null; getString would return "null".
+     */
+    private static String optNullableString(JSONObject object, String name) throws JSONException {
+        return object.isNull(name) && object.has(name) ? null : object.getString(name);
+    }
+}
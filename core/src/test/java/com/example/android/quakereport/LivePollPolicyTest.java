@@ -0,0 +1,125 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Poll timing, one poll at a time and only while visible, and which polled events are news,
+ * on a fake clock.
+ */
+public class LivePollPolicyTest {
+
+    private static final long INTERVAL_MILLIS = LivePollPolicy.DEFAULT_INTERVAL_MILLIS;
+
+    private FakeClock mClock;
+    private LivePollPolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock(1500000000000L);
+        mPolicy = new LivePollPolicy(mClock);
+    }
+
+    @Test
+    public void hiddenListNeverPolls() {
+        assertEquals(-1L, mPolicy.getDelayUntilNextPoll());
+        assertFalse(mPolicy.tryStartPoll());
+    }
+
+    @Test
+    public void nextPollIsDueAnIntervalAfterTheLastOneFinished() {
+        mPolicy.setVisible(true);
+        assertEquals(0L, mPolicy.getDelayUntilNextPoll());
+        assertTrue(mPolicy.tryStartPoll());
+
+        // A slow poll: the interval counts from when it finishes, not when it started
+        mClock.advance(3 * INTERVAL_MILLIS);
+        mPolicy.onPollFinished();
+        assertEquals(INTERVAL_MILLIS, mPolicy.getDelayUntilNextPoll());
+        assertFalse(mPolicy.tryStartPoll());
+
+        mClock.advance(INTERVAL_MILLIS - 1);
+        assertEquals(1L, mPolicy.getDelayUntilNextPoll());
+        mClock.advance(1);
+        assertTrue(mPolicy.tryStartPoll());
+    }
+
+    @Test
+    public void onlyOnePollRunsAtATime() {
+        mPolicy.setVisible(true);
+        assertTrue(mPolicy.tryStartPoll());
+
+        mClock.advance(5 * INTERVAL_MILLIS);
+        assertEquals(-1L, mPolicy.getDelayUntilNextPoll());
+        assertFalse(mPolicy.tryStartPoll());
+
+        mPolicy.onPollFinished();
+        mClock.advance(INTERVAL_MILLIS);
+        assertTrue(mPolicy.tryStartPoll());
+    }
+
+    @Test
+    public void becomingVisibleAgainPollsIfTheLastPollIsStale() {
+        mPolicy.setVisible(true);
+        assertTrue(mPolicy.tryStartPoll());
+        mPolicy.onPollFinished();
+        mPolicy.setVisible(false);
+
+        mClock.advance(INTERVAL_MILLIS / 2);
+        mPolicy.setVisible(true);
+        assertEquals(INTERVAL_MILLIS / 2, mPolicy.getDelayUntilNextPoll());
+
+        mPolicy.setVisible(false);
+        mClock.advance(10 * INTERVAL_MILLIS);
+        mPolicy.setVisible(true);
+        assertEquals(0L, mPolicy.getDelayUntilNextPoll());
+    }
+
+    @Test
+    public void clockSetBackCountsAsDue() {
+        mPolicy.setVisible(true);
+        assertTrue(mPolicy.tryStartPoll());
+        mPolicy.onPollFinished();
+
+        mClock.advance(-10 * INTERVAL_MILLIS);
+
+        assertEquals(0L, mPolicy.getDelayUntilNextPoll());
+    }
+
+    @Test
+    public void onlyNewAndRevisedEventsAreNews() {
+        Earthquake a = event("a", 10L);
+        Earthquake b = event("b", 10L);
+        assertEquals(Arrays.asList(a, b), mPolicy.retainChanged(Arrays.asList(a, b)));
+
+        Earthquake revisedB = event("b", 20L);
+        Earthquake c = event("c", 10L);
+        assertEquals(Arrays.asList(revisedB, c), mPolicy.retainChanged(Arrays.asList(a, revisedB, c)));
+
+        // An older copy arriving late isn't news
+        assertEquals(Collections.<Earthquake>emptyList(), mPolicy.retainChanged(Arrays.asList(a, b, c)));
+    }
+
+    @Test
+    public void eventThatLeftTheFeedIsNewsWhenItReturns() {
+        Earthquake a = event("a", 10L);
+        mPolicy.retainChanged(Collections.singletonList(a));
+        mPolicy.retainChanged(Collections.<Earthquake>emptyList());
+
+        List<Earthquake> changed = mPolicy.retainChanged(Collections.singletonList(a));
+
+        assertEquals(Collections.singletonList(a), changed);
+    }
+
+    private static Earthquake event(String id, long updated) {
+        return new Earthquake(id, 5.0, "Somewhere", 0L, updated, null, false);
+    }
+}
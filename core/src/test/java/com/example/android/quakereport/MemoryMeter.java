@@ -0,0 +1,47 @@
+package com.example.android.quakereport;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Allocation and heap measurements for the memory tests. Allocation counting needs a JVM
+ * whose thread bean reports allocated bytes, as HotSpot's does; tests skip without it.
+ */
+final class MemoryMeter {
+
+    /** Collections to run before reading the used heap, so garbage doesn't count */
+    private static final int GC_ROUNDS = 5;
+
+    private MemoryMeter() {
+    }
+
+    /** Return whether {@link #allocatedBytes()} works on this JVM */
+    static boolean canCountAllocations() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return false;
+        }
+        com.sun.management.ThreadMXBean hotSpotThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!hotSpotThreads.isThreadAllocatedMemorySupported()) {
+            return false;
+        }
+        hotSpotThreads.setThreadAllocatedMemoryEnabled(true);
+        return hotSpotThreads.isThreadAllocatedMemoryEnabled();
+    }
+
+    /** Return the bytes allocated by the current thread so far */
+    static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /** Return the heap in use once garbage is collected */
+    static long usedHeapBytes() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_ROUNDS; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
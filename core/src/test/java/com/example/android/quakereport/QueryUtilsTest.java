@@ -0,0 +1,184 @@
+package com.example.android.quakereport;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The streaming GeoJSON parser against the JSONObject one it replaced, on the bundled fixtures
+ * and on features with missing or null fields.
+ */
+public class QueryUtilsTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void streamingMatchesJsonObjectOnFixtures() throws IOException {
+        for (int featureCount : new int[]{10, 1000}) {
+            byte[] body = Fixtures.load(featureCount);
+            List<Earthquake> streamed = QueryUtils.readEarthquakesFromStream(new ByteArrayInputStream(body));
+            List<Earthquake> fromTree = JsonObjectParser.parse(new String(body, UTF_8));
+
+            assertEquals(featureCount, streamed.size());
+            assertEquals(describe(fromTree), describe(streamed));
+        }
+    }
+
+    @Test
+    public void featureWithNullMagnitudeIsSkipped() throws IOException {
+        String body = collection(feature("a", "1.5", "\"Somewhere\""), feature("b", "null", "\"Elsewhere\""),
+                feature("c", "2.5", "\"Elsewhere\""));
+
+        List<Earthquake> earthquakes = parse(body);
+
+        assertEquals(2, earthquakes.size());
+        assertEquals("a", earthquakes.get(0).getId());
+        assertEquals("c", earthquakes.get(1).getId());
+        // The JSONObject parser stopped at the bad feature
+        assertEquals(1, JsonObjectParser.parse(body).size());
+    }
+
+    @Test
+    public void featureWithoutTimeIsSkipped() throws IOException {
+        String body = collection("{\"type\":\"Feature\",\"id\":\"a\",\"properties\":{\"mag\":1.5,"
+                + "\"place\":\"Somewhere\",\"url\":\"https://example.com/a\"}}", feature("b", "2.5", "\"Elsewhere\""));
+
+        List<Earthquake> earthquakes = parse(body);
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("b", earthquakes.get(0).getId());
+    }
+
+    @Test
+    public void deletionWithoutMagnitudeIsKept() throws IOException {
+        String body = collection("{\"type\":\"Feature\",\"id\":\"a\",\"properties\":{\"mag\":null,"
+                + "\"place\":null,\"time\":1510790307634,\"updated\":1510790400000,\"url\":null,"
+                + "\"status\":\"deleted\",\"type\":\"earthquake\"}}");
+
+        List<Earthquake> earthquakes = parse(body);
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("a", earthquakes.get(0).getId());
+        assertTrue(earthquakes.get(0).isDeleted());
+        assertEquals(1510790400000L, earthquakes.get(0).getUpdatedInMilliseconds());
+    }
+
+    @Test
+    public void nullPlaceIsKeptAsNullByBothParsers() throws IOException {
+        String body = collection(feature("a", "2.5", "null"));
+
+        Earthquake streamed = parse(body).get(0);
+        Earthquake fromTree = JsonObjectParser.parse(body).get(0);
+
+        assertNull(streamed.getLocation());
+        assertNull(fromTree.getLocation());
+        assertEquals(describe(JsonObjectParser.parse(body)), describe(parse(body)));
+    }
+
+    @Test
+    public void wrongTypeIsReportedAsIOException() {
+        assertMalformed(collection(feature("a", "\"big\"", "\"Somewhere\"")));
+        assertMalformed("{\"features\":{}}");
+    }
+
+    @Test
+    public void truncatedResponseIsReportedAsIOException() {
+        String body = collection(feature("a", "1.5", "\"Somewhere\""), feature("b", "2.5", "\"Elsewhere\""));
+
+        assertMalformed(body.substring(0, body.length() - 40));
+    }
+
+    @Test
+    public void otherEventTypesAreDroppedBeforeTheyAreChecked() throws IOException {
+        // Summary feeds hold quarry blasts and the like, which may have no magnitude
+        String blast = "{\"type\":\"Feature\",\"id\":\"x\",\"properties\":{\"mag\":null,\"place\":\"Quarry\","
+                + "\"time\":1,\"url\":null,\"type\":\"quarry blast\"}}";
+        String body = collection(blast, feature("a", "1.5", "\"Somewhere\""));
+
+        List<Earthquake> earthquakes = QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream(body.getBytes(UTF_8)), true);
+
+        assertEquals(1, earthquakes.size());
+        assertEquals("a", earthquakes.get(0).getId());
+    }
+
+    @Test
+    public void edgeCasesFixtureKeepsDeletionsAndSkipsEventsWithoutMagnitude() throws IOException {
+        List<Earthquake> all = QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream(Fixtures.loadEdgeCases(false)), false);
+        // As parsed for a summary feed
+        List<Earthquake> earthquakes = QueryUtils.readEarthquakesFromStream(
+                new ByteArrayInputStream(Fixtures.loadEdgeCases(false)), true);
+
+        assertEquals(Arrays.asList("us1000aaa1", "uu60000003", "us1000ddd5", "ak20000006", "hv70000007"), ids(all));
+        assertEquals(Arrays.asList("us1000aaa1", "us1000ddd5", "ak20000006", "hv70000007"), ids(earthquakes));
+        assertFalse(earthquakes.get(0).isDeleted());
+        assertTrue(earthquakes.get(1).isDeleted());
+        assertEquals(4.1, earthquakes.get(1).getMagnitude(), 0.0);
+        assertTrue(earthquakes.get(2).isDeleted());
+        assertNull(earthquakes.get(2).getLocation());
+        assertEquals(1510851000000L, earthquakes.get(2).getUpdatedInMilliseconds());
+        assertNull(earthquakes.get(3).getLocation());
+        assertEquals(2.3, earthquakes.get(3).getMagnitude(), 0.0);
+    }
+
+    private static List<String> ids(List<Earthquake> earthquakes) {
+        List<String> ids = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            ids.add(earthquake.getId());
+        }
+        return ids;
+    }
+
+    private static void assertMalformed(String body) {
+        try {
+            parse(body);
+            fail("Parsed a malformed response");
+        } catch (IOException expected) {
+            // No partial list
+        }
+    }
+
+    private static List<Earthquake> parse(String body) throws IOException {
+        return QueryUtils.readEarthquakesFromStream(new ByteArrayInputStream(body.getBytes(UTF_8)));
+    }
+
+    private static String collection(String... features) {
+        StringBuilder body = new StringBuilder("{\"type\":\"FeatureCollection\",\"metadata\":{\"count\":")
+                .append(features.length).append("},\"features\":[");
+        for (int i = 0; i < features.length; i++) {
+            body.append(i > 0 ? "," : "").append(features[i]);
+        }
+        return body.append("]}").toString();
+    }
+
+    private static String feature(String id, String magnitude, String place) {
+        return "{\"type\":\"Feature\",\"properties\":{\"mag\":" + magnitude + ",\"place\":" + place
+                + ",\"time\":1510790307634,\"updated\":null,\"url\":\"https://example.com/" + id
+                + "\",\"status\":\"reviewed\",\"type\":\"earthquake\"},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[21.0696,35.2169,1.41]},\"id\":\"" + id + "\"}";
+    }
+
+    /** Every field of every earthquake, in order */
+    static List<String> describe(List<Earthquake> earthquakes) {
+        List<String> descriptions = new ArrayList<>();
+        for (Earthquake earthquake : earthquakes) {
+            descriptions.add(earthquake.getId() + "|" + earthquake.getMagnitude() + "|" + earthquake.getLocation()
+                    + "|" + earthquake.getTimeInMilliseconds() + "|" + earthquake.getUpdatedInMilliseconds()
+                    + "|" + earthquake.getUrl() + "|" + earthquake.isDeleted() + "|" + earthquake.getLatitude()
+                    + "|" + earthquake.getLongitude() + "|" + earthquake.getDepthKm());
+        }
+        return descriptions;
+    }
+}
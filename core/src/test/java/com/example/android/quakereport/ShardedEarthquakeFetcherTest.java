@@ -0,0 +1,154 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Concurrent shard downloads against a stub server that answers each shard after a delay, and
+ * the shard boundaries and merging.
+ */
+public class ShardedEarthquakeFetcherTest {
+
+    private static final long HOUR_MILLIS = 60L * 60 * 1000;
+
+    /** 2017-11-16T00:00:00.000Z */
+    private static final long WINDOW_START = 1510790400000L;
+
+    /** How long the server takes to answer each shard */
+    private static final long LATENCY_MILLIS = 400;
+
+    private static final int SHARD_COUNT = 4;
+
+    private StubServer mServer;
+    private ExecutorService mExecutor;
+    private ShardedEarthquakeFetcher mFetcher;
+
+    /** Event times the server holds; an event is returned by every shard whose window includes it */
+    private final List<Long> mEventTimes = new ArrayList<>();
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new StubServer();
+        mServer.setHandler(new StubServer.Handler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                StubServer.pause(LATENCY_MILLIS);
+                Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+                long start = EarthquakeQuery.parseTime(parameters.get("starttime"));
+                long end = EarthquakeQuery.parseTime(parameters.get("endtime"));
+                StringBuilder body = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+                int count = 0;
+                for (long time : mEventTimes) {
+                    // FDSN windows include both ends
+                    if (time >= start && time <= end) {
+                        body.append(count++ > 0 ? "," : "").append(feature(time));
+                    }
+                }
+                body.append("]}");
+                StubServer.respond(exchange, HttpURLConnection.HTTP_OK, body.toString().getBytes("UTF-8"), true);
+            }
+        });
+        mExecutor = Executors.newFixedThreadPool(SHARD_COUNT);
+        mFetcher = new ShardedEarthquakeFetcher(new EarthquakeQuery.Builder().build(), HOUR_MILLIS, mExecutor,
+                mServer.url("/query").toString());
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+        mServer.close();
+    }
+
+    @Test
+    public void shardsAreFetchedConcurrently() throws IOException {
+        for (int i = 0; i < SHARD_COUNT; i++) {
+            mEventTimes.add(WINDOW_START + i * HOUR_MILLIS + 1000L);
+        }
+
+        long startMillis = System.currentTimeMillis();
+        List<Earthquake> earthquakes = mFetcher.fetch(WINDOW_START, WINDOW_START + SHARD_COUNT * HOUR_MILLIS);
+        long elapsedMillis = System.currentTimeMillis() - startMillis;
+
+        assertEquals(SHARD_COUNT, mServer.getRequestCount());
+        assertEquals(SHARD_COUNT, earthquakes.size());
+        // Serial shards would take SHARD_COUNT * LATENCY_MILLIS
+        assertTrue("Took " + elapsedMillis + " ms", elapsedMillis < (SHARD_COUNT - 1) * LATENCY_MILLIS);
+    }
+
+    @Test
+    public void lastShardEndsOnTheGrid() throws IOException {
+        mFetcher.fetch(WINDOW_START, WINDOW_START + 2 * HOUR_MILLIS + 12345L);
+        List<String> firstUrls = requestedUrls(0);
+
+        // A later sync within the same shard asks for exactly the same shards
+        mFetcher.fetch(WINDOW_START, WINDOW_START + 2 * HOUR_MILLIS + 67890L);
+
+        assertEquals(3, firstUrls.size());
+        assertEquals(firstUrls, requestedUrls(3));
+        for (StubServer.Request request : mServer.getRequests()) {
+            long end = EarthquakeQuery.parseTime(parameters(request.pathAndQuery.split("\\?")[1]).get("endtime"));
+            assertEquals(0L, (end - WINDOW_START) % HOUR_MILLIS);
+        }
+    }
+
+    @Test
+    public void boundaryEventsAreMergedAndLaterOnesDropped() throws IOException {
+        long endTime = WINDOW_START + HOUR_MILLIS + HOUR_MILLIS / 2;
+        mEventTimes.add(WINDOW_START + 1000L);
+        // In both shards' windows
+        mEventTimes.add(WINDOW_START + HOUR_MILLIS);
+        mEventTimes.add(endTime - 1000L);
+        // Inside the last shard, but after the end time
+        mEventTimes.add(endTime + 1000L);
+
+        List<Earthquake> earthquakes = mFetcher.fetch(WINDOW_START, endTime);
+
+        assertEquals(3, earthquakes.size());
+        assertEquals(endTime - 1000L, earthquakes.get(0).getTimeInMilliseconds());
+        assertEquals(WINDOW_START + HOUR_MILLIS, earthquakes.get(1).getTimeInMilliseconds());
+        assertEquals(WINDOW_START + 1000L, earthquakes.get(2).getTimeInMilliseconds());
+    }
+
+    /** URLs of the requests from {@code from} on, sorted: shards are requested in no particular order */
+    private List<String> requestedUrls(int from) {
+        List<String> urls = new ArrayList<>();
+        List<StubServer.Request> requests = mServer.getRequests();
+        for (StubServer.Request request : requests.subList(from, requests.size())) {
+            urls.add(request.pathAndQuery);
+        }
+        Collections.sort(urls);
+        return urls;
+    }
+
+    private static Map<String, String> parameters(String query) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            parameters.put(parameter.substring(0, equals), URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+        }
+        return parameters;
+    }
+
+    private static String feature(long time) {
+        return "{\"type\":\"Feature\",\"properties\":{\"mag\":4.5,\"place\":\"Somewhere\",\"time\":" + time
+                + ",\"updated\":" + time + ",\"url\":\"https://example.com/" + time + "\",\"type\":\"earthquake\"},"
+                + "\"geometry\":{\"type\":\"Point\",\"coordinates\":[21.0696,35.2169,1.41]},\"id\":\"ev" + time + "\"}";
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.android.quakereport;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Local HTTP server standing in for USGS in the tests. Each test sets a {@link Handler}; the
+ * server records every request it receives and the connections they arrived on.
+ */
+final class StubServer implements Closeable {
+
+    /**
+     * Answers one request.
+     */
+    interface Handler {
+        void handle(HttpExchange exchange) throws IOException;
+    }
+
+    /** A request as the server saw it */
+    static final class Request {
+        final String pathAndQuery;
+        final Headers headers;
+        final int connection;
+
+        Request(String pathAndQuery, Headers headers, int connection) {
+            this.pathAndQuery = pathAndQuery;
+            this.headers = headers;
+            this.connection = connection;
+        }
+
+        String getHeader(String name) {
+            return headers.getFirst(name);
+        }
+    }
+
+    private final HttpServer mServer;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+    private final List<Request> mRequests = Collections.synchronizedList(new ArrayList<Request>());
+    private final AtomicInteger mConnectionCount = new AtomicInteger();
+    /** Connection number by client port */
+    private final Map<Integer, Integer> mConnectionIds = new HashMap<>();
+    private volatile Handler mHandler;
+
+    StubServer() throws IOException {
+        mServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        mServer.setExecutor(mExecutor);
+        mServer.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                mRequests.add(new Request(exchange.getRequestURI().toString(), exchange.getRequestHeaders(),
+                        connectionId(exchange)));
+                try {
+                    mHandler.handle(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        mServer.start();
+    }
+
+    void setHandler(Handler handler) {
+        this.mHandler = handler;
+    }
+
+    URL url(String pathAndQuery) throws IOException {
+        return new URL("http://127.0.0.1:" + mServer.getAddress().getPort() + pathAndQuery);
+    }
+
+    List<Request> getRequests() {
+        synchronized (mRequests) {
+            return new ArrayList<>(mRequests);
+        }
+    }
+
+    int getRequestCount() {
+        return mRequests.size();
+    }
+
+    /** Number of distinct connections the requests arrived on */
+    int getConnectionCount() {
+        return mConnectionCount.get();
+    }
+
+    @Override
+    public void close() {
+        mServer.stop(0);
+        mExecutor.shutdownNow();
+    }
+
+    private int connectionId(HttpExchange exchange) {
+        int port = exchange.getRemoteAddress().getPort();
+        synchronized (mConnectionIds) {
+            Integer id = mConnectionIds.get(port);
+            if (id == null) {
+                id = mConnectionCount.incrementAndGet();
+                mConnectionIds.put(port, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Send a complete response; gzipped if the client asked for it and {@code gzip} is set.
+     */
+    static void respond(HttpExchange exchange, int code, byte[] body, boolean gzip) throws IOException {
+        boolean encode = gzip && body != null && "gzip".equals(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        if (encode) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzipStream = new GZIPOutputStream(compressed);
+            gzipStream.write(body);
+            gzipStream.close();
+            body = compressed.toByteArray();
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        }
+        if (body == null) {
+            // The server drops the connection after a response without a body unless the
+            // request has been read to its end
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(code, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(code, body.length);
+        OutputStream output = exchange.getResponseBody();
+        output.write(body);
+        output.close();
+    }
+
+    /** Sleep in a handler; the server thread is interrupted when the server closes */
+    static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.android.quakereport;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Interval tightening after large recent events, backoff after empty and failed syncs, and
+ * when a sync is due, on a fake clock.
+ */
+public class SyncSchedulePolicyTest {
+
+    private static final long MINUTE_MILLIS = 60L * 1000;
+    private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+
+    private static final long BASE = SyncSchedulePolicy.DEFAULT_BASE_INTERVAL_MILLIS;
+    private static final long MIN = SyncSchedulePolicy.DEFAULT_MIN_INTERVAL_MILLIS;
+    private static final long MAX = SyncSchedulePolicy.DEFAULT_MAX_INTERVAL_MILLIS;
+
+    private FakeClock mClock;
+    private SyncSchedulePolicy mPolicy;
+
+    @Before
+    public void setUp() {
+        mClock = new FakeClock(1500000000000L);
+        mPolicy = new SyncSchedulePolicy(mClock);
+    }
+
+    @Test
+    public void largeRecentEventTightensThenRelaxes() {
+        long now = mClock.currentTimeMillis();
+
+        long interval = mPolicy.nextIntervalAfterSync(BASE, 3, 7.1, now - HOUR_MILLIS);
+        assertEquals(MIN, interval);
+
+        // Back to the base interval by doubling, one ordinary sync at a time
+        interval = mPolicy.nextIntervalAfterSync(interval, 1, 4.5, now);
+        assertEquals(2 * MIN, interval);
+        interval = mPolicy.nextIntervalAfterSync(interval, 1, 4.5, now);
+        assertEquals(BASE, interval);
+        interval = mPolicy.nextIntervalAfterSync(interval, 1, 4.5, now);
+        assertEquals(BASE, interval);
+    }
+
+    @Test
+    public void revisionOfAnOldLargeEventDoesNotTighten() {
+        long eventTime = mClock.currentTimeMillis();
+        mClock.advance(7 * HOUR_MILLIS);
+
+        assertEquals(BASE, mPolicy.nextIntervalAfterSync(BASE, 1, 8.0, eventTime));
+    }
+
+    @Test
+    public void emptySyncsAndFailuresBackOffToTheMaximum() {
+        long interval = BASE;
+        for (long expected = 2 * BASE; expected < MAX; expected *= 2) {
+            interval = mPolicy.nextIntervalAfterSync(interval, 0, Double.NaN, 0L);
+            assertEquals(expected, interval);
+        }
+        assertEquals(MAX, mPolicy.nextIntervalAfterSync(interval, 0, Double.NaN, 0L));
+        assertEquals(MAX, mPolicy.nextIntervalAfterFailure(MAX));
+        // A failure while tightened backs off from the base interval, not the minimum
+        assertEquals(2 * BASE, mPolicy.nextIntervalAfterFailure(MIN));
+
+        // The first sync with changes resets it
+        assertEquals(BASE, mPolicy.nextIntervalAfterSync(MAX, 2, 5.0, mClock.currentTimeMillis()));
+    }
+
+    @Test
+    public void syncIsDueAfterTheInterval() {
+        long lastSync = mClock.currentTimeMillis();
+
+        mClock.advance(10 * MINUTE_MILLIS);
+        assertFalse(mPolicy.isSyncDue(lastSync, BASE));
+        assertEquals(5 * MINUTE_MILLIS, mPolicy.getDelayUntilDue(lastSync, BASE));
+
+        // An alarm firing slightly early still counts
+        mClock.advance(4 * MINUTE_MILLIS + 30 * 1000);
+        assertTrue(mPolicy.isSyncDue(lastSync, BASE));
+
+        mClock.advance(HOUR_MILLIS);
+        assertTrue(mPolicy.isSyncDue(lastSync, BASE));
+    }
+
+    @Test
+    public void neverSyncedOrClockSetBackIsDue() {
+        assertTrue(mPolicy.isSyncDue(0L, BASE));
+
+        long lastSync = mClock.currentTimeMillis();
+        mClock.advance(-HOUR_MILLIS);
+        assertEquals(0L, mPolicy.getDelayUntilDue(lastSync, BASE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minimumAboveBaseIsRejected() {
+        new SyncSchedulePolicy(mClock, MIN, BASE, MAX, 6.0);
+    }
+}